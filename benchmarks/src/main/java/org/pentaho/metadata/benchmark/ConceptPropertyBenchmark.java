@@ -0,0 +1,70 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.SqlPhysicalColumn;
+import org.pentaho.metadata.model.concept.Concept;
+
+/**
+ * <code>Concept.getProperty</code> on a logical column, which merges the properties of the physical column, the parent
+ * concept and the security parent on every call.
+ * 
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ConceptPropertyBenchmark {
+
+  private LogicalColumn column;
+
+  @Setup
+  public void setUp() {
+    SyntheticModel model = new SyntheticModel( 2, 0, 4, 0 );
+    column = model.getModel().getLogicalTables().get( 0 ).getLogicalColumns().get( 1 );
+  }
+
+  @Benchmark
+  public Object inheritedProperty() {
+    return column.getProperty( SqlPhysicalColumn.TARGET_COLUMN );
+  }
+
+  @Benchmark
+  public Object parentConceptProperty() {
+    return column.getProperty( Concept.DESCRIPTION_PROPERTY );
+  }
+
+  @Benchmark
+  public Object missingProperty() {
+    return column.getProperty( "missing" ); //$NON-NLS-1$
+  }
+}
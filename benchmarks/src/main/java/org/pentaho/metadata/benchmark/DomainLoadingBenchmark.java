@@ -0,0 +1,95 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.util.SerializationService;
+import org.pentaho.metadata.util.XmiParser;
+
+/**
+ * Domain loading and storing: XMI parsing and generation with <code>XmiParser</code>, and XStream
+ * (de)serialization with <code>SerializationService</code>.
+ * 
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class DomainLoadingBenchmark {
+
+  @Param( { "10", "50" } )
+  public int tableCount;
+
+  @Param( { "20" } )
+  public int columnCount;
+
+  private Domain domain;
+
+  private byte[] xmi;
+
+  private String xml;
+
+  private XmiParser parser;
+
+  private SerializationService serializationService;
+
+  @Setup
+  public void setUp() throws Exception {
+    BenchmarkEnvironment.init();
+    domain = new SyntheticModel( tableCount, 0.5, columnCount, 2 ).getDomain();
+    parser = new XmiParser();
+    serializationService = new SerializationService();
+    xmi = parser.generateXmi( domain ).getBytes( "UTF-8" ); //$NON-NLS-1$
+    xml = serializationService.serializeDomain( domain );
+  }
+
+  @Benchmark
+  public Domain parseXmi() throws Exception {
+    return parser.parseXmi( new ByteArrayInputStream( xmi ) );
+  }
+
+  @Benchmark
+  public String generateXmi() {
+    return parser.generateXmi( domain );
+  }
+
+  @Benchmark
+  public String serializeDomain() {
+    return serializationService.serializeDomain( domain );
+  }
+
+  @Benchmark
+  public Domain deserializeDomain() {
+    return serializationService.deserializeDomain( xml );
+  }
+}
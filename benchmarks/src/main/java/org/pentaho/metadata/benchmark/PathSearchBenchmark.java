@@ -0,0 +1,96 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.query.impl.sql.JoinPathEngine;
+import org.pentaho.metadata.query.impl.sql.Path;
+import org.pentaho.metadata.query.impl.sql.SqlGenerator;
+
+/**
+ * The join path search for each path build method, including CLASSIC, which computes the number of connecting tables
+ * with the Dreyfus-Wagner dynamic program before enumerating the sets of that size. The required tables are chosen at
+ * random among all the tables of the model.
+ * <p>
+ * The join path engine caches the path of each set of required tables per model, so
+ * <code>SqlGenerator.getShortestPathBetween</code> only searches on its first call. {@link #searchPath()} bypasses
+ * the cache and measures the search, {@link #getShortestPathBetween()} measures the cached lookup done by queries.
+ * 
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class PathSearchBenchmark {
+
+  @Param( { "10", "20" } )
+  public int tableCount;
+
+  @Param( { "0.0", "0.5", "1.0" } )
+  public double relationshipDensity;
+
+  @Param( { "4" } )
+  public int requiredTables;
+
+  @Param( { "CLASSIC", "ANY_RELEVANT", "FIRST_SHORT", "SHORTEST", "LOWEST_SCORE", "ALL" } )
+  public String pathBuildMethod;
+
+  private SqlGenerator generator;
+
+  private JoinPathEngine engine;
+
+  private LogicalModel model;
+
+  private List<LogicalTable> tables;
+
+  @Setup
+  public void setUp() throws Exception {
+    SyntheticModel syntheticModel = new SyntheticModel( tableCount, relationshipDensity, 2, 0 );
+    model = syntheticModel.getModel();
+    model.setProperty( "path_build_method", pathBuildMethod ); //$NON-NLS-1$
+    tables = syntheticModel.pickTables( requiredTables, 11 );
+    generator = new SqlGenerator();
+    engine = JoinPathEngine.forModel( model );
+  }
+
+  @Benchmark
+  public Path searchPath() {
+    return engine.searchPath( pathBuildMethod, tables );
+  }
+
+  @Benchmark
+  public Path getShortestPathBetween() {
+    return generator.getShortestPathBetween( model, tables );
+  }
+}
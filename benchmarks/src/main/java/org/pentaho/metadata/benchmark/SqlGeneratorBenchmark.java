@@ -0,0 +1,86 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.metadata.query.impl.sql.MappedQuery;
+import org.pentaho.metadata.query.impl.sql.SqlGenerator;
+import org.pentaho.metadata.query.model.Query;
+
+/**
+ * End-to-end <code>SqlGenerator.generateSql</code> over synthetic models, for several dialects.
+ * 
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class SqlGeneratorBenchmark {
+
+  @Param( { "10", "40" } )
+  public int tableCount;
+
+  @Param( { "0.0", "0.5" } )
+  public double relationshipDensity;
+
+  @Param( { "10" } )
+  public int columnCount;
+
+  @Param( { "0", "4" } )
+  public int formulaComplexity;
+
+  @Param( { "4" } )
+  public int selectedTables;
+
+  @Param( { "HYPERSONIC", "ORACLE", "POSTGRESQL", "MSSQL", "MYSQL" } )
+  public String databaseType;
+
+  private SqlGenerator generator;
+
+  private DatabaseMeta databaseMeta;
+
+  private Query query;
+
+  @Setup
+  public void setUp() throws Exception {
+    BenchmarkEnvironment.init();
+    SyntheticModel model = new SyntheticModel( tableCount, relationshipDensity, columnCount, formulaComplexity );
+    query = model.buildQuery( selectedTables, 7 );
+    databaseMeta = new DatabaseMeta( "", databaseType, "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+    generator = new SqlGenerator();
+  }
+
+  @Benchmark
+  public MappedQuery generateSql() throws Exception {
+    return generator.generateSql( query, SyntheticModel.LOCALE, null, databaseMeta );
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.pentaho.metadata.model.Category;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalRelationship;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.SqlDataSource;
+import org.pentaho.metadata.model.SqlPhysicalColumn;
+import org.pentaho.metadata.model.SqlPhysicalModel;
+import org.pentaho.metadata.model.SqlPhysicalTable;
+import org.pentaho.metadata.model.concept.Concept;
+import org.pentaho.metadata.model.concept.types.AggregationType;
+import org.pentaho.metadata.model.concept.types.DataType;
+import org.pentaho.metadata.model.concept.types.LocaleType;
+import org.pentaho.metadata.model.concept.types.LocalizedString;
+import org.pentaho.metadata.model.concept.types.RelationshipType;
+import org.pentaho.metadata.model.concept.types.TableType;
+import org.pentaho.metadata.model.concept.types.TargetColumnType;
+import org.pentaho.metadata.query.model.Query;
+import org.pentaho.metadata.query.model.Selection;
+
+/**
+ * Builds deterministic synthetic domains for the benchmarks. The first table is a fact table, every other table is
+ * joined to a random earlier table so the model is always connected, and <code>relationshipDensity</code> adds extra
+ * relationships (as a fraction of the table count) to create alternative join paths.
+ * 
+ */
+public class SyntheticModel {
+
+  public static final String LOCALE = "en_US"; //$NON-NLS-1$
+
+  private final Domain domain;
+
+  private final LogicalModel model;
+
+  private final Random random;
+
+  /**
+   * @param tableCount
+   *          number of tables
+   * @param relationshipDensity
+   *          extra relationships beyond the spanning tree, as a fraction of the table count
+   * @param columnCount
+   *          number of plain columns per table, in addition to the key and formula columns
+   * @param formulaComplexity
+   *          number of terms in the formula column of each table, 0 for no formula column
+   */
+  public SyntheticModel( int tableCount, double relationshipDensity, int columnCount, int formulaComplexity ) {
+    random = new Random( 42 );
+    domain = new Domain();
+    domain.setId( "BENCHMARK" ); //$NON-NLS-1$
+    domain.addLocale( new LocaleType( LOCALE, "English (US)" ) ); //$NON-NLS-1$
+
+    Concept baseConcept = new Concept();
+    baseConcept.setId( "Base" ); //$NON-NLS-1$
+    baseConcept.setDescription( new LocalizedString( LOCALE, "Base concept" ) ); //$NON-NLS-1$
+    domain.addConcept( baseConcept );
+
+    SqlPhysicalModel physicalModel = new SqlPhysicalModel();
+    physicalModel.setId( "PHYSICAL" ); //$NON-NLS-1$
+    SqlDataSource dataSource = new SqlDataSource();
+    dataSource.setDatabaseName( "benchmark" ); //$NON-NLS-1$
+    dataSource.setDialectType( "HYPERSONIC" ); //$NON-NLS-1$
+    dataSource.setType( SqlDataSource.DataSourceType.NATIVE );
+    physicalModel.setDatasource( dataSource );
+    domain.addPhysicalModel( physicalModel );
+
+    model = new LogicalModel();
+    model.setId( "MODEL" ); //$NON-NLS-1$
+    model.setName( new LocalizedString( LOCALE, "Benchmark model" ) ); //$NON-NLS-1$
+    model.setPhysicalModel( physicalModel );
+    domain.addLogicalModel( model );
+
+    Category category = new Category( model );
+    category.setId( "CATEGORY" ); //$NON-NLS-1$
+    category.setName( new LocalizedString( LOCALE, "Category" ) ); //$NON-NLS-1$
+    model.addCategory( category );
+
+    for ( int t = 0; t < tableCount; t++ ) {
+      String tableId = "T" + t; //$NON-NLS-1$
+      SqlPhysicalTable physicalTable = new SqlPhysicalTable( physicalModel );
+      physicalTable.setId( "PT" + t ); //$NON-NLS-1$
+      physicalTable.setTargetTable( "table_" + t ); //$NON-NLS-1$
+      physicalTable.setTableType( t == 0 ? TableType.FACT : TableType.DIMENSION );
+      physicalTable.setRelativeSize( t == 0 ? 100 : 1 + random.nextInt( 10 ) );
+      physicalModel.addPhysicalTable( physicalTable );
+
+      LogicalTable table = new LogicalTable( model, physicalTable );
+      table.setId( tableId );
+      table.setName( new LocalizedString( LOCALE, "Table " + t ) ); //$NON-NLS-1$
+      model.addLogicalTable( table );
+
+      addColumn( table, physicalTable, category, tableId + "_KEY", "key_" + t, null, baseConcept ); //$NON-NLS-1$ //$NON-NLS-2$
+      for ( int c = 0; c < columnCount; c++ ) {
+        addColumn( table, physicalTable, category, tableId + "_C" + c, "col_" + c, //$NON-NLS-1$ //$NON-NLS-2$
+            t == 0 && c % 2 == 0 ? AggregationType.SUM : null, baseConcept );
+      }
+      if ( formulaComplexity > 0 ) {
+        LogicalColumn formula =
+            addColumn( table, physicalTable, category, tableId + "_F", buildFormula( tableId, columnCount, //$NON-NLS-1$
+                formulaComplexity ), null, baseConcept );
+        formula.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.OPEN_FORMULA );
+      }
+    }
+
+    // spanning tree, then extra relationships for alternative paths
+    List<LogicalTable> tables = model.getLogicalTables();
+    for ( int t = 1; t < tables.size(); t++ ) {
+      addRelationship( tables.get( random.nextInt( t ) ), tables.get( t ) );
+    }
+    int extra = (int) Math.round( relationshipDensity * tableCount );
+    for ( int i = 0; i < extra && tables.size() > 2; i++ ) {
+      int from = random.nextInt( tables.size() );
+      int to = random.nextInt( tables.size() );
+      if ( from != to && model.findRelationshipUsing( tables.get( from ), tables.get( to ) ) == null ) {
+        addRelationship( tables.get( from ), tables.get( to ) );
+      }
+    }
+  }
+
+  private LogicalColumn addColumn( LogicalTable table, SqlPhysicalTable physicalTable, Category category, String id,
+      String targetColumn, AggregationType aggregation, Concept parentConcept ) {
+    SqlPhysicalColumn physicalColumn = new SqlPhysicalColumn( physicalTable );
+    physicalColumn.setId( "P" + id ); //$NON-NLS-1$
+    physicalColumn.setTargetColumn( targetColumn );
+    physicalColumn.setDataType( DataType.NUMERIC );
+    physicalColumn.setName( new LocalizedString( LOCALE, id ) );
+    physicalColumn.setParentConcept( parentConcept );
+    if ( aggregation != null ) {
+      physicalColumn.setAggregationType( aggregation );
+    }
+    physicalTable.addPhysicalColumn( physicalColumn );
+
+    LogicalColumn column = new LogicalColumn();
+    column.setId( id );
+    column.setPhysicalColumn( physicalColumn );
+    column.setLogicalTable( table );
+    table.addLogicalColumn( column );
+    category.addLogicalColumn( column );
+    return column;
+  }
+
+  private String buildFormula( String tableId, int columnCount, int terms ) {
+    StringBuilder formula = new StringBuilder();
+    for ( int i = 0; i < terms; i++ ) {
+      if ( i > 0 ) {
+        formula.append( i % 2 == 0 ? " + " : " * " ); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+      String column = columnCount > 0 ? tableId + "_C" + ( i % columnCount ) : tableId + "_KEY"; //$NON-NLS-1$ //$NON-NLS-2$
+      formula.append( "IF([" ).append( tableId ).append( '.' ).append( column ).append( "] > " ).append( i ) //$NON-NLS-1$ //$NON-NLS-2$
+          .append( "; [" ).append( tableId ).append( '.' ).append( column ).append( "]; 0)" ); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    return formula.toString();
+  }
+
+  private void addRelationship( LogicalTable from, LogicalTable to ) {
+    LogicalRelationship relationship =
+        new LogicalRelationship( model, from, to, from.getLogicalColumns().get( 0 ), to.getLogicalColumns().get( 0 ) );
+    relationship.setRelationshipType( RelationshipType._1_N );
+    model.addLogicalRelationship( relationship );
+  }
+
+  public Domain getDomain() {
+    return domain;
+  }
+
+  public LogicalModel getModel() {
+    return model;
+  }
+
+  /**
+   * Builds a query selecting one column of each of <code>tableCount</code> randomly chosen tables, including the
+   * formula column when there is one.
+   * 
+   * @param tableCount
+   *          the number of tables to select from
+   * @param seed
+   *          random seed, so the same query can be built again
+   * @return the query
+   */
+  public Query buildQuery( int tableCount, long seed ) {
+    Random queryRandom = new Random( seed );
+    List<LogicalTable> tables = new ArrayList<LogicalTable>( model.getLogicalTables() );
+    Query query = new Query( domain, model );
+    Category category = model.getCategories().get( 0 );
+    for ( int i = 0; i < tableCount && !tables.isEmpty(); i++ ) {
+      LogicalTable table = tables.remove( queryRandom.nextInt( tables.size() ) );
+      List<LogicalColumn> columns = table.getLogicalColumns();
+      query.getSelections().add( new Selection( category, columns.get( columns.size() - 1 ), null ) );
+    }
+    return query;
+  }
+
+  /**
+   * Picks <code>count</code> distinct random tables of the model.
+   */
+  public List<LogicalTable> pickTables( int count, long seed ) {
+    Random tableRandom = new Random( seed );
+    List<LogicalTable> tables = new ArrayList<LogicalTable>( model.getLogicalTables() );
+    List<LogicalTable> picked = new ArrayList<LogicalTable>();
+    for ( int i = 0; i < count && !tables.isEmpty(); i++ ) {
+      picked.add( tables.remove( tableRandom.nextInt( tables.size() ) ) );
+    }
+    return picked;
+  }
+}
@@ -0,0 +1,382 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.commons.connection.memory.MemoryMetaData;
+import org.pentaho.commons.connection.memory.MemoryResultSet;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.metadata.model.Category;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.SqlDataSource;
+import org.pentaho.metadata.model.SqlDataSource.DataSourceType;
+import org.pentaho.metadata.model.SqlPhysicalColumn;
+import org.pentaho.metadata.model.SqlPhysicalModel;
+import org.pentaho.metadata.model.SqlPhysicalTable;
+import org.pentaho.metadata.model.concept.types.AggregationType;
+import org.pentaho.metadata.model.concept.types.DataType;
+import org.pentaho.metadata.model.concept.types.TargetColumnType;
+import org.pentaho.metadata.query.BaseMetadataQueryExec;
+import org.pentaho.metadata.query.impl.sql.CachingMetadataQueryExec;
+import org.pentaho.metadata.query.impl.sql.MappedQuery;
+import org.pentaho.metadata.query.impl.sql.QueryResultCache;
+import org.pentaho.metadata.query.impl.sql.SqlGenerator;
+import org.pentaho.metadata.query.impl.sql.SqlMetadataQueryExec;
+import org.pentaho.metadata.query.impl.sql.StreamingSqlResultSet;
+import org.pentaho.metadata.query.model.CombinationType;
+import org.pentaho.metadata.query.model.Constraint;
+import org.pentaho.metadata.query.model.Parameter;
+import org.pentaho.metadata.query.model.Query;
+import org.pentaho.metadata.query.model.Selection;
+import org.pentaho.metadata.repository.InMemoryMetadataDomainRepository;
+import org.pentaho.pms.MetadataTestBase;
+
+public class CachingMetadataQueryExecIT {
+
+  private static Connection connection;
+
+  private Domain domain;
+
+  private LogicalModel model;
+
+  private Query query;
+
+  private Parameter region;
+
+  @BeforeClass
+  public static void createDatabase() throws Exception {
+    MetadataTestBase.initKettleEnvironment();
+    Class.forName( "org.hsqldb.jdbcDriver" ); //$NON-NLS-1$
+    connection = DriverManager.getConnection( "jdbc:hsqldb:mem:resultcache", "sa", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    Statement stmt = connection.createStatement();
+    stmt.execute( "CREATE TABLE SALES ( REGION VARCHAR(10), AMOUNT INTEGER )" ); //$NON-NLS-1$
+    stmt.execute( "INSERT INTO SALES VALUES ( 'EAST', 10 )" ); //$NON-NLS-1$
+    stmt.execute( "INSERT INTO SALES VALUES ( 'EAST', 5 )" ); //$NON-NLS-1$
+    stmt.execute( "INSERT INTO SALES VALUES ( 'WEST', 7 )" ); //$NON-NLS-1$
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void dropDatabase() throws Exception {
+    Statement stmt = connection.createStatement();
+    stmt.execute( "SHUTDOWN" ); //$NON-NLS-1$
+    connection.close();
+  }
+
+  @Before
+  public void createModel() {
+    SqlDataSource datasource = new SqlDataSource();
+    datasource.setType( DataSourceType.NATIVE );
+    datasource.setDialectType( "HYPERSONIC" ); //$NON-NLS-1$
+    datasource.setDatabaseName( "mem:resultcache" ); //$NON-NLS-1$
+    datasource.setUsername( "sa" ); //$NON-NLS-1$
+    SqlPhysicalModel physicalModel = new SqlPhysicalModel();
+    physicalModel.setId( "pm" ); //$NON-NLS-1$
+    physicalModel.setDatasource( datasource );
+
+    model = new LogicalModel();
+    model.setId( "sales" ); //$NON-NLS-1$
+    model.setPhysicalModel( physicalModel );
+    model.setProperty( LogicalModel.PROPERTY_RESULT_CACHE_TTL, 60 );
+    Category category = new Category();
+    category.setId( "cat" ); //$NON-NLS-1$
+    model.getCategories().add( category );
+
+    LogicalTable table = new LogicalTable();
+    table.setId( "bt_sales" ); //$NON-NLS-1$
+    table.setProperty( SqlPhysicalTable.TARGET_TABLE, "SALES" ); //$NON-NLS-1$
+    model.getLogicalTables().add( table );
+    LogicalColumn regionColumn = new LogicalColumn();
+    regionColumn.setId( "bc_region" ); //$NON-NLS-1$
+    regionColumn.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "REGION" ); //$NON-NLS-1$
+    regionColumn.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    regionColumn.setLogicalTable( table );
+    table.addLogicalColumn( regionColumn );
+    category.addLogicalColumn( regionColumn );
+    LogicalColumn amountColumn = new LogicalColumn();
+    amountColumn.setId( "bc_amount" ); //$NON-NLS-1$
+    amountColumn.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "AMOUNT" ); //$NON-NLS-1$
+    amountColumn.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    amountColumn.setAggregationType( AggregationType.SUM );
+    amountColumn.setLogicalTable( table );
+    table.addLogicalColumn( amountColumn );
+    category.addLogicalColumn( amountColumn );
+
+    domain = new Domain();
+    domain.setId( "sales_domain" ); //$NON-NLS-1$
+    domain.addLogicalModel( model );
+
+    query = new Query( domain, model );
+    region = new Parameter( "region", DataType.STRING, "EAST" ); //$NON-NLS-1$ //$NON-NLS-2$
+    query.getParameters().add( region );
+    query.getSelections().add( new Selection( category, regionColumn, null ) );
+    query.getSelections().add( new Selection( category, amountColumn, null ) );
+    query.getConstraints().add( new Constraint( CombinationType.AND, "[bt_sales.bc_region] = [param:region]" ) ); //$NON-NLS-1$
+  }
+
+  @Test
+  public void testCachedResults() throws Exception {
+    QueryResultCache cache = new QueryResultCache();
+    InMemoryMetadataDomainRepository repo = new InMemoryMetadataDomainRepository();
+    repo.addDomainChangeListener( cache );
+    repo.storeDomain( domain, true );
+
+    JdbcQueryExec delegate = new JdbcQueryExec();
+    CachingMetadataQueryExec exec = new CachingMetadataQueryExec( delegate, cache );
+    exec.setMetadataDomainRepository( repo );
+
+    IPentahoResultSet result = exec.executeQuery( query );
+    Assert.assertEquals( 1, delegate.executions );
+    Assert.assertEquals( 1, result.getRowCount() );
+    Assert.assertEquals( 15, ( (Number) result.getValueAt( 0, 1 ) ).intValue() );
+
+    // the same query is answered by the cache
+    result = exec.executeQuery( query );
+    Assert.assertEquals( 1, delegate.executions );
+    Assert.assertEquals( 1, cache.getHits() );
+    Assert.assertEquals( "EAST", result.getValueAt( 0, 0 ) ); //$NON-NLS-1$
+    Assert.assertEquals( 15, ( (Number) result.getValueAt( 0, 1 ) ).intValue() );
+
+    // other parameter values run the query again
+    exec.setParameter( region, "WEST" ); //$NON-NLS-1$
+    result = exec.executeQuery( query );
+    Assert.assertEquals( 2, delegate.executions );
+    Assert.assertEquals( 7, ( (Number) result.getValueAt( 0, 1 ) ).intValue() );
+    Assert.assertEquals( 2, cache.size() );
+
+    // storing the domain again drops its results
+    repo.storeDomain( domain, true );
+    Assert.assertEquals( 0, cache.size() );
+    exec.executeQuery( query );
+    Assert.assertEquals( 3, delegate.executions );
+
+    // models without a time to live are not cached
+    model.removeChildProperty( LogicalModel.PROPERTY_RESULT_CACHE_TTL );
+    exec.executeQuery( query );
+    exec.executeQuery( query );
+    Assert.assertEquals( 5, delegate.executions );
+  }
+
+  @Test
+  public void testWeightBoundedEviction() throws Exception {
+    // the results of both regions hold 2 cells, only one of them fits
+    QueryResultCache cache = new QueryResultCache( 3, 0 );
+    JdbcQueryExec delegate = new JdbcQueryExec();
+    CachingMetadataQueryExec exec = new CachingMetadataQueryExec( delegate, cache );
+
+    exec.executeQuery( query );
+    exec.setParameter( region, "WEST" ); //$NON-NLS-1$
+    exec.executeQuery( query );
+    Assert.assertEquals( 1, cache.size() );
+    Assert.assertEquals( 2, cache.getWeight() );
+
+    // the least recently used result was evicted
+    exec.setParameter( region, "EAST" ); //$NON-NLS-1$
+    exec.executeQuery( query );
+    Assert.assertEquals( 3, delegate.executions );
+  }
+
+  @Test
+  public void testResultsWithoutDomain() throws Exception {
+    QueryResultCache cache = new QueryResultCache();
+    JdbcQueryExec delegate = new JdbcQueryExec();
+    CachingMetadataQueryExec exec = new CachingMetadataQueryExec( delegate, cache );
+    Query noDomain = new Query( null, model );
+    noDomain.getParameters().addAll( query.getParameters() );
+    noDomain.getSelections().addAll( query.getSelections() );
+    noDomain.getConstraints().addAll( query.getConstraints() );
+
+    exec.executeQuery( noDomain );
+    Assert.assertEquals( 1, cache.size() );
+    // the domain of the result is unknown, any change drops it
+    cache.domainChanged( "other_domain" ); //$NON-NLS-1$
+    Assert.assertEquals( 0, cache.size() );
+
+    // the domain of the model is used when the query has none
+    model.setDomain( domain );
+    exec.executeQuery( noDomain );
+    cache.domainChanged( "other_domain" ); //$NON-NLS-1$
+    Assert.assertEquals( 1, cache.size() );
+    cache.domainChanged( "sales_domain" ); //$NON-NLS-1$
+    Assert.assertEquals( 0, cache.size() );
+  }
+
+  @Test
+  public void testStaleResultNotCached() throws Exception {
+    QueryResultCache cache = new QueryResultCache();
+    QueryResultCache.Key key =
+        new QueryResultCache.Key( "SELECT 1", new ArrayList<Object>(), null, "ds", null ); //$NON-NLS-1$ //$NON-NLS-2$
+    long generation = cache.getGeneration( "sales_domain" ); //$NON-NLS-1$
+    // the domain changes while the query runs
+    cache.invalidate( "sales_domain" ); //$NON-NLS-1$
+    IPentahoResultSet result = cache.put( key, "sales_domain", createResult( 2 ), 60000, generation ); //$NON-NLS-1$
+    Assert.assertEquals( 2, result.getRowCount() );
+    Assert.assertEquals( 0, cache.size() );
+
+    generation = cache.getGeneration( "sales_domain" ); //$NON-NLS-1$
+    cache.put( key, "sales_domain", createResult( 2 ), 60000, generation ); //$NON-NLS-1$
+    Assert.assertEquals( 1, cache.size() );
+
+    // changes of other domains do not reject the result, but reject results of unknown domains
+    generation = cache.getGeneration( "sales_domain" ); //$NON-NLS-1$
+    long unknownGeneration = cache.getGeneration( null );
+    cache.invalidate( "other_domain" ); //$NON-NLS-1$
+    cache.put( key, "sales_domain", createResult( 2 ), 60000, generation ); //$NON-NLS-1$
+    Assert.assertEquals( 1, cache.size() );
+    cache.put( key, null, createResult( 2 ), 60000, unknownGeneration );
+    Assert.assertEquals( 1, cache.size() );
+    Assert.assertEquals( 2, cache.getWeight() );
+
+    // dropping every result rejects the results of every domain
+    cache.invalidate( null );
+    cache.put( key, "sales_domain", createResult( 2 ), 60000, generation ); //$NON-NLS-1$
+    Assert.assertEquals( 0, cache.size() );
+  }
+
+  @Test
+  public void testGeneratedSqlPassedToDelegate() throws Exception {
+    QueryResultCache cache = new QueryResultCache();
+    final List<MappedQuery> executed = new ArrayList<MappedQuery>();
+    SqlMetadataQueryExec delegate = new SqlMetadataQueryExec() {
+      @Override
+      public StreamingSqlResultSet executeStreamingQuery( Query queryObject ) throws Exception {
+        throw new IllegalStateException( "the SQL of the cache key is not generated again" ); //$NON-NLS-1$
+      }
+
+      @Override
+      public StreamingSqlResultSet executeStreamingQuery( Query queryObject, MappedQuery mappedQuery )
+        throws Exception {
+        executed.add( mappedQuery );
+        return super.executeStreamingQuery( queryObject, mappedQuery );
+      }
+    };
+    CachingMetadataQueryExec exec = new CachingMetadataQueryExec( delegate, cache );
+
+    IPentahoResultSet result = exec.executeQuery( query );
+    Assert.assertEquals( 1, executed.size() );
+    Assert.assertEquals( 1, result.getRowCount() );
+    Assert.assertEquals( 15, ( (Number) result.getValueAt( 0, 1 ) ).intValue() );
+    exec.executeQuery( query );
+    Assert.assertEquals( 1, executed.size() );
+  }
+
+  @Test
+  public void testOversizedResultNotCopied() throws Exception {
+    QueryResultCache cache = new QueryResultCache( 3, 0 );
+    QueryResultCache.Key key =
+        new QueryResultCache.Key( "SELECT 1", new ArrayList<Object>(), null, "ds", null ); //$NON-NLS-1$ //$NON-NLS-2$
+
+    // a scrollable result is rewound and returned as is
+    IPentahoResultSet scrollable = createResult( 5 );
+    Assert.assertSame( scrollable, cache.put( key, "sales_domain", scrollable, 60000, 0 ) ); //$NON-NLS-1$
+    Assert.assertEquals( 0, cache.size() );
+    Assert.assertEquals( 0, scrollable.next()[0] );
+
+    // a forward only result returns the rows read so far, then the rest
+    final IPentahoResultSet rows = createResult( 5 );
+    IPentahoResultSet forwardOnly = new MemoryResultSet( rows.getMetaData() ) {
+      @Override
+      public Object[] next() {
+        return rows.next();
+      }
+
+      @Override
+      public boolean isScrollable() {
+        return false;
+      }
+    };
+    IPentahoResultSet result = cache.put( key, "sales_domain", forwardOnly, 60000, 0 ); //$NON-NLS-1$
+    Assert.assertFalse( result.isScrollable() );
+    Assert.assertEquals( 0, cache.size() );
+    for ( int i = 0; i < 5; i++ ) {
+      Assert.assertEquals( i, result.next()[0] );
+    }
+    Assert.assertNull( result.next() );
+  }
+
+  private static IPentahoResultSet createResult( int rowCount ) {
+    MemoryResultSet result = new MemoryResultSet( new MemoryMetaData( new Object[][] { { "N" } }, null ) ); //$NON-NLS-1$
+    for ( int i = 0; i < rowCount; i++ ) {
+      result.addRow( new Object[] { i } );
+    }
+    return result;
+  }
+
+  /**
+   * Runs the generated SQL against the in memory database and counts the executions.
+   */
+  private static class JdbcQueryExec extends BaseMetadataQueryExec {
+
+    int executions;
+
+    public IPentahoResultSet executeQuery( Query queryObject ) {
+      executions++;
+      try {
+        Map<String, Object> values = new HashMap<String, Object>();
+        for ( Parameter param : queryObject.getParameters() ) {
+          Object value = parameters.get( param.getName() );
+          values.put( param.getName(), value != null ? value : param.getDefaultValue() );
+        }
+        DatabaseMeta databaseMeta = new DatabaseMeta( "", "HYPERSONIC", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+        MappedQuery mappedQuery =
+            new SqlGenerator().generateSql( queryObject, "en_US", null, databaseMeta, values, false ); //$NON-NLS-1$
+        Statement stmt = connection.createStatement();
+        ResultSet rs = stmt.executeQuery( mappedQuery.getQuery() );
+        int columnCount = rs.getMetaData().getColumnCount();
+        List<String> headers = new ArrayList<String>();
+        for ( int i = 1; i <= columnCount; i++ ) {
+          headers.add( rs.getMetaData().getColumnLabel( i ) );
+        }
+        MemoryResultSet result =
+            new MemoryResultSet( new MemoryMetaData( new Object[][] { headers.toArray() }, null ) );
+        while ( rs.next() ) {
+          Object[] row = new Object[columnCount];
+          for ( int i = 0; i < columnCount; i++ ) {
+            row[i] = rs.getObject( i + 1 );
+          }
+          result.addRow( row );
+        }
+        rs.close();
+        stmt.close();
+        return result;
+      } catch ( Exception e ) {
+        throw new RuntimeException( e );
+      }
+    }
+
+    public boolean isLive() {
+      return false;
+    }
+  }
+}
@@ -17,10 +17,15 @@
 package org.pentaho.metadata;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -29,6 +34,7 @@ import org.pentaho.commons.connection.memory.MemoryMetaData;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.metadata.model.Category;
+import org.pentaho.metadata.model.Domain;
 import org.pentaho.metadata.model.IPhysicalColumn;
 import org.pentaho.metadata.model.LogicalColumn;
 import org.pentaho.metadata.model.LogicalModel;
@@ -36,14 +42,21 @@ import org.pentaho.metadata.model.LogicalRelationship;
 import org.pentaho.metadata.model.LogicalTable;
 import org.pentaho.metadata.model.SqlPhysicalColumn;
 import org.pentaho.metadata.model.SqlPhysicalTable;
+import org.pentaho.metadata.model.aggregate.AggregateTable;
 import org.pentaho.metadata.model.concept.types.AggregationType;
 import org.pentaho.metadata.model.concept.types.DataType;
 import org.pentaho.metadata.model.concept.types.RelationshipType;
 import org.pentaho.metadata.model.concept.types.TargetColumnType;
 import org.pentaho.metadata.model.concept.types.TargetTableType;
+import org.pentaho.metadata.model.snapshot.DomainSnapshot;
+import org.pentaho.metadata.query.impl.sql.JoinPathEngine;
+import org.pentaho.metadata.query.impl.sql.LogicalModelMetadataIndex;
 import org.pentaho.metadata.query.impl.sql.MappedQuery;
 import org.pentaho.metadata.query.impl.sql.Path;
+import org.pentaho.metadata.query.impl.sql.SqlGenerationHistogram;
+import org.pentaho.metadata.query.impl.sql.SqlGenerationPhase;
 import org.pentaho.metadata.query.impl.sql.SqlGenerator;
+import org.pentaho.metadata.query.impl.sql.SqlGeneratorOptions;
 import org.pentaho.metadata.query.model.CombinationType;
 import org.pentaho.metadata.query.model.Constraint;
 import org.pentaho.metadata.query.model.Order;
@@ -554,6 +567,33 @@ public class SqlGeneratorIT {
     }
   }
 
+  @Test
+  public void testSnapshotRoundTrip() throws Exception {
+    LogicalModel model = TestHelper.buildDefaultModel();
+    model.setId( "MODEL" );
+    Domain domain = new Domain();
+    domain.setId( "DOMAIN" );
+    domain.addLogicalModel( model );
+    LogicalModel copy = DomainSnapshot.of( domain ).toDomain().findLogicalModel( "MODEL" );
+    Assert.assertSame( copy.findLogicalTable( "bt1" ), copy.getLogicalRelationships().get( 0 ).getFromTable() );
+    Assert.assertSame( copy.findLogicalColumn( "bc2" ), copy.getLogicalRelationships().get( 0 ).getToColumn() );
+
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "ORACLE", "Native", "", "", "", "", "" );
+    SqlGenerator generator = new SqlGenerator();
+    String[] columnIds = { "bc1", "bc3", "bc5" };
+    Query query = new Query( null, model );
+    Query copyQuery = new Query( null, copy );
+    for ( String columnId : columnIds ) {
+      query.getSelections().add( new Selection( null, model.findLogicalColumn( columnId ), null ) );
+      copyQuery.getSelections().add( new Selection( null, copy.findLogicalColumn( columnId ), null ) );
+    }
+
+    // the copy joins its own tables the same way as the original model
+    String sql = generator.generateSql( query, "en_US", null, databaseMeta ).getQuery();
+    Assert.assertTrue( sql.contains( "bt4.pc4 = bt5.pc5" ) );
+    Assert.assertEquals( sql, generator.generateSql( copyQuery, "en_US", null, databaseMeta ).getQuery() );
+  }
+
   @Test
   public void testOrderByQuotedSQLGeneration() {
     try {
@@ -4323,6 +4363,202 @@ public class SqlGeneratorIT {
     TestHelper.assertEqualsIgnoreWhitespaces( "SELECT TOP 10 DISTINCT bt1.pc1 AS COL0 FROM pt1 bt1", mquery.getQuery() );
   }
 
+  @Test
+  public void testKeysetQuery() throws Exception {
+    LogicalModel model = TestHelper.buildDefaultModel();
+    LogicalColumn bc1 = model.findLogicalColumn( "bc1" );
+    LogicalColumn bc2 = model.findLogicalColumn( "bc2" );
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "HYPERSONIC", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    Query query = new Query( null, model );
+    query.setLimit( 10 );
+    query.getSelections().add( new Selection( null, bc1, null ) );
+    query.getOrders().add( new Order( new Selection( null, bc1, null ), Type.ASC ) );
+    query.getKeyset().add( 5 );
+
+    SqlGenerator generator = new SqlGenerator();
+    MappedQuery mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT TOP 10 DISTINCT bt1.pc1 AS COL0 FROM pt1 bt1 "
+        + "WHERE ( ( ( bt1.pc1 > 5 ) ) ) ORDER BY COL0", mquery.getQuery() );
+
+    // the seek predicate follows the direction of each order
+    query.getSelections().add( new Selection( null, bc2, null ) );
+    query.getOrders().add( new Order( new Selection( null, bc2, null ), Type.DESC ) );
+    query.getKeyset().add( "x'y" );
+    mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT TOP 10 DISTINCT bt1.pc1 AS COL0 ,bt2.pc2 AS COL1 "
+        + "FROM pt1 bt1 ,pt2 bt2 WHERE ( bt1.pc1 = bt2.pc2 ) "
+        + "AND ( ( ( bt1.pc1 > 5 ) OR ( bt1.pc1 = 5 AND bt2.pc2 < 'x''y' ) ) ) ORDER BY COL0 ,COL1 DESC",
+        mquery.getQuery() );
+
+    // prepared statements bind the keyset values with the parameters
+    query.getKeyset().set( 1, Boolean.TRUE );
+    mquery = generator.generateSql( query, "en_US", null, databaseMeta, null, true );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT TOP 10 DISTINCT bt1.pc1 AS COL0 ,bt2.pc2 AS COL1 "
+        + "FROM pt1 bt1 ,pt2 bt2 WHERE ( bt1.pc1 = bt2.pc2 ) "
+        + "AND ( ( ( bt1.pc1 > ? ) OR ( bt1.pc1 = ? AND bt2.pc2 < ? ) ) ) ORDER BY COL0 ,COL1 DESC",
+        mquery.getQuery() );
+    Assert.assertEquals( Arrays.<Object>asList( 5, 5, Boolean.TRUE ), mquery.getBindValues( null ) );
+
+    // boolean literals are not portable
+    try {
+      generator.generateSql( query, "en_US", null, databaseMeta );
+      Assert.fail();
+    } catch ( PentahoMetadataException e ) {
+      // expected
+    }
+
+    // one value per order
+    query.getKeyset().remove( 1 );
+    try {
+      generator.generateSql( query, "en_US", null, databaseMeta );
+      Assert.fail();
+    } catch ( PentahoMetadataException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testAggregateKeysetQuery() throws Exception {
+    LogicalModel model = TestHelper.buildDefaultModel();
+    LogicalColumn bc1 = model.findLogicalColumn( "bc1" );
+    bc1.setProperty( IPhysicalColumn.AGGREGATIONTYPE_PROPERTY, AggregationType.SUM );
+    LogicalColumn bc2 = model.findLogicalColumn( "bc2" );
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "HYPERSONIC", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    Query query = new Query( null, model );
+    query.getSelections().add( new Selection( null, bc1, null ) );
+    query.getSelections().add( new Selection( null, bc2, null ) );
+    query.getOrders().add( new Order( new Selection( null, bc1, null ), Type.DESC ) );
+    query.getKeyset().add( 100 );
+
+    MappedQuery mquery = new SqlGenerator().generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT SUM(bt1.pc1) AS COL0 ,bt2.pc2 AS COL1 FROM pt1 bt1 ,pt2 bt2 "
+        + "WHERE ( bt1.pc1 = bt2.pc2 ) GROUP BY bt2.pc2 HAVING ( ( ( SUM(bt1.pc1) < 100 ) ) ) ORDER BY COL0 DESC",
+        mquery.getQuery() );
+  }
+
+  @Test
+  public void testOffsetQuery() throws Exception {
+    LogicalModel model = TestHelper.buildDefaultModel();
+    LogicalColumn bc1 = model.findLogicalColumn( "bc1" );
+    Query query = new Query( null, model );
+    query.setLimit( 10 );
+    query.setOffset( 20 );
+    query.getSelections().add( new Selection( null, bc1, null ) );
+    query.getOrders().add( new Order( new Selection( null, bc1, null ), Type.ASC ) );
+
+    SqlGenerator generator = new SqlGenerator();
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "HYPERSONIC", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    MappedQuery mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT DISTINCT bt1.pc1 AS COL0 FROM pt1 bt1 ORDER BY COL0 "
+        + "OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY", mquery.getQuery() );
+
+    databaseMeta = new DatabaseMeta( "", "ORACLE", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT PMS_ROWS.COL0 FROM ( SELECT PMS_PAGE.*, "
+        + "ROW_NUMBER() OVER ( ORDER BY PMS_PAGE.COL0 ) AS PMS_ROW_NUM "
+        + "FROM ( SELECT DISTINCT bt1.pc1 AS COL0 FROM pt1 bt1 ) PMS_PAGE ) PMS_ROWS "
+        + "WHERE PMS_ROW_NUM > 20 AND PMS_ROW_NUM <= 30 ORDER BY PMS_ROW_NUM", mquery.getQuery() );
+  }
+
+  @Test
+  public void testPreviewQuery() throws Exception {
+    LogicalModel model = TestHelper.buildDefaultModel();
+    model.findLogicalTable( "bt2" ).setProperty( SqlPhysicalTable.RELATIVE_SIZE, 100 );
+    LogicalColumn bc1 = model.findLogicalColumn( "bc1" );
+    LogicalColumn bc2 = model.findLogicalColumn( "bc2" );
+    Query query = new Query( null, model );
+    query.setPreview( true );
+    query.setSamplePercentage( 5 );
+    query.getSelections().add( new Selection( null, bc1, null ) );
+    query.getSelections().add( new Selection( null, bc2, null ) );
+
+    SqlGenerator generator = new SqlGenerator();
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "ORACLE", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    MappedQuery mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT DISTINCT bt1.pc1 AS COL0 ,bt2.pc2 AS COL1 FROM pt1 bt1 "
+        + ",( SELECT * FROM pt2 SAMPLE BLOCK ( 5 ) ) bt2 WHERE ( bt1.pc1 = bt2.pc2 )", mquery.getQuery() );
+
+    // no sampling clause, the derived table reads the first rows
+    databaseMeta = new DatabaseMeta( "", "HYPERSONIC", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT DISTINCT bt1.pc1 AS COL0 ,bt2.pc2 AS COL1 FROM pt1 bt1 "
+        + ",( SELECT TOP 10000 * FROM pt2 ) bt2 WHERE ( bt1.pc1 = bt2.pc2 )", mquery.getQuery() );
+
+    // an inline SQL table cannot take a sampling clause, its first rows are read
+    LogicalTable bt2 = model.findLogicalTable( "bt2" );
+    bt2.setProperty( SqlPhysicalTable.TARGET_TABLE, "select * from pt2" );
+    bt2.setProperty( SqlPhysicalTable.TARGET_TABLE_TYPE, TargetTableType.INLINE_SQL );
+    databaseMeta = new DatabaseMeta( "", "ORACLE", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    Assert.assertFalse( mquery.getQuery().contains( "SAMPLE BLOCK" ) );
+    Assert.assertTrue( mquery.getQuery().contains( "(select * from pt2) PMS_SAMPLE" ) );
+    bt2.setProperty( SqlPhysicalTable.TARGET_TABLE, "pt2" );
+    bt2.setProperty( SqlPhysicalTable.TARGET_TABLE_TYPE, TargetTableType.TABLE );
+
+    // without a size hint the fact table is unknown, the query is not sampled
+    bt2.removeChildProperty( SqlPhysicalTable.RELATIVE_SIZE );
+    mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT DISTINCT bt1.pc1 AS COL0 ,bt2.pc2 AS COL1 FROM pt1 bt1 "
+        + ",pt2 bt2 WHERE ( bt1.pc1 = bt2.pc2 )", mquery.getQuery() );
+    bt2.setProperty( SqlPhysicalTable.RELATIVE_SIZE, 100 );
+    databaseMeta = new DatabaseMeta( "", "HYPERSONIC", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+
+    query.setPreview( false );
+    mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT DISTINCT bt1.pc1 AS COL0 ,bt2.pc2 AS COL1 FROM pt1 bt1 "
+        + ",pt2 bt2 WHERE ( bt1.pc1 = bt2.pc2 )", mquery.getQuery() );
+  }
+
+  @Test( expected = PentahoMetadataException.class )
+  public void testPreviewQueryInvalidPercentage() throws Exception {
+    LogicalModel model = TestHelper.buildDefaultModel();
+    Query query = new Query( null, model );
+    query.setPreview( true );
+    query.setSamplePercentage( 150 );
+    query.getSelections().add( new Selection( null, model.findLogicalColumn( "bc1" ), null ) );
+
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "ORACLE", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    new SqlGenerator().generateSql( query, "en_US", null, databaseMeta );
+  }
+
+  @Test
+  public void testPartitionPredicate() throws Exception {
+    LogicalModel model = TestHelper.buildDefaultModel();
+    LogicalTable bt1 = model.findLogicalTable( "bt1" );
+    bt1.setProperty( SqlPhysicalTable.PARTITION_COLUMN, "dt" );
+    bt1.setProperty( SqlPhysicalTable.PARTITION_SOURCE_COLUMN, "bc1" );
+    LogicalColumn bc1 = model.findLogicalColumn( "bc1" );
+    Query query = new Query( null, model );
+    query.getSelections().add( new Selection( null, bc1, null ) );
+    query.getConstraints().add( new Constraint( CombinationType.AND, "[bt1.bc1] >= DATEVALUE(\"2019-01-01\")" ) );
+
+    SqlGenerator generator = new SqlGenerator();
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "ORACLE", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    MappedQuery mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT DISTINCT bt1.pc1 AS COL0 FROM pt1 bt1 WHERE ( "
+        + "( bt1.pc1 >= TO_DATE('2019-01-01','YYYY-MM-DD') ) "
+        + "AND ( bt1.dt >= CAST( TO_DATE('2019-01-01','YYYY-MM-DD') AS DATE ) ) )", mquery.getQuery() );
+
+    // ranges, with the bound first or strict
+    query.getConstraints().clear();
+    query.getConstraints().add( new Constraint( CombinationType.AND,
+        "AND(DATEVALUE(\"2019-01-01\") < [bt1.bc1]; [bt1.bc1] < DATEVALUE(\"2019-02-01\"))" ) );
+    mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    assertTrue( mquery.getQuery().contains( "bt1.dt >= CAST( TO_DATE('2019-01-01','YYYY-MM-DD') AS DATE )" ) );
+    assertTrue( mquery.getQuery().contains( "bt1.dt <= CAST( TO_DATE('2019-02-01','YYYY-MM-DD') AS DATE )" ) );
+
+    // a constraint combined with OR may keep rows outside the range
+    query.getConstraints().add( new Constraint( CombinationType.OR, "[bt1.bc1] = 1" ) );
+    mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    assertFalse( mquery.getQuery().contains( "bt1.dt" ) );
+
+    // constraints on other columns
+    query.getConstraints().clear();
+    query.getConstraints().add( new Constraint( CombinationType.AND, "[bt2.bc2] >= DATEVALUE(\"2019-01-01\")" ) );
+    mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    assertFalse( mquery.getQuery().contains( "bt1.dt" ) );
+  }
+
   public static class TestPreSqlGenerator extends SqlGenerator {
 
     @Override
@@ -4513,4 +4749,495 @@ public class SqlGeneratorIT {
 
   }
 
+  @Test
+  public void testGenerateSqlBatch() throws Exception {
+    LogicalModel model = TestHelper.buildDefaultModel();
+    LogicalColumn bc1 = model.findLogicalColumn( "bc1" );
+    LogicalColumn bc2 = model.findLogicalColumn( "bc2" );
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "HYPERSONIC", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+
+    Query query1 = new Query( null, model );
+    query1.getSelections().add( new Selection( null, bc1, null ) );
+    Query query2 = new Query( null, model );
+    query2.getSelections().add( new Selection( null, bc1, null ) );
+    query2.getSelections().add( new Selection( null, bc2, null ) );
+    Query query3 = new Query( null, model );
+    query3.getSelections().add( new Selection( null, bc1, null ) );
+
+    List<Query> queries = new ArrayList<Query>();
+    queries.add( query1 );
+    queries.add( query2 );
+    queries.add( query3 );
+
+    SqlGenerator generator = new SqlGenerator();
+    assertBatch( generator, queries, generator.generateSqlBatch( queries, "en_US", null, databaseMeta, null ),
+        databaseMeta );
+
+    ExecutorService executor = Executors.newFixedThreadPool( 2 );
+    try {
+      assertBatch( generator, queries, generator.generateSqlBatch( queries, "en_US", null, databaseMeta, null,
+          false, executor ), databaseMeta );
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void assertBatch( SqlGenerator generator, List<Query> queries, List<MappedQuery> batch,
+      DatabaseMeta databaseMeta ) throws Exception {
+    Assert.assertEquals( queries.size(), batch.size() );
+    for ( int i = 0; i < queries.size(); i++ ) {
+      Assert.assertEquals( generator.generateSql( queries.get( i ), "en_US", null, databaseMeta ).getQuery(),
+          batch.get( i ).getQuery() );
+    }
+    // identical queries are only generated once, but each gets its own mapped query
+    Assert.assertNotSame( batch.get( 0 ), batch.get( 2 ) );
+    Assert.assertEquals( batch.get( 0 ).getMap(), batch.get( 2 ).getMap() );
+    Assert.assertNotSame( batch.get( 0 ).getMap(), batch.get( 2 ).getMap() );
+    Assert.assertEquals( batch.get( 0 ).getParamList(), batch.get( 2 ).getParamList() );
+  }
+
+  @Test
+  public void testSqlGenerationListener() throws Exception {
+    LogicalModel model = TestHelper.buildDefaultModel();
+    model.setId( "model" );
+    LogicalColumn bc1 = model.findLogicalColumn( "bc1" );
+    LogicalColumn bc4 = model.findLogicalColumn( "bc4" );
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "HYPERSONIC", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+
+    Query query = new Query( null, model );
+    query.getSelections().add( new Selection( null, bc1, null ) );
+    query.getSelections().add( new Selection( null, bc4, null ) );
+
+    SqlGenerationHistogram histogram = new SqlGenerationHistogram();
+    SqlGenerator generator = new SqlGenerator();
+    generator.setSqlGenerationListener( histogram );
+    MappedQuery mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+
+    Assert.assertEquals( 1, histogram.getTotalHistogram( "model" ).getCount() );
+    Assert.assertEquals( mquery.getQuery().length(), histogram.getSqlLengthHistogram( "model" ).getMax() );
+    Assert.assertTrue( histogram.getPathNodeVisitHistogram( "model" ).getMax() > 0 );
+    Assert.assertTrue( histogram.getPathArcVisitHistogram( "model" ).getMax() > 0 );
+    Assert.assertTrue( histogram.getPhaseHistogram( "model", SqlGenerationPhase.DIALECT_RENDERING ).getMax() > 0 );
+
+    generator.setSqlGenerationListener( null );
+    generator.generateSql( query, "en_US", null, databaseMeta );
+    Assert.assertEquals( 1, histogram.getTotalHistogram( null ).getCount() );
+  }
+
+  @Test
+  public void testLogicalModelMetadataIndex() throws Exception {
+    LogicalModel model = TestHelper.buildDefaultModel();
+    LogicalColumn bc1 = model.findLogicalColumn( "bc1" );
+    bc1.setAggregationType( AggregationType.SUM );
+    LogicalTable bt2 = model.findLogicalTable( "bt2" );
+    LogicalColumn bce = new LogicalColumn();
+    bce.setId( "bce" ); //$NON-NLS-1$
+    bce.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.OPEN_FORMULA );
+    bce.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "[bt1.bc1.SUM] * [bt2.bc2]" ); //$NON-NLS-1$
+    bce.setLogicalTable( bt2 );
+    bt2.addLogicalColumn( bce );
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "HYPERSONIC", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    Map<String, Object> parameters = new HashMap<String, Object>();
+
+    LogicalModelMetadataIndex index = LogicalModelMetadataIndex.forModel( model );
+    LogicalModelMetadataIndex.ColumnMetadata metadata =
+        index.getColumnMetadata( bce, databaseMeta, parameters, false, "en_US" );
+    Assert.assertTrue( metadata.hasAggregatedColumns() );
+    Assert.assertEquals( 2, metadata.getReferencedTables().size() );
+    Assert.assertTrue( metadata.getReferencedTables().contains( model.findLogicalTable( "bt1" ) ) );
+    Assert.assertEquals( metadata.getReferencedTables(), LogicalModelMetadataIndex.forModel( model )
+        .getColumnMetadata( bce, databaseMeta, parameters, false, "en_US" ).getReferencedTables() );
+
+    // a formula is parsed again when a column it uses changes its aggregation
+    bc1.setAggregationType( AggregationType.NONE );
+    metadata = index.getColumnMetadata( bce, databaseMeta, parameters, false, "en_US" );
+    Assert.assertFalse( metadata.hasAggregatedColumns() );
+    bc1.setAggregationType( AggregationType.SUM );
+    Assert.assertTrue( index.getColumnMetadata( bce, databaseMeta, parameters, false, "en_US" )
+        .hasAggregatedColumns() );
+
+    // a changed formula is parsed again
+    bce.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "[bt2.bc2] * 2" ); //$NON-NLS-1$
+    metadata = index.getColumnMetadata( bce, databaseMeta, parameters, false, "en_US" );
+    Assert.assertFalse( metadata.hasAggregatedColumns() );
+    Assert.assertEquals( 1, metadata.getReferencedTables().size() );
+
+    // the entries locate the tables by position, moving them parses the formula again
+    bce.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "[bt1.bc1.SUM] * [bt2.bc2]" ); //$NON-NLS-1$
+    index.getColumnMetadata( bce, databaseMeta, parameters, false, "en_US" );
+    LogicalTable bt0 = new LogicalTable();
+    bt0.setId( "bt0" ); //$NON-NLS-1$
+    model.getLogicalTables().add( 0, bt0 );
+    metadata = index.getColumnMetadata( bce, databaseMeta, parameters, false, "en_US" );
+    Assert.assertEquals( 2, metadata.getReferencedTables().size() );
+    Assert.assertTrue( metadata.getReferencedTables().contains( model.findLogicalTable( "bt1" ) ) );
+    Assert.assertFalse( metadata.getReferencedTables().contains( bt0 ) );
+
+    // non formula columns only reference their own table
+    metadata = index.getColumnMetadata( bc1, databaseMeta, parameters, false, "en_US" );
+    Assert.assertNull( metadata.getFormula() );
+    Assert.assertFalse( metadata.hasAggregatedColumns() );
+    Assert.assertEquals( model.findLogicalTable( "bt1" ), metadata.getReferencedTables().get( 0 ) );
+  }
+
+  @Test
+  public void testPruneDimensionJoins() throws Exception {
+    final LogicalModel model = new LogicalModel();
+    model.setId( "model_01" );
+    Category mainCat = new Category();
+    mainCat.setId( "cat_01" );
+    model.getCategories().add( mainCat );
+
+    final LogicalTable bt1 = new LogicalTable();
+    bt1.setId( "bt1" ); //$NON-NLS-1$
+    bt1.setProperty( SqlPhysicalTable.TARGET_TABLE, "pt1" ); //$NON-NLS-1$
+    final LogicalColumn bc1 = new LogicalColumn();
+    bc1.setId( "bc1" ); //$NON-NLS-1$
+    bc1.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "pc1" ); //$NON-NLS-1$
+    bc1.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    bc1.setLogicalTable( bt1 );
+    bt1.addLogicalColumn( bc1 );
+    mainCat.addLogicalColumn( bc1 );
+    final LogicalColumn bcName = new LogicalColumn();
+    bcName.setId( "bc_name" ); //$NON-NLS-1$
+    bcName.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "name" ); //$NON-NLS-1$
+    bcName.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    bcName.setLogicalTable( bt1 );
+    bt1.addLogicalColumn( bcName );
+    mainCat.addLogicalColumn( bcName );
+
+    final LogicalTable bt2 = new LogicalTable();
+    bt2.setId( "bt2" ); //$NON-NLS-1$
+    bt2.setProperty( SqlPhysicalTable.TARGET_TABLE, "pt2" ); //$NON-NLS-1$
+    final LogicalColumn bc2 = new LogicalColumn();
+    bc2.setId( "bc2" ); //$NON-NLS-1$
+    bc2.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "pc2" ); //$NON-NLS-1$
+    bc2.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    bc2.setLogicalTable( bt2 );
+    bt2.addLogicalColumn( bc2 );
+    mainCat.addLogicalColumn( bc2 );
+    final LogicalColumn bc3 = new LogicalColumn();
+    bc3.setId( "bc3" ); //$NON-NLS-1$
+    bc3.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "pc3" ); //$NON-NLS-1$
+    bc3.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    bc3.setAggregationType( AggregationType.SUM );
+    bc3.setLogicalTable( bt2 );
+    bt2.addLogicalColumn( bc3 );
+    mainCat.addLogicalColumn( bc3 );
+
+    final LogicalRelationship rl1 = new LogicalRelationship();
+    rl1.setRelationshipType( RelationshipType._1_N );
+    rl1.setFromTable( bt1 );
+    rl1.setFromColumn( bc1 );
+    rl1.setToTable( bt2 );
+    rl1.setToColumn( bc2 );
+    model.getLogicalRelationships().add( rl1 );
+    model.setProperty( "prune_dimension_joins", Boolean.TRUE ); //$NON-NLS-1$
+
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "ORACLE", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    Query myTest = new Query( null, model );
+    myTest.getSelections().add( new Selection( null, bc1, null ) );
+    myTest.getSelections().add( new Selection( null, bc3, null ) );
+    myTest.getConstraints().add( new Constraint( CombinationType.AND, "[bt1.bc1] > 25" ) ); //$NON-NLS-1$
+
+    // the join is kept without referential integrity
+    SqlGenerator generator = new SqlGenerator();
+    MappedQuery query = generator.generateSql( myTest, "en_US", null, databaseMeta );
+    Assert.assertTrue( query.getQuery().contains( "pt1 bt1" ) ); //$NON-NLS-1$
+
+    rl1.setReferentialIntegrity( true );
+    query = generator.generateSql( myTest, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces(
+        "SELECT bt2.pc2 AS COL0 ,SUM(bt2.pc3) AS COL1 FROM pt2 bt2 " //$NON-NLS-1$
+            + "WHERE ( bt2.pc2 IS NOT NULL ) AND ( ( bt2.pc2 > 25 ) ) GROUP BY bt2.pc2", //$NON-NLS-1$
+        query.getQuery() );
+
+    // the join is kept when another column of the dimension is used
+    myTest.getSelections().add( new Selection( null, bcName, null ) );
+    query = generator.generateSql( myTest, "en_US", null, databaseMeta );
+    Assert.assertTrue( query.getQuery().contains( "pt1 bt1" ) ); //$NON-NLS-1$
+  }
+
+  @Test
+  public void testAggregateTableRouting() throws Exception {
+    final LogicalModel model = new LogicalModel();
+    model.setId( "model_01" );
+    Category mainCat = new Category();
+    mainCat.setId( "cat_01" );
+    model.getCategories().add( mainCat );
+
+    final LogicalTable bt1 = new LogicalTable();
+    bt1.setId( "bt1" ); //$NON-NLS-1$
+    bt1.setProperty( SqlPhysicalTable.TARGET_TABLE, "pt1" ); //$NON-NLS-1$
+    final LogicalColumn bc1 = new LogicalColumn();
+    bc1.setId( "bc1" ); //$NON-NLS-1$
+    bc1.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "pc1" ); //$NON-NLS-1$
+    bc1.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    bc1.setLogicalTable( bt1 );
+    bt1.addLogicalColumn( bc1 );
+    mainCat.addLogicalColumn( bc1 );
+    final LogicalColumn bcName = new LogicalColumn();
+    bcName.setId( "bc_name" ); //$NON-NLS-1$
+    bcName.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "name" ); //$NON-NLS-1$
+    bcName.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    bcName.setLogicalTable( bt1 );
+    bt1.addLogicalColumn( bcName );
+    mainCat.addLogicalColumn( bcName );
+
+    final LogicalTable bt2 = new LogicalTable();
+    bt2.setId( "bt2" ); //$NON-NLS-1$
+    bt2.setProperty( SqlPhysicalTable.TARGET_TABLE, "pt2" ); //$NON-NLS-1$
+    final LogicalColumn bc2 = new LogicalColumn();
+    bc2.setId( "bc2" ); //$NON-NLS-1$
+    bc2.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "pc2" ); //$NON-NLS-1$
+    bc2.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    bc2.setLogicalTable( bt2 );
+    bt2.addLogicalColumn( bc2 );
+    mainCat.addLogicalColumn( bc2 );
+    final LogicalColumn bc3 = new LogicalColumn();
+    bc3.setId( "bc3" ); //$NON-NLS-1$
+    bc3.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "pc3" ); //$NON-NLS-1$
+    bc3.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    bc3.setAggregationType( AggregationType.SUM );
+    bc3.setLogicalTable( bt2 );
+    bt2.addLogicalColumn( bc3 );
+    mainCat.addLogicalColumn( bc3 );
+
+    final LogicalRelationship rl1 = new LogicalRelationship();
+    rl1.setRelationshipType( RelationshipType._1_N );
+    rl1.setFromTable( bt1 );
+    rl1.setFromColumn( bc1 );
+    rl1.setToTable( bt2 );
+    rl1.setToColumn( bc2 );
+    model.getLogicalRelationships().add( rl1 );
+
+    AggregateTable byName = new AggregateTable( "agg_name", null, "agg_sales_by_name", 100 ); //$NON-NLS-1$ //$NON-NLS-2$
+    byName.addGroupingColumn( bcName, "name" ); //$NON-NLS-1$
+    byName.addMeasure( bc3, "pc3_sum", AggregationType.SUM ); //$NON-NLS-1$
+    List<AggregateTable> aggregateTables = new ArrayList<AggregateTable>();
+    aggregateTables.add( byName );
+    model.setProperty( LogicalModel.PROPERTY_AGGREGATE_TABLES, aggregateTables );
+
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "ORACLE", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    Query myTest = new Query( null, model );
+    myTest.getSelections().add( new Selection( null, bcName, null ) );
+    myTest.getSelections().add( new Selection( null, bc3, null ) );
+    myTest.getConstraints().add( new Constraint( CombinationType.AND, "[bt1.bc_name] = \"A\"" ) ); //$NON-NLS-1$
+
+    SqlGenerator generator = new SqlGenerator();
+    MappedQuery query = generator.generateSql( myTest, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces(
+        "SELECT agg_name.name AS COL0 ,SUM(agg_name.pc3_sum) AS COL1 FROM agg_sales_by_name agg_name " //$NON-NLS-1$
+            + "WHERE ( ( agg_name.name = 'A' ) ) GROUP BY agg_name.name", //$NON-NLS-1$
+        query.getQuery() );
+
+    // a column missing from the aggregate table sends the query back to the base tables
+    myTest.getSelections().add( new Selection( null, bc1, null ) );
+    query = generator.generateSql( myTest, "en_US", null, databaseMeta );
+    Assert.assertTrue( query.getQuery().contains( "pt2 bt2" ) ); //$NON-NLS-1$
+    Assert.assertFalse( query.getQuery().contains( "agg_sales_by_name" ) ); //$NON-NLS-1$
+  }
+
+  @Test
+  public void testClassicPathSearchOnLargeModel() {
+    final LogicalModel model = new LogicalModel();
+    model.setId( "model_01" ); //$NON-NLS-1$
+    model.setProperty( "path_build_method", "CLASSIC" ); //$NON-NLS-1$ //$NON-NLS-2$
+    List<LogicalTable> chain = new ArrayList<LogicalTable>();
+    for ( int i = 0; i < 40; i++ ) {
+      LogicalTable table = new LogicalTable();
+      table.setId( "bt" + i ); //$NON-NLS-1$
+      table.setProperty( SqlPhysicalTable.TARGET_TABLE, "pt" + i ); //$NON-NLS-1$
+      model.getLogicalTables().add( table );
+      if ( i > 0 ) {
+        LogicalRelationship relationship = new LogicalRelationship();
+        relationship.setFromTable( chain.get( i - 1 ) );
+        relationship.setToTable( table );
+        model.getLogicalRelationships().add( relationship );
+      }
+      chain.add( table );
+    }
+    // closes the chain into a ring, the shortest way from bt0 to bt39
+    final LogicalRelationship shortcut = new LogicalRelationship();
+    shortcut.setFromTable( chain.get( 0 ) );
+    shortcut.setToTable( chain.get( 39 ) );
+    model.getLogicalRelationships().add( shortcut );
+
+    TestSqlGenerator sqlGenerator = new TestSqlGenerator();
+    List<LogicalTable> tbls = new ArrayList<LogicalTable>();
+    tbls.add( chain.get( 0 ) );
+    tbls.add( chain.get( 20 ) );
+    tbls.add( chain.get( 39 ) );
+    Path path = sqlGenerator.getShortestPathBetween( model, tbls );
+    Assert.assertEquals( 20, path.size() );
+    Assert.assertTrue( path.contains( shortcut ) );
+    for ( int i = 21; i < 39; i++ ) {
+      Assert.assertTrue( path.contains( chain.get( i ) ) );
+    }
+
+    // the second lookup is answered from the cached path, as a new instance
+    Path cached = sqlGenerator.getShortestPathBetween( model, tbls );
+    Assert.assertNotSame( path, cached );
+    Assert.assertEquals( path.size(), cached.size() );
+    for ( int i = 0; i < path.size(); i++ ) {
+      Assert.assertSame( path.getRelationship( i ), cached.getRelationship( i ) );
+    }
+  }
+
+  @Test
+  public void testSharedFormulaColumns() throws Exception {
+    LogicalModel model = TestHelper.buildDefaultModel();
+    model.setProperty( "share_formula_columns", Boolean.TRUE );
+    LogicalColumn bc1 = model.findLogicalColumn( "bc1" );
+    LogicalColumn bce2 = model.findLogicalColumn( "bce2" );
+    Query query = new Query( null, model );
+    query.getSelections().add( new Selection( null, bc1, AggregationType.SUM ) );
+    query.getSelections().add( new Selection( null, bce2, null ) );
+    query.getConstraints().add( new Constraint( CombinationType.AND, "[bt2.bce2] > 5" ) ); //$NON-NLS-1$
+    query.getOrders().add( new Order( new Selection( null, bce2, null ), Type.ASC ) );
+
+    // the formula is computed once in a common table replacing bt2
+    SqlGenerator generator = new SqlGenerator();
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "ORACLE", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    MappedQuery mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "WITH PMS_CTE0 AS ( SELECT bt2.* ,bt2.pc2 * 2 AS PMS_F0 FROM pt2 bt2 ) "
+        + "SELECT SUM(bt1.pc1) AS COL0 ,bt2.PMS_F0 AS COL1 FROM pt1 bt1 ,PMS_CTE0 bt2 "
+        + "WHERE ( bt1.pc1 = bt2.pc2 ) AND ( ( bt2.PMS_F0 > 5 ) ) GROUP BY bt2.PMS_F0 ORDER BY COL1",
+        mquery.getQuery() );
+
+    // without common tables, in a derived table
+    databaseMeta = new DatabaseMeta( "", "HYPERSONIC", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT SUM(bt1.pc1) AS COL0 ,bt2.PMS_F0 AS COL1 FROM pt1 bt1 "
+        + ",( SELECT bt2.* ,bt2.pc2 * 2 AS PMS_F0 FROM pt2 bt2 ) bt2 "
+        + "WHERE ( bt1.pc1 = bt2.pc2 ) AND ( ( bt2.PMS_F0 > 5 ) ) GROUP BY bt2.PMS_F0 ORDER BY COL1",
+        mquery.getQuery() );
+
+    // a formula column used once stays inline
+    query.getConstraints().clear();
+    query.getOrders().clear();
+    query.getSelections().set( 0, new Selection( null, bc1, null ) );
+    mquery = generator.generateSql( query, "en_US", null, databaseMeta );
+    TestHelper.assertEqualsIgnoreWhitespaces( "SELECT DISTINCT bt1.pc1 AS COL0 ,bt2.pc2 * 2 AS COL1 FROM pt1 bt1 "
+        + ",pt2 bt2 WHERE ( bt1.pc1 = bt2.pc2 )", mquery.getQuery() );
+  }
+
+  @Test
+  public void testGeneratorOptions() throws Exception {
+    SqlGenerator generator = new SqlGenerator();
+    Assert.assertSame( SqlGeneratorOptions.DEFAULT, generator.getOptions() );
+    Assert.assertFalse( generator.getOptions().isPreferClassicShortestPath() );
+
+    SqlGeneratorOptions classic = SqlGeneratorOptions.DEFAULT.withPreferClassicShortestPath( true );
+    Assert.assertTrue( classic.isPreferClassicShortestPath() );
+    Assert.assertFalse( SqlGeneratorOptions.DEFAULT.isPreferClassicShortestPath() );
+    Assert.assertSame( classic, classic.withPreferClassicShortestPath( true ) );
+    Assert.assertEquals( SqlGeneratorOptions.DEFAULT, classic.withPreferClassicShortestPath( false ) );
+    Assert.assertSame( classic, new SqlGenerator( classic ).getOptions() );
+  }
+
+  @SuppressWarnings( "deprecation" )
+  @Test
+  public void testDeprecatedPreferClassicShortestPath() throws Exception {
+    LogicalModel model = TestHelper.buildDefaultModel();
+    Query query = new Query( null, model );
+    query.getSelections().add( new Selection( null, model.findLogicalColumn( "bc1" ), null ) );
+    query.getSelections().add( new Selection( null, model.findLogicalColumn( "bc2" ), null ) );
+    DatabaseMeta databaseMeta = new DatabaseMeta( "", "ORACLE", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+
+    SqlGenerator generator = new SqlGenerator();
+    Assert.assertFalse( generator.preferClassicShortestPath );
+    generator.preferClassicShortestPath = true;
+    Assert.assertEquals( new SqlGenerator( SqlGeneratorOptions.DEFAULT.withPreferClassicShortestPath( true ) )
+        .generateSql( query, "en_US", null, databaseMeta ).getQuery(), generator.generateSql( query, "en_US", null,
+            databaseMeta ).getQuery() );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testGeneratorNullOptions() {
+    new SqlGenerator( null );
+  }
+
+  @Test
+  public void testConcurrentGeneration() throws Exception {
+    final String[] databaseTypes =
+      { "GENERIC", "ORACLE", "MSSQL", "MSSQLNATIVE", "DB2", "POSTGRESQL", "MYSQL", "MARIADB", "HYPERSONIC", "H2",
+        "REDSHIFT", "GOOGLEBIGQUERY" };
+    final LogicalModel model = TestHelper.buildDefaultModel();
+    LogicalColumn bc1 = model.findLogicalColumn( "bc1" );
+    LogicalColumn bc2 = model.findLogicalColumn( "bc2" );
+    LogicalColumn bc3 = model.findLogicalColumn( "bc3" );
+    LogicalColumn bc4 = model.findLogicalColumn( "bc4" );
+    LogicalColumn bce2 = model.findLogicalColumn( "bce2" );
+
+    final List<Query> queries = new ArrayList<Query>();
+    Query query = new Query( null, model );
+    query.getSelections().add( new Selection( null, bc1, null ) );
+    query.getSelections().add( new Selection( null, bc2, null ) );
+    queries.add( query );
+    query = new Query( null, model );
+    query.getSelections().add( new Selection( null, bc1, null ) );
+    query.getSelections().add( new Selection( null, bc4, null ) );
+    query.getConstraints().add( new Constraint( CombinationType.AND, "[bt1.bc1] > 25" ) ); //$NON-NLS-1$
+    query.getOrders().add( new Order( new Selection( null, bc4, null ), Type.DESC ) );
+    query.setLimit( 10 );
+    queries.add( query );
+    query = new Query( null, model );
+    query.getSelections().add( new Selection( null, bc3, null ) );
+    query.getSelections().add( new Selection( null, bce2, null ) );
+    query.getConstraints().add( new Constraint( CombinationType.AND, "[bt2.bce2] < 5" ) ); //$NON-NLS-1$
+    queries.add( query );
+
+    final SqlGenerator[] generators =
+      { new SqlGenerator(), new SqlGenerator( SqlGeneratorOptions.DEFAULT.withPreferClassicShortestPath( true ) ) };
+    final DatabaseMeta[] databaseMetas = new DatabaseMeta[databaseTypes.length];
+    final String[][][] expected = new String[generators.length][databaseTypes.length][queries.size()];
+    for ( int d = 0; d < databaseTypes.length; d++ ) {
+      databaseMetas[d] = new DatabaseMeta( "", databaseTypes[d], "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+      for ( int g = 0; g < generators.length; g++ ) {
+        for ( int q = 0; q < queries.size(); q++ ) {
+          expected[g][d][q] = generators[g].generateSql( queries.get( q ), "en_US", null, databaseMetas[d] ).getQuery();
+        }
+      }
+    }
+
+    // every thread generates all the queries in its own order, the caches of the model are dropped now and then
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool( threads );
+    try {
+      List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+      for ( int t = 0; t < threads; t++ ) {
+        final int offset = t;
+        tasks.add( new Callable<Integer>() {
+          public Integer call() throws Exception {
+            int mismatches = 0;
+            int count = generators.length * databaseTypes.length * queries.size();
+            for ( int round = 0; round < 20; round++ ) {
+              for ( int i = 0; i < count; i++ ) {
+                int n = ( i * 7 + offset + round ) % count;
+                int g = n % generators.length;
+                int d = ( n / generators.length ) % databaseTypes.length;
+                int q = n / ( generators.length * databaseTypes.length );
+                String sql = generators[g].generateSql( queries.get( q ), "en_US", null, databaseMetas[d] ).getQuery();
+                if ( !expected[g][d][q].equals( sql ) ) {
+                  mismatches++;
+                }
+              }
+              if ( round % 5 == offset % 5 ) {
+                JoinPathEngine.invalidate( model );
+                LogicalModelMetadataIndex.invalidate( model );
+              }
+            }
+            return mismatches;
+          }
+        } );
+      }
+      for ( Future<Integer> result : executor.invokeAll( tasks ) ) {
+        Assert.assertEquals( 0, result.get().intValue() );
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
 }
@@ -0,0 +1,319 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.metadata.model.Category;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.SqlDataSource;
+import org.pentaho.metadata.model.SqlDataSource.DataSourceType;
+import org.pentaho.metadata.model.SqlPhysicalColumn;
+import org.pentaho.metadata.model.SqlPhysicalModel;
+import org.pentaho.metadata.model.SqlPhysicalTable;
+import org.pentaho.metadata.model.concept.types.DataType;
+import org.pentaho.metadata.model.concept.types.TargetColumnType;
+import org.pentaho.metadata.query.impl.sql.SqlMetadataQueryExec;
+import org.pentaho.metadata.query.impl.sql.StreamingSqlResultSet;
+import org.pentaho.metadata.query.model.CombinationType;
+import org.pentaho.metadata.query.model.Constraint;
+import org.pentaho.metadata.query.model.Parameter;
+import org.pentaho.metadata.query.model.Query;
+import org.pentaho.metadata.query.model.Selection;
+import org.pentaho.pms.MetadataTestBase;
+
+/**
+ * Streams a table of several million rows out of a disk based HSQLDB database.
+ */
+public class SqlMetadataQueryExecIT {
+
+  private static final int ROWS = 2000000;
+
+  private static final long MAX_HEAP_GROWTH = 32L * 1024 * 1024;
+
+  private static File directory;
+
+  private static JDBCDataSource dataSource;
+
+  private Query query;
+
+  private Parameter maxId;
+
+  @BeforeClass
+  public static void createDatabase() throws Exception {
+    MetadataTestBase.initKettleEnvironment();
+    directory = File.createTempFile( "streaming", "" ); //$NON-NLS-1$ //$NON-NLS-2$
+    directory.delete();
+    directory.mkdirs();
+    dataSource = new JDBCDataSource();
+    // large results are kept on disk rather than in memory by the database as well
+    dataSource.setUrl( "jdbc:hsqldb:file:" + new File( directory, "big" ).getAbsolutePath() //$NON-NLS-1$ //$NON-NLS-2$
+        + ";hsqldb.log_data=false;hsqldb.result_max_memory_rows=10000" ); //$NON-NLS-1$
+    dataSource.setUser( "sa" ); //$NON-NLS-1$
+    dataSource.setPassword( "" ); //$NON-NLS-1$
+    Connection connection = dataSource.getConnection();
+    Statement stmt = connection.createStatement();
+    stmt.execute( "CREATE CACHED TABLE BIG ( ID INTEGER, NAME VARCHAR(20) )" ); //$NON-NLS-1$
+    stmt.close();
+    connection.setAutoCommit( false );
+    PreparedStatement insert = connection.prepareStatement( "INSERT INTO BIG VALUES ( ?, ? )" ); //$NON-NLS-1$
+    for ( int i = 0; i < ROWS; i++ ) {
+      insert.setInt( 1, i );
+      insert.setString( 2, "name " + i ); //$NON-NLS-1$
+      insert.addBatch();
+      if ( i % 10000 == 9999 ) {
+        insert.executeBatch();
+        connection.commit();
+      }
+    }
+    insert.executeBatch();
+    connection.commit();
+    insert.close();
+    connection.close();
+  }
+
+  @AfterClass
+  public static void dropDatabase() throws Exception {
+    Connection connection = dataSource.getConnection();
+    Statement stmt = connection.createStatement();
+    stmt.execute( "SHUTDOWN" ); //$NON-NLS-1$
+    connection.close();
+    for ( File file : directory.listFiles() ) {
+      if ( file.isDirectory() ) {
+        for ( File child : file.listFiles() ) {
+          child.delete();
+        }
+      }
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Before
+  public void createQuery() {
+    SqlDataSource datasource = new SqlDataSource();
+    datasource.setType( DataSourceType.NATIVE );
+    datasource.setDialectType( "HYPERSONIC" ); //$NON-NLS-1$
+    datasource.setDatabaseName( "mem:streaming" ); //$NON-NLS-1$
+    datasource.setUsername( "sa" ); //$NON-NLS-1$
+    SqlPhysicalModel physicalModel = new SqlPhysicalModel();
+    physicalModel.setId( "pm" ); //$NON-NLS-1$
+    physicalModel.setDatasource( datasource );
+
+    LogicalModel model = new LogicalModel();
+    model.setId( "big" ); //$NON-NLS-1$
+    model.setPhysicalModel( physicalModel );
+    Category category = new Category();
+    category.setId( "cat" ); //$NON-NLS-1$
+    model.getCategories().add( category );
+
+    LogicalTable table = new LogicalTable();
+    table.setId( "bt_big" ); //$NON-NLS-1$
+    table.setProperty( SqlPhysicalTable.TARGET_TABLE, "BIG" ); //$NON-NLS-1$
+    model.getLogicalTables().add( table );
+    LogicalColumn idColumn = new LogicalColumn();
+    idColumn.setId( "bc_id" ); //$NON-NLS-1$
+    idColumn.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "ID" ); //$NON-NLS-1$
+    idColumn.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    idColumn.setLogicalTable( table );
+    table.addLogicalColumn( idColumn );
+    category.addLogicalColumn( idColumn );
+    LogicalColumn nameColumn = new LogicalColumn();
+    nameColumn.setId( "bc_name" ); //$NON-NLS-1$
+    nameColumn.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "NAME" ); //$NON-NLS-1$
+    nameColumn.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    nameColumn.setLogicalTable( table );
+    table.addLogicalColumn( nameColumn );
+    category.addLogicalColumn( nameColumn );
+
+    Domain domain = new Domain();
+    domain.setId( "big_domain" ); //$NON-NLS-1$
+    domain.addLogicalModel( model );
+
+    query = new Query( domain, model );
+    maxId = new Parameter( "maxid", DataType.NUMERIC, (double) ROWS ); //$NON-NLS-1$
+    query.getParameters().add( maxId );
+    query.getSelections().add( new Selection( category, idColumn, null ) );
+    query.getSelections().add( new Selection( category, nameColumn, null ) );
+    query.getConstraints().add( new Constraint( CombinationType.AND, "[bt_big.bc_id] < [param:maxid]" ) ); //$NON-NLS-1$
+  }
+
+  @Test
+  public void testStreamsWithoutHeapGrowth() throws Exception {
+    SqlMetadataQueryExec exec = new SqlMetadataQueryExec();
+    exec.setDataSource( dataSource );
+    exec.setFetchSize( 500 );
+    Assert.assertTrue( exec.isLive() );
+
+    long baseline = usedHeap();
+    long maxGrowth = 0;
+    IPentahoResultSet result = exec.executeQuery( query );
+    Assert.assertNotNull( result );
+    Assert.assertFalse( result.isScrollable() );
+    Assert.assertEquals( 2, result.getColumnCount() );
+    long rows = 0;
+    long idSum = 0;
+    for ( Object[] row = result.next(); row != null; row = result.next() ) {
+      idSum += ( (Number) row[0] ).longValue();
+      rows++;
+      if ( rows % 500000 == 0 ) {
+        maxGrowth = Math.max( maxGrowth, usedHeap() - baseline );
+      }
+    }
+    Assert.assertEquals( ROWS, rows );
+    Assert.assertEquals( (long) ROWS * ( ROWS - 1 ) / 2, idSum );
+    Assert.assertTrue( "heap grew by " + maxGrowth + " bytes", maxGrowth < MAX_HEAP_GROWTH ); //$NON-NLS-1$ //$NON-NLS-2$
+    // the statement and connection were released at the end of the result
+    Assert.assertNull( result.next() );
+  }
+
+  @Test
+  public void testMaxRowsAndParameters() throws Exception {
+    SqlMetadataQueryExec exec = new SqlMetadataQueryExec();
+    exec.setDataSource( dataSource );
+    exec.setTimeout( 60 );
+    exec.setMaxRows( 10 );
+    Assert.assertEquals( 10, count( exec.executeQuery( query ) ) );
+
+    exec.setMaxRows( null );
+    exec.setParameter( maxId, 25 );
+    Assert.assertEquals( 25, count( exec.executeQuery( query ) ) );
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    SqlMetadataQueryExec exec = new SqlMetadataQueryExec();
+    exec.setDataSource( dataSource );
+    StreamingSqlResultSet result = exec.executeStreamingQuery( query );
+    for ( int i = 0; i < 1000; i++ ) {
+      Assert.assertNotNull( result.next() );
+    }
+    exec.cancel();
+    Assert.assertTrue( result.isCancelled() );
+    Assert.assertNull( result.next() );
+    Assert.assertEquals( 1000, result.getRowsRead() );
+  }
+
+  @Test
+  public void testCloseReleasesConnection() throws Exception {
+    final List<Connection> connections = new ArrayList<Connection>();
+    DataSource tracking =
+        (DataSource) Proxy.newProxyInstance( getClass().getClassLoader(), new Class<?>[] { DataSource.class },
+            new InvocationHandler() {
+              public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+                try {
+                  Object result = method.invoke( dataSource, args );
+                  if ( result instanceof Connection ) {
+                    connections.add( (Connection) result );
+                  }
+                  return result;
+                } catch ( InvocationTargetException e ) {
+                  throw e.getCause();
+                }
+              }
+            } );
+    SqlMetadataQueryExec exec = new SqlMetadataQueryExec();
+    exec.setDataSource( tracking );
+
+    // closing a partly read result ends the streaming transaction and releases the connection
+    StreamingSqlResultSet result = exec.executeStreamingQuery( query );
+    Assert.assertNotNull( result.next() );
+    Connection connection = connections.get( 0 );
+    Assert.assertFalse( connection.getAutoCommit() );
+    result.close();
+    Assert.assertTrue( connection.isClosed() );
+    Assert.assertNull( result.next() );
+
+    // so does cancelling it
+    result = exec.executeStreamingQuery( query );
+    Assert.assertNotNull( result.next() );
+    result.cancel();
+    Assert.assertTrue( connections.get( 1 ).isClosed() );
+  }
+
+  @Test
+  public void testScrollableResult() throws Exception {
+    SqlMetadataQueryExec exec = new SqlMetadataQueryExec();
+    exec.setDataSource( dataSource );
+    exec.setForwardOnly( false );
+    exec.setParameter( maxId, 5 );
+    IPentahoResultSet result = exec.executeQuery( query );
+    Assert.assertTrue( result.isScrollable() );
+    Assert.assertEquals( 5, result.getRowCount() );
+    Assert.assertEquals( "name 3", result.getValueAt( 3, 1 ) ); //$NON-NLS-1$
+    result.closeConnection();
+  }
+
+  @Test
+  public void testConnectionOfThePhysicalModel() throws Exception {
+    // without a data source the executor connects with the settings of the model
+    SqlMetadataQueryExec exec = new SqlMetadataQueryExec();
+    JDBCDataSource memory = new JDBCDataSource();
+    memory.setUrl( "jdbc:hsqldb:mem:streaming" ); //$NON-NLS-1$
+    memory.setUser( "sa" ); //$NON-NLS-1$
+    memory.setPassword( "" ); //$NON-NLS-1$
+    Connection connection = memory.getConnection();
+    Statement stmt = connection.createStatement();
+    stmt.execute( "CREATE TABLE BIG ( ID INTEGER, NAME VARCHAR(20) )" ); //$NON-NLS-1$
+    stmt.execute( "INSERT INTO BIG VALUES ( 1, 'one' )" ); //$NON-NLS-1$
+    stmt.close();
+    try {
+      Assert.assertEquals( 1, count( exec.executeQuery( query ) ) );
+    } finally {
+      stmt = connection.createStatement();
+      stmt.execute( "SHUTDOWN" ); //$NON-NLS-1$
+      connection.close();
+    }
+  }
+
+  private static int count( IPentahoResultSet result ) {
+    int rows = 0;
+    while ( result.next() != null ) {
+      rows++;
+    }
+    return rows;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for ( int i = 0; i < 3; i++ ) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -43,6 +43,8 @@ import org.pentaho.metadata.model.LogicalModel;
 import org.pentaho.metadata.model.LogicalTable;
 import org.pentaho.metadata.model.SqlDataSource;
 import org.pentaho.metadata.model.SqlPhysicalModel;
+import org.pentaho.metadata.model.aggregate.AggregateColumn;
+import org.pentaho.metadata.model.aggregate.AggregateTable;
 import org.pentaho.metadata.model.concept.Concept;
 import org.pentaho.metadata.model.concept.types.AggregationType;
 import org.pentaho.metadata.model.olap.OlapCalculatedMember;
@@ -573,6 +575,42 @@ public class XmiParserIT {
 
   }
 
+  @Test
+  @SuppressWarnings( "unchecked" )
+  public void testAggregateTables() throws Exception {
+    Domain domain = parser.parseXmi( getClass().getResourceAsStream( "/samples/steelwheels.xmi" ) );
+    LogicalModel model = domain.getLogicalModels().get( 0 );
+    LogicalTable table = model.getLogicalTables().get( 0 );
+    LogicalColumn grouping = table.getLogicalColumns().get( 0 );
+    LogicalColumn measure = table.getLogicalColumns().get( 1 );
+    AggregateTable agg = new AggregateTable( "agg_<1>", "schema", "AGG_1", 42 );
+    agg.addGroupingColumn( grouping, "G" );
+    agg.addMeasure( measure, "M & N", AggregationType.SUM );
+    List<AggregateTable> aggs = new ArrayList<AggregateTable>();
+    aggs.add( agg );
+    model.setProperty( LogicalModel.PROPERTY_AGGREGATE_TABLES, aggs );
+    // an empty list is not an error
+    domain.getLogicalModels().get( 1 ).setProperty( LogicalModel.PROPERTY_AGGREGATE_TABLES,
+        new ArrayList<AggregateTable>() );
+
+    String xmi = parser.generateXmi( domain );
+    Domain domain2 = parser.parseXmi( new ByteArrayInputStream( xmi.getBytes( "UTF-8" ) ) );
+
+    LogicalModel model2 = domain2.findLogicalModel( model.getId() );
+    List<AggregateTable> aggs2 = (List<AggregateTable>) model2.getProperty( LogicalModel.PROPERTY_AGGREGATE_TABLES );
+    assertEquals( 1, aggs2.size() );
+    AggregateTable agg2 = aggs2.get( 0 );
+    assertEquals( "agg_<1>", agg2.getName() );
+    assertEquals( "schema", agg2.getTargetSchema() );
+    assertEquals( "AGG_1", agg2.getTargetTable() );
+    assertEquals( 42, agg2.getRowCount() );
+    assertEquals( 2, agg2.getColumns().size() );
+    AggregateColumn column = agg2.findGroupingColumn( model2.findLogicalColumn( grouping.getId() ) );
+    assertEquals( "G", column.getTargetColumn() );
+    column = agg2.findMeasure( model2.findLogicalColumn( measure.getId() ), AggregationType.SUM );
+    assertEquals( "M & N", column.getTargetColumn() );
+  }
+
   @Test
   public void testWriteAndParseLevelFormatter() throws Exception {
     Domain domain = parser.parseXmi( getClass().getResourceAsStream( "/example_olap.xmi" ) );
@@ -121,6 +121,28 @@ public class MetadataTestBase extends TestCase {
     return query;
   }
 
+  public SQLQueryModel createPagedQuery() {
+    SQLQueryModel query = new SQLQueryModel();
+    query.addSelection( "t.id", "ID" ); //$NON-NLS-1$ //$NON-NLS-2$
+    query.addTable( "TABLE", "t" ); //$NON-NLS-1$ //$NON-NLS-2$
+    query.addWhereFormula( "t.id is null", null ); //$NON-NLS-1$
+    query.setLimit( 10 );
+    query.setOffset( 20 );
+    query.addOrderBy( "t.id", "ID", OrderType.ASCENDING ); //$NON-NLS-1$ //$NON-NLS-2$
+    return query;
+  }
+
+  public SQLQueryModel createCommonTableQuery() {
+    SQLQueryModel query = new SQLQueryModel();
+    query.addCommonTable( "PMS_CTE0", "SELECT t.*, t.a * t.b AS PMS_F0 FROM TABLE t" ); //$NON-NLS-1$ //$NON-NLS-2$
+    query.addSelection( "t.PMS_F0", null ); //$NON-NLS-1$
+    query.addTable( "PMS_CTE0", "t" ); //$NON-NLS-1$ //$NON-NLS-2$
+    query.addWhereFormula( "t.PMS_F0 > 0", null ); //$NON-NLS-1$
+    query.setLimit( 10 );
+    query.addOrderBy( null, "t.PMS_F0", OrderType.ASCENDING ); //$NON-NLS-1$
+    return query;
+  }
+
   public void assertSelect( String expected, SQLDialectInterface dialect, SQLQueryModel query ) {
     String result = dialect.generateSelectStatement( query );
     assertEqualsIgnoreWhitespacesAndCase( expected, result );
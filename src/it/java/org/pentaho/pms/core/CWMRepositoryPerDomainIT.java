@@ -0,0 +1,136 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.pms.factory.CwmSchemaFactory;
+import org.pentaho.pms.schema.PhysicalColumn;
+import org.pentaho.pms.schema.PhysicalTable;
+import org.pentaho.pms.schema.SchemaMeta;
+
+/**
+ * Keeps two domains in their own btree repositories and checks that they can be used at the same time.
+ */
+@SuppressWarnings( "deprecation" )
+public class CWMRepositoryPerDomainIT {
+
+  private static final String DOMAIN_A = "Per Domain A";
+  private static final String DOMAIN_B = "Per Domain B";
+
+  private File directory;
+
+  @BeforeClass
+  public static void setUpEnv() throws Exception {
+    KettleEnvironment.init( false );
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    directory = File.createTempFile( "mdr-domains", "" );
+    directory.delete();
+    System.setProperty( CWM.PROPERTY_REPOSITORY_PER_DOMAIN, "true" );
+    System.setProperty( CWM.PROPERTY_DOMAIN_DIRECTORY, directory.getPath() );
+
+    store( DOMAIN_A, "table_a" );
+    store( DOMAIN_B, "table_b" );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CWM.getInstance( DOMAIN_A ).removeDomain();
+    CWM.getInstance( DOMAIN_B ).removeDomain();
+    System.clearProperty( CWM.PROPERTY_REPOSITORY_PER_DOMAIN );
+    System.clearProperty( CWM.PROPERTY_DOMAIN_DIRECTORY );
+    directory.delete();
+  }
+
+  @Test
+  public void testDomainsAreStoredInTheirOwnFiles() throws Exception {
+    assertTrue( new File( directory, "Per+Domain+A.btd" ).exists() );
+    assertTrue( new File( directory, "Per+Domain+B.btd" ).exists() );
+
+    List<String> domainNames = Arrays.asList( CWM.getDomainNames() );
+    assertEquals( Arrays.asList( DOMAIN_A, DOMAIN_B ), domainNames );
+    assertTrue( CWM.exists( DOMAIN_A ) );
+    assertFalse( CWM.exists( "Missing" ) );
+    assertFalse( new File( directory, "Missing.btd" ).exists() );
+  }
+
+  @Test
+  public void testSystemPropertiesAreLeftAlone() throws Exception {
+    assertNull( System.getProperty( "org.netbeans.mdr.persistence.btreeimpl.filename" ) );
+    assertEquals( "org.netbeans.mdr.persistence.memoryimpl.StorageFactoryImpl",
+        System.getProperty( "org.netbeans.mdr.storagemodel.StorageFactoryClassName" ) );
+  }
+
+  @Test
+  public void testDomainIsReadWhileAnotherOneIsLocked() throws Exception {
+    CWM cwmA = CWM.getInstance( DOMAIN_A );
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    cwmA.beginTransaction();
+    try {
+      Future<SchemaMeta> future = executor.submit( new Callable<SchemaMeta>() {
+        public SchemaMeta call() throws Exception {
+          return new CwmSchemaFactory().getSchemaMeta( CWM.getInstance( DOMAIN_B ) );
+        }
+      } );
+      assertNotNull( future.get( 30, TimeUnit.SECONDS ).findPhysicalTable( "table_b" ) );
+    } finally {
+      cwmA.rollback();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testDomainIsReopenedFromDisk() throws Exception {
+    CWM.clearCache();
+
+    SchemaMeta schemaMeta = new CwmSchemaFactory().getSchemaMeta( CWM.getInstance( DOMAIN_A, false ) );
+    PhysicalTable table = schemaMeta.findPhysicalTable( "table_a" );
+    assertNotNull( table );
+    assertNotNull( table.findPhysicalColumn( "column" ) );
+  }
+
+  private static void store( String domainName, String tableName ) throws Exception {
+    SchemaMeta schemaMeta = new SchemaMeta();
+    PhysicalTable table = new PhysicalTable( tableName );
+    PhysicalColumn column = new PhysicalColumn( "column" );
+    column.setTable( table );
+    table.addPhysicalColumn( column );
+    schemaMeta.addTable( table );
+    new CwmSchemaFactory().storeSchemaMeta( CWM.getInstance( domainName ), schemaMeta );
+  }
+}
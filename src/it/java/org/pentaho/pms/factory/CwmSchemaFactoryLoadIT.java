@@ -0,0 +1,170 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.factory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.pms.core.CWM;
+import org.pentaho.pms.schema.BusinessCategory;
+import org.pentaho.pms.schema.BusinessColumn;
+import org.pentaho.pms.schema.BusinessModel;
+import org.pentaho.pms.schema.BusinessTable;
+import org.pentaho.pms.schema.PhysicalColumn;
+import org.pentaho.pms.schema.PhysicalTable;
+import org.pentaho.pms.schema.RelationshipMeta;
+import org.pentaho.pms.schema.SchemaMeta;
+import org.pentaho.pms.schema.concept.Concept;
+import org.pentaho.pms.schema.concept.ConceptInterface;
+import org.pentaho.pms.schema.concept.types.string.ConceptPropertyString;
+
+/**
+ * Stores a large legacy model in the repository and loads it back with {@link CwmSchemaFactory#getSchemaMeta(CWM)},
+ * checking that every reference is resolved.
+ */
+@SuppressWarnings( "deprecation" )
+public class CwmSchemaFactoryLoadIT {
+
+  private static final String TEST_DOMAIN = "Large Load Domain";
+
+  private static final int CONCEPTS = 300;
+  private static final int TABLES = 150;
+  private static final int COLUMNS = 10;
+
+  private CWM cwm;
+
+  @BeforeClass
+  public static void setUpEnv() throws Exception {
+    KettleEnvironment.init( false );
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    cwm = CWM.getInstance( TEST_DOMAIN );
+    new CwmSchemaFactory().storeSchemaMeta( cwm, createSchemaMeta() );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    cwm.removeDomain();
+    cwm = null;
+  }
+
+  @Test
+  public void testGetSchemaMetaResolvesAllReferences() throws Exception {
+    SchemaMeta schemaMeta = new CwmSchemaFactory().getSchemaMeta( cwm );
+
+    // The children were stored before their parents
+    assertEquals( CONCEPTS, schemaMeta.nrConcepts() );
+    for ( int i = 0; i < CONCEPTS; i++ ) {
+      ConceptInterface concept = schemaMeta.findConcept( "concept" + i );
+      assertNotNull( concept );
+      assertEquals( "value" + i, concept.getProperty( "property" ).getValue() );
+      if ( i < CONCEPTS - 1 ) {
+        assertSame( schemaMeta.findConcept( "concept" + ( i + 1 ) ), concept.getParentInterface() );
+      } else {
+        assertNull( concept.getParentInterface() );
+      }
+    }
+
+    assertEquals( TABLES, schemaMeta.nrTables() );
+    PhysicalTable physicalTable = schemaMeta.findPhysicalTable( "physical" + ( TABLES - 1 ) );
+    assertSame( schemaMeta.findConcept( "concept0" ), physicalTable.getConcept().getParentInterface() );
+    assertEquals( COLUMNS, physicalTable.nrPhysicalColumns() );
+
+    assertEquals( 1, schemaMeta.nrBusinessModels() );
+    BusinessModel businessModel = schemaMeta.getModel( 0 );
+    assertEquals( TABLES, businessModel.nrBusinessTables() );
+    for ( int i = 0; i < TABLES; i++ ) {
+      BusinessTable businessTable = businessModel.findBusinessTable( "business" + i );
+      assertSame( schemaMeta.findPhysicalTable( "physical" + i ), businessTable.getPhysicalTable() );
+      for ( int c = 0; c < COLUMNS; c++ ) {
+        BusinessColumn businessColumn = businessTable.findBusinessColumn( "business" + i + "_" + c );
+        assertSame( businessTable.getPhysicalTable().findPhysicalColumn( "physical" + i + "_" + c ),
+            businessColumn.getPhysicalColumn() );
+      }
+    }
+
+    assertEquals( TABLES - 1, businessModel.nrRelationships() );
+    for ( int i = 0; i < businessModel.nrRelationships(); i++ ) {
+      RelationshipMeta relationship = businessModel.getRelationship( i );
+      assertNotNull( relationship.getFieldFrom() );
+      assertSame( relationship.getTableFrom(), relationship.getFieldFrom().getBusinessTable() );
+      assertNotNull( relationship.getFieldTo() );
+      assertSame( relationship.getTableTo(), relationship.getFieldTo().getBusinessTable() );
+    }
+
+    assertEquals( 1, businessModel.getRootCategory().nrBusinessCategories() );
+    assertEquals( COLUMNS, businessModel.getRootCategory().getBusinessCategory( 0 ).nrBusinessColumns() );
+  }
+
+  private static SchemaMeta createSchemaMeta() throws Exception {
+    SchemaMeta schemaMeta = new SchemaMeta();
+
+    Concept[] concepts = new Concept[CONCEPTS];
+    for ( int i = 0; i < CONCEPTS; i++ ) {
+      concepts[i] = new Concept( "concept" + i );
+      concepts[i].addProperty( new ConceptPropertyString( "property", "value" + i ) );
+    }
+    for ( int i = 0; i < CONCEPTS; i++ ) {
+      if ( i < CONCEPTS - 1 ) {
+        concepts[i].setParentInterface( concepts[i + 1] );
+      }
+      schemaMeta.addConcept( concepts[i] );
+    }
+
+    BusinessModel businessModel = new BusinessModel( "model" );
+    BusinessTable previous = null;
+    for ( int i = 0; i < TABLES; i++ ) {
+      PhysicalTable physicalTable = new PhysicalTable( "physical" + i );
+      physicalTable.getConcept().setParentInterface( concepts[0] );
+      BusinessTable businessTable = new BusinessTable( "business" + i, physicalTable );
+      for ( int c = 0; c < COLUMNS; c++ ) {
+        PhysicalColumn physicalColumn = new PhysicalColumn( "physical" + i + "_" + c );
+        physicalColumn.setTable( physicalTable );
+        physicalTable.addPhysicalColumn( physicalColumn );
+        businessTable.addBusinessColumn( new BusinessColumn( "business" + i + "_" + c, physicalColumn,
+            businessTable ) );
+      }
+      schemaMeta.addTable( physicalTable );
+      businessModel.addBusinessTable( businessTable );
+
+      if ( previous != null ) {
+        businessModel.addRelationship( new RelationshipMeta( previous, businessTable,
+            previous.getBusinessColumn( 0 ), businessTable.getBusinessColumn( 0 ) ) );
+      }
+      previous = businessTable;
+    }
+
+    BusinessCategory category = new BusinessCategory( "category" );
+    BusinessTable first = businessModel.getBusinessTable( 0 );
+    for ( int c = 0; c < COLUMNS; c++ ) {
+      category.addBusinessColumn( first.getBusinessColumn( c ) );
+    }
+    businessModel.getRootCategory().addBusinessCategory( category );
+    schemaMeta.addModel( businessModel );
+
+    return schemaMeta;
+  }
+}
@@ -15,6 +15,26 @@ public class DB2DialectIT extends MetadataTestBase {
         createUnlimitedQuery() );
   }
 
+  public void testPagedSQL() {
+    assertSelect( "SELECT PMS_ROWS.ID FROM ( SELECT PMS_PAGE.*, "
+        + "ROW_NUMBER() OVER ( ORDER BY PMS_PAGE.ID ) AS PMS_ROW_NUM "
+        + "FROM ( SELECT DISTINCT t.id AS ID FROM TABLE t WHERE ( ( t.id is null ) ) ) PMS_PAGE ) PMS_ROWS "
+        + "WHERE PMS_ROW_NUM > 20 AND PMS_ROW_NUM <= 30 ORDER BY PMS_ROW_NUM",
+        new DB2Dialect(), createPagedQuery() );
+  }
+
+  public void testCommonTableSQL() {
+    assertTrue( new DB2Dialect().supportsCommonTableExpressions() );
+    assertSelect( "WITH PMS_CTE0 AS ( SELECT t.*, t.a * t.b AS PMS_F0 FROM TABLE t ) "
+        + "SELECT DISTINCT t.PMS_F0 FROM PMS_CTE0 t WHERE ( ( t.PMS_F0 > 0 ) ) ORDER BY t.PMS_F0 ASC "
+        + "FETCH FIRST 10 ROWS ONLY", new DB2Dialect(), createCommonTableQuery() );
+  }
+
+  public void testSampledTable() {
+    assertEqualsIgnoreWhitespacesAndCase( "( SELECT * FROM pt1 TABLESAMPLE SYSTEM ( 2.5 ) )",
+        new DB2Dialect().generateSampledTable( "pt1", 2.5, 100 ) );
+  }
+
   public void testGetDateSQL() {
     String dateExpected = "DATE('2000-01-01')";
     DefaultSQLDialect dialect = new DB2Dialect();
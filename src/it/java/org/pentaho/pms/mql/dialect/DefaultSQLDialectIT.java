@@ -27,11 +27,15 @@ import org.pentaho.reporting.libraries.formula.lvalues.LValue;
 import org.pentaho.reporting.libraries.formula.lvalues.StaticValue;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.*;
 
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Locale;
 
 public class DefaultSQLDialectIT {
@@ -160,4 +164,24 @@ public class DefaultSQLDialectIT {
     assertEquals( dateExpected, dialect.getDateSQL( 2000, 1, 1, 12, 0, 0, 0 ) );
   }
 
+  @Test
+  public void testOrderJoinsByCost() {
+    SQLQueryModel query = new SQLQueryModel();
+    query.addJoin( "FACT", "f", "DIM2", "d2", JoinType.INNER_JOIN, "f.d2 = d2.id", null, false, 10 ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    query.addJoin( "DIM1", "d1", "FACT", "f", JoinType.INNER_JOIN, "f.d1 = d1.id", null, false, 1000 ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    query.addJoin( "OTHER", "o", "DIM1", "d1", JoinType.INNER_JOIN, "o.id = d1.o", null, false, 1 ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    query.addJoin( "FACT", "f", "LOOKUP", "l", JoinType.LEFT_OUTER_JOIN, "f.l = l.id", null, false, 1000 ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    List<SQLJoin> joins = query.getJoins();
+
+    DefaultSQLDialect dialect = new DefaultSQLDialect();
+    List<SQLJoin> ordered = dialect.orderJoinsByCost( new ArrayList<SQLJoin>( joins ) );
+    // the outer join stays innermost, the cheapest connected inner join is nested next
+    assertEquals( Arrays.asList( joins.get( 2 ), joins.get( 1 ), joins.get( 0 ), joins.get( 3 ) ), ordered );
+
+    // join order keys take precedence
+    joins.get( 0 ).setJoinOrderKey( "A" ); //$NON-NLS-1$
+    List<SQLJoin> sorted = new ArrayList<SQLJoin>( joins );
+    assertSame( sorted, dialect.orderJoinsByCost( sorted ) );
+  }
+
 }
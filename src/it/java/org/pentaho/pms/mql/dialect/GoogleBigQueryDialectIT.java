@@ -35,6 +35,18 @@ public class GoogleBigQueryDialectIT extends MetadataTestBase {
       createUnlimitedQuery() );
   }
 
+  public void testCommonTableSQL() {
+    assertTrue( new GoogleBigQueryDialect().supportsCommonTableExpressions() );
+    assertSelect( "WITH PMS_CTE0 AS ( SELECT t.*, t.a * t.b AS PMS_F0 FROM TABLE t ) "
+        + "SELECT DISTINCT t.PMS_F0 FROM PMS_CTE0 t WHERE ( ( t.PMS_F0 > 0 ) ) ORDER BY t.PMS_F0 ASC LIMIT 10",
+        new GoogleBigQueryDialect(), createCommonTableQuery() );
+  }
+
+  public void testSampledTable() {
+    assertEqualsIgnoreWhitespacesAndCase( "( SELECT * FROM pt1 TABLESAMPLE SYSTEM ( 2.5 PERCENT ) )",
+        new GoogleBigQueryDialect().generateSampledTable( "pt1", 2.5, 100 ) );
+  }
+
   public void testGetDateSQL() {
     String dateExpected = "CAST('2000-01-01' AS DATE)";
     DefaultSQLDialect dialect = new GoogleBigQueryDialect();
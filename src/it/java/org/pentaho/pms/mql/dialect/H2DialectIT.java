@@ -12,4 +12,10 @@ public class H2DialectIT extends MetadataTestBase {
     assertSelect( "SELECT DISTINCT t.id FROM TABLE t WHERE ( ( t.id is null ) ) ORDER BY t.id ASC", new H2Dialect(),
         createUnlimitedQuery() );
   }
+
+  public void testPagedSQL() {
+    assertSelect( "SELECT DISTINCT t.id AS ID FROM TABLE t WHERE ( ( t.id is null ) ) ORDER BY ID ASC "
+        + "OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY",
+        new H2Dialect(), createPagedQuery() );
+  }
 }
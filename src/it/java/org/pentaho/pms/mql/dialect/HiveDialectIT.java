@@ -182,6 +182,19 @@ public class HiveDialectIT {
     SQLDialectHelper.assertEqualsIgnoreWhitespaces( expected, result );
   }
 
+  @Test
+  public void innerJoin_known_inequality() {
+    SQLQueryModel query = new SQLQueryModel();
+    query.addSelection( "id", null ); //$NON-NLS-1$
+    // a function call only known as a non equality join when it was generated
+    query.addJoin( "A", null, "B", null, JoinType.INNER_JOIN, "in_range( A.b, B.id )", null, false, -1, false ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    String expected =
+        "SELECT DISTINCT \n          id\nFROM \n          A\n          JOIN B\nWHERE\n          ( in_range( A.b, B.id ) )\n"; //$NON-NLS-1$
+    SQLDialectInterface dialect = new HiveDialect();
+    String result = dialect.generateSelectStatement( query );
+    SQLDialectHelper.assertEqualsIgnoreWhitespaces( expected, result );
+  }
+
   @Test
   public void innerJoin_double_unordered() {
     SQLQueryModel query = new SQLQueryModel();
@@ -445,6 +458,13 @@ public class HiveDialectIT {
     assertEquals( expected, result );
   }
 
+  @Test
+  public void stripTableAliasesFromFormula_nested_qualifiers() {
+    HiveDialect dialect = new HiveDialect();
+    assertEquals( "id", dialect.stripTableAliasesFromFormula( "s.a.id" ) ); //$NON-NLS-1$ //$NON-NLS-2$
+    assertEquals( "concat(id, name)", dialect.stripTableAliasesFromFormula( "concat(a.id, b.name)" ) ); //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
   @Test
   public void where_simple() {
     SQLQueryModel query = new SQLQueryModel();
@@ -517,6 +537,12 @@ public class HiveDialectIT {
     assertEquals( expected, result );
   }
 
+  @Test
+  public void testPartitionValueSQL() {
+    assertEquals( "to_date( '2019-01-01' )", new HiveDialect().getPartitionValueSQL( "'2019-01-01'" ) );
+    assertEquals( "CAST( '2019-01-01' AS DATE )", new DefaultSQLDialect().getPartitionValueSQL( "'2019-01-01'" ) );
+  }
+
   /**
    * Simple appender that collects all {@link LoggingEvent}s that are sent to it so they can be inspected later.
    */
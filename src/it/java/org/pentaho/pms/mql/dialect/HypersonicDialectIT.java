@@ -13,6 +13,22 @@ public class HypersonicDialectIT extends MetadataTestBase {
         new HypersonicDialect(), createUnlimitedQuery() );
   }
 
+  public void testPagedSQL() {
+    assertSelect( "SELECT DISTINCT t.id AS ID FROM TABLE t WHERE ( ( t.id is null ) ) ORDER BY ID ASC "
+        + "OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY",
+        new HypersonicDialect(), createPagedQuery() );
+  }
+
+  public void testCommonTableSQL() {
+    // shared formula columns are computed in derived tables
+    assertFalse( new HypersonicDialect().supportsCommonTableExpressions() );
+  }
+
+  public void testSampledTable() {
+    assertEqualsIgnoreWhitespacesAndCase( "( SELECT TOP 100 * FROM pt1 )",
+        new HypersonicDialect().generateSampledTable( "pt1", 2.5, 100 ) );
+  }
+
   public void testGetDateSQL() {
     String dateExpected = "'2015-08-28 00:00:00.0'";
     HypersonicDialect dialect = new HypersonicDialect();
@@ -1,6 +1,7 @@
 package org.pentaho.pms.mql.dialect;
 
 import org.pentaho.pms.MetadataTestBase;
+import org.pentaho.pms.mql.dialect.SQLQueryModel.OrderType;
 
 public class MSSQLDialectIT extends MetadataTestBase {
   public void testLimitSQL() {
@@ -13,6 +14,72 @@ public class MSSQLDialectIT extends MetadataTestBase {
         createUnlimitedQuery() );
   }
 
+  public void testPagedSQL() {
+    assertSelect( "SELECT PMS_ROWS.ID FROM ( SELECT PMS_PAGE.*, "
+        + "ROW_NUMBER() OVER ( ORDER BY PMS_PAGE.ID ) AS PMS_ROW_NUM "
+        + "FROM ( SELECT DISTINCT t.id AS ID FROM TABLE t WHERE ( ( t.id is null ) ) ) PMS_PAGE ) PMS_ROWS "
+        + "WHERE PMS_ROW_NUM > 20 AND PMS_ROW_NUM <= 30 ORDER BY PMS_ROW_NUM",
+        new MSSQLDialect(), createPagedQuery() );
+  }
+
+  public void testDistinctPagedSQLWithoutAliases() {
+    SQLQueryModel query = new SQLQueryModel();
+    query.addSelection( "t.id", null );
+    query.addTable( "TABLE", "t" );
+    query.setLimit( 10 );
+    query.setOffset( 20 );
+    query.addOrderBy( "t.id", null, OrderType.ASCENDING );
+    // the row number is added around the DISTINCT query, not to its selections
+    assertSelect( "SELECT PMS_ROWS.PMS_C0 FROM ( SELECT PMS_PAGE.*, "
+        + "ROW_NUMBER() OVER ( ORDER BY PMS_PAGE.PMS_C0 ) AS PMS_ROW_NUM "
+        + "FROM ( SELECT DISTINCT t.id AS PMS_C0 FROM TABLE t ) PMS_PAGE ) PMS_ROWS "
+        + "WHERE PMS_ROW_NUM > 20 AND PMS_ROW_NUM <= 30 ORDER BY PMS_ROW_NUM",
+        new MSSQLDialect(), query );
+  }
+
+  public void testPagedSQLWithoutAliases() {
+    SQLQueryModel query = new SQLQueryModel();
+    query.setDistinct( false );
+    query.addSelection( "t.id", null );
+    query.addTable( "TABLE", "t" );
+    query.setLimit( 10 );
+    query.setOffset( 20 );
+    query.addOrderBy( "t.id", null, OrderType.ASCENDING );
+    // the page lists the aliased column, not the row number
+    assertSelect( "SELECT PMS_ROWS.PMS_C0 FROM ( SELECT t.id AS PMS_C0, "
+        + "ROW_NUMBER() OVER ( ORDER BY t.id ) AS PMS_ROW_NUM FROM TABLE t ) PMS_ROWS "
+        + "WHERE PMS_ROW_NUM > 20 AND PMS_ROW_NUM <= 30 ORDER BY PMS_ROW_NUM",
+        new MSSQLDialect(), query );
+  }
+
+  public void testCommonTableSQL() {
+    assertTrue( new MSSQLDialect().supportsCommonTableExpressions() );
+    assertSelect( "WITH PMS_CTE0 AS ( SELECT t.*, t.a * t.b AS PMS_F0 FROM TABLE t ) "
+        + "SELECT DISTINCT TOP 10 t.PMS_F0 FROM PMS_CTE0 t WHERE ( ( t.PMS_F0 > 0 ) ) ORDER BY t.PMS_F0 ASC",
+        new MSSQLDialect(), createCommonTableQuery() );
+  }
+
+  public void testCommonTablePagedSQL() {
+    SQLQueryModel query = new SQLQueryModel();
+    query.addCommonTable( "PMS_CTE0", "SELECT t.*, t.a * t.b AS PMS_F0 FROM TABLE t" );
+    query.addSelection( "t.PMS_F0", "F" );
+    query.addTable( "PMS_CTE0", "t" );
+    query.setLimit( 10 );
+    query.setOffset( 20 );
+    query.addOrderBy( "t.PMS_F0", "F", OrderType.ASCENDING );
+    // a common table cannot be declared in a derived table, the WITH clause goes in front of the page
+    assertSelect( "WITH PMS_CTE0 AS ( SELECT t.*, t.a * t.b AS PMS_F0 FROM TABLE t ) "
+        + "SELECT PMS_ROWS.F FROM ( SELECT PMS_PAGE.*, ROW_NUMBER() OVER ( ORDER BY PMS_PAGE.F ) AS PMS_ROW_NUM "
+        + "FROM ( SELECT DISTINCT t.PMS_F0 AS F FROM PMS_CTE0 t ) PMS_PAGE ) PMS_ROWS "
+        + "WHERE PMS_ROW_NUM > 20 AND PMS_ROW_NUM <= 30 ORDER BY PMS_ROW_NUM",
+        new MSSQLDialect(), query );
+  }
+
+  public void testSampledTable() {
+    assertEqualsIgnoreWhitespacesAndCase( "( SELECT * FROM pt1 TABLESAMPLE SYSTEM ( 2.5 PERCENT ) )",
+        new MSSQLDialect().generateSampledTable( "pt1", 2.5, 100 ) );
+  }
+
   public void testGetDateSQL() {
     String dateExpected = "'20000101'";
     MSSQLDialect dialect = new MSSQLDialect();
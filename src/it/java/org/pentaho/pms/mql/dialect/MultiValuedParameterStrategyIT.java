@@ -0,0 +1,359 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.mql.dialect;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.metadata.model.Category;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.SqlPhysicalColumn;
+import org.pentaho.metadata.model.SqlPhysicalModel;
+import org.pentaho.metadata.model.SqlPhysicalTable;
+import org.pentaho.metadata.model.concept.types.AggregationType;
+import org.pentaho.metadata.model.concept.types.DataType;
+import org.pentaho.metadata.model.concept.types.TargetColumnType;
+import org.pentaho.metadata.query.impl.sql.MappedQuery;
+import org.pentaho.metadata.query.impl.sql.SqlGenerator;
+import org.pentaho.metadata.query.model.CombinationType;
+import org.pentaho.metadata.query.model.Constraint;
+import org.pentaho.metadata.query.model.Parameter;
+import org.pentaho.metadata.query.model.Query;
+import org.pentaho.metadata.query.model.Selection;
+import org.pentaho.pms.MetadataTestBase;
+
+/**
+ * Runs a query with several thousand parameter values against HSQLDB with each multi-valued parameter strategy.
+ */
+public class MultiValuedParameterStrategyIT {
+
+  private static final int CUSTOMERS = 3000;
+
+  private static final int SELECTED = 2500;
+
+  private static Connection connection;
+
+  private static DatabaseMeta databaseMeta;
+
+  private static DefaultSQLDialect dialect;
+
+  private LogicalModel model;
+
+  private Query query;
+
+  private Map<String, Object> parameters;
+
+  @BeforeClass
+  public static void createDatabase() throws Exception {
+    MetadataTestBase.initKettleEnvironment();
+    Class.forName( "org.hsqldb.jdbcDriver" ); //$NON-NLS-1$
+    connection = DriverManager.getConnection( "jdbc:hsqldb:mem:multivalue", "sa", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    Statement stmt = connection.createStatement();
+    stmt.execute( "CREATE TABLE SALES ( CUSTOMER VARCHAR(10), AMOUNT INTEGER )" ); //$NON-NLS-1$
+    stmt.close();
+    PreparedStatement insert = connection.prepareStatement( "INSERT INTO SALES VALUES ( ?, 1 )" ); //$NON-NLS-1$
+    for ( int i = 0; i < CUSTOMERS; i++ ) {
+      insert.setString( 1, "C" + i ); //$NON-NLS-1$
+      insert.addBatch();
+    }
+    insert.executeBatch();
+    insert.close();
+    databaseMeta = new DatabaseMeta( "", "HYPERSONIC", "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    dialect = (DefaultSQLDialect) SQLDialectFactory.getSQLDialect( databaseMeta );
+  }
+
+  @AfterClass
+  public static void dropDatabase() throws Exception {
+    Statement stmt = connection.createStatement();
+    stmt.execute( "SHUTDOWN" ); //$NON-NLS-1$
+    connection.close();
+  }
+
+  @Before
+  public void createQuery() {
+    SqlPhysicalModel physicalModel = new SqlPhysicalModel();
+    physicalModel.setId( "pm" ); //$NON-NLS-1$
+    model = new LogicalModel();
+    model.setId( "sales" ); //$NON-NLS-1$
+    model.setPhysicalModel( physicalModel );
+    Category category = new Category();
+    category.setId( "cat" ); //$NON-NLS-1$
+    model.getCategories().add( category );
+
+    LogicalTable table = new LogicalTable();
+    table.setId( "bt_sales" ); //$NON-NLS-1$
+    table.setProperty( SqlPhysicalTable.TARGET_TABLE, "SALES" ); //$NON-NLS-1$
+    model.getLogicalTables().add( table );
+    LogicalColumn customerColumn = new LogicalColumn();
+    customerColumn.setId( "bc_customer" ); //$NON-NLS-1$
+    customerColumn.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "CUSTOMER" ); //$NON-NLS-1$
+    customerColumn.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    customerColumn.setLogicalTable( table );
+    table.addLogicalColumn( customerColumn );
+    category.addLogicalColumn( customerColumn );
+    LogicalColumn amountColumn = new LogicalColumn();
+    amountColumn.setId( "bc_amount" ); //$NON-NLS-1$
+    amountColumn.setProperty( SqlPhysicalColumn.TARGET_COLUMN, "AMOUNT" ); //$NON-NLS-1$
+    amountColumn.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+    amountColumn.setAggregationType( AggregationType.SUM );
+    amountColumn.setLogicalTable( table );
+    table.addLogicalColumn( amountColumn );
+    category.addLogicalColumn( amountColumn );
+
+    Domain domain = new Domain();
+    domain.setId( "sales_domain" ); //$NON-NLS-1$
+    domain.addLogicalModel( model );
+
+    query = new Query( domain, model );
+    query.getParameters().add( new Parameter( "customers", DataType.STRING, "C0" ) ); //$NON-NLS-1$ //$NON-NLS-2$
+    query.getSelections().add( new Selection( category, amountColumn, null ) );
+    query.getConstraints().add(
+        new Constraint( CombinationType.AND, "[bt_sales.bc_customer] = [param:customers]" ) ); //$NON-NLS-1$
+
+    String[] customers = new String[SELECTED];
+    for ( int i = 0; i < SELECTED; i++ ) {
+      customers[i] = "C" + i; //$NON-NLS-1$
+    }
+    parameters = new HashMap<String, Object>();
+    parameters.put( "customers", customers ); //$NON-NLS-1$
+  }
+
+  @After
+  public void resetStrategy() {
+    dialect.setMultiValuedParameterStrategy( null );
+  }
+
+  @Test
+  public void testInline() throws Exception {
+    MappedQuery mappedQuery = generate( true );
+    Assert.assertFalse( mappedQuery.getQuery().contains( " OR " ) ); //$NON-NLS-1$
+    Assert.assertEquals( SELECTED, execute( mappedQuery ) );
+  }
+
+  @Test
+  public void testChunkedPreparedStatement() throws Exception {
+    dialect.setMultiValuedParameterStrategy( new DefaultMultiValuedParameterStrategy( dialect ) );
+    MappedQuery mappedQuery = generate( true );
+    Assert.assertEquals( 2, count( mappedQuery.getQuery(), " OR " ) ); //$NON-NLS-1$
+    Assert.assertEquals( SELECTED, count( mappedQuery.getQuery(), "?" ) ); //$NON-NLS-1$
+    Assert.assertEquals( 1, mappedQuery.getParamList().size() );
+    Assert.assertEquals( SELECTED, execute( mappedQuery ) );
+  }
+
+  @Test
+  public void testChunkedLiterals() throws Exception {
+    DefaultMultiValuedParameterStrategy strategy =
+        new DefaultMultiValuedParameterStrategy( dialect ).withChunkSize( 500 );
+    dialect.setMultiValuedParameterStrategy( strategy );
+    MappedQuery mappedQuery = generate( false );
+    Assert.assertEquals( 4, count( mappedQuery.getQuery(), " OR " ) ); //$NON-NLS-1$
+    Assert.assertNull( mappedQuery.getParamList() );
+    Assert.assertEquals( SELECTED, execute( mappedQuery ) );
+  }
+
+  @Test
+  public void testSmallListsStayInline() throws Exception {
+    dialect.setMultiValuedParameterStrategy( new DefaultMultiValuedParameterStrategy( dialect ) );
+    parameters.put( "customers", new String[] { "C1", "C2", "C3" } ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    MappedQuery mappedQuery = generate( true );
+    Assert.assertTrue( mappedQuery.getQuery().contains( "IN ( ?, ?, ? )" ) ); //$NON-NLS-1$
+    Assert.assertEquals( 3, execute( mappedQuery ) );
+  }
+
+  @Test
+  public void testArrayBinding() throws Exception {
+    DefaultMultiValuedParameterStrategy strategy =
+        new DefaultMultiValuedParameterStrategy( dialect ).withArrayBinding( true );
+    dialect.setMultiValuedParameterStrategy( strategy );
+    MappedQuery mappedQuery = generate( true );
+    Assert.assertTrue( mappedQuery.getQuery().contains( "UNNEST( ? )" ) ); //$NON-NLS-1$
+    Assert.assertEquals( 1, count( mappedQuery.getQuery(), "?" ) ); //$NON-NLS-1$
+    Assert.assertTrue( mappedQuery.isArrayParameter( "customers" ) ); //$NON-NLS-1$
+    Assert.assertEquals( SELECTED, execute( mappedQuery ) );
+
+    // without a prepared statement the values are chunked
+    Assert.assertEquals( 2, count( generate( false ).getQuery(), " OR " ) ); //$NON-NLS-1$
+  }
+
+  @Test
+  public void testTemporaryTable() throws Exception {
+    DefaultMultiValuedParameterStrategy strategy =
+        new DefaultMultiValuedParameterStrategy( dialect ).withTempTableThreshold( 2000 );
+    dialect.setMultiValuedParameterStrategy( strategy );
+    MappedQuery mappedQuery = generate( true );
+    Assert.assertEquals( 1, mappedQuery.getParameterTables().size() );
+    String tableName = mappedQuery.getParameterTables().get( 0 ).getTableName();
+    Assert.assertTrue( mappedQuery.getQuery().contains( "SELECT PMS_VALUE FROM " + tableName ) ); //$NON-NLS-1$
+    Assert.assertNull( mappedQuery.getParamList() );
+    Assert.assertEquals( SELECTED, execute( mappedQuery ) );
+
+    // the table is reloaded with the values of the next execution
+    String[] customers = new String[2100];
+    for ( int i = 0; i < customers.length; i++ ) {
+      customers[i] = "C" + ( CUSTOMERS - 1 - i ); //$NON-NLS-1$
+    }
+    parameters.put( "customers", customers ); //$NON-NLS-1$
+    Assert.assertEquals( 2100, execute( generate( true ) ) );
+  }
+
+  @Test
+  public void testTemporaryTableDropped() throws Exception {
+    dialect.setMultiValuedParameterStrategy(
+        new DefaultMultiValuedParameterStrategy( dialect ).withTempTableThreshold( 2000 ) );
+    MappedQuery mappedQuery = generate( true );
+    Assert.assertEquals( SELECTED, execute( mappedQuery ) );
+
+    // the table is remembered for the connection, but created again once it is missing
+    Statement stmt = connection.createStatement();
+    stmt.execute( "DROP TABLE " + mappedQuery.getParameterTables().get( 0 ).getTableName() ); //$NON-NLS-1$
+    stmt.close();
+    Assert.assertEquals( SELECTED, execute( mappedQuery ) );
+  }
+
+  @Test
+  public void testImmutableSettings() {
+    DefaultMultiValuedParameterStrategy strategy = new DefaultMultiValuedParameterStrategy( dialect );
+    DefaultMultiValuedParameterStrategy chunked = strategy.withChunkSize( 500 );
+    Assert.assertEquals( 1000, strategy.getChunkSize() );
+    Assert.assertEquals( 500, chunked.getChunkSize() );
+    Assert.assertEquals( strategy.getInlineLimit(), chunked.getInlineLimit() );
+  }
+
+  @Test
+  public void testTableNames() throws Exception {
+    DefaultMultiValuedParameterStrategy strategy = new DefaultMultiValuedParameterStrategy( dialect );
+    String[] values = new String[] { "C1" }; //$NON-NLS-1$
+    String name = strategy.getTableName( "a-b", values ); //$NON-NLS-1$
+    Assert.assertTrue( name.startsWith( "PMS_IN_A_B_" ) ); //$NON-NLS-1$
+    Assert.assertEquals( name, strategy.getTableName( "a-b", values ) ); //$NON-NLS-1$
+    Assert.assertFalse( name.equals( strategy.getTableName( "a_b", values ) ) ); //$NON-NLS-1$
+    Assert.assertFalse( name.equals( strategy.getTableName( "A-B", values ) ) ); //$NON-NLS-1$
+
+    StringBuilder longName = new StringBuilder();
+    for ( int i = 0; i < 100; i++ ) {
+      longName.append( 'x' );
+    }
+    String shortened = strategy.getTableName( longName.toString(), values );
+    Assert.assertTrue( shortened.length() <= dialect.getMaxTableNameLength() );
+    Assert.assertFalse( shortened.equals( strategy.getTableName( longName.append( 'y' ).toString(), values ) ) );
+  }
+
+  @Test
+  public void testChunkedLiteralsWithNull() throws Exception {
+    DefaultMultiValuedParameterStrategy strategy =
+        new DefaultMultiValuedParameterStrategy( dialect ).withChunkSize( 500 );
+    String[] customers = (String[]) parameters.get( "customers" ); //$NON-NLS-1$
+    customers[0] = null;
+    StringBuffer sb = new StringBuffer();
+    Assert.assertTrue( strategy.generateInList( dialect, sb, "CUSTOMER", "customers", customers, false ) ); //$NON-NLS-1$ //$NON-NLS-2$
+    Assert.assertTrue( sb.toString().startsWith( " ( CUSTOMER IN ( NULL , 'C1'" ) ); //$NON-NLS-1$
+  }
+
+  @Test
+  public void testTableExistsError() {
+    DefaultMultiValuedParameterStrategy strategy = new DefaultMultiValuedParameterStrategy( dialect );
+    Assert.assertTrue( strategy.isTableExistsError( new SQLException( "exists", "42504" ) ) ); //$NON-NLS-1$ //$NON-NLS-2$
+    Assert.assertTrue( strategy.isTableExistsError( new SQLException( "ORA-00955", "42000", 955 ) ) ); //$NON-NLS-1$ //$NON-NLS-2$
+    Assert.assertFalse( strategy.isTableExistsError( new SQLException( "denied", "42501" ) ) ); //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  @Test
+  public void testBindBuckets() throws Exception {
+    model.setProperty( "parameter_bind_buckets", "repeat_last" ); //$NON-NLS-1$ //$NON-NLS-2$
+    Set<String> sqls = new HashSet<String>();
+    for ( int n = 1; n <= 64; n++ ) {
+      String[] customers = new String[n];
+      for ( int i = 0; i < n; i++ ) {
+        customers[i] = "C" + i; //$NON-NLS-1$
+      }
+      parameters.put( "customers", customers ); //$NON-NLS-1$
+      MappedQuery mappedQuery = generate( true );
+      sqls.add( mappedQuery.getQuery() );
+      int bucket = Integer.highestOneBit( n ) == n ? n : Integer.highestOneBit( n ) << 1;
+      Assert.assertEquals( Arrays.asList( bucket ), mappedQuery.getParamBindCounts() );
+      Assert.assertEquals( bucket, count( mappedQuery.getQuery(), "?" ) ); //$NON-NLS-1$
+      Assert.assertEquals( n, execute( mappedQuery ) );
+    }
+    // 1, 2, 4, 8, 16, 32 and 64 placeholders
+    Assert.assertEquals( 7, sqls.size() );
+
+    parameters.put( "customers", new String[] { "C1", "C2", "C3" } ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    Assert.assertEquals( Arrays.<Object>asList( "C1", "C2", "C3", "C3" ), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        generate( true ).getBindValues( parameters ) );
+    model.setProperty( "parameter_bind_buckets", "null" ); //$NON-NLS-1$ //$NON-NLS-2$
+    MappedQuery mappedQuery = generate( true );
+    Assert.assertTrue( mappedQuery.isPaddedWithNulls() );
+    Assert.assertEquals( Arrays.<Object>asList( "C1", "C2", "C3", null ), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        mappedQuery.getBindValues( parameters ) );
+    Assert.assertEquals( 3, execute( mappedQuery ) );
+  }
+
+  @Test
+  public void testBindBucketsOfChunkedLists() throws Exception {
+    model.setProperty( "parameter_bind_buckets", "repeat_last" ); //$NON-NLS-1$ //$NON-NLS-2$
+    dialect.setMultiValuedParameterStrategy( new DefaultMultiValuedParameterStrategy( dialect ) );
+    MappedQuery mappedQuery = generate( true );
+    // slices of 1000, 1000 and 500 values, the last one is padded to 512
+    Assert.assertEquals( Arrays.asList( 2512 ), mappedQuery.getParamBindCounts() );
+    Assert.assertEquals( 2512, count( mappedQuery.getQuery(), "?" ) ); //$NON-NLS-1$
+    Assert.assertEquals( SELECTED, execute( mappedQuery ) );
+  }
+
+  private MappedQuery generate( boolean prepared ) throws Exception {
+    return new SqlGenerator().generateSql( query, "en_US", null, databaseMeta, parameters, prepared ); //$NON-NLS-1$
+  }
+
+  private int execute( MappedQuery mappedQuery ) throws Exception {
+    mappedQuery.loadParameterTables( connection );
+    PreparedStatement stmt = connection.prepareStatement( mappedQuery.getQuery() );
+    try {
+      mappedQuery.bindParameters( stmt, parameters );
+      ResultSet rs = stmt.executeQuery();
+      Assert.assertTrue( rs.next() );
+      return rs.getInt( 1 );
+    } finally {
+      stmt.close();
+    }
+  }
+
+  private static int count( String sql, String token ) {
+    int count = 0;
+    for ( int i = sql.indexOf( token ); i >= 0; i = sql.indexOf( token, i + token.length() ) ) {
+      count++;
+    }
+    return count;
+  }
+}
@@ -14,6 +14,22 @@ public class MySQLDialectIT extends MetadataTestBase {
         createUnlimitedQuery() );
   }
 
+  public void testPagedSQL() {
+    assertSelect( "SELECT DISTINCT t.id AS ID FROM TABLE t WHERE ( ( t.id is null ) ) ORDER BY ID ASC "
+        + "LIMIT 10 OFFSET 20",
+        new MySQLDialect(), createPagedQuery() );
+  }
+
+  public void testCommonTableSQL() {
+    // shared formula columns are computed in derived tables
+    assertFalse( new MySQLDialect().supportsCommonTableExpressions() );
+  }
+
+  public void testSampledTable() {
+    assertEqualsIgnoreWhitespacesAndCase( "( SELECT * FROM pt1 LIMIT 100 )",
+        new MySQLDialect().generateSampledTable( "pt1", 2.5, 100 ) );
+  }
+
   public void testGetDateSQL() {
     String dateExpected = "DATE('2000-01-01')";
     DefaultSQLDialect dialect = new MySQLDialect();
@@ -15,6 +15,27 @@ public class OracleDialectIT extends MetadataTestBase {
         new OracleDialect(), createUnlimitedQuery() );
   }
 
+  public void testPagedSQL() {
+    assertSelect( "SELECT PMS_ROWS.ID FROM ( SELECT PMS_PAGE.*, "
+        + "ROW_NUMBER() OVER ( ORDER BY PMS_PAGE.ID ) AS PMS_ROW_NUM "
+        + "FROM ( SELECT DISTINCT t.id AS ID FROM TABLE t WHERE ( ( t.id is null ) ) ) PMS_PAGE ) PMS_ROWS "
+        + "WHERE PMS_ROW_NUM > 20 AND PMS_ROW_NUM <= 30 ORDER BY PMS_ROW_NUM",
+        new OracleDialect(), createPagedQuery() );
+  }
+
+  public void testCommonTableSQL() {
+    assertTrue( new OracleDialect().supportsCommonTableExpressions() );
+    // the WITH clause stays in front of the ROWNUM wrapper
+    assertSelect( "WITH PMS_CTE0 AS ( SELECT t.*, t.a * t.b AS PMS_F0 FROM TABLE t ) "
+        + "SELECT * FROM (SELECT DISTINCT t.PMS_F0 FROM PMS_CTE0 t WHERE ( ( t.PMS_F0 > 0 ) ) ORDER BY t.PMS_F0 ASC ) "
+        + "WHERE ROWNUM <= 10", new OracleDialect(), createCommonTableQuery() );
+  }
+
+  public void testSampledTable() {
+    assertEqualsIgnoreWhitespacesAndCase( "( SELECT * FROM pt1 SAMPLE BLOCK ( 2.5 ) )",
+        new OracleDialect().generateSampledTable( "pt1", 2.5, 100 ) );
+  }
+
   public void testGetDateSQL() {
     String dateExpected = "TO_DATE('2000-01-01','YYYY-MM-DD')";
     DefaultSQLDialect dialect = new OracleDialect();
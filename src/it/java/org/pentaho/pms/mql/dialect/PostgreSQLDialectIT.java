@@ -31,6 +31,29 @@ public class PostgreSQLDialectIT extends MetadataTestBase {
         new PostgreSQLDialect(), createUnlimitedQuery() );
   }
 
+  public void testPagedSQL() {
+    assertSelect( "SELECT DISTINCT t.id AS ID FROM TABLE t WHERE ( ( t.id is null ) ) ORDER BY ID ASC "
+        + "LIMIT 10 OFFSET 20",
+        new PostgreSQLDialect(), createPagedQuery() );
+  }
+
+  public void testCommonTableSQL() {
+    assertTrue( new PostgreSQLDialect().supportsCommonTableExpressions() );
+    assertSelect( "WITH PMS_CTE0 AS ( SELECT t.*, t.a * t.b AS PMS_F0 FROM TABLE t ) "
+        + "SELECT DISTINCT t.PMS_F0 FROM PMS_CTE0 t WHERE ( ( t.PMS_F0 > 0 ) ) ORDER BY t.PMS_F0 ASC LIMIT 10",
+        new PostgreSQLDialect(), createCommonTableQuery() );
+  }
+
+  public void testSampledTable() {
+    assertEqualsIgnoreWhitespacesAndCase( "( SELECT * FROM pt1 TABLESAMPLE SYSTEM ( 2.5 ) )",
+        new PostgreSQLDialect().generateSampledTable( "pt1", 2.5, 100 ) );
+  }
+
+  public void testSampledDerivedTable() {
+    assertEqualsIgnoreWhitespacesAndCase( "( SELECT * FROM (select * from pt1) PMS_SAMPLE LIMIT 100 )",
+        new PostgreSQLDialect().generateSampledTable( "(select * from pt1)", true, 2.5, 100 ) );
+  }
+
   public void testGetDateSQL() {
     String dateExpected = "date '2000-01-01'";
     DefaultSQLDialect dialect = new PostgreSQLDialect();
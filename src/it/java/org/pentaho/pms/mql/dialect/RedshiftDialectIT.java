@@ -26,4 +26,9 @@ public class RedshiftDialectIT extends MetadataTestBase {
     String quotedWord = redshiftDialect.quoteStringLiteral( "Instalação" );
     assertEquals( "'Instalação'", quotedWord );
   }
+
+  public void testSampledTable() {
+    assertEqualsIgnoreWhitespacesAndCase( "( SELECT * FROM pt1 LIMIT 100 )",
+        new RedshiftDialect().generateSampledTable( "pt1", 2.5, 100 ) );
+  }
 }
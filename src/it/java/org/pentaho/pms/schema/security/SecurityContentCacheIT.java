@@ -0,0 +1,226 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.schema.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.pms.MetadataTestBase;
+import org.pentaho.pms.core.exception.PentahoMetadataException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings( "deprecation" )
+public class SecurityContentCacheIT {
+
+  private static final String USERS = "<content><users>joe</users><users>suzy</users></content>"; //$NON-NLS-1$
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private HttpServer server;
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private volatile int status = 200;
+
+  private volatile String content = USERS;
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    MetadataTestBase.initKettleEnvironment();
+  }
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 ); //$NON-NLS-1$
+    server.createContext( "/security", new HttpHandler() { //$NON-NLS-1$
+      public void handle( HttpExchange exchange ) throws IOException {
+        requests.incrementAndGet();
+        byte[] body = content.getBytes( "UTF-8" ); //$NON-NLS-1$
+        exchange.sendResponseHeaders( status, status == 200 ? body.length : -1 );
+        if ( status == 200 ) {
+          OutputStream out = exchange.getResponseBody();
+          out.write( body );
+          out.close();
+        }
+        exchange.close();
+      }
+    } );
+    server.start();
+  }
+
+  @After
+  public void stopServer() {
+    if ( server != null ) {
+      server.stop( 0 );
+    }
+    SecurityContentCache.setInstance( null );
+  }
+
+  private SecurityService createService() {
+    SecurityService service = new SecurityService();
+    service.setServiceURL( "http://localhost:" + server.getAddress().getPort() + "/security" ); //$NON-NLS-1$ //$NON-NLS-2$
+    service.setServiceName( "service" ); //$NON-NLS-1$
+    service.setDetailNameParameter( "details" ); //$NON-NLS-1$
+    service.setDetailServiceType( SecurityService.SERVICE_TYPE_USERS );
+    service.setUsername( "admin" ); //$NON-NLS-1$
+    service.setPassword( "password" ); //$NON-NLS-1$
+    return service;
+  }
+
+  @Test
+  public void testContentIsShared() throws Exception {
+    SecurityContentCache.setInstance( new SecurityContentCache( 60000, folder.getRoot() ) );
+    assertEquals( Arrays.asList( "joe", "suzy" ), createService().getUsers() ); //$NON-NLS-1$ //$NON-NLS-2$
+    assertEquals( Arrays.asList( "joe", "suzy" ), createService().getUsers() ); //$NON-NLS-1$ //$NON-NLS-2$
+    assertEquals( 1, requests.get() );
+
+    // other credentials get their own content
+    SecurityService other = createService();
+    other.setPassword( "other" ); //$NON-NLS-1$
+    other.getUsers();
+    assertEquals( 2, requests.get() );
+  }
+
+  @Test
+  public void testExpiredContentIsRead() throws Exception {
+    SecurityContentCache.setInstance( new SecurityContentCache( 0, folder.getRoot() ) );
+    createService().getUsers();
+    createService().getUsers();
+    assertEquals( 2, requests.get() );
+  }
+
+  @Test
+  public void testLastKnownGoodContent() throws Exception {
+    SecurityContentCache.setInstance( new SecurityContentCache( 0, folder.getRoot() ) );
+    SecurityService service = createService();
+    assertEquals( 2, service.getUsers().size() );
+
+    // the server goes away, and the cache is restarted
+    server.stop( 0 );
+    server = null;
+    assertEquals( 2, service.getUsers().size() );
+    SecurityContentCache.setInstance( new SecurityContentCache( 60000, folder.getRoot() ) );
+    assertEquals( Arrays.asList( "joe", "suzy" ), service.getUsers() ); //$NON-NLS-1$ //$NON-NLS-2$
+
+    // the file is only found with the credentials it was read with
+    SecurityService other = createService();
+    other.setPassword( "wrong" ); //$NON-NLS-1$
+    SecurityContentCache cache = new SecurityContentCache( 60000, folder.getRoot() );
+    try {
+      cache.getContent( other, other.getURL( "users" ) ); //$NON-NLS-1$
+      fail();
+    } catch ( PentahoMetadataException e ) {
+      // expected
+    }
+
+    // without the file, there is nothing to fall back on
+    cache = new SecurityContentCache( 60000, folder.newFolder() );
+    try {
+      cache.getContent( service, service.getURL( "users" ) ); //$NON-NLS-1$
+      fail();
+    } catch ( PentahoMetadataException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testErrorsDontFallBack() throws Exception {
+    SecurityContentCache cache = new SecurityContentCache( 0, folder.getRoot() );
+    SecurityService service = createService();
+    String url = service.getURL( "users" ); //$NON-NLS-1$
+    assertEquals( USERS, cache.getContent( service, url ) );
+
+    for ( int error : new int[] { 403, 500, 503 } ) {
+      status = error;
+      try {
+        cache.getContent( service, url );
+        fail();
+      } catch ( PentahoMetadataException e ) {
+        // expected
+      }
+    }
+
+    // content that is not XML is refused, and does not replace the last known good content
+    status = 200;
+    content = "<html>maintenance"; //$NON-NLS-1$
+    try {
+      cache.getContent( service, url );
+      fail();
+    } catch ( PentahoMetadataException e ) {
+      // expected
+    }
+    server.stop( 0 );
+    server = null;
+    assertEquals( USERS, new SecurityContentCache( 0, folder.getRoot() ).getContent( service, url ) );
+  }
+
+  @Test
+  public void testNothingOnDiskByDefault() throws Exception {
+    String directory = System.getProperty( SecurityContentCache.DIRECTORY_PROPERTY );
+    System.clearProperty( SecurityContentCache.DIRECTORY_PROPERTY );
+    try {
+      SecurityContentCache.setInstance( null );
+      SecurityService service = createService();
+      SecurityContentCache.getInstance().getContent( service, service.getURL( "users" ) ); //$NON-NLS-1$
+      server.stop( 0 );
+      server = null;
+      // a new cache has no last known good content
+      SecurityContentCache.setInstance( null );
+      try {
+        SecurityContentCache.getInstance().getContent( service, service.getURL( "users" ) ); //$NON-NLS-1$
+        fail();
+      } catch ( PentahoMetadataException e ) {
+        // expected
+      }
+    } finally {
+      if ( directory != null ) {
+        System.setProperty( SecurityContentCache.DIRECTORY_PROPERTY, directory );
+      }
+    }
+  }
+
+  @Test
+  public void testRefusedCredentialsDontFallBack() throws Exception {
+    SecurityContentCache cache = new SecurityContentCache( 0, folder.getRoot() );
+    SecurityService service = createService();
+    String url = service.getURL( "users" ); //$NON-NLS-1$
+    assertEquals( USERS, cache.getContent( service, url ) );
+    status = 401;
+    try {
+      cache.getContent( service, url );
+      fail();
+    } catch ( PentahoMetadataException e ) {
+      // expected
+    }
+  }
+}
@@ -45,6 +45,10 @@ public class LogicalModel extends Concept {
 
   public static final String PROPERTY_TARGET_TABLE_STAGED = "target_table_staged"; //$NON-NLS-1$
 
+  public static final String PROPERTY_AGGREGATE_TABLES = "aggregate_tables"; //$NON-NLS-1$
+
+  public static final String PROPERTY_RESULT_CACHE_TTL = "result_cache_ttl"; //$NON-NLS-1$
+
   private List<LogicalTable> logicalTables = new ArrayList<LogicalTable>();
   private List<LogicalRelationship> logicalRelationships = new ArrayList<LogicalRelationship>();
   private List<Category> categories = new ArrayList<Category>();
@@ -38,6 +38,7 @@ public class LogicalRelationship extends Concept {
   public static final String COMPLEX_JOIN = "complex_join"; //$NON-NLS-1$
   public static final String RELATIONSHIP_TYPE = "relationship_type"; //$NON-NLS-1$
   public static final String JOIN_ORDER_KEY = "join_order_key"; //$NON-NLS-1$
+  public static final String REFERENTIAL_INTEGRITY = "referential_integrity"; //$NON-NLS-1$
 
   // A relationship's descriptions is not to be localized
   private String relationshipDescription = null;
@@ -117,6 +118,17 @@ public class LogicalRelationship extends Concept {
     setProperty( JOIN_ORDER_KEY, joinOrderKey );
   }
 
+  /**
+   * @return true if every foreign key of the relationship has a matching key
+   */
+  public boolean isReferentialIntegrity() {
+    return Boolean.TRUE.equals( getProperty( REFERENTIAL_INTEGRITY ) );
+  }
+
+  public void setReferentialIntegrity( boolean referentialIntegrity ) {
+    setProperty( REFERENTIAL_INTEGRITY, referentialIntegrity );
+  }
+
   public LogicalTable getFromTable() {
     return fromTable;
   }
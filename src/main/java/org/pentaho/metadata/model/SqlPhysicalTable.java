@@ -39,6 +39,16 @@ public class SqlPhysicalTable extends Concept implements IPhysicalTable {
   public static final String TARGET_TABLE_TYPE = "target_table_type"; //$NON-NLS-1$
   public static final String RELATIVE_SIZE = "relative_size"; //$NON-NLS-1$
 
+  /**
+   * The column the table is partitioned on, holding the date of the {@link #PARTITION_SOURCE_COLUMN} of each row.
+   */
+  public static final String PARTITION_COLUMN = "partition_column"; //$NON-NLS-1$
+
+  /**
+   * The id of the (logical or physical) date column the {@link #PARTITION_COLUMN} is derived from.
+   */
+  public static final String PARTITION_SOURCE_COLUMN = "partition_source_column"; //$NON-NLS-1$
+
   List<IPhysicalColumn> physicalColumns = new ArrayList<IPhysicalColumn>();
 
   public SqlPhysicalTable() {
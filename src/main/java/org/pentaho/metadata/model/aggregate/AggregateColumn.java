@@ -0,0 +1,107 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.aggregate;
+
+import java.io.Serializable;
+
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.concept.types.AggregationType;
+
+/**
+ * A column of an {@link AggregateTable}: either a grouping column, with aggregation type {@link AggregationType#NONE},
+ * or a measure holding the aggregated values of a logical column.
+ */
+public class AggregateColumn implements Cloneable, Serializable {
+
+  private static final long serialVersionUID = 6317964508851276405L;
+
+  private LogicalColumn logicalColumn;
+  private String targetColumn;
+  private AggregationType aggregationType = AggregationType.NONE;
+
+  public AggregateColumn() {
+  }
+
+  /**
+   * @param logicalColumn
+   * @param targetColumn
+   * @param aggregationType
+   */
+  public AggregateColumn( LogicalColumn logicalColumn, String targetColumn, AggregationType aggregationType ) {
+    this();
+    this.logicalColumn = logicalColumn;
+    this.targetColumn = targetColumn;
+    this.aggregationType = aggregationType;
+  }
+
+  public Object clone() {
+    // shallow copy of logical column is desired
+    return new AggregateColumn( logicalColumn, targetColumn, aggregationType );
+  }
+
+  /**
+   * @return true if this is a measure, false if this is a grouping column
+   */
+  public boolean isMeasure() {
+    return aggregationType != null && aggregationType != AggregationType.NONE;
+  }
+
+  /**
+   * @return the logicalColumn
+   */
+  public LogicalColumn getLogicalColumn() {
+    return logicalColumn;
+  }
+
+  /**
+   * @param logicalColumn
+   *          the logicalColumn to set
+   */
+  public void setLogicalColumn( LogicalColumn logicalColumn ) {
+    this.logicalColumn = logicalColumn;
+  }
+
+  /**
+   * @return the targetColumn
+   */
+  public String getTargetColumn() {
+    return targetColumn;
+  }
+
+  /**
+   * @param targetColumn
+   *          the targetColumn to set
+   */
+  public void setTargetColumn( String targetColumn ) {
+    this.targetColumn = targetColumn;
+  }
+
+  /**
+   * @return the aggregation applied to the logical column, NONE for grouping columns
+   */
+  public AggregationType getAggregationType() {
+    return aggregationType;
+  }
+
+  /**
+   * @param aggregationType
+   *          the aggregation applied to the logical column, NONE for grouping columns
+   */
+  public void setAggregationType( AggregationType aggregationType ) {
+    this.aggregationType = aggregationType;
+  }
+}
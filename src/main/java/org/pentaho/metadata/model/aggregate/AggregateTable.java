@@ -0,0 +1,196 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.aggregate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.concept.types.AggregationType;
+
+/**
+ * A physical table holding pre-aggregated rows of a logical model. The table is grouped by its grouping columns and
+ * holds the measures aggregated per group. Aggregate tables are declared on the logical model with the
+ * {@link org.pentaho.metadata.model.LogicalModel#PROPERTY_AGGREGATE_TABLES} property, the SQL generator reads from the
+ * smallest one able to answer a query.
+ */
+public class AggregateTable implements Cloneable, Serializable {
+
+  private static final long serialVersionUID = -2178520364431962284L;
+
+  private String name;
+  private String targetSchema;
+  private String targetTable;
+  private long rowCount = -1;
+  private List<AggregateColumn> columns = new ArrayList<AggregateColumn>();
+
+  public AggregateTable() {
+  }
+
+  /**
+   * @param name
+   * @param targetSchema
+   * @param targetTable
+   * @param rowCount
+   */
+  public AggregateTable( String name, String targetSchema, String targetTable, long rowCount ) {
+    this();
+    this.name = name;
+    this.targetSchema = targetSchema;
+    this.targetTable = targetTable;
+    this.rowCount = rowCount;
+  }
+
+  public Object clone() {
+    AggregateTable table = new AggregateTable( name, targetSchema, targetTable, rowCount );
+    for ( AggregateColumn column : columns ) {
+      table.columns.add( (AggregateColumn) column.clone() );
+    }
+    return table;
+  }
+
+  /**
+   * Declares a column the aggregate table is grouped by.
+   * 
+   * @param logicalColumn
+   *          the logical column
+   * @param targetColumn
+   *          the name of the column in the aggregate table
+   */
+  public void addGroupingColumn( LogicalColumn logicalColumn, String targetColumn ) {
+    columns.add( new AggregateColumn( logicalColumn, targetColumn, AggregationType.NONE ) );
+  }
+
+  /**
+   * Declares a measure of the aggregate table.
+   * 
+   * @param logicalColumn
+   *          the logical column that is aggregated
+   * @param targetColumn
+   *          the name of the column in the aggregate table
+   * @param aggregationType
+   *          the aggregation applied to the logical column
+   */
+  public void addMeasure( LogicalColumn logicalColumn, String targetColumn, AggregationType aggregationType ) {
+    columns.add( new AggregateColumn( logicalColumn, targetColumn, aggregationType ) );
+  }
+
+  /**
+   * @param logicalColumn
+   *          the logical column
+   * @return the grouping column for the logical column, null if the table is not grouped by it
+   */
+  public AggregateColumn findGroupingColumn( LogicalColumn logicalColumn ) {
+    return findColumn( logicalColumn, AggregationType.NONE );
+  }
+
+  /**
+   * @param logicalColumn
+   *          the logical column
+   * @param aggregationType
+   *          the aggregation applied to the logical column
+   * @return the measure, null if the table has no such measure
+   */
+  public AggregateColumn findMeasure( LogicalColumn logicalColumn, AggregationType aggregationType ) {
+    return findColumn( logicalColumn, aggregationType );
+  }
+
+  private AggregateColumn findColumn( LogicalColumn logicalColumn, AggregationType aggregationType ) {
+    for ( AggregateColumn column : columns ) {
+      if ( column.getLogicalColumn() == logicalColumn && column.getAggregationType() == aggregationType ) {
+        return column;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @param name
+   *          the name to set
+   */
+  public void setName( String name ) {
+    this.name = name;
+  }
+
+  /**
+   * @return the targetSchema
+   */
+  public String getTargetSchema() {
+    return targetSchema;
+  }
+
+  /**
+   * @param targetSchema
+   *          the targetSchema to set
+   */
+  public void setTargetSchema( String targetSchema ) {
+    this.targetSchema = targetSchema;
+  }
+
+  /**
+   * @return the targetTable
+   */
+  public String getTargetTable() {
+    return targetTable;
+  }
+
+  /**
+   * @param targetTable
+   *          the targetTable to set
+   */
+  public void setTargetTable( String targetTable ) {
+    this.targetTable = targetTable;
+  }
+
+  /**
+   * @return the estimated number of rows, -1 if unknown
+   */
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * @param rowCount
+   *          the estimated number of rows, -1 if unknown
+   */
+  public void setRowCount( long rowCount ) {
+    this.rowCount = rowCount;
+  }
+
+  /**
+   * @return the grouping columns and measures
+   */
+  public List<AggregateColumn> getColumns() {
+    return columns;
+  }
+
+  /**
+   * @param columns
+   *          the grouping columns and measures to set
+   */
+  public void setColumns( List<AggregateColumn> columns ) {
+    this.columns = columns;
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.aggregate.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.metadata.messages.Messages;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.aggregate.AggregateColumn;
+import org.pentaho.metadata.model.aggregate.AggregateTable;
+import org.pentaho.metadata.model.concept.types.AggregationType;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Converts the aggregate tables of a logical model from and to XML, so that the
+ * {@link LogicalModel#PROPERTY_AGGREGATE_TABLES} property can be stored with the model. The logical columns are
+ * written by id. Like org.pentaho.metadata.model.olap.util, this package uses classes not compatible with gwt and is
+ * excluded from the gwt build in org/pentaho/metadata/Model.gwt.xml.
+ */
+public class AggregateTableUtil {
+
+  private static final Log logger = LogFactory.getLog( AggregateTableUtil.class );
+
+  private AggregateTableUtil() {
+  }
+
+  /**
+   * Creates an XML representation of aggregate tables.
+   * 
+   * @param tables
+   *          the aggregate tables
+   * @return the XML
+   */
+  public static String toXml( List<AggregateTable> tables ) {
+    StringBuilder xml = new StringBuilder();
+    xml.append( "<aggregateTables>" ); //$NON-NLS-1$
+    for ( AggregateTable table : tables ) {
+      xml.append( "<aggregateTable>" ); //$NON-NLS-1$
+      xml.append( XMLHandler.addTagValue( "name", table.getName(), false ) ); //$NON-NLS-1$
+      xml.append( XMLHandler.addTagValue( "targetSchema", table.getTargetSchema(), false ) ); //$NON-NLS-1$
+      xml.append( XMLHandler.addTagValue( "targetTable", table.getTargetTable(), false ) ); //$NON-NLS-1$
+      xml.append( XMLHandler.addTagValue( "rowCount", table.getRowCount(), false ) ); //$NON-NLS-1$
+      xml.append( "<columns>" ); //$NON-NLS-1$
+      for ( AggregateColumn column : table.getColumns() ) {
+        xml.append( "<column>" ); //$NON-NLS-1$
+        String aggregationType = column.getAggregationType().name();
+        xml.append( XMLHandler.addTagValue( "logicalColumn", column.getLogicalColumn().getId(), false ) ); //$NON-NLS-1$
+        xml.append( XMLHandler.addTagValue( "targetColumn", column.getTargetColumn(), false ) ); //$NON-NLS-1$
+        xml.append( XMLHandler.addTagValue( "aggregationType", aggregationType, false ) ); //$NON-NLS-1$
+        xml.append( "</column>" ); //$NON-NLS-1$
+      }
+      xml.append( "</columns>" ); //$NON-NLS-1$
+      xml.append( "</aggregateTable>" ); //$NON-NLS-1$
+    }
+    xml.append( "</aggregateTables>" ); //$NON-NLS-1$
+    return xml.toString();
+  }
+
+  /**
+   * Creates the aggregate tables of a logical model from XML. A table declaring a column the model does not have is
+   * left out, queries are then answered from the base tables.
+   * 
+   * @param xml
+   *          the XML created by {@link #toXml(List)}
+   * @param model
+   *          the model holding the logical columns of the tables
+   * @return the aggregate tables
+   * @throws KettleXMLException
+   *           if the XML can't be parsed
+   */
+  public static List<AggregateTable> fromXml( String xml, LogicalModel model ) throws KettleXMLException {
+    List<AggregateTable> tables = new ArrayList<AggregateTable>();
+    Document doc = XMLHandler.loadXMLString( xml );
+    Node tablesNode = XMLHandler.getSubNode( doc, "aggregateTables" ); //$NON-NLS-1$
+    int num = XMLHandler.countNodes( tablesNode, "aggregateTable" ); //$NON-NLS-1$
+    for ( int i = 0; i < num; i++ ) {
+      Node tableNode = XMLHandler.getSubNodeByNr( tablesNode, "aggregateTable", i ); //$NON-NLS-1$
+      AggregateTable table = fromNode( tableNode, model );
+      if ( table != null ) {
+        tables.add( table );
+      }
+    }
+    return tables;
+  }
+
+  private static AggregateTable fromNode( Node node, LogicalModel model ) {
+    String name = XMLHandler.getTagValue( node, "name" ); //$NON-NLS-1$
+    String targetSchema = XMLHandler.getTagValue( node, "targetSchema" ); //$NON-NLS-1$
+    String targetTable = XMLHandler.getTagValue( node, "targetTable" ); //$NON-NLS-1$
+    String rowCount = XMLHandler.getTagValue( node, "rowCount" ); //$NON-NLS-1$
+    AggregateTable table =
+        new AggregateTable( name, targetSchema, targetTable, rowCount == null ? -1 : Long.parseLong( rowCount ) );
+    Node columnsNode = XMLHandler.getSubNode( node, "columns" ); //$NON-NLS-1$
+    int num = XMLHandler.countNodes( columnsNode, "column" ); //$NON-NLS-1$
+    for ( int i = 0; i < num; i++ ) {
+      Node columnNode = XMLHandler.getSubNodeByNr( columnsNode, "column", i ); //$NON-NLS-1$
+      String columnId = XMLHandler.getTagValue( columnNode, "logicalColumn" ); //$NON-NLS-1$
+      LogicalColumn logicalColumn = columnId == null ? null : model.findLogicalColumn( columnId );
+      if ( logicalColumn == null ) {
+        logger.warn( Messages.getString( "AggregateTableUtil.WARN_0001_UNKNOWN_LOGICAL_COLUMN", name, //$NON-NLS-1$
+            columnId ) );
+        return null;
+      }
+      String targetColumn = XMLHandler.getTagValue( columnNode, "targetColumn" ); //$NON-NLS-1$
+      String aggregationType = XMLHandler.getTagValue( columnNode, "aggregationType" ); //$NON-NLS-1$
+      table.getColumns().add(
+          new AggregateColumn( logicalColumn, targetColumn, AggregationType.valueOf( aggregationType ) ) );
+    }
+    return table;
+  }
+}
@@ -67,4 +67,40 @@ public enum RelationshipType {
         return JoinType.INNER;
     }
   }
+
+  /**
+   * Estimates the relative cost of joining two tables, the joins with the smallest cost are nested first. A join along
+   * a N:1 relationship costs the size of the table on the one side, which is the table it brings in: the dimension
+   * joins of a fact table are ordered by the size of each dimension instead of all costing the size of the fact table.
+   * 
+   * @param relationshipType
+   *          the type of relationship, null if unknown
+   * @param fromSize
+   *          relative size of the from table
+   * @param toSize
+   *          relative size of the to table
+   * @return the relative cost of the join
+   */
+  public static long getJoinSizeHint( RelationshipType relationshipType, long fromSize, long toSize ) {
+    if ( relationshipType == null ) {
+      return Math.max( fromSize, toSize );
+    }
+    switch ( relationshipType ) {
+      case _1_1:
+      case _0_1:
+      case _1_0:
+        return Math.min( fromSize, toSize );
+      case _N_1:
+      case _N_0:
+        return toSize;
+      case _1_N:
+      case _0_N:
+        return fromSize;
+      case _N_N:
+        return fromSize * toSize;
+      default:
+        // either side may be the large one
+        return Math.max( fromSize, toSize );
+    }
+  }
 }
@@ -0,0 +1,186 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.pentaho.metadata.model.Category;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+
+/**
+ * An immutable snapshot of a {@link Category}. The category refers to the columns of its model by id, so a column
+ * replaced in a table is also replaced in the categories.
+ * 
+ */
+public final class CategorySnapshot extends ConceptSnapshot {
+
+  private static final long serialVersionUID = 8346460221406457307L;
+
+  private final PersistentList<String> logicalColumnIds;
+
+  private CategorySnapshot( Builder builder ) {
+    super( builder );
+    this.logicalColumnIds = builder.logicalColumnIds;
+  }
+
+  private CategorySnapshot( Category category ) {
+    super( category );
+    List<String> ids = new ArrayList<String>( category.getLogicalColumns().size() );
+    for ( LogicalColumn column : category.getLogicalColumns() ) {
+      ids.add( column.getId() );
+    }
+    this.logicalColumnIds = PersistentList.copyOf( ids );
+  }
+
+  /**
+   * Takes a snapshot of a category.
+   * 
+   * @param category
+   *          the category
+   * @return the snapshot
+   */
+  public static CategorySnapshot of( Category category ) {
+    return new CategorySnapshot( category );
+  }
+
+  /**
+   * @return a builder for a new category
+   */
+  public static Builder builder() {
+    return new Builder( null );
+  }
+
+  /**
+   * @return a builder initialized with this category
+   */
+  public Builder toBuilder() {
+    return new Builder( this );
+  }
+
+  /**
+   * @return the ids of the logical columns in this category
+   */
+  public PersistentList<String> getLogicalColumnIds() {
+    return logicalColumnIds;
+  }
+
+  /**
+   * Returns a category without the columns that are not in a set.
+   * 
+   * @param columnIds
+   *          the ids of the columns to keep
+   * @return the category, or this category if all its columns are kept
+   */
+  CategorySnapshot retainLogicalColumns( Set<String> columnIds ) {
+    List<String> kept = null;
+    for ( int i = 0; i < logicalColumnIds.size(); i++ ) {
+      String id = logicalColumnIds.get( i );
+      boolean retained = columnIds.contains( id );
+      if ( !retained && kept == null ) {
+        kept = new ArrayList<String>( logicalColumnIds.subList( 0, i ) );
+      } else if ( retained && kept != null ) {
+        kept.add( id );
+      }
+    }
+    if ( kept == null ) {
+      return this;
+    }
+    return toBuilder().setLogicalColumnIds( PersistentList.copyOf( kept ) ).build();
+  }
+
+  /**
+   * Creates a mutable category from this snapshot.
+   * 
+   * @param model
+   *          the model of the category
+   * @param columnsById
+   *          the columns of the model, by id
+   * @return the category
+   */
+  Category toCategory( LogicalModel model, Map<String, LogicalColumn> columnsById ) {
+    Category category = new Category( model );
+    copyTo( category );
+    for ( String id : logicalColumnIds ) {
+      LogicalColumn column = columnsById.get( id );
+      if ( column != null ) {
+        category.addLogicalColumn( column );
+      }
+    }
+    return category;
+  }
+
+  /**
+   * A mutable builder of {@link CategorySnapshot}.
+   */
+  public static final class Builder extends ConceptSnapshot.Builder<Builder> {
+
+    private final CategorySnapshot original;
+    private PersistentList<String> logicalColumnIds = PersistentList.empty();
+
+    private Builder( CategorySnapshot original ) {
+      super( original );
+      this.original = original;
+      if ( original != null ) {
+        logicalColumnIds = original.logicalColumnIds;
+      }
+    }
+
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
+    public PersistentList<String> getLogicalColumnIds() {
+      return logicalColumnIds;
+    }
+
+    public Builder setLogicalColumnIds( PersistentList<String> logicalColumnIds ) {
+      this.logicalColumnIds = logicalColumnIds;
+      modified();
+      return this;
+    }
+
+    public Builder addLogicalColumn( String id ) {
+      if ( !logicalColumnIds.contains( id ) ) {
+        setLogicalColumnIds( logicalColumnIds.plus( id ) );
+      }
+      return this;
+    }
+
+    public Builder removeLogicalColumn( String id ) {
+      int index = logicalColumnIds.indexOf( id );
+      if ( index >= 0 ) {
+        setLogicalColumnIds( logicalColumnIds.minus( index ) );
+      }
+      return this;
+    }
+
+    /**
+     * @return the category, or the original snapshot if the builder was not modified
+     */
+    public CategorySnapshot build() {
+      if ( original != null && !isModified() ) {
+        return original;
+      }
+      return new CategorySnapshot( this );
+    }
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.snapshot;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.metadata.model.concept.Concept;
+import org.pentaho.metadata.model.concept.IConcept;
+import org.pentaho.metadata.model.concept.types.LocalizedString;
+
+/**
+ * The base class of the immutable snapshots of the logical metadata. A snapshot holds the id and the child properties
+ * of a concept, and the properties of its parent concept at the time the snapshot was taken. The property values and
+ * the physical concepts are shared with the concept the snapshot was taken from, the same way a clone of the concept
+ * shares them: the properties inherited from a physical table or column are read from the live physical concept.
+ * 
+ */
+public abstract class ConceptSnapshot implements Serializable {
+
+  private static final long serialVersionUID = -3425089138425718034L;
+
+  private final String id;
+  private final Map<String, Object> properties;
+  private final IConcept parentConcept;
+  private final Map<String, Object> parentProperties;
+
+  protected ConceptSnapshot( Builder<?> builder ) {
+    this.id = builder.id;
+    this.properties = builder.buildProperties();
+    this.parentConcept = builder.parentConcept;
+    this.parentProperties = builder.parentProperties;
+  }
+
+  protected ConceptSnapshot( Concept concept ) {
+    this.id = concept.getId();
+    this.properties = copyProperties( concept.getChildProperties() );
+    this.parentConcept = concept.getParentConcept();
+    this.parentProperties = copyParentProperties( parentConcept );
+  }
+
+  private static Map<String, Object> copyParentProperties( IConcept parentConcept ) {
+    return parentConcept == null ? Collections.<String, Object>emptyMap() : copyProperties( parentConcept
+        .getProperties() );
+  }
+
+  private static Map<String, Object> copyProperties( Map<String, Object> properties ) {
+    if ( properties == null || properties.isEmpty() ) {
+      return Collections.emptyMap();
+    }
+    return Collections.unmodifiableMap( new HashMap<String, Object>( properties ) );
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * The properties set on the concept itself.
+   * 
+   * @return an unmodifiable map of the properties
+   */
+  public Map<String, Object> getChildProperties() {
+    return properties;
+  }
+
+  public Object getChildProperty( String name ) {
+    return properties.get( name );
+  }
+
+  /**
+   * The parent concept, set on the mutable concepts created from the snapshot. The snapshot itself reads the
+   * properties the parent concept had when the snapshot was taken, not those of this live object.
+   * 
+   * @return the parent concept, or null
+   */
+  public IConcept getParentConcept() {
+    return parentConcept;
+  }
+
+  /**
+   * The concept the properties are inherited from, like the physical column of a logical column.
+   * 
+   * @return the inherited concept, or null
+   */
+  protected IConcept getInheritedConcept() {
+    return null;
+  }
+
+  /**
+   * Returns a property of the concept. As in {@link Concept#getProperties()}, the child properties overwrite the
+   * properties the parent concept had when the snapshot was taken, which overwrite those of the inherited concept. The
+   * security property is not inherited from the security parent, the snapshots do not know their parents.
+   * 
+   * @param name
+   *          the property name
+   * @return the property value, or null
+   */
+  public Object getProperty( String name ) {
+    if ( properties.containsKey( name ) ) {
+      return properties.get( name );
+    }
+    Object value = parentProperties.get( name );
+    if ( value != null ) {
+      return value;
+    }
+    if ( getInheritedConcept() != null ) {
+      return getInheritedConcept().getProperty( name );
+    }
+    return null;
+  }
+
+  public LocalizedString getName() {
+    return (LocalizedString) getProperty( Concept.NAME_PROPERTY );
+  }
+
+  public String getName( String locale ) {
+    LocalizedString locName = getName();
+    if ( locName == null ) {
+      return getId();
+    }
+    String name = locName.getLocalizedString( locale );
+    if ( name == null || name.trim().length() == 0 ) {
+      return getId();
+    }
+    return name;
+  }
+
+  /**
+   * Copies the id and the properties of this snapshot to a mutable concept. The concept gets its own property map.
+   * 
+   * @param concept
+   *          the concept to populate
+   */
+  protected void copyTo( Concept concept ) {
+    concept.setId( id );
+    concept.setChildProperties( new HashMap<String, Object>( properties ) );
+    concept.setParentConcept( parentConcept );
+  }
+
+  /**
+   * @return the index of the snapshot with an id in a list, or -1
+   */
+  static int indexOf( List<? extends ConceptSnapshot> snapshots, String id ) {
+    for ( int i = 0; i < snapshots.size(); i++ ) {
+      if ( id.equals( snapshots.get( i ).getId() ) ) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The base class of the snapshot builders. A builder created from a snapshot shares its state with the snapshot until
+   * it is modified, and building an unmodified builder returns the original snapshot.
+   * 
+   * @param <B>
+   *          the builder type
+   */
+  public abstract static class Builder<B extends Builder<B>> {
+
+    private String id;
+    private Map<String, Object> properties;
+    private boolean propertiesShared;
+    private IConcept parentConcept;
+    private Map<String, Object> parentProperties;
+    private boolean modified;
+
+    protected Builder( ConceptSnapshot snapshot ) {
+      if ( snapshot == null ) {
+        properties = new HashMap<String, Object>();
+        parentProperties = Collections.emptyMap();
+      } else {
+        id = snapshot.id;
+        properties = snapshot.properties;
+        propertiesShared = true;
+        parentConcept = snapshot.parentConcept;
+        parentProperties = snapshot.parentProperties;
+      }
+    }
+
+    protected abstract B self();
+
+    /**
+     * Marks the builder as modified, so that {@link #isModified()} returns true.
+     */
+    protected void modified() {
+      modified = true;
+    }
+
+    /**
+     * @return true if the builder was changed since it was created from a snapshot
+     */
+    protected boolean isModified() {
+      return modified;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public B setId( String id ) {
+      this.id = id;
+      modified();
+      return self();
+    }
+
+    public Object getChildProperty( String name ) {
+      return properties.get( name );
+    }
+
+    public B setProperty( String name, Object value ) {
+      writableProperties().put( name, value );
+      modified();
+      return self();
+    }
+
+    public B removeProperty( String name ) {
+      if ( properties.containsKey( name ) ) {
+        writableProperties().remove( name );
+        modified();
+      }
+      return self();
+    }
+
+    public B setName( LocalizedString name ) {
+      return setProperty( Concept.NAME_PROPERTY, name );
+    }
+
+    public B setDescription( LocalizedString description ) {
+      return setProperty( Concept.DESCRIPTION_PROPERTY, description );
+    }
+
+    /**
+     * Sets the parent concept. Its current properties are inherited by the snapshots built from now on.
+     * 
+     * @param parentConcept
+     *          the parent concept, or null
+     * @return this builder
+     */
+    public B setParentConcept( IConcept parentConcept ) {
+      this.parentConcept = parentConcept;
+      this.parentProperties = copyParentProperties( parentConcept );
+      modified();
+      return self();
+    }
+
+    private Map<String, Object> writableProperties() {
+      if ( propertiesShared ) {
+        properties = new HashMap<String, Object>( properties );
+        propertiesShared = false;
+      }
+      return properties;
+    }
+
+    private Map<String, Object> buildProperties() {
+      if ( !propertiesShared ) {
+        properties = copyProperties( properties );
+        propertiesShared = true;
+      }
+      return properties;
+    }
+  }
+}
@@ -0,0 +1,259 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.IPhysicalModel;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.concept.Concept;
+
+/**
+ * An immutable snapshot of a {@link Domain} and its logical models. Unlike {@link Domain#clone()}, deriving a filtered
+ * or modified snapshot only allocates the changed path from the domain to the modified concept, everything else is
+ * shared with the original snapshot. The physical models and the root concepts are shared with the domain the
+ * snapshot was taken from.
+ * 
+ * <p>
+ * Snapshots are meant for read only access and can be shared between threads. {@link #toBuilder()} returns a mutable
+ * builder for editing, and {@link #toDomain()} creates a mutable domain for the APIs working on {@link Domain}.
+ * </p>
+ * 
+ */
+public final class DomainSnapshot extends ConceptSnapshot {
+
+  private static final long serialVersionUID = 5023585066151386386L;
+
+  private final PersistentList<IPhysicalModel> physicalModels;
+  private final PersistentList<LogicalModelSnapshot> logicalModels;
+  private final PersistentList<Concept> concepts;
+
+  private DomainSnapshot( Builder builder ) {
+    super( builder );
+    this.physicalModels = builder.physicalModels;
+    this.logicalModels = builder.logicalModels;
+    this.concepts = builder.concepts;
+  }
+
+  private DomainSnapshot( Domain domain ) {
+    super( domain );
+    this.physicalModels = PersistentList.copyOf( domain.getPhysicalModels() );
+    List<LogicalModelSnapshot> models = new ArrayList<LogicalModelSnapshot>( domain.getLogicalModels().size() );
+    for ( LogicalModel model : domain.getLogicalModels() ) {
+      models.add( LogicalModelSnapshot.of( model ) );
+    }
+    this.logicalModels = PersistentList.copyOf( models );
+    this.concepts = PersistentList.copyOf( domain.getConcepts() );
+  }
+
+  /**
+   * Takes a snapshot of a domain and its logical models.
+   * 
+   * @param domain
+   *          the domain
+   * @return the snapshot
+   */
+  public static DomainSnapshot of( Domain domain ) {
+    return new DomainSnapshot( domain );
+  }
+
+  /**
+   * @return a builder for a new domain
+   */
+  public static Builder builder() {
+    return new Builder( null );
+  }
+
+  /**
+   * @return a builder initialized with this domain
+   */
+  public Builder toBuilder() {
+    return new Builder( this );
+  }
+
+  public PersistentList<IPhysicalModel> getPhysicalModels() {
+    return physicalModels;
+  }
+
+  public PersistentList<LogicalModelSnapshot> getLogicalModels() {
+    return logicalModels;
+  }
+
+  public PersistentList<Concept> getConcepts() {
+    return concepts;
+  }
+
+  public LogicalModelSnapshot findLogicalModel( String modelId ) {
+    int index = indexOf( logicalModels, modelId );
+    return index < 0 ? null : logicalModels.get( index );
+  }
+
+  /**
+   * Returns a domain with a model added, or replacing the model with the same id.
+   * 
+   * @param model
+   *          the model
+   * @return the modified domain, sharing the other models with this domain
+   */
+  public DomainSnapshot withLogicalModel( LogicalModelSnapshot model ) {
+    return toBuilder().putLogicalModel( model ).build();
+  }
+
+  public DomainSnapshot withoutLogicalModel( String modelId ) {
+    return toBuilder().removeLogicalModel( modelId ).build();
+  }
+
+  /**
+   * Returns the part of this domain accepted by a filter. The models, tables and categories without rejected
+   * children are shared with this domain.
+   * 
+   * @param filter
+   *          the filter
+   * @return the filtered domain, or this domain if the filter accepts everything
+   */
+  public DomainSnapshot filter( ISnapshotFilter filter ) {
+    List<LogicalModelSnapshot> kept = null;
+    for ( int i = 0; i < logicalModels.size(); i++ ) {
+      LogicalModelSnapshot model = logicalModels.get( i );
+      LogicalModelSnapshot filtered = filter.acceptLogicalModel( model ) ? model.filter( filter ) : null;
+      if ( filtered != model && kept == null ) {
+        kept = new ArrayList<LogicalModelSnapshot>( logicalModels.subList( 0, i ) );
+      }
+      if ( filtered != null && kept != null ) {
+        kept.add( filtered );
+      }
+    }
+    if ( kept == null ) {
+      return this;
+    }
+    return toBuilder().setLogicalModels( PersistentList.copyOf( kept ) ).build();
+  }
+
+  /**
+   * Creates a mutable domain from this snapshot. The logical models, tables, columns and categories are new objects,
+   * the physical models, root concepts, relationships and property values are shared.
+   * 
+   * @return the domain
+   */
+  public Domain toDomain() {
+    Domain domain = new Domain();
+    copyTo( domain );
+    domain.setPhysicalModels( new ArrayList<IPhysicalModel>( physicalModels ) );
+    domain.setConcepts( new ArrayList<Concept>( concepts ) );
+    for ( LogicalModelSnapshot model : logicalModels ) {
+      domain.addLogicalModel( model.toLogicalModel( domain ) );
+    }
+    return domain;
+  }
+
+  /**
+   * A mutable builder of {@link DomainSnapshot}.
+   */
+  public static final class Builder extends ConceptSnapshot.Builder<Builder> {
+
+    private final DomainSnapshot original;
+    private PersistentList<IPhysicalModel> physicalModels = PersistentList.empty();
+    private PersistentList<LogicalModelSnapshot> logicalModels = PersistentList.empty();
+    private PersistentList<Concept> concepts = PersistentList.empty();
+
+    private Builder( DomainSnapshot original ) {
+      super( original );
+      this.original = original;
+      if ( original != null ) {
+        physicalModels = original.physicalModels;
+        logicalModels = original.logicalModels;
+        concepts = original.concepts;
+      }
+    }
+
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
+    public PersistentList<IPhysicalModel> getPhysicalModels() {
+      return physicalModels;
+    }
+
+    public Builder setPhysicalModels( PersistentList<IPhysicalModel> physicalModels ) {
+      this.physicalModels = physicalModels;
+      modified();
+      return this;
+    }
+
+    public Builder addPhysicalModel( IPhysicalModel physicalModel ) {
+      return setPhysicalModels( physicalModels.plus( physicalModel ) );
+    }
+
+    public PersistentList<LogicalModelSnapshot> getLogicalModels() {
+      return logicalModels;
+    }
+
+    public Builder setLogicalModels( PersistentList<LogicalModelSnapshot> logicalModels ) {
+      this.logicalModels = logicalModels;
+      modified();
+      return this;
+    }
+
+    /**
+     * Adds a model, or replaces the model with the same id.
+     * 
+     * @param model
+     *          the model
+     * @return this builder
+     */
+    public Builder putLogicalModel( LogicalModelSnapshot model ) {
+      int index = indexOf( logicalModels, model.getId() );
+      PersistentList<LogicalModelSnapshot> models =
+          index < 0 ? logicalModels.plus( model ) : logicalModels.with( index, model );
+      if ( models != logicalModels ) {
+        setLogicalModels( models );
+      }
+      return this;
+    }
+
+    public Builder removeLogicalModel( String modelId ) {
+      int index = indexOf( logicalModels, modelId );
+      if ( index >= 0 ) {
+        setLogicalModels( logicalModels.minus( index ) );
+      }
+      return this;
+    }
+
+    public PersistentList<Concept> getConcepts() {
+      return concepts;
+    }
+
+    public Builder setConcepts( PersistentList<Concept> concepts ) {
+      this.concepts = concepts;
+      modified();
+      return this;
+    }
+
+    /**
+     * @return the domain, or the original snapshot if the builder was not modified
+     */
+    public DomainSnapshot build() {
+      if ( original != null && !isModified() ) {
+        return original;
+      }
+      return new DomainSnapshot( this );
+    }
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.snapshot;
+
+/**
+ * Selects the parts of a {@link DomainSnapshot} kept by {@link DomainSnapshot#filter(ISnapshotFilter)}. A rejected
+ * concept is removed with its children, and the columns removed from the tables are removed from the categories.
+ * 
+ */
+public interface ISnapshotFilter {
+
+  boolean acceptLogicalModel( LogicalModelSnapshot model );
+
+  boolean acceptLogicalTable( LogicalModelSnapshot model, LogicalTableSnapshot table );
+
+  boolean acceptLogicalColumn( LogicalModelSnapshot model, LogicalTableSnapshot table, LogicalColumnSnapshot column );
+
+  boolean acceptCategory( LogicalModelSnapshot model, CategorySnapshot category );
+}
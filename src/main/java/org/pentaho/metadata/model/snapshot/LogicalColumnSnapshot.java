@@ -0,0 +1,157 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.snapshot;
+
+import org.pentaho.metadata.model.IPhysicalColumn;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.concept.IConcept;
+import org.pentaho.metadata.model.concept.types.AggregationType;
+import org.pentaho.metadata.model.concept.types.DataType;
+import org.pentaho.metadata.model.concept.types.FieldType;
+
+/**
+ * An immutable snapshot of a {@link LogicalColumn}.
+ * 
+ */
+public final class LogicalColumnSnapshot extends ConceptSnapshot {
+
+  private static final long serialVersionUID = 6113604578962338504L;
+
+  private final IPhysicalColumn physicalColumn;
+
+  private LogicalColumnSnapshot( Builder builder ) {
+    super( builder );
+    this.physicalColumn = builder.physicalColumn;
+  }
+
+  private LogicalColumnSnapshot( LogicalColumn column ) {
+    super( column );
+    this.physicalColumn = column.getPhysicalColumn();
+  }
+
+  /**
+   * Takes a snapshot of a logical column.
+   * 
+   * @param column
+   *          the column
+   * @return the snapshot
+   */
+  public static LogicalColumnSnapshot of( LogicalColumn column ) {
+    return new LogicalColumnSnapshot( column );
+  }
+
+  /**
+   * @return a builder for a new column
+   */
+  public static Builder builder() {
+    return new Builder( null );
+  }
+
+  /**
+   * @return a builder initialized with this column
+   */
+  public Builder toBuilder() {
+    return new Builder( this );
+  }
+
+  public IPhysicalColumn getPhysicalColumn() {
+    return physicalColumn;
+  }
+
+  @Override
+  protected IConcept getInheritedConcept() {
+    return physicalColumn;
+  }
+
+  public DataType getDataType() {
+    return (DataType) getProperty( IPhysicalColumn.DATATYPE_PROPERTY );
+  }
+
+  public AggregationType getAggregationType() {
+    return (AggregationType) getProperty( IPhysicalColumn.AGGREGATIONTYPE_PROPERTY );
+  }
+
+  public FieldType getFieldType() {
+    return (FieldType) getProperty( IPhysicalColumn.FIELDTYPE_PROPERTY );
+  }
+
+  /**
+   * Creates a mutable logical column from this snapshot.
+   * 
+   * @param table
+   *          the table of the column
+   * @return the logical column
+   */
+  public LogicalColumn toLogicalColumn( LogicalTable table ) {
+    LogicalColumn column = new LogicalColumn();
+    copyTo( column );
+    column.setLogicalTable( table );
+    column.setPhysicalColumn( physicalColumn );
+    return column;
+  }
+
+  /**
+   * A mutable builder of {@link LogicalColumnSnapshot}.
+   */
+  public static final class Builder extends ConceptSnapshot.Builder<Builder> {
+
+    private final LogicalColumnSnapshot original;
+    private IPhysicalColumn physicalColumn;
+
+    private Builder( LogicalColumnSnapshot original ) {
+      super( original );
+      this.original = original;
+      if ( original != null ) {
+        physicalColumn = original.physicalColumn;
+      }
+    }
+
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
+    public Builder setPhysicalColumn( IPhysicalColumn physicalColumn ) {
+      this.physicalColumn = physicalColumn;
+      modified();
+      return this;
+    }
+
+    public Builder setDataType( DataType dataType ) {
+      return setProperty( IPhysicalColumn.DATATYPE_PROPERTY, dataType );
+    }
+
+    public Builder setAggregationType( AggregationType aggType ) {
+      return setProperty( IPhysicalColumn.AGGREGATIONTYPE_PROPERTY, aggType );
+    }
+
+    public Builder setFieldType( FieldType fieldType ) {
+      return setProperty( IPhysicalColumn.FIELDTYPE_PROPERTY, fieldType );
+    }
+
+    /**
+     * @return the column, or the original snapshot if the builder was not modified
+     */
+    public LogicalColumnSnapshot build() {
+      if ( original != null && !isModified() ) {
+        return original;
+      }
+      return new LogicalColumnSnapshot( this );
+    }
+  }
+}
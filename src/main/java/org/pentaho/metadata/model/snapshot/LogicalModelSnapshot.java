@@ -0,0 +1,406 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.snapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.pentaho.metadata.model.Category;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.IPhysicalModel;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalRelationship;
+import org.pentaho.metadata.model.LogicalTable;
+
+/**
+ * An immutable snapshot of a {@link LogicalModel}, with its tables, relationships and categories. A relationship is
+ * kept only while its tables, and the columns it joins, are in the model: replacing, removing or filtering out a table
+ * drops the relationships it no longer satisfies.
+ * 
+ */
+public final class LogicalModelSnapshot extends ConceptSnapshot {
+
+  private static final long serialVersionUID = -4717823036471367592L;
+
+  private final IPhysicalModel physicalModel;
+  private final PersistentList<LogicalTableSnapshot> logicalTables;
+  private final PersistentList<LogicalRelationshipSnapshot> logicalRelationships;
+  private final PersistentList<CategorySnapshot> categories;
+
+  private LogicalModelSnapshot( Builder builder ) {
+    super( builder );
+    this.physicalModel = builder.physicalModel;
+    this.logicalTables = builder.logicalTables;
+    this.logicalRelationships = builder.logicalRelationships;
+    this.categories = builder.categories;
+  }
+
+  private LogicalModelSnapshot( LogicalModel model ) {
+    super( model );
+    this.physicalModel = model.getPhysicalModel();
+    List<LogicalTableSnapshot> tables = new ArrayList<LogicalTableSnapshot>( model.getLogicalTables().size() );
+    for ( LogicalTable table : model.getLogicalTables() ) {
+      tables.add( LogicalTableSnapshot.of( table ) );
+    }
+    this.logicalTables = PersistentList.copyOf( tables );
+    List<LogicalRelationshipSnapshot> relationships =
+        new ArrayList<LogicalRelationshipSnapshot>( model.getLogicalRelationships().size() );
+    for ( LogicalRelationship relationship : model.getLogicalRelationships() ) {
+      relationships.add( LogicalRelationshipSnapshot.of( relationship ) );
+    }
+    this.logicalRelationships = PersistentList.copyOf( relationships );
+    List<CategorySnapshot> cats = new ArrayList<CategorySnapshot>( model.getCategories().size() );
+    for ( Category category : model.getCategories() ) {
+      cats.add( CategorySnapshot.of( category ) );
+    }
+    this.categories = PersistentList.copyOf( cats );
+  }
+
+  /**
+   * Takes a snapshot of a logical model, its tables and its categories.
+   * 
+   * @param model
+   *          the model
+   * @return the snapshot
+   */
+  public static LogicalModelSnapshot of( LogicalModel model ) {
+    return new LogicalModelSnapshot( model );
+  }
+
+  /**
+   * @return a builder for a new model
+   */
+  public static Builder builder() {
+    return new Builder( null );
+  }
+
+  /**
+   * @return a builder initialized with this model
+   */
+  public Builder toBuilder() {
+    return new Builder( this );
+  }
+
+  public IPhysicalModel getPhysicalModel() {
+    return physicalModel;
+  }
+
+  public PersistentList<LogicalTableSnapshot> getLogicalTables() {
+    return logicalTables;
+  }
+
+  public PersistentList<LogicalRelationshipSnapshot> getLogicalRelationships() {
+    return logicalRelationships;
+  }
+
+  public PersistentList<CategorySnapshot> getCategories() {
+    return categories;
+  }
+
+  public LogicalTableSnapshot findLogicalTable( String tableId ) {
+    int index = indexOf( logicalTables, tableId );
+    return index < 0 ? null : logicalTables.get( index );
+  }
+
+  /**
+   * finds a logical column within the model.
+   * 
+   * @param columnId
+   *          the column to find
+   * @return the column snapshot, or null
+   */
+  public LogicalColumnSnapshot findLogicalColumn( String columnId ) {
+    for ( LogicalTableSnapshot table : logicalTables ) {
+      LogicalColumnSnapshot column = table.findLogicalColumn( columnId );
+      if ( column != null ) {
+        return column;
+      }
+    }
+    return null;
+  }
+
+  public CategorySnapshot findCategory( String categoryId ) {
+    int index = indexOf( categories, categoryId );
+    return index < 0 ? null : categories.get( index );
+  }
+
+  /**
+   * Returns a model with a table added, or replacing the table with the same id.
+   * 
+   * @param table
+   *          the table
+   * @return the modified model, sharing the other tables and the categories with this model. The relationships of a
+   *         replaced table are kept if the new table has the columns they join.
+   */
+  public LogicalModelSnapshot withLogicalTable( LogicalTableSnapshot table ) {
+    return toBuilder().putLogicalTable( table ).build();
+  }
+
+  /**
+   * Returns a model without a table and its relationships.
+   * 
+   * @param tableId
+   *          the id of the table
+   * @return the modified model, or this model if it has no such table
+   */
+  public LogicalModelSnapshot withoutLogicalTable( String tableId ) {
+    return toBuilder().removeLogicalTable( tableId ).build();
+  }
+
+  /**
+   * Returns a model with a category added, or replacing the category with the same id.
+   * 
+   * @param category
+   *          the category
+   * @return the modified model, sharing the tables and the other categories with this model
+   */
+  public LogicalModelSnapshot withCategory( CategorySnapshot category ) {
+    return toBuilder().putCategory( category ).build();
+  }
+
+  public LogicalModelSnapshot withoutCategory( String categoryId ) {
+    return toBuilder().removeCategory( categoryId ).build();
+  }
+
+  LogicalModelSnapshot filter( ISnapshotFilter filter ) {
+    List<LogicalTableSnapshot> keptTables = null;
+    for ( int i = 0; i < logicalTables.size(); i++ ) {
+      LogicalTableSnapshot table = logicalTables.get( i );
+      LogicalTableSnapshot filtered = filter.acceptLogicalTable( this, table ) ? table.filter( filter, this ) : null;
+      if ( filtered != table && keptTables == null ) {
+        keptTables = new ArrayList<LogicalTableSnapshot>( logicalTables.subList( 0, i ) );
+      }
+      if ( filtered != null && keptTables != null ) {
+        keptTables.add( filtered );
+      }
+    }
+
+    // the categories lose the columns removed from the tables
+    Set<String> columnIds = null;
+    if ( keptTables != null ) {
+      columnIds = new HashSet<String>();
+      for ( LogicalTableSnapshot table : keptTables ) {
+        for ( LogicalColumnSnapshot column : table.getLogicalColumns() ) {
+          columnIds.add( column.getId() );
+        }
+      }
+    }
+    List<CategorySnapshot> keptCategories = null;
+    for ( int i = 0; i < categories.size(); i++ ) {
+      CategorySnapshot category = categories.get( i );
+      CategorySnapshot filtered = null;
+      if ( filter.acceptCategory( this, category ) ) {
+        filtered = columnIds == null ? category : category.retainLogicalColumns( columnIds );
+      }
+      if ( filtered != category && keptCategories == null ) {
+        keptCategories = new ArrayList<CategorySnapshot>( categories.subList( 0, i ) );
+      }
+      if ( filtered != null && keptCategories != null ) {
+        keptCategories.add( filtered );
+      }
+    }
+
+    if ( keptTables == null && keptCategories == null ) {
+      return this;
+    }
+    Builder builder = toBuilder();
+    if ( keptTables != null ) {
+      builder.setLogicalTables( PersistentList.copyOf( keptTables ) );
+    }
+    if ( keptCategories != null ) {
+      builder.setCategories( PersistentList.copyOf( keptCategories ) );
+    }
+    return builder.build();
+  }
+
+  /**
+   * Creates a mutable logical model, with its tables, columns, relationships and categories, from this snapshot. The
+   * relationships join the new tables.
+   * 
+   * @param domain
+   *          the domain of the model
+   * @return the logical model
+   */
+  LogicalModel toLogicalModel( Domain domain ) {
+    LogicalModel model = new LogicalModel();
+    copyTo( model );
+    model.setDomain( domain );
+    model.setPhysicalModel( physicalModel );
+    Map<String, LogicalTable> tablesById = new HashMap<String, LogicalTable>();
+    Map<String, LogicalColumn> columnsById = new HashMap<String, LogicalColumn>();
+    for ( LogicalTableSnapshot tableSnapshot : logicalTables ) {
+      LogicalTable table = tableSnapshot.toLogicalTable( model, columnsById );
+      model.addLogicalTable( table );
+      tablesById.put( table.getId(), table );
+    }
+    for ( LogicalRelationshipSnapshot relationship : logicalRelationships ) {
+      model.addLogicalRelationship( relationship.toLogicalRelationship( model, tablesById, columnsById ) );
+    }
+    for ( CategorySnapshot category : categories ) {
+      model.addCategory( category.toCategory( model, columnsById ) );
+    }
+    return model;
+  }
+
+  /**
+   * A mutable builder of {@link LogicalModelSnapshot}.
+   */
+  public static final class Builder extends ConceptSnapshot.Builder<Builder> {
+
+    private final LogicalModelSnapshot original;
+    private IPhysicalModel physicalModel;
+    private PersistentList<LogicalTableSnapshot> logicalTables = PersistentList.empty();
+    private PersistentList<LogicalRelationshipSnapshot> logicalRelationships = PersistentList.empty();
+    private PersistentList<CategorySnapshot> categories = PersistentList.empty();
+
+    private Builder( LogicalModelSnapshot original ) {
+      super( original );
+      this.original = original;
+      if ( original != null ) {
+        physicalModel = original.physicalModel;
+        logicalTables = original.logicalTables;
+        logicalRelationships = original.logicalRelationships;
+        categories = original.categories;
+      }
+    }
+
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
+    public Builder setPhysicalModel( IPhysicalModel physicalModel ) {
+      this.physicalModel = physicalModel;
+      modified();
+      return this;
+    }
+
+    public PersistentList<LogicalTableSnapshot> getLogicalTables() {
+      return logicalTables;
+    }
+
+    public Builder setLogicalTables( PersistentList<LogicalTableSnapshot> logicalTables ) {
+      this.logicalTables = logicalTables;
+      modified();
+      return this;
+    }
+
+    /**
+     * Adds a table, or replaces the table with the same id.
+     * 
+     * @param table
+     *          the table
+     * @return this builder
+     */
+    public Builder putLogicalTable( LogicalTableSnapshot table ) {
+      int index = indexOf( logicalTables, table.getId() );
+      PersistentList<LogicalTableSnapshot> tables =
+          index < 0 ? logicalTables.plus( table ) : logicalTables.with( index, table );
+      if ( tables != logicalTables ) {
+        setLogicalTables( tables );
+      }
+      return this;
+    }
+
+    public Builder removeLogicalTable( String tableId ) {
+      int index = indexOf( logicalTables, tableId );
+      if ( index >= 0 ) {
+        setLogicalTables( logicalTables.minus( index ) );
+      }
+      return this;
+    }
+
+    public PersistentList<LogicalRelationshipSnapshot> getLogicalRelationships() {
+      return logicalRelationships;
+    }
+
+    public Builder setLogicalRelationships( PersistentList<LogicalRelationshipSnapshot> logicalRelationships ) {
+      this.logicalRelationships = logicalRelationships;
+      modified();
+      return this;
+    }
+
+    public Builder addLogicalRelationship( LogicalRelationshipSnapshot relationship ) {
+      return setLogicalRelationships( logicalRelationships.plus( relationship ) );
+    }
+
+    public PersistentList<CategorySnapshot> getCategories() {
+      return categories;
+    }
+
+    public Builder setCategories( PersistentList<CategorySnapshot> categories ) {
+      this.categories = categories;
+      modified();
+      return this;
+    }
+
+    /**
+     * Adds a category, or replaces the category with the same id.
+     * 
+     * @param category
+     *          the category
+     * @return this builder
+     */
+    public Builder putCategory( CategorySnapshot category ) {
+      int index = indexOf( categories, category.getId() );
+      PersistentList<CategorySnapshot> cats =
+          index < 0 ? categories.plus( category ) : categories.with( index, category );
+      if ( cats != categories ) {
+        setCategories( cats );
+      }
+      return this;
+    }
+
+    public Builder removeCategory( String categoryId ) {
+      int index = indexOf( categories, categoryId );
+      if ( index >= 0 ) {
+        setCategories( categories.minus( index ) );
+      }
+      return this;
+    }
+
+    /**
+     * Builds the model. The relationships of the tables or columns missing from the model are dropped.
+     * 
+     * @return the model, or the original snapshot if the builder was not modified
+     */
+    public LogicalModelSnapshot build() {
+      if ( original != null && !isModified() ) {
+        return original;
+      }
+      List<LogicalRelationshipSnapshot> kept = null;
+      for ( int i = 0; i < logicalRelationships.size(); i++ ) {
+        LogicalRelationshipSnapshot relationship = logicalRelationships.get( i );
+        boolean resolved = relationship.isResolvedIn( this );
+        if ( !resolved && kept == null ) {
+          kept = new ArrayList<LogicalRelationshipSnapshot>( logicalRelationships.subList( 0, i ) );
+        } else if ( resolved && kept != null ) {
+          kept.add( relationship );
+        }
+      }
+      if ( kept != null ) {
+        logicalRelationships = PersistentList.copyOf( kept );
+      }
+      return new LogicalModelSnapshot( this );
+    }
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.snapshot;
+
+import java.util.Map;
+
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalRelationship;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.concept.IConcept;
+import org.pentaho.metadata.model.concept.types.RelationshipType;
+
+/**
+ * An immutable snapshot of a {@link LogicalRelationship}. The tables and columns are referenced by id, like the
+ * columns of a {@link CategorySnapshot}, so that the relationship follows the tables replaced in its model.
+ * 
+ */
+public final class LogicalRelationshipSnapshot extends ConceptSnapshot {
+
+  private static final long serialVersionUID = 2254187409650231457L;
+
+  private final String fromTableId;
+  private final String fromColumnId;
+  private final String toTableId;
+  private final String toColumnId;
+  private final String relationshipDescription;
+
+  private LogicalRelationshipSnapshot( Builder builder ) {
+    super( builder );
+    this.fromTableId = builder.fromTableId;
+    this.fromColumnId = builder.fromColumnId;
+    this.toTableId = builder.toTableId;
+    this.toColumnId = builder.toColumnId;
+    this.relationshipDescription = builder.relationshipDescription;
+  }
+
+  private LogicalRelationshipSnapshot( LogicalRelationship relationship ) {
+    super( relationship );
+    this.fromTableId = idOf( relationship.getFromTable() );
+    this.fromColumnId = idOf( relationship.getFromColumn() );
+    this.toTableId = idOf( relationship.getToTable() );
+    this.toColumnId = idOf( relationship.getToColumn() );
+    this.relationshipDescription = relationship.getRelationshipDescription();
+  }
+
+  private static String idOf( IConcept concept ) {
+    return concept == null ? null : concept.getId();
+  }
+
+  /**
+   * Takes a snapshot of a logical relationship.
+   * 
+   * @param relationship
+   *          the relationship
+   * @return the snapshot
+   */
+  public static LogicalRelationshipSnapshot of( LogicalRelationship relationship ) {
+    return new LogicalRelationshipSnapshot( relationship );
+  }
+
+  /**
+   * @return a builder for a new relationship
+   */
+  public static Builder builder() {
+    return new Builder( null );
+  }
+
+  /**
+   * @return a builder initialized with this relationship
+   */
+  public Builder toBuilder() {
+    return new Builder( this );
+  }
+
+  public String getFromTableId() {
+    return fromTableId;
+  }
+
+  public String getFromColumnId() {
+    return fromColumnId;
+  }
+
+  public String getToTableId() {
+    return toTableId;
+  }
+
+  public String getToColumnId() {
+    return toColumnId;
+  }
+
+  public String getRelationshipDescription() {
+    return relationshipDescription;
+  }
+
+  public RelationshipType getRelationshipType() {
+    return (RelationshipType) getProperty( LogicalRelationship.RELATIONSHIP_TYPE );
+  }
+
+  public String getComplexJoin() {
+    return (String) getProperty( LogicalRelationship.COMPLEX_JOIN );
+  }
+
+  /**
+   * Tells if the tables and columns of the relationship are in a model.
+   * 
+   * @param model
+   *          the builder of the model
+   * @return true if both tables are in the model, with the joined columns
+   */
+  boolean isResolvedIn( LogicalModelSnapshot.Builder model ) {
+    return isResolved( model, fromTableId, fromColumnId ) && isResolved( model, toTableId, toColumnId );
+  }
+
+  private static boolean isResolved( LogicalModelSnapshot.Builder model, String tableId, String columnId ) {
+    if ( tableId == null ) {
+      return false;
+    }
+    int index = indexOf( model.getLogicalTables(), tableId );
+    if ( index < 0 ) {
+      return false;
+    }
+    // complex joins have no columns
+    return columnId == null || model.getLogicalTables().get( index ).findLogicalColumn( columnId ) != null;
+  }
+
+  /**
+   * Creates a mutable logical relationship between the tables and columns of a model.
+   * 
+   * @param model
+   *          the model of the relationship
+   * @param tablesById
+   *          the tables of the model, by id
+   * @param columnsById
+   *          the columns of the model, by id
+   * @return the logical relationship
+   */
+  LogicalRelationship toLogicalRelationship( LogicalModel model, Map<String, LogicalTable> tablesById,
+      Map<String, LogicalColumn> columnsById ) {
+    LogicalRelationship relationship =
+        new LogicalRelationship( model, tablesById.get( fromTableId ), tablesById.get( toTableId ),
+            fromColumnId == null ? null : columnsById.get( fromColumnId ),
+            toColumnId == null ? null : columnsById.get( toColumnId ) );
+    copyTo( relationship );
+    relationship.setRelationshipDescription( relationshipDescription );
+    return relationship;
+  }
+
+  /**
+   * A mutable builder of {@link LogicalRelationshipSnapshot}.
+   */
+  public static final class Builder extends ConceptSnapshot.Builder<Builder> {
+
+    private final LogicalRelationshipSnapshot original;
+    private String fromTableId;
+    private String fromColumnId;
+    private String toTableId;
+    private String toColumnId;
+    private String relationshipDescription;
+
+    private Builder( LogicalRelationshipSnapshot original ) {
+      super( original );
+      this.original = original;
+      if ( original != null ) {
+        fromTableId = original.fromTableId;
+        fromColumnId = original.fromColumnId;
+        toTableId = original.toTableId;
+        toColumnId = original.toColumnId;
+        relationshipDescription = original.relationshipDescription;
+      } else {
+        setProperty( LogicalRelationship.COMPLEX, Boolean.FALSE );
+        setProperty( LogicalRelationship.RELATIONSHIP_TYPE, RelationshipType.UNDEFINED );
+      }
+    }
+
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
+    public Builder setFrom( String tableId, String columnId ) {
+      this.fromTableId = tableId;
+      this.fromColumnId = columnId;
+      modified();
+      return this;
+    }
+
+    public Builder setTo( String tableId, String columnId ) {
+      this.toTableId = tableId;
+      this.toColumnId = columnId;
+      modified();
+      return this;
+    }
+
+    public Builder setRelationshipDescription( String relationshipDescription ) {
+      this.relationshipDescription = relationshipDescription;
+      modified();
+      return this;
+    }
+
+    public Builder setRelationshipType( RelationshipType relationshipType ) {
+      return setProperty( LogicalRelationship.RELATIONSHIP_TYPE, relationshipType );
+    }
+
+    /**
+     * Makes the relationship a complex join.
+     * 
+     * @param complexJoin
+     *          the join formula
+     * @return this builder
+     */
+    public Builder setComplexJoin( String complexJoin ) {
+      setProperty( LogicalRelationship.COMPLEX, Boolean.TRUE );
+      return setProperty( LogicalRelationship.COMPLEX_JOIN, complexJoin );
+    }
+
+    /**
+     * @return the relationship, or the original snapshot if the builder was not modified
+     */
+    public LogicalRelationshipSnapshot build() {
+      if ( original != null && !isModified() ) {
+        return original;
+      }
+      return new LogicalRelationshipSnapshot( this );
+    }
+  }
+}
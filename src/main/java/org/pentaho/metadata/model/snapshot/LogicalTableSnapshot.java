@@ -0,0 +1,234 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.metadata.model.IPhysicalTable;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.concept.IConcept;
+
+/**
+ * An immutable snapshot of a {@link LogicalTable} and its columns.
+ * 
+ */
+public final class LogicalTableSnapshot extends ConceptSnapshot {
+
+  private static final long serialVersionUID = -1795186468409406131L;
+
+  private final IPhysicalTable physicalTable;
+  private final PersistentList<LogicalColumnSnapshot> logicalColumns;
+
+  private LogicalTableSnapshot( Builder builder ) {
+    super( builder );
+    this.physicalTable = builder.physicalTable;
+    this.logicalColumns = builder.logicalColumns;
+  }
+
+  private LogicalTableSnapshot( LogicalTable table ) {
+    super( table );
+    this.physicalTable = table.getPhysicalTable();
+    List<LogicalColumnSnapshot> columns = new ArrayList<LogicalColumnSnapshot>( table.getLogicalColumns().size() );
+    for ( LogicalColumn column : table.getLogicalColumns() ) {
+      columns.add( LogicalColumnSnapshot.of( column ) );
+    }
+    this.logicalColumns = PersistentList.copyOf( columns );
+  }
+
+  /**
+   * Takes a snapshot of a logical table and its columns.
+   * 
+   * @param table
+   *          the table
+   * @return the snapshot
+   */
+  public static LogicalTableSnapshot of( LogicalTable table ) {
+    return new LogicalTableSnapshot( table );
+  }
+
+  /**
+   * @return a builder for a new table
+   */
+  public static Builder builder() {
+    return new Builder( null );
+  }
+
+  /**
+   * @return a builder initialized with this table
+   */
+  public Builder toBuilder() {
+    return new Builder( this );
+  }
+
+  public IPhysicalTable getPhysicalTable() {
+    return physicalTable;
+  }
+
+  @Override
+  protected IConcept getInheritedConcept() {
+    return physicalTable;
+  }
+
+  public PersistentList<LogicalColumnSnapshot> getLogicalColumns() {
+    return logicalColumns;
+  }
+
+  public LogicalColumnSnapshot findLogicalColumn( String id ) {
+    int index = indexOf( logicalColumns, id );
+    return index < 0 ? null : logicalColumns.get( index );
+  }
+
+  /**
+   * Returns a table with a column added, or replacing the column with the same id.
+   * 
+   * @param column
+   *          the column
+   * @return the modified table, sharing the other columns with this table
+   */
+  public LogicalTableSnapshot withLogicalColumn( LogicalColumnSnapshot column ) {
+    return toBuilder().putLogicalColumn( column ).build();
+  }
+
+  /**
+   * Returns a table without a column.
+   * 
+   * @param id
+   *          the id of the column
+   * @return the modified table, or this table if it has no such column
+   */
+  public LogicalTableSnapshot withoutLogicalColumn( String id ) {
+    return toBuilder().removeLogicalColumn( id ).build();
+  }
+
+  LogicalTableSnapshot filter( ISnapshotFilter filter, LogicalModelSnapshot model ) {
+    List<LogicalColumnSnapshot> kept = null;
+    for ( int i = 0; i < logicalColumns.size(); i++ ) {
+      LogicalColumnSnapshot column = logicalColumns.get( i );
+      boolean accepted = filter.acceptLogicalColumn( model, this, column );
+      if ( !accepted && kept == null ) {
+        kept = new ArrayList<LogicalColumnSnapshot>( logicalColumns.subList( 0, i ) );
+      } else if ( accepted && kept != null ) {
+        kept.add( column );
+      }
+    }
+    if ( kept == null ) {
+      return this;
+    }
+    Builder builder = toBuilder();
+    builder.setLogicalColumns( PersistentList.copyOf( kept ) );
+    return builder.build();
+  }
+
+  /**
+   * Creates a mutable logical table and columns from this snapshot.
+   * 
+   * @param model
+   *          the model of the table
+   * @param columnsById
+   *          receives the created columns, by id
+   * @return the logical table
+   */
+  LogicalTable toLogicalTable( LogicalModel model, Map<String, LogicalColumn> columnsById ) {
+    LogicalTable table = new LogicalTable( model, physicalTable );
+    copyTo( table );
+    for ( LogicalColumnSnapshot columnSnapshot : logicalColumns ) {
+      LogicalColumn column = columnSnapshot.toLogicalColumn( table );
+      table.addLogicalColumn( column );
+      columnsById.put( column.getId(), column );
+    }
+    return table;
+  }
+
+  /**
+   * A mutable builder of {@link LogicalTableSnapshot}.
+   */
+  public static final class Builder extends ConceptSnapshot.Builder<Builder> {
+
+    private final LogicalTableSnapshot original;
+    private IPhysicalTable physicalTable;
+    private PersistentList<LogicalColumnSnapshot> logicalColumns = PersistentList.empty();
+
+    private Builder( LogicalTableSnapshot original ) {
+      super( original );
+      this.original = original;
+      if ( original != null ) {
+        physicalTable = original.physicalTable;
+        logicalColumns = original.logicalColumns;
+      }
+    }
+
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
+    public Builder setPhysicalTable( IPhysicalTable physicalTable ) {
+      this.physicalTable = physicalTable;
+      modified();
+      return this;
+    }
+
+    public PersistentList<LogicalColumnSnapshot> getLogicalColumns() {
+      return logicalColumns;
+    }
+
+    public Builder setLogicalColumns( PersistentList<LogicalColumnSnapshot> logicalColumns ) {
+      this.logicalColumns = logicalColumns;
+      modified();
+      return this;
+    }
+
+    /**
+     * Adds a column, or replaces the column with the same id.
+     * 
+     * @param column
+     *          the column
+     * @return this builder
+     */
+    public Builder putLogicalColumn( LogicalColumnSnapshot column ) {
+      int index = indexOf( logicalColumns, column.getId() );
+      PersistentList<LogicalColumnSnapshot> columns =
+          index < 0 ? logicalColumns.plus( column ) : logicalColumns.with( index, column );
+      if ( columns != logicalColumns ) {
+        setLogicalColumns( columns );
+      }
+      return this;
+    }
+
+    public Builder removeLogicalColumn( String id ) {
+      int index = indexOf( logicalColumns, id );
+      if ( index >= 0 ) {
+        setLogicalColumns( logicalColumns.minus( index ) );
+      }
+      return this;
+    }
+
+    /**
+     * @return the table, or the original snapshot if the builder was not modified
+     */
+    public LogicalTableSnapshot build() {
+      if ( original != null && !isModified() ) {
+        return original;
+      }
+      return new LogicalTableSnapshot( this );
+    }
+  }
+}
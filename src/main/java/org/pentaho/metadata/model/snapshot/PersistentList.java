@@ -0,0 +1,142 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.snapshot;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list used by the snapshot classes. The update methods never modify the list, they return a new list
+ * which shares the elements of this one, or the list itself when nothing changes. The children of a metadata concept
+ * are few, so the element references are held in a flat array and a modification copies the array, while the
+ * elements themselves, and therefore the unchanged subtrees of a snapshot, are shared.
+ * 
+ * @param <E>
+ *          the element type
+ */
+public final class PersistentList<E> extends AbstractList<E> implements RandomAccess, Serializable {
+
+  private static final long serialVersionUID = 2719368307419152271L;
+
+  private static final Object[] NO_ELEMENTS = new Object[0];
+
+  @SuppressWarnings( "rawtypes" )
+  private static final PersistentList EMPTY = new PersistentList( NO_ELEMENTS );
+
+  private final Object[] elements;
+
+  private PersistentList( Object[] elements ) {
+    this.elements = elements;
+  }
+
+  /**
+   * @return the empty list
+   */
+  @SuppressWarnings( "unchecked" )
+  public static <E> PersistentList<E> empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns a list with the elements of a collection. A persistent list is returned as is.
+   * 
+   * @param elements
+   *          the elements, may be null
+   * @return the list
+   */
+  @SuppressWarnings( "unchecked" )
+  public static <E> PersistentList<E> copyOf( Collection<? extends E> elements ) {
+    if ( elements instanceof PersistentList ) {
+      return (PersistentList<E>) elements;
+    }
+    if ( elements == null || elements.isEmpty() ) {
+      return EMPTY;
+    }
+    return new PersistentList<E>( elements.toArray() );
+  }
+
+  @Override
+  @SuppressWarnings( "unchecked" )
+  public E get( int index ) {
+    if ( index < 0 || index >= elements.length ) {
+      throw new IndexOutOfBoundsException(
+          "Index: " + index + ", Size: " + elements.length ); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    return (E) elements[index];
+  }
+
+  @Override
+  public int size() {
+    return elements.length;
+  }
+
+  /**
+   * Returns a list with the element at an index replaced.
+   * 
+   * @param index
+   *          the index of the element to replace
+   * @param element
+   *          the new element
+   * @return the modified list, or this list if the element is already at the index
+   */
+  public PersistentList<E> with( int index, E element ) {
+    if ( get( index ) == element ) {
+      return this;
+    }
+    Object[] copy = elements.clone();
+    copy[index] = element;
+    return new PersistentList<E>( copy );
+  }
+
+  /**
+   * Returns a list with an element appended.
+   * 
+   * @param element
+   *          the element to add
+   * @return the modified list
+   */
+  public PersistentList<E> plus( E element ) {
+    Object[] copy = new Object[elements.length + 1];
+    System.arraycopy( elements, 0, copy, 0, elements.length );
+    copy[elements.length] = element;
+    return new PersistentList<E>( copy );
+  }
+
+  /**
+   * Returns a list without the element at an index.
+   * 
+   * @param index
+   *          the index of the element to remove
+   * @return the modified list
+   */
+  public PersistentList<E> minus( int index ) {
+    get( index );
+    if ( elements.length == 1 ) {
+      return empty();
+    }
+    Object[] copy = new Object[elements.length - 1];
+    System.arraycopy( elements, 0, copy, 0, index );
+    System.arraycopy( elements, index + 1, copy, index, elements.length - index - 1 );
+    return new PersistentList<E>( copy );
+  }
+
+  private Object readResolve() {
+    return elements.length == 0 ? EMPTY : this;
+  }
+}
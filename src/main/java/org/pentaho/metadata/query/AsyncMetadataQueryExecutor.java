@@ -0,0 +1,331 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.metadata.model.ICancellableMetadataQueryExec;
+import org.pentaho.metadata.model.IMetadataQueryExec;
+import org.pentaho.metadata.model.IPhysicalModel;
+import org.pentaho.metadata.query.model.Query;
+
+/**
+ * Runs metadata queries asynchronously. {@link #executeQueryAsync} returns at once with a future of the result, the
+ * blocking {@link IMetadataQueryExec#executeQuery(Query)} runs on the executor of this class. Unless an executor is
+ * supplied, every query runs on its own virtual thread where the JVM has them, or on a daemon thread of a cached pool
+ * otherwise.
+ * <p>
+ * The number of queries running at once against a physical model can be limited with
+ * {@link #setConcurrencyLimit(String, int)} or {@link #setDefaultConcurrencyLimit(int)}. Queries above the limit wait
+ * in a queue without holding a thread.
+ * <p>
+ * Cancelling a future cancels the query: {@link ICancellableMetadataQueryExec}s cancel their statement or
+ * transformation, a queued query is not started, and a result produced after the cancellation is closed.
+ * 
+ */
+public class AsyncMetadataQueryExecutor {
+
+  private static final Log logger = LogFactory.getLog( AsyncMetadataQueryExecutor.class );
+
+  private final Executor executor;
+
+  private volatile int defaultConcurrencyLimit;
+
+  private final Map<String, Integer> concurrencyLimits = new ConcurrentHashMap<String, Integer>();
+
+  private final Map<String, Limiter> limiters = new HashMap<String, Limiter>();
+
+  /**
+   * Creates an executor running queries on virtual threads where available.
+   */
+  public AsyncMetadataQueryExecutor() {
+    this( createDefaultExecutor() );
+  }
+
+  /**
+   * @param executor
+   *          the executor the queries run on
+   */
+  public AsyncMetadataQueryExecutor( Executor executor ) {
+    this.executor = executor;
+  }
+
+  /**
+   * @return an executor starting a virtual thread per task if the JVM supports them, otherwise a cached pool of daemon
+   *         threads
+   */
+  public static ExecutorService createDefaultExecutor() {
+    try {
+      // Java 21 and later, looked up by reflection to keep running on older JVMs
+      return (ExecutorService) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null ); //$NON-NLS-1$
+    } catch ( Exception e ) {
+      logger.debug( "virtual threads are not available, using platform threads" ); //$NON-NLS-1$
+    }
+    return Executors.newCachedThreadPool( new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      public Thread newThread( Runnable r ) {
+        Thread thread = new Thread( r, "metadata-query-" + count.incrementAndGet() ); //$NON-NLS-1$
+        thread.setDaemon( true );
+        return thread;
+      }
+    } );
+  }
+
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  public int getDefaultConcurrencyLimit() {
+    return defaultConcurrencyLimit;
+  }
+
+  /**
+   * @param defaultConcurrencyLimit
+   *          the number of queries running at once against a physical model without a limit of its own, 0 for no limit
+   */
+  public void setDefaultConcurrencyLimit( int defaultConcurrencyLimit ) {
+    this.defaultConcurrencyLimit = defaultConcurrencyLimit;
+  }
+
+  /**
+   * @param physicalModelId
+   *          id of the physical model
+   * @param limit
+   *          the number of queries running at once against the physical model, 0 for no limit
+   */
+  public void setConcurrencyLimit( String physicalModelId, int limit ) {
+    concurrencyLimits.put( physicalModelId, limit );
+  }
+
+  /**
+   * @return the number of queries waiting for the concurrency limit of the physical model
+   */
+  public int getQueuedCount( String physicalModelId ) {
+    synchronized ( limiters ) {
+      Limiter limiter = limiters.get( physicalModelId );
+      return limiter != null ? limiter.queue.size() : 0;
+    }
+  }
+
+  /**
+   * Runs the query on the executor. The query executor must not be used for other queries until the future completes.
+   * 
+   * @param exec
+   *          the executor running the query, with its parameters and settings applied
+   * @param query
+   *          the query
+   * @return the future of the result, completed exceptionally if the query fails or returns no result
+   */
+  public CompletableFuture<IPentahoResultSet> executeQueryAsync( final IMetadataQueryExec exec, final Query query ) {
+    QueryFuture future = new QueryFuture( exec );
+    acquire( new QueryTask( exec, query, future, getPhysicalModelId( query ) ) );
+    return future;
+  }
+
+  private void runQuery( IMetadataQueryExec exec, Query query, QueryFuture future ) {
+    if ( !future.start() ) {
+      return;
+    }
+    try {
+      IPentahoResultSet result = exec.executeQuery( query );
+      if ( !future.finish() ) {
+        // cancelled while the query ran
+        if ( result != null ) {
+          result.closeConnection();
+        }
+      } else if ( result == null ) {
+        future.completeExceptionally( new IllegalStateException( "query returned no result" ) ); //$NON-NLS-1$
+      } else if ( !future.complete( result ) ) {
+        // cancelled right after the query finished
+        result.closeConnection();
+      }
+    } catch ( Throwable t ) {
+      future.finish();
+      future.completeExceptionally( t );
+    }
+  }
+
+  private String getPhysicalModelId( Query query ) {
+    IPhysicalModel physicalModel =
+        query.getLogicalModel() != null ? query.getLogicalModel().getPhysicalModel() : null;
+    return physicalModel != null ? physicalModel.getId() : null;
+  }
+
+  private int getLimit( String key ) {
+    Integer limit = key != null ? concurrencyLimits.get( key ) : null;
+    return limit != null ? limit : defaultConcurrencyLimit;
+  }
+
+  private void acquire( QueryTask task ) {
+    int limit = getLimit( task.key );
+    if ( limit > 0 ) {
+      synchronized ( limiters ) {
+        Limiter limiter = limiters.get( task.key );
+        if ( limiter == null ) {
+          limiter = new Limiter();
+          limiters.put( task.key, limiter );
+        }
+        if ( limiter.running >= limit ) {
+          limiter.queue.add( task );
+          return;
+        }
+        limiter.running++;
+        task.permit = limiter;
+      }
+    }
+    execute( task );
+  }
+
+  /**
+   * Returns the permit of a task, to the next query waiting for it if the limit allows. A task took a permit if the
+   * physical model had a limit when the task was submitted, changing the limit only affects later queries.
+   */
+  private void release( QueryTask task ) {
+    QueryTask next = null;
+    synchronized ( limiters ) {
+      Limiter limiter = task.permit;
+      if ( limiter == null ) {
+        return;
+      }
+      task.permit = null;
+      int limit = getLimit( task.key );
+      if ( limit <= 0 || limiter.running <= limit ) {
+        next = limiter.queue.poll();
+      }
+      if ( next != null ) {
+        // the permit passes on to the next query
+        next.permit = limiter;
+      } else {
+        limiter.running--;
+        if ( limiter.running <= 0 && limiter.queue.isEmpty() && limiters.get( task.key ) == limiter ) {
+          limiters.remove( task.key );
+        }
+      }
+    }
+    if ( next != null ) {
+      execute( next );
+    }
+  }
+
+  private void execute( QueryTask task ) {
+    try {
+      executor.execute( task );
+    } catch ( RejectedExecutionException e ) {
+      task.future.completeExceptionally( e );
+      release( task );
+    }
+  }
+
+  /**
+   * Queries running and waiting for a physical model.
+   */
+  private static class Limiter {
+    int running;
+
+    final Deque<QueryTask> queue = new ArrayDeque<QueryTask>();
+  }
+
+  /**
+   * A query submitted to the executor.
+   */
+  private class QueryTask implements Runnable {
+
+    private final IMetadataQueryExec exec;
+
+    private final Query query;
+
+    private final QueryFuture future;
+
+    private final String key;
+
+    /** the limiter this task holds a permit of, guarded by the limiters */
+    private Limiter permit;
+
+    QueryTask( IMetadataQueryExec exec, Query query, QueryFuture future, String key ) {
+      this.exec = exec;
+      this.query = query;
+      this.future = future;
+      this.key = key;
+    }
+
+    public void run() {
+      try {
+        runQuery( exec, query, future );
+      } finally {
+        release( this );
+      }
+    }
+  }
+
+  /**
+   * A future cancelling the query it stands for.
+   */
+  private static class QueryFuture extends CompletableFuture<IPentahoResultSet> {
+
+    private final IMetadataQueryExec exec;
+
+    private boolean running;
+
+    QueryFuture( IMetadataQueryExec exec ) {
+      this.exec = exec;
+    }
+
+    synchronized boolean start() {
+      if ( isDone() ) {
+        return false;
+      }
+      running = true;
+      return true;
+    }
+
+    /**
+     * @return false if the future was cancelled while the query ran
+     */
+    synchronized boolean finish() {
+      running = false;
+      return !isCancelled();
+    }
+
+    @Override
+    public boolean cancel( boolean mayInterruptIfRunning ) {
+      boolean cancelled = super.cancel( mayInterruptIfRunning );
+      boolean cancelQuery;
+      synchronized ( this ) {
+        cancelQuery = cancelled && running;
+      }
+      if ( cancelQuery && exec instanceof ICancellableMetadataQueryExec ) {
+        ( (ICancellableMetadataQueryExec) exec ).cancel();
+      }
+      return cancelled;
+    }
+  }
+}
@@ -35,6 +35,7 @@ import org.pentaho.metadata.model.concept.types.TargetColumnType;
 import org.pentaho.metadata.query.impl.sql.MappedQuery;
 import org.pentaho.metadata.query.impl.sql.Path;
 import org.pentaho.metadata.query.impl.sql.SqlAndTables;
+import org.pentaho.metadata.query.impl.sql.SqlGenerationRequest;
 import org.pentaho.metadata.query.impl.sql.SqlGenerator;
 import org.pentaho.metadata.query.model.Constraint;
 import org.pentaho.metadata.query.model.Order;
@@ -79,6 +80,14 @@ public class AdvancedSqlGenerator extends SqlGenerator {
     }
   }
 
+  @Override
+  protected MappedQuery getSQL( SqlGenerationRequest request ) throws PentahoMetadataException {
+    // pages and samples are not supported by the alias aware generation
+    return getSQL( request.getModel(), request.getSelections(), request.getConditions(), request.getOrderBy(),
+        request.getDatabaseMeta(), request.getLocale(), request.getParameters(), request.isGenAsPreparedStatement(),
+        request.isDisableDistinct(), request.getLimit(), request.getSecurityConstraint() );
+  }
+
   @Override
   protected MappedQuery getSQL( LogicalModel model, List<Selection> selections, List<Constraint> constraints,
                                 List<Order> orderbys, DatabaseMeta databaseMeta, String locale,
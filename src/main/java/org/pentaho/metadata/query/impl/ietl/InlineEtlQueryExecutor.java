@@ -18,10 +18,13 @@
 package org.pentaho.metadata.query.impl.ietl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -51,6 +54,7 @@ import org.pentaho.di.trans.steps.sort.SortRowsMeta;
 import org.pentaho.di.trans.steps.textfileinput.TextFileInputField;
 import org.pentaho.metadata.messages.Messages;
 import org.pentaho.metadata.model.Category;
+import org.pentaho.metadata.model.ICancellableMetadataQueryExec;
 import org.pentaho.metadata.model.InlineEtlPhysicalColumn;
 import org.pentaho.metadata.model.InlineEtlPhysicalModel;
 import org.pentaho.metadata.model.LogicalColumn;
@@ -72,7 +76,7 @@ import org.pentaho.metadata.query.model.util.QueryModelMetaData;
  * @author Will Gorman (wgorman@pentaho.com)
  * 
  */
-public class InlineEtlQueryExecutor extends BaseMetadataQueryExec {
+public class InlineEtlQueryExecutor extends BaseMetadataQueryExec implements ICancellableMetadataQueryExec {
 
   private static final String __FORMULA_ = "__FORMULA_"; //$NON-NLS-1$
 
@@ -82,6 +86,9 @@ public class InlineEtlQueryExecutor extends BaseMetadataQueryExec {
 
   private String csvFileLoc = null;
 
+  private final Set<Trans> runningTransformations =
+      Collections.newSetFromMap( new ConcurrentHashMap<Trans, Boolean>() );
+
   @Override
   public void setParameter( Parameter param, Object value ) {
 
@@ -106,6 +113,15 @@ public class InlineEtlQueryExecutor extends BaseMetadataQueryExec {
     return false;
   }
 
+  /**
+   * Stops the transformations of the running queries, which then return no result.
+   */
+  public void cancel() {
+    for ( Trans trans : runningTransformations ) {
+      trans.stopAll();
+    }
+  }
+
   protected String getTransformLocation() {
     return transformLocation;
   }
@@ -270,6 +286,10 @@ public class InlineEtlQueryExecutor extends BaseMetadataQueryExec {
       throw new UnsupportedOperationException( Messages
           .getErrorString( "InlineEtlQueryExecutor.ERROR_0003_LIMIT_NOT_SUPPORTED" ) );
     }
+    if ( query.getOffset() > 0 || !query.getKeyset().isEmpty() ) {
+      throw new UnsupportedOperationException( Messages
+          .getErrorString( "InlineEtlQueryExecutor.ERROR_0004_PAGING_NOT_SUPPORTED" ) );
+    }
 
     // resolve any missing parameters with default values
     if ( parameters == null && query.getParameters().size() > 0 ) {
@@ -571,10 +591,19 @@ public class InlineEtlQueryExecutor extends BaseMetadataQueryExec {
 
     listener.registerAsStepListener( trans, query, fieldNameMap );
 
-    trans.startThreads();
-    trans.waitUntilFinished();
+    runningTransformations.add( trans );
+    try {
+      trans.startThreads();
+      trans.waitUntilFinished();
+    } finally {
+      runningTransformations.remove( trans );
+    }
     trans.cleanup();
 
+    if ( trans.isStopped() ) {
+      logger.debug( "query cancelled" ); //$NON-NLS-1$
+      return null;
+    }
     return listener.results;
   }
 
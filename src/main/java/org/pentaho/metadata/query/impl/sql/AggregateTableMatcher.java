@@ -0,0 +1,209 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.SqlPhysicalColumn;
+import org.pentaho.metadata.model.SqlPhysicalTable;
+import org.pentaho.metadata.model.aggregate.AggregateColumn;
+import org.pentaho.metadata.model.aggregate.AggregateTable;
+import org.pentaho.metadata.model.concept.types.AggregationType;
+import org.pentaho.metadata.model.concept.types.TargetColumnType;
+import org.pentaho.metadata.query.model.Order;
+import org.pentaho.metadata.query.model.Selection;
+
+/**
+ * Finds the aggregate table able to answer a query and maps the selections of the query onto it.<br>
+ * <br>
+ * An aggregate table answers a query when every aggregated selection and order is one of its measures, every other
+ * selection and order as well as every column used in the constraints is one of its grouping columns, and none of the
+ * constraints uses an aggregate. Only measures that can be aggregated again are used: sums and counts are summed,
+ * minimums and maximums are taken again. A query without measures must be a distinct query.<br>
+ * <br>
+ * The aggregate table is represented by a single logical table, of which the columns read from the aggregate columns,
+ * so that the regular SQL generation can render the query against it.
+ */
+public class AggregateTableMatcher {
+
+  private final AggregateTable aggregateTable;
+
+  private final LogicalTable logicalTable;
+
+  private final Map<AggregateColumn, LogicalColumn> columns = new IdentityHashMap<AggregateColumn, LogicalColumn>();
+
+  public AggregateTableMatcher( AggregateTable aggregateTable ) {
+    this.aggregateTable = aggregateTable;
+    logicalTable = new LogicalTable();
+    logicalTable.setId( aggregateTable.getName() != null ? aggregateTable.getName() : aggregateTable.getTargetTable() );
+    logicalTable.setProperty( SqlPhysicalTable.TARGET_TABLE, aggregateTable.getTargetTable() );
+    if ( aggregateTable.getTargetSchema() != null ) {
+      logicalTable.setProperty( SqlPhysicalTable.TARGET_SCHEMA, aggregateTable.getTargetSchema() );
+    }
+  }
+
+  /**
+   * Finds the smallest aggregate table of the model able to answer a query.
+   * 
+   * @param model
+   *          the logical model, declaring the aggregate tables
+   * @param selections
+   *          the selections of the query
+   * @param orderBy
+   *          the orders of the query
+   * @param constraintFormulas
+   *          the parsed constraints of the query, including the security constraint
+   * @param disableDistinct
+   *          true if the query is not a distinct query
+   * @return the matcher for the aggregate table, null if no aggregate table answers the query
+   */
+  @SuppressWarnings( "unchecked" )
+  public static AggregateTableMatcher match( LogicalModel model, List<Selection> selections, List<Order> orderBy,
+      List<SqlOpenFormula> constraintFormulas, boolean disableDistinct ) {
+    List<AggregateTable> aggregateTables =
+        (List<AggregateTable>) model.getProperty( LogicalModel.PROPERTY_AGGREGATE_TABLES );
+    if ( aggregateTables == null || selections.isEmpty() ) {
+      return null;
+    }
+    AggregateTable best = null;
+    for ( AggregateTable aggregateTable : aggregateTables ) {
+      if ( isAnswering( aggregateTable, selections, orderBy, constraintFormulas, disableDistinct )
+          && ( best == null || getRowCount( aggregateTable ) < getRowCount( best ) ) ) {
+        best = aggregateTable;
+      }
+    }
+    return best != null ? new AggregateTableMatcher( best ) : null;
+  }
+
+  private static boolean isAnswering( AggregateTable aggregateTable, List<Selection> selections,
+      List<Order> orderBy, List<SqlOpenFormula> constraintFormulas, boolean disableDistinct ) {
+    List<Selection> all = new ArrayList<Selection>( selections );
+    if ( orderBy != null ) {
+      for ( Order order : orderBy ) {
+        all.add( order.getSelection() );
+      }
+    }
+    boolean measures = false;
+    for ( Selection selection : all ) {
+      if ( findColumn( aggregateTable, selection ) == null ) {
+        return false;
+      }
+      measures |= selection.hasAggregate();
+    }
+    for ( SqlOpenFormula formula : constraintFormulas ) {
+      if ( formula.hasAggregate() || formula.hasAggregateFunction() ) {
+        return false;
+      }
+      for ( Selection selection : formula.getSelections() ) {
+        if ( aggregateTable.findGroupingColumn( selection.getLogicalColumn() ) == null ) {
+          return false;
+        }
+      }
+    }
+    return measures || !disableDistinct;
+  }
+
+  private static AggregateColumn findColumn( AggregateTable aggregateTable, Selection selection ) {
+    if ( !selection.hasAggregate() ) {
+      return aggregateTable.findGroupingColumn( selection.getLogicalColumn() );
+    }
+    AggregationType aggregationType = selection.getActiveAggregationType();
+    if ( getReaggregationType( aggregationType ) == null ) {
+      return null;
+    }
+    return aggregateTable.findMeasure( selection.getLogicalColumn(), aggregationType );
+  }
+
+  /**
+   * @return the aggregation that combines partial aggregates of the given type, null if there is none
+   */
+  private static AggregationType getReaggregationType( AggregationType aggregationType ) {
+    switch ( aggregationType ) {
+      case SUM:
+      case COUNT:
+        return AggregationType.SUM;
+      case MINIMUM:
+        return AggregationType.MINIMUM;
+      case MAXIMUM:
+        return AggregationType.MAXIMUM;
+      default:
+        return null;
+    }
+  }
+
+  private static long getRowCount( AggregateTable aggregateTable ) {
+    return aggregateTable.getRowCount() < 0 ? Long.MAX_VALUE : aggregateTable.getRowCount();
+  }
+
+  /**
+   * @return the aggregate table
+   */
+  public AggregateTable getAggregateTable() {
+    return aggregateTable;
+  }
+
+  /**
+   * @return the logical table reading from the aggregate table
+   */
+  public LogicalTable getLogicalTable() {
+    return logicalTable;
+  }
+
+  /**
+   * Maps a selection of the query onto the aggregate table. Measures are aggregated again with the aggregation
+   * combining their partial aggregates.
+   * 
+   * @param selection
+   *          a selection answered by the aggregate table
+   * @return the selection reading from the aggregate table
+   */
+  public Selection getAggregateSelection( Selection selection ) {
+    AggregateColumn aggregateColumn = findColumn( aggregateTable, selection );
+    LogicalColumn column = columns.get( aggregateColumn );
+    if ( column == null ) {
+      column = new LogicalColumn();
+      column.setId( selection.getLogicalColumn().getId() );
+      column.setLogicalTable( logicalTable );
+      column.setProperty( SqlPhysicalColumn.TARGET_COLUMN, aggregateColumn.getTargetColumn() );
+      column.setProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE, TargetColumnType.COLUMN_NAME );
+      column.setAggregationType( aggregateColumn.isMeasure()
+          ? getReaggregationType( aggregateColumn.getAggregationType() ) : AggregationType.NONE );
+      columns.put( aggregateColumn, column );
+    }
+    return new Selection( selection.getCategory(), column, null );
+  }
+
+  /**
+   * Maps the columns used by a parsed constraint onto the aggregate table.
+   * 
+   * @param formula
+   *          a constraint answered by the aggregate table
+   */
+  @SuppressWarnings( "unchecked" )
+  public void mapConstraint( SqlOpenFormula formula ) {
+    Map<String, Selection> selectionMap = formula.getSelectionMap();
+    for ( Map.Entry<String, Selection> entry : selectionMap.entrySet() ) {
+      entry.setValue( getAggregateSelection( entry.getValue() ) );
+    }
+  }
+}
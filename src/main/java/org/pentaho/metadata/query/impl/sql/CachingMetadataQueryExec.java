@@ -0,0 +1,262 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.metadata.messages.LocaleHelper;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.IMetadataQueryExec;
+import org.pentaho.metadata.model.IPhysicalModel;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.SqlDataSource;
+import org.pentaho.metadata.model.SqlPhysicalModel;
+import org.pentaho.metadata.query.BaseMetadataQueryExec;
+import org.pentaho.metadata.query.model.Parameter;
+import org.pentaho.metadata.query.model.Query;
+import org.pentaho.metadata.repository.IMetadataDomainRepository;
+import org.pentaho.metadata.util.ThinModelConverter;
+import org.pentaho.pms.core.exception.PentahoMetadataException;
+
+/**
+ * An {@link IMetadataQueryExec} decorator serving the results of SQL queries from a {@link QueryResultCache}. The
+ * results are keyed by the generated SQL, the bound parameter values, the row level security constraint, the
+ * datasource and the row limit, so identical queries of different viewers share a result only when they would run
+ * the same statement against the same database.
+ * <p>
+ * Results of a logical model are cached for the number of seconds given by its
+ * {@link LogicalModel#PROPERTY_RESULT_CACHE_TTL} property, or for the default time to live of the cache. Queries of
+ * other physical models are passed to the delegate. A {@link SqlMetadataQueryExec} delegate runs the SQL generated for
+ * the cache key instead of generating it again.
+ * 
+ */
+public class CachingMetadataQueryExec extends BaseMetadataQueryExec {
+
+  private static final Log logger = LogFactory.getLog( CachingMetadataQueryExec.class );
+
+  private final IMetadataQueryExec delegate;
+
+  private final QueryResultCache cache;
+
+  private String locale = LocaleHelper.getLocale().toString();
+
+  /**
+   * @param delegate
+   *          the executor running the queries that are not cached yet
+   * @param cache
+   *          the cache, usually shared by every executor of the application
+   */
+  public CachingMetadataQueryExec( IMetadataQueryExec delegate, QueryResultCache cache ) {
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  public IMetadataQueryExec getDelegate() {
+    return delegate;
+  }
+
+  public QueryResultCache getCache() {
+    return cache;
+  }
+
+  public String getLocale() {
+    return locale;
+  }
+
+  /**
+   * @param locale
+   *          the locale used to generate the SQL of the cache key
+   */
+  public void setLocale( String locale ) {
+    this.locale = locale;
+  }
+
+  public IPentahoResultSet executeQuery( Query queryObject ) {
+    LogicalModel model = queryObject.getLogicalModel();
+    IPhysicalModel physicalModel = getPhysicalModel() != null ? getPhysicalModel() : model.getPhysicalModel();
+    long timeToLive = getTimeToLive( model );
+    if ( timeToLive <= 0 || !( physicalModel instanceof SqlPhysicalModel ) ) {
+      return delegate.executeQuery( queryObject );
+    }
+
+    SqlPhysicalModel sqlModel = (SqlPhysicalModel) physicalModel;
+    Map<String, Object> values = getParameterValues( queryObject );
+    MappedQuery mappedQuery;
+    QueryResultCache.Key key;
+    try {
+      mappedQuery = generateSql( queryObject, sqlModel, values );
+      key = createKey( queryObject, sqlModel, mappedQuery, values );
+    } catch ( PentahoMetadataException e ) {
+      logger.error( "error", e ); //$NON-NLS-1$
+      return delegate.executeQuery( queryObject );
+    }
+
+    String domainId = getDomainId( queryObject );
+    long generation = cache.getGeneration( domainId );
+    IPentahoResultSet resultSet = cache.get( key );
+    if ( resultSet != null ) {
+      if ( logger.isDebugEnabled() ) {
+        logger.debug( "result read from cache: " + key ); //$NON-NLS-1$
+      }
+      return resultSet;
+    }
+    if ( delegate instanceof SqlMetadataQueryExec ) {
+      resultSet = ( (SqlMetadataQueryExec) delegate ).executeQuery( queryObject, mappedQuery );
+    } else {
+      resultSet = delegate.executeQuery( queryObject );
+    }
+    if ( resultSet == null ) {
+      return null;
+    }
+    return cache.put( key, domainId, resultSet, timeToLive, generation );
+  }
+
+  /**
+   * @return the id of the domain of the queried model, or of the query if the model has no domain, or null
+   */
+  private static String getDomainId( Query queryObject ) {
+    Domain domain = queryObject.getLogicalModel().getDomain();
+    if ( domain == null ) {
+      domain = queryObject.getDomain();
+    }
+    return domain != null ? domain.getId() : null;
+  }
+
+  private Map<String, Object> getParameterValues( Query queryObject ) {
+    Map<String, Object> values = new HashMap<String, Object>();
+    for ( Parameter param : queryObject.getParameters() ) {
+      Object value = parameters.get( param.getName() );
+      values.put( param.getName(), convertParameterValue( param, value != null ? value : param.getDefaultValue() ) );
+    }
+    return values;
+  }
+
+  /**
+   * Generates the SQL of a query the way it would be run, as a prepared statement.
+   */
+  protected MappedQuery generateSql( Query queryObject, SqlPhysicalModel physicalModel, Map<String, Object> values )
+    throws PentahoMetadataException {
+    DatabaseMeta databaseMeta = ThinModelConverter.convertToLegacy( physicalModel.getId(), physicalModel
+        .getDatasource() );
+    return new SqlGenerator().generateSql( queryObject, locale, getMetadataDomainRepository(), databaseMeta, values,
+        true );
+  }
+
+  /**
+   * Builds the cache key of a query from its generated SQL.
+   */
+  protected QueryResultCache.Key createKey( Query queryObject, SqlPhysicalModel physicalModel,
+      MappedQuery mappedQuery, Map<String, Object> values ) {
+    // the bound values include the values generated with the query, such as the keyset of a page
+    List<Object> boundValues = mappedQuery.getBindValues( values );
+    IMetadataDomainRepository repo = getMetadataDomainRepository();
+    String securityConstraint =
+        repo != null ? repo.generateRowLevelSecurityConstraint( queryObject.getLogicalModel() ) : null;
+    return new QueryResultCache.Key( mappedQuery.getQuery(), boundValues, securityConstraint,
+        getDatasourceId( physicalModel.getDatasource() ), getMaxRows() );
+  }
+
+  private static String getDatasourceId( SqlDataSource datasource ) {
+    StringBuilder id = new StringBuilder();
+    id.append( datasource.getType() ).append( '|' ).append( datasource.getDialectType() ).append( '|' );
+    id.append( datasource.getHostname() ).append( '|' ).append( datasource.getPort() ).append( '|' );
+    id.append( datasource.getServername() ).append( '|' ).append( datasource.getDatabaseName() ).append( '|' );
+    id.append( datasource.getUsername() );
+    return id.toString();
+  }
+
+  /**
+   * @return the time to live of the results of the model in milliseconds
+   */
+  private long getTimeToLive( LogicalModel model ) {
+    Object ttl = model.getProperty( LogicalModel.PROPERTY_RESULT_CACHE_TTL );
+    if ( ttl instanceof Number ) {
+      return ( (Number) ttl ).longValue() * 1000;
+    } else if ( ttl != null ) {
+      try {
+        return Long.parseLong( ttl.toString().trim() ) * 1000;
+      } catch ( NumberFormatException e ) {
+        logger.warn( "invalid " + LogicalModel.PROPERTY_RESULT_CACHE_TTL + ": " + ttl ); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+    }
+    return cache.getDefaultTimeToLive();
+  }
+
+  public boolean isLive() {
+    return false;
+  }
+
+  @Override
+  public void setDoQueryLog( boolean doQueryLog ) {
+    super.setDoQueryLog( doQueryLog );
+    delegate.setDoQueryLog( doQueryLog );
+  }
+
+  @Override
+  public void setMaxRows( Integer maxRows ) {
+    super.setMaxRows( maxRows );
+    delegate.setMaxRows( maxRows );
+  }
+
+  @Override
+  public void setTimeout( Integer timeout ) {
+    super.setTimeout( timeout );
+    delegate.setTimeout( timeout );
+  }
+
+  @Override
+  public void setMetadataDomainRepository( IMetadataDomainRepository metadataDomainRepository ) {
+    super.setMetadataDomainRepository( metadataDomainRepository );
+    delegate.setMetadataDomainRepository( metadataDomainRepository );
+  }
+
+  @Override
+  public void setReadOnly( boolean readOnly ) {
+    super.setReadOnly( readOnly );
+    delegate.setReadOnly( readOnly );
+  }
+
+  @Override
+  public void setForwardOnly( boolean forwardOnly ) {
+    super.setForwardOnly( forwardOnly );
+    delegate.setForwardOnly( forwardOnly );
+  }
+
+  @Override
+  public void setPhysicalModel( IPhysicalModel physicalModel ) {
+    super.setPhysicalModel( physicalModel );
+    delegate.setPhysicalModel( physicalModel );
+  }
+
+  @Override
+  public void setParameter( Parameter param, Object value ) {
+    super.setParameter( param, value );
+    delegate.setParameter( param, value );
+  }
+
+  @Override
+  public void setInputs( Map<String, Object> inputs ) {
+    super.setInputs( inputs );
+    delegate.setInputs( inputs );
+  }
+}
@@ -0,0 +1,431 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * The table search behind the CLASSIC path strategy, working on table indexes. The classic strategy looks for the
+ * smallest number of extra tables that connect the selected tables. Instead of enumerating every subset of the other
+ * tables, the minimum is computed with the Dreyfus-Wagner dynamic program (a greedy Steiner tree heuristic when many
+ * tables are selected), and only the connecting sets of that size are enumerated, with pruning and a bounded number
+ * of expansions.
+ * 
+ */
+class ClassicPathSearch {
+
+  /** above this number of selected tables the minimum is approximated with a greedy heuristic */
+  static final int MAX_EXACT_TERMINALS = 10;
+
+  /** maximum number of search nodes expanded while enumerating the minimum connecting sets */
+  static final int MAX_EXPANSIONS = 20000;
+
+  private static final long UNREACHABLE = Long.MAX_VALUE / 4;
+
+  private final int[][] neighbours;
+
+  private final long[] cost;
+
+  /**
+   * @param neighbours
+   *          the tables joined to each table
+   * @param relativeSizes
+   *          the relative size of each table, used to break ties between connecting sets
+   */
+  ClassicPathSearch( int[][] neighbours, int[] relativeSizes ) {
+    this.neighbours = neighbours;
+    // each table costs more than all relative sizes together, so that the number of tables is minimized first
+    long big = 1;
+    for ( int size : relativeSizes ) {
+      big += Math.max( 0, size );
+    }
+    cost = new long[neighbours.length];
+    for ( int i = 0; i < cost.length; i++ ) {
+      cost[i] = big + Math.max( 0, relativeSizes[i] );
+    }
+  }
+
+  /**
+   * Finds a smallest set of extra tables connecting the terminals.
+   * 
+   * @param terminals
+   *          the selected tables
+   * @return the extra tables, or null if the terminals cannot be connected
+   */
+  int[] findConnectingTables( int[] terminals ) {
+    boolean[] inTree;
+    if ( terminals.length <= MAX_EXACT_TERMINALS ) {
+      inTree = dreyfusWagner( terminals, cost, null );
+    } else {
+      inTree = greedyTree( terminals );
+    }
+    if ( inTree == null ) {
+      return null;
+    }
+    for ( int terminal : terminals ) {
+      inTree[terminal] = false;
+    }
+    int count = 0;
+    for ( boolean b : inTree ) {
+      count += b ? 1 : 0;
+    }
+    int[] extras = new int[count];
+    for ( int i = 0, j = 0; i < inTree.length; i++ ) {
+      if ( inTree[i] ) {
+        extras[j++] = i;
+      }
+    }
+    return extras;
+  }
+
+  /**
+   * Receives the connecting sets found by {@link ClassicPathSearch#enumerate}.
+   */
+  interface Visitor {
+    void visit( int[] extras );
+  }
+
+  /**
+   * Enumerates the sets of <code>size</code> candidates that connect the terminals, in the lexicographic order of the
+   * candidate positions.
+   * 
+   * @param terminals
+   *          the selected tables
+   * @param candidates
+   *          the tables that may be added, in search order
+   * @param size
+   *          the number of tables to add
+   * @param visitor
+   *          receives each connecting set, ordered like the candidates
+   * @return true if every set was enumerated, false if the search stopped after {@link #MAX_EXPANSIONS} expansions
+   */
+  boolean enumerate( int[] terminals, int[] candidates, int size, Visitor visitor ) {
+    // a table belongs to a connecting set of that size only if the smallest tree joining it to the terminals is
+    // not larger; with too many terminals, only tables further than size joins from every terminal are excluded
+    long[] trees;
+    long limit;
+    if ( terminals.length <= MAX_EXACT_TERMINALS ) {
+      long[] unit = new long[neighbours.length];
+      Arrays.fill( unit, 1 );
+      trees = new long[neighbours.length];
+      dreyfusWagner( terminals, unit, trees );
+      limit = terminals.length + size;
+    } else {
+      trees = hops( terminals );
+      limit = size;
+    }
+    int[] eligible = new int[candidates.length];
+    int count = 0;
+    for ( int candidate : candidates ) {
+      if ( trees[candidate] <= limit ) {
+        eligible[count++] = candidate;
+      }
+    }
+    boolean[] chosen = new boolean[neighbours.length];
+    for ( int terminal : terminals ) {
+      chosen[terminal] = true;
+    }
+    boolean[] available = new boolean[neighbours.length];
+    for ( int i = 0; i < count; i++ ) {
+      available[eligible[i]] = true;
+    }
+    int[] expansions = new int[1];
+    return enumerate( Arrays.copyOf( eligible, count ), 0, new int[size], 0, chosen, available, visitor, expansions );
+  }
+
+  /**
+   * @param available
+   *          the tables that may still be added at this point of the search: eligible, not chosen and not skipped by
+   *          an earlier branch
+   */
+  private boolean enumerate( int[] eligible, int start, int[] extras, int depth, boolean[] chosen,
+      boolean[] available, Visitor visitor, int[] expansions ) {
+    if ( ++expansions[0] > MAX_EXPANSIONS ) {
+      return false;
+    }
+    int remaining = extras.length - depth;
+    if ( remaining == 0 ) {
+      if ( components( chosen ) == 1 ) {
+        visitor.visit( extras.clone() );
+      }
+      return true;
+    }
+    if ( missingTables( chosen, available ) > remaining ) {
+      return true;
+    }
+    boolean complete = true;
+    int i = start;
+    for ( ; i <= eligible.length - remaining && complete; i++ ) {
+      chosen[eligible[i]] = true;
+      available[eligible[i]] = false;
+      extras[depth] = eligible[i];
+      complete = enumerate( eligible, i + 1, extras, depth + 1, chosen, available, visitor, expansions );
+      chosen[eligible[i]] = false;
+    }
+    // the tables skipped by this level become available again for the other branches of the parent
+    for ( int j = start; j < i; j++ ) {
+      available[eligible[j]] = true;
+    }
+    return complete;
+  }
+
+  /**
+   * Counts the components formed by the chosen tables, 1 if they are connected.
+   */
+  private int components( boolean[] chosen ) {
+    int[] component = label( chosen );
+    int max = 0;
+    for ( int c : component ) {
+      max = Math.max( max, c );
+    }
+    return max;
+  }
+
+  /**
+   * Labels the components of the chosen tables from 1, other tables get 0.
+   */
+  private int[] label( boolean[] chosen ) {
+    int[] component = new int[neighbours.length];
+    int next = 0;
+    ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+    for ( int i = 0; i < chosen.length; i++ ) {
+      if ( chosen[i] && component[i] == 0 ) {
+        component[i] = ++next;
+        queue.add( i );
+        while ( !queue.isEmpty() ) {
+          int n = queue.poll();
+          for ( int m : neighbours[n] ) {
+            if ( chosen[m] && component[m] == 0 ) {
+              component[m] = next;
+              queue.add( m );
+            }
+          }
+        }
+      }
+    }
+    return component;
+  }
+
+  /**
+   * A lower bound of the number of tables still needed to connect the chosen tables: a component needs at least as
+   * many tables as lie between it and the nearest other component, going through available tables only.
+   */
+  private int missingTables( boolean[] chosen, boolean[] available ) {
+    int[] component = label( chosen );
+    int components = 0;
+    for ( int c : component ) {
+      components = Math.max( components, c );
+    }
+    int bound = 0;
+    for ( int c = 1; c <= components && components > 1; c++ ) {
+      int[] distance = new int[neighbours.length];
+      Arrays.fill( distance, -1 );
+      ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+      for ( int i = 0; i < component.length; i++ ) {
+        if ( component[i] == c ) {
+          distance[i] = 0;
+          queue.add( i );
+        }
+      }
+      int gap = Integer.MAX_VALUE;
+      while ( !queue.isEmpty() && gap == Integer.MAX_VALUE ) {
+        int n = queue.poll();
+        for ( int m : neighbours[n] ) {
+          if ( distance[m] < 0 && ( chosen[m] || available[m] ) ) {
+            distance[m] = distance[n] + 1;
+            if ( component[m] != 0 ) {
+              gap = distance[m] - 1;
+              break;
+            }
+            queue.add( m );
+          }
+        }
+      }
+      if ( gap == Integer.MAX_VALUE ) {
+        return Integer.MAX_VALUE;
+      }
+      bound = Math.max( bound, gap );
+    }
+    return bound;
+  }
+
+  /**
+   * Number of joins from each table to the nearest terminal.
+   */
+  private long[] hops( int[] terminals ) {
+    long[] distance = new long[neighbours.length];
+    Arrays.fill( distance, UNREACHABLE );
+    ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+    for ( int terminal : terminals ) {
+      distance[terminal] = 0;
+      queue.add( terminal );
+    }
+    while ( !queue.isEmpty() ) {
+      int n = queue.poll();
+      for ( int m : neighbours[n] ) {
+        if ( distance[m] == UNREACHABLE ) {
+          distance[m] = distance[n] + 1;
+          queue.add( m );
+        }
+      }
+    }
+    return distance;
+  }
+
+  /**
+   * Node weighted Dreyfus-Wagner: best[mask][v] is the cost of the cheapest tree containing v and the terminals of
+   * mask, counting each table once.
+   * 
+   * @param weights
+   *          the weight of each table
+   * @param trees
+   *          if not null, receives the weight of the lightest tree joining each table to all terminals
+   */
+  private boolean[] dreyfusWagner( int[] terminals, long[] weights, long[] trees ) {
+    int n = neighbours.length;
+    int full = ( 1 << terminals.length ) - 1;
+    long[][] best = new long[full + 1][];
+    // split[mask][v] > 0: tree merged from two subtrees at v, parent[mask][v] >= 0: tree extended from that table
+    int[][] split = new int[full + 1][];
+    int[][] parent = new int[full + 1][];
+    for ( int mask = 1; mask <= full; mask++ ) {
+      best[mask] = new long[n];
+      split[mask] = new int[n];
+      parent[mask] = new int[n];
+      Arrays.fill( best[mask], UNREACHABLE );
+      Arrays.fill( parent[mask], -1 );
+      if ( Integer.bitCount( mask ) == 1 ) {
+        int terminal = terminals[Integer.numberOfTrailingZeros( mask )];
+        best[mask][terminal] = weights[terminal];
+      } else {
+        for ( int v = 0; v < n; v++ ) {
+          for ( int sub = ( mask - 1 ) & mask; sub > 0; sub = ( sub - 1 ) & mask ) {
+            if ( sub < ( mask ^ sub ) ) {
+              continue;
+            }
+            long c = best[sub][v] + best[mask ^ sub][v] - weights[v];
+            if ( c < best[mask][v] ) {
+              best[mask][v] = c;
+              split[mask][v] = sub;
+            }
+          }
+        }
+      }
+      relax( best[mask], parent[mask], split[mask], weights );
+    }
+    if ( trees != null ) {
+      System.arraycopy( best[full], 0, trees, 0, n );
+    }
+    int root = terminals[0];
+    if ( best[full][root] >= UNREACHABLE ) {
+      return null;
+    }
+    boolean[] inTree = new boolean[n];
+    collect( full, root, split, parent, inTree );
+    return inTree;
+  }
+
+  /**
+   * Dijkstra over the tables, entering a table costs its weight.
+   */
+  private void relax( long[] distance, int[] parent, int[] split, long[] weights ) {
+    PriorityQueue<long[]> queue = new PriorityQueue<long[]>( 16, new Comparator<long[]>() {
+      public int compare( long[] a, long[] b ) {
+        return a[0] < b[0] ? -1 : a[0] > b[0] ? 1 : 0;
+      }
+    } );
+    for ( int v = 0; v < distance.length; v++ ) {
+      if ( distance[v] < UNREACHABLE ) {
+        queue.add( new long[] { distance[v], v } );
+      }
+    }
+    while ( !queue.isEmpty() ) {
+      long[] entry = queue.poll();
+      int v = (int) entry[1];
+      if ( entry[0] > distance[v] ) {
+        continue;
+      }
+      for ( int u : neighbours[v] ) {
+        long c = distance[v] + weights[u];
+        if ( c < distance[u] ) {
+          distance[u] = c;
+          parent[u] = v;
+          split[u] = 0;
+          queue.add( new long[] { c, u } );
+        }
+      }
+    }
+  }
+
+  private void collect( int mask, int v, int[][] split, int[][] parent, boolean[] inTree ) {
+    inTree[v] = true;
+    if ( parent[mask][v] >= 0 ) {
+      collect( mask, parent[mask][v], split, parent, inTree );
+    } else if ( split[mask][v] > 0 ) {
+      collect( split[mask][v], v, split, parent, inTree );
+      collect( mask ^ split[mask][v], v, split, parent, inTree );
+    }
+  }
+
+  /**
+   * Grows a tree from the first terminal, attaching the cheapest reachable terminal at each step.
+   */
+  private boolean[] greedyTree( int[] terminals ) {
+    int n = neighbours.length;
+    boolean[] inTree = new boolean[n];
+    inTree[terminals[0]] = true;
+    while ( !containsAll( inTree, terminals ) ) {
+      long[] distance = new long[n];
+      int[] parent = new int[n];
+      int[] split = new int[n];
+      Arrays.fill( distance, UNREACHABLE );
+      Arrays.fill( parent, -1 );
+      for ( int v = 0; v < n; v++ ) {
+        if ( inTree[v] ) {
+          distance[v] = 0;
+        }
+      }
+      relax( distance, parent, split, cost );
+      int nearest = -1;
+      for ( int terminal : terminals ) {
+        if ( !inTree[terminal] && distance[terminal] < UNREACHABLE
+            && ( nearest < 0 || distance[terminal] < distance[nearest] ) ) {
+          nearest = terminal;
+        }
+      }
+      if ( nearest < 0 ) {
+        return null;
+      }
+      for ( int v = nearest; v >= 0 && !inTree[v]; v = parent[v] ) {
+        inTree[v] = true;
+      }
+    }
+    return inTree;
+  }
+
+  private static boolean containsAll( boolean[] inTree, int[] terminals ) {
+    for ( int terminal : terminals ) {
+      if ( !inTree[terminal] ) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
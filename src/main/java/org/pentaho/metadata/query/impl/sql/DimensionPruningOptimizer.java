@@ -0,0 +1,292 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalRelationship;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.SqlPhysicalColumn;
+import org.pentaho.metadata.model.SqlPhysicalTable;
+import org.pentaho.metadata.model.concept.types.JoinType;
+import org.pentaho.metadata.model.concept.types.RelationshipType;
+import org.pentaho.metadata.model.concept.types.TargetColumnType;
+import org.pentaho.metadata.query.model.Order;
+import org.pentaho.metadata.query.model.Selection;
+import org.pentaho.pms.core.exception.PentahoMetadataException;
+import org.pentaho.pms.mql.dialect.SQLQueryModel;
+import org.pentaho.pms.mql.dialect.SQLQueryModel.SQLWhereFormula;
+
+/**
+ * Removes dimension tables from a query when the query only uses their key column. For a 1:N relationship with
+ * referential integrity every foreign key of the fact table matches one row of the dimension (the "1" side), so the key
+ * can be read from the foreign key instead, and the inner join adds no columns, rows or filters.<br>
+ * <br>
+ * A dimension is pruned when:
+ * <ul>
+ * <li>its relationship is a simple (non complex) 1:N or N:1 relationship that declares
+ * {@link LogicalRelationship#REFERENTIAL_INTEGRITY}</li>
+ * <li>it takes part in no other relationship of the join path, and the join path has no outer joins</li>
+ * <li>the selections, orders and constraints of the query, and the formula columns they use, only use its key
+ * column</li>
+ * <li>it is not partitioned</li>
+ * </ul>
+ * The decision is taken on the logical columns of the query, before the SQL is generated. The dimension then takes the
+ * alias of the fact table, and its key column is rendered as the foreign key column, like the computed columns of
+ * shared formulas. The inner join also dropped the rows with a null foreign key, so the query keeps
+ * <code>foreign key IS NOT NULL</code>.<br>
+ * <br>
+ * Referential integrity is declared, not verified: a fact row whose foreign key has no matching dimension row (an
+ * orphan) is returned by the pruned query while the join dropped it.
+ * 
+ */
+public class DimensionPruningOptimizer {
+
+  private final LogicalModel model;
+
+  private final DatabaseMeta databaseMeta;
+
+  private final Map<String, Object> parameters;
+
+  private final boolean genAsPreparedStatement;
+
+  /** The pruned relationships of the query */
+  private final List<LogicalRelationship> relationships = new ArrayList<LogicalRelationship>();
+
+  public DimensionPruningOptimizer( LogicalModel model, DatabaseMeta databaseMeta, Map<String, Object> parameters,
+      boolean genAsPreparedStatement ) {
+    this.model = model;
+    this.databaseMeta = databaseMeta;
+    this.parameters = parameters;
+    this.genAsPreparedStatement = genAsPreparedStatement;
+  }
+
+  /**
+   * Finds the dimension joins of the path that the query doesn't need.
+   * 
+   * @param path
+   *          the join path of the query
+   * @param selections
+   *          the selections of the query
+   * @param orderBy
+   *          the orders of the query
+   * @param constraintFormulas
+   *          the parsed constraints of the query, including the security constraint
+   * @return the number of pruned dimensions
+   */
+  public int optimize( Path path, List<Selection> selections, List<Order> orderBy,
+      Collection<SqlOpenFormula> constraintFormulas ) {
+    relationships.clear();
+    for ( int i = 0; i < path.size(); i++ ) {
+      LogicalRelationship relation = path.getRelationship( i );
+      if ( RelationshipType.getJoinType( relation.getRelationshipType() ) != JoinType.INNER ) {
+        return 0;
+      }
+    }
+
+    // The columns used by the query, including the ones used by the formula columns
+    //
+    Set<LogicalColumn> usedColumns = new HashSet<LogicalColumn>();
+    List<Selection> used = new ArrayList<Selection>( selections );
+    if ( orderBy != null ) {
+      for ( Order order : orderBy ) {
+        used.add( order.getSelection() );
+      }
+    }
+    for ( SqlOpenFormula formula : constraintFormulas ) {
+      used.addAll( formula.getSelections() );
+    }
+    for ( Selection selection : used ) {
+      if ( !addUsedColumns( usedColumns, selection.getLogicalColumn() ) ) {
+        return 0;
+      }
+    }
+
+    for ( int i = 0; i < path.size(); i++ ) {
+      LogicalRelationship relation = path.getRelationship( i );
+      if ( isPrunable( relation, path, usedColumns ) ) {
+        relationships.add( relation );
+      }
+    }
+    return relationships.size();
+  }
+
+  private boolean addUsedColumns( Set<LogicalColumn> usedColumns, LogicalColumn column ) {
+    if ( !usedColumns.add( column ) ) {
+      return true;
+    }
+    if ( column.getProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE ) == TargetColumnType.OPEN_FORMULA ) {
+      SqlOpenFormula formula =
+          new SqlOpenFormula( model, column.getLogicalTable(), databaseMeta, (String) column
+              .getProperty( SqlPhysicalColumn.TARGET_COLUMN ), null, parameters, genAsPreparedStatement );
+      formula.setShareParsedFormula( true );
+      try {
+        formula.parseAndValidate();
+      } catch ( PentahoMetadataException e ) {
+        // the generator falls back on the formula text, which may use any column
+        return false;
+      }
+      for ( Selection selection : formula.getSelections() ) {
+        if ( !addUsedColumns( usedColumns, selection.getLogicalColumn() ) ) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean isPrunable( LogicalRelationship relation, Path path, Set<LogicalColumn> usedColumns ) {
+    if ( relation.isComplex() || !relation.isReferentialIntegrity() ) {
+      return false;
+    }
+    LogicalColumn dimensionKey = getDimensionKey( relation );
+    LogicalColumn foreignKey = getForeignKey( relation );
+    if ( dimensionKey == null || foreignKey == null || !isPhysical( dimensionKey ) || !isPhysical( foreignKey ) ) {
+      return false;
+    }
+    LogicalTable dimension = dimensionKey.getLogicalTable();
+    if ( dimension.getProperty( SqlPhysicalTable.PARTITION_COLUMN ) != null ) {
+      return false;
+    }
+
+    // The dimension needs to be a leaf of the join path
+    //
+    for ( int i = 0; i < path.size(); i++ ) {
+      LogicalRelationship other = path.getRelationship( i );
+      if ( other != relation && other.isUsingTable( dimension ) ) {
+        return false;
+      }
+    }
+
+    for ( LogicalColumn column : usedColumns ) {
+      if ( dimension.equals( column.getLogicalTable() ) && column != dimensionKey ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isPhysical( LogicalColumn column ) {
+    return column.getProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE ) != TargetColumnType.OPEN_FORMULA;
+  }
+
+  /**
+   * @return the key of the dimension (the "1" side) of a 1:N or N:1 relationship, or null
+   */
+  private static LogicalColumn getDimensionKey( LogicalRelationship relation ) {
+    if ( relation.getRelationshipType() == RelationshipType._1_N ) {
+      return relation.getFromColumn();
+    } else if ( relation.getRelationshipType() == RelationshipType._N_1 ) {
+      return relation.getToColumn();
+    }
+    return null;
+  }
+
+  /**
+   * @return the foreign key of the fact table (the "N" side) of a 1:N or N:1 relationship, or null
+   */
+  private static LogicalColumn getForeignKey( LogicalRelationship relation ) {
+    if ( relation.getRelationshipType() == RelationshipType._1_N ) {
+      return relation.getToColumn();
+    } else if ( relation.getRelationshipType() == RelationshipType._N_1 ) {
+      return relation.getFromColumn();
+    }
+    return null;
+  }
+
+  /**
+   * @return the pruned dimension tables
+   */
+  public List<LogicalTable> getDimensions() {
+    List<LogicalTable> dimensions = new ArrayList<LogicalTable>();
+    for ( LogicalRelationship relation : relationships ) {
+      dimensions.add( getDimensionKey( relation ).getLogicalTable() );
+    }
+    return dimensions;
+  }
+
+  /**
+   * @param path
+   *          the join path of the query
+   * @return the join path without the pruned relationships
+   */
+  public Path getPrunedPath( Path path ) {
+    Path pruned = new Path();
+    for ( int i = 0; i < path.size(); i++ ) {
+      if ( !relationships.contains( path.getRelationship( i ) ) ) {
+        pruned.addRelationship( path.getRelationship( i ) );
+      }
+    }
+    return pruned;
+  }
+
+  /**
+   * Gives the pruned dimensions the alias of their fact table.
+   * 
+   * @param tableAliases
+   *          the aliases of the tables of the query, without the pruned dimensions
+   * @return the foreign key column name to render for each pruned dimension key, read from the fact table alias
+   */
+  public Map<LogicalColumn, String> addDimensionAliases( Map<LogicalTable, String> tableAliases ) {
+    Map<LogicalColumn, String> foreignKeys = new HashMap<LogicalColumn, String>();
+    for ( LogicalRelationship relation : relationships ) {
+      LogicalColumn dimensionKey = getDimensionKey( relation );
+      LogicalColumn foreignKey = getForeignKey( relation );
+      tableAliases.put( dimensionKey.getLogicalTable(), tableAliases.get( foreignKey.getLogicalTable() ) );
+      foreignKeys.put( dimensionKey, (String) foreignKey.getProperty( SqlPhysicalColumn.TARGET_COLUMN ) );
+    }
+    return foreignKeys;
+  }
+
+  /**
+   * Keeps the rows the inner joins dropped because of a null foreign key out, and points the where conditions using a
+   * pruned dimension at its fact table.
+   * 
+   * @param query
+   *          the generated query model
+   * @param tableAliases
+   *          the aliases of the tables of the query
+   */
+  public void addConstraints( SQLQueryModel query, Map<LogicalTable, String> tableAliases ) {
+    for ( LogicalRelationship relation : relationships ) {
+      LogicalTable dimension = getDimensionKey( relation ).getLogicalTable();
+      LogicalColumn foreignKey = getForeignKey( relation );
+      LogicalTable fact = foreignKey.getLogicalTable();
+      query.addGlobalConstraint( databaseMeta.quoteField( tableAliases.get( fact ) ) + "." //$NON-NLS-1$
+          + databaseMeta.quoteField( (String) foreignKey.getProperty( SqlPhysicalColumn.TARGET_COLUMN ) )
+          + " IS NOT NULL" ); //$NON-NLS-1$
+
+      for ( SQLWhereFormula formula : query.getWhereFormulas() ) {
+        String[] involvedTables = formula.getInvolvedTables();
+        for ( int i = 0; involvedTables != null && i < involvedTables.length; i++ ) {
+          if ( dimension.getId().equals( involvedTables[i] ) ) {
+            involvedTables[i] = fact.getId();
+          }
+        }
+      }
+    }
+  }
+}
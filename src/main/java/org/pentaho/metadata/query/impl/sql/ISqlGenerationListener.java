@@ -0,0 +1,39 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import org.pentaho.metadata.model.LogicalModel;
+
+/**
+ * Receives the statistics of each query generated by a <code>SqlGenerator</code>. Implementations may be called
+ * concurrently from several threads and should return quickly, as they are called on the SQL generation path.
+ * 
+ * @see SqlGenerator#setSqlGenerationListener(ISqlGenerationListener)
+ * @see SqlGenerationHistogram
+ */
+public interface ISqlGenerationListener {
+
+  /**
+   * Called after the SQL of a query has been generated.
+   * 
+   * @param model
+   *          the logical model the query was generated against
+   * @param stats
+   *          the statistics recorded while generating the query
+   */
+  void sqlGenerated( LogicalModel model, SqlGenerationStats stats );
+}
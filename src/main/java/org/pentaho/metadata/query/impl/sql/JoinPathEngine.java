@@ -0,0 +1,459 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalRelationship;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.SqlPhysicalTable;
+import org.pentaho.metadata.query.impl.sql.graph.MqlGraph;
+import org.pentaho.metadata.query.impl.sql.graph.PathType;
+
+/**
+ * Finds the join path between the tables of a query, for every path build method. Every logical model has an index of
+ * its tables and relationships, built once, which caches the paths found for each set of required tables. The legacy
+ * <code>org.pentaho.pms.mql.SQLGenerator</code> uses the same engine through an adapter from business models to
+ * logical models.
+ * <p>
+ * The index only keeps table ids and relationship positions, the engine returned for a model resolves them against
+ * that model. The index doesn't refer to the model it is kept for, so the model can be collected while it has one. The
+ * index of a model is rebuilt when its tables, relationships or relative sizes change.
+ * 
+ */
+public class JoinPathEngine {
+
+  public static final String CLASSIC = "CLASSIC"; //$NON-NLS-1$
+
+  static final int MAX_CACHED_PATHS = 256;
+
+  private static final Log logger = LogFactory.getLog( JoinPathEngine.class );
+
+  private static final Map<LogicalModel, ModelIndex> INDEXES = new WeakHashMap<LogicalModel, ModelIndex>();
+
+  private final LogicalModel model;
+
+  private final ModelIndex index;
+
+  /**
+   * The tables and relationships of a model by position, and the paths found between them. Nothing in here refers to
+   * the model, a table or a relationship.
+   */
+  private static final class ModelIndex {
+
+    private final long signature;
+
+    private final List<String> tableIds = new ArrayList<String>();
+
+    private final Map<String, Integer> tableIndex = new HashMap<String, Integer>();
+
+    private final int[][] relationshipTables;
+
+    private final Map<Long, Integer> pairRelationships = new HashMap<Long, Integer>();
+
+    private final ClassicPathSearch search;
+
+    private final Map<String, int[]> paths = new LinkedHashMap<String, int[]>( 16, 0.75f, true ) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry( Map.Entry<String, int[]> eldest ) {
+        return size() > MAX_CACHED_PATHS;
+      }
+    };
+
+    private ModelIndex( LogicalModel model, long signature ) {
+      this.signature = signature;
+      List<Integer> sizes = new ArrayList<Integer>();
+      for ( LogicalTable table : model.getLogicalTables() ) {
+        indexOf( table, sizes );
+      }
+      List<LogicalRelationship> relationships = model.getLogicalRelationships();
+      relationshipTables = new int[relationships.size()][];
+      for ( int r = 0; r < relationships.size(); r++ ) {
+        LogicalRelationship relationship = relationships.get( r );
+        int from = indexOf( relationship.getFromTable(), sizes );
+        int to = indexOf( relationship.getToTable(), sizes );
+        relationshipTables[r] = new int[] { from, to };
+        if ( from != to && !pairRelationships.containsKey( pairKey( from, to ) ) ) {
+          pairRelationships.put( pairKey( from, to ), r );
+        }
+      }
+      List<List<Integer>> neighbours = new ArrayList<List<Integer>>();
+      for ( int i = 0; i < tableIds.size(); i++ ) {
+        neighbours.add( new ArrayList<Integer>() );
+      }
+      int[] relativeSizes = new int[tableIds.size()];
+      for ( int i = 0; i < tableIds.size(); i++ ) {
+        relativeSizes[i] = sizes.get( i );
+      }
+      for ( Long key : pairRelationships.keySet() ) {
+        int from = (int) ( key >> 32 );
+        int to = (int) ( key & 0xffffffffL );
+        neighbours.get( from ).add( to );
+        neighbours.get( to ).add( from );
+      }
+      int[][] adjacency = new int[tableIds.size()][];
+      for ( int i = 0; i < tableIds.size(); i++ ) {
+        List<Integer> list = neighbours.get( i );
+        Collections.sort( list );
+        adjacency[i] = new int[list.size()];
+        for ( int j = 0; j < list.size(); j++ ) {
+          adjacency[i][j] = list.get( j );
+        }
+      }
+      search = new ClassicPathSearch( adjacency, relativeSizes );
+    }
+
+    private int indexOf( LogicalTable table, List<Integer> sizes ) {
+      Integer index = tableIndex.get( table.getId() );
+      if ( index == null ) {
+        index = tableIds.size();
+        tableIds.add( table.getId() );
+        sizes.add( getRelativeSize( table ) );
+        tableIndex.put( table.getId(), index );
+      }
+      return index;
+    }
+  }
+
+  private JoinPathEngine( LogicalModel model, ModelIndex index ) {
+    this.model = model;
+    this.index = index;
+  }
+
+  /**
+   * Returns the path engine of a logical model, building a new index if the model has none yet or if its tables or
+   * relationships changed since the index was built.
+   * 
+   * @param model
+   *          the logical model
+   * @return the engine of the model
+   */
+  public static JoinPathEngine forModel( LogicalModel model ) {
+    long signature = computeSignature( model );
+    synchronized ( INDEXES ) {
+      ModelIndex index = INDEXES.get( model );
+      if ( index == null || index.signature != signature ) {
+        index = new ModelIndex( model, signature );
+        INDEXES.put( model, index );
+      }
+      return new JoinPathEngine( model, index );
+    }
+  }
+
+  /**
+   * Drops the index of a logical model, it is rebuilt on the next lookup.
+   * 
+   * @param model
+   *          the logical model
+   */
+  public static void invalidate( LogicalModel model ) {
+    synchronized ( INDEXES ) {
+      INDEXES.remove( model );
+    }
+  }
+
+  /**
+   * Returns the join path between the required tables.
+   * 
+   * @param pathMethod
+   *          {@link #CLASSIC} or the name of a {@link PathType}
+   * @param requiredTables
+   *          the tables the path must contain
+   * @return a new path, or null if the tables cannot be joined
+   */
+  public Path getPath( String pathMethod, List<LogicalTable> requiredTables ) {
+    return getPath( pathMethod, requiredTables, null );
+  }
+
+  /**
+   * Searches the join path between the required tables without looking it up in or adding it to the paths cached for
+   * the model. Queries use {@link #getPath(String, List)}, this measures the search itself.
+   * 
+   * @param pathMethod
+   *          {@link #CLASSIC} or the name of a {@link PathType}
+   * @param requiredTables
+   *          the tables the path must contain
+   * @return a new path, or null if the tables cannot be joined
+   */
+  public Path searchPath( String pathMethod, List<LogicalTable> requiredTables ) {
+    return toPath( findPath( pathMethod, getTerminals( requiredTables ), requiredTables, null ) );
+  }
+
+  Path getPath( String pathMethod, List<LogicalTable> requiredTables, SqlGenerationStats stats ) {
+    int[] terminals = getTerminals( requiredTables );
+    if ( terminals == null ) {
+      // a table outside of the model, nothing worth caching
+      return toPath( findPath( pathMethod, null, requiredTables, stats ) );
+    }
+    StringBuilder key = new StringBuilder( pathMethod );
+    for ( int i = 0; i < terminals.length; i++ ) {
+      key.append( i == 0 ? ':' : ',' ).append( terminals[i] );
+    }
+
+    int[] path;
+    synchronized ( index.paths ) {
+      path = index.paths.get( key.toString() );
+      if ( path != null || index.paths.containsKey( key.toString() ) ) {
+        return toPath( path );
+      }
+    }
+    path = findPath( pathMethod, terminals, requiredTables, stats );
+    synchronized ( index.paths ) {
+      index.paths.put( key.toString(), path );
+    }
+    return toPath( path );
+  }
+
+  /**
+   * @return the positions of the required tables in the index, or null if a table is not part of the model
+   */
+  private int[] getTerminals( List<LogicalTable> requiredTables ) {
+    int[] terminals = new int[requiredTables.size()];
+    for ( int i = 0; i < terminals.length; i++ ) {
+      String id = requiredTables.get( i ).getId();
+      Integer table = id != null ? index.tableIndex.get( id ) : null;
+      if ( table == null ) {
+        return null;
+      }
+      terminals[i] = table;
+    }
+    return terminals;
+  }
+
+  /**
+   * @return the positions of the relationships of the path in the model, or null if the tables cannot be joined
+   */
+  private int[] findPath( String pathMethod, int[] terminals, List<LogicalTable> requiredTables,
+      SqlGenerationStats stats ) {
+    if ( CLASSIC.equals( pathMethod ) ) {
+      return terminals != null ? findClassicPath( terminals ) : null;
+    }
+    MqlGraph graph = new MqlGraph( model );
+    if ( logger.isDebugEnabled() ) {
+      logger.debug( "Attempting to build path using technique: " + pathMethod ); //$NON-NLS-1$
+    }
+    Path p = graph.getPath( PathType.valueOf( pathMethod ), requiredTables );
+    if ( stats != null ) {
+      stats.addPathVisits( graph.getNodeVisitCount(), graph.getArcVisitCount() );
+    }
+    if ( p == null ) {
+      return null;
+    }
+    Map<LogicalRelationship, Integer> positions = new IdentityHashMap<LogicalRelationship, Integer>();
+    List<LogicalRelationship> relationships = model.getLogicalRelationships();
+    for ( int r = 0; r < relationships.size(); r++ ) {
+      positions.put( relationships.get( r ), r );
+    }
+    int[] path = new int[p.size()];
+    for ( int i = 0; i < p.size(); i++ ) {
+      path[i] = positions.get( p.getRelationship( i ) );
+    }
+    return path;
+  }
+
+  /**
+   * The CLASSIC path: the selected tables plus the smallest number of extra tables connecting them, joined with the
+   * first relationship found between each pair of tables. Among equally small sets, the one with the fewest joins
+   * and then the lowest relative size wins, and the first one in the order of the non selected tables in case of a
+   * tie.
+   */
+  private int[] findClassicPath( final int[] terminals ) {
+    if ( terminals.length == 0 ) {
+      return null;
+    }
+    int[] seed = index.search.findConnectingTables( terminals );
+    if ( seed == null ) {
+      return null;
+    }
+    final int[] candidates = getNonSelectedTables( terminals );
+    final int[][] best = new int[1][];
+    boolean complete = index.search.enumerate( terminals, candidates, seed.length, new ClassicPathSearch.Visitor() {
+      public void visit( int[] extras ) {
+        best[0] = better( best[0], assemble( extras, terminals ) );
+      }
+    } );
+    if ( !complete ) {
+      // too many equally small sets, the one found by the search competes with those seen so far
+      final int[] position = new int[index.tableIds.size()];
+      for ( int i = 0; i < candidates.length; i++ ) {
+        position[candidates[i]] = i;
+      }
+      Integer[] ordered = new Integer[seed.length];
+      for ( int i = 0; i < seed.length; i++ ) {
+        ordered[i] = seed[i];
+      }
+      Arrays.sort( ordered, new Comparator<Integer>() {
+        public int compare( Integer a, Integer b ) {
+          return position[a] - position[b];
+        }
+      } );
+      int[] extras = new int[seed.length];
+      for ( int i = 0; i < seed.length; i++ ) {
+        extras[i] = ordered[i];
+      }
+      best[0] = better( best[0], assemble( extras, terminals ) );
+    }
+    return best[0];
+  }
+
+  private int[] better( int[] best, int[] path ) {
+    if ( best == null || path.length < best.length
+        || ( path.length == best.length && toPath( path ).score() < toPath( best ).score() ) ) {
+      return path;
+    }
+    return best;
+  }
+
+  /**
+   * Joins the extra and selected tables, one relationship for each pair of related tables.
+   */
+  private int[] assemble( int[] extras, int[] terminals ) {
+    int[] selected = new int[extras.length + terminals.length];
+    System.arraycopy( extras, 0, selected, 0, extras.length );
+    System.arraycopy( terminals, 0, selected, extras.length, terminals.length );
+    List<Integer> path = new ArrayList<Integer>();
+    for ( int i = 0; i < selected.length; i++ ) {
+      for ( int j = i + 1; j < selected.length; j++ ) {
+        Integer relationship = index.pairRelationships.get( pairKey( selected[i], selected[j] ) );
+        if ( relationship != null && !path.contains( relationship ) ) {
+          path.add( relationship );
+        }
+      }
+    }
+    int[] relationships = new int[path.size()];
+    for ( int i = 0; i < relationships.length; i++ ) {
+      relationships[i] = path.get( i );
+    }
+    return relationships;
+  }
+
+  /**
+   * The tables connected to the selected tables, in the order the CLASSIC strategy tries them: the tables with the
+   * fewest neighbours among the tables found before them come first.
+   */
+  private int[] getNonSelectedTables( int[] terminals ) {
+    boolean[] used = new boolean[index.tableIds.size()];
+    List<Integer> usedList = new ArrayList<Integer>();
+    for ( int terminal : terminals ) {
+      used[terminal] = true;
+      usedList.add( terminal );
+    }
+    List<int[]> extra = new ArrayList<int[]>();
+    List<Integer> unused = new LinkedList<Integer>();
+    for ( int i = 0; i < index.tableIds.size(); i++ ) {
+      unused.add( i );
+    }
+    boolean anyFound = true;
+    while ( anyFound ) {
+      anyFound = false;
+      Iterator<Integer> iter = unused.iterator();
+      while ( iter.hasNext() ) {
+        int check = iter.next();
+        if ( !used[check] ) {
+          int nrNeighbours = getNrNeighbours( check, usedList );
+          if ( nrNeighbours > 0 ) {
+            extra.add( new int[] { check, nrNeighbours } );
+            used[check] = true;
+            usedList.add( check );
+            iter.remove();
+            anyFound = true;
+          }
+        }
+      }
+    }
+    Collections.sort( extra, new Comparator<int[]>() {
+      public int compare( int[] a, int[] b ) {
+        if ( a[1] == b[1] ) {
+          return index.tableIds.get( a[0] ).compareTo( index.tableIds.get( b[0] ) );
+        }
+        return a[1] < b[1] ? -1 : 1;
+      }
+    } );
+    int[] candidates = new int[extra.size()];
+    for ( int i = 0; i < candidates.length; i++ ) {
+      candidates[i] = extra.get( candidates.length - 1 - i )[0];
+    }
+    return candidates;
+  }
+
+  private int getNrNeighbours( int table, List<Integer> usedTables ) {
+    int nr = 0;
+    for ( int[] relationship : index.relationshipTables ) {
+      if ( relationship[0] == table || relationship[1] == table ) {
+        for ( int used : usedTables ) {
+          if ( used != table && ( relationship[0] == used || relationship[1] == used ) ) {
+            nr++;
+          }
+        }
+      }
+    }
+    return nr;
+  }
+
+  private static Long pairKey( int a, int b ) {
+    return ( (long) Math.min( a, b ) << 32 ) | Math.max( a, b );
+  }
+
+  private static int getRelativeSize( LogicalTable table ) {
+    Object size = table.getProperty( SqlPhysicalTable.RELATIVE_SIZE );
+    return size instanceof Number ? ( (Number) size ).intValue() : 0;
+  }
+
+  /**
+   * @return the path of the relationships of the model at the given positions
+   */
+  private Path toPath( int[] relationships ) {
+    if ( relationships == null ) {
+      return null;
+    }
+    Path path = new Path();
+    for ( int relationship : relationships ) {
+      path.addRelationship( model.getLogicalRelationships().get( relationship ) );
+    }
+    return path;
+  }
+
+  private static long computeSignature( LogicalModel model ) {
+    long signature = System.identityHashCode( model.getLogicalTables() );
+    for ( LogicalTable table : model.getLogicalTables() ) {
+      signature = signature * 31 + System.identityHashCode( table );
+      signature = signature * 31 + getRelativeSize( table );
+    }
+    for ( LogicalRelationship relationship : model.getLogicalRelationships() ) {
+      signature = signature * 31 + System.identityHashCode( relationship );
+      signature = signature * 31 + System.identityHashCode( relationship.getFromTable() );
+      signature = signature * 31 + System.identityHashCode( relationship.getToTable() );
+    }
+    return signature;
+  }
+}
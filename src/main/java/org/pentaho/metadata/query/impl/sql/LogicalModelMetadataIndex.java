@@ -0,0 +1,399 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.SqlPhysicalColumn;
+import org.pentaho.metadata.model.concept.types.AggregationType;
+import org.pentaho.metadata.model.concept.types.TargetColumnType;
+import org.pentaho.metadata.query.model.Selection;
+import org.pentaho.reporting.libraries.formula.EvaluationException;
+import org.pentaho.reporting.libraries.formula.Formula;
+import org.pentaho.reporting.libraries.formula.parser.ParseException;
+
+/**
+ * Per logical model index of the tables and aggregated columns referenced by each logical column. Formula based
+ * columns are parsed the first time they are looked up for a given database type, after which table involvement and
+ * fact detection are plain lookups.
+ * <p>
+ * The entries locate the column, the columns used by its formula and the referenced tables by their position in the
+ * model, and are checked against the model on each lookup. An entry is re-parsed when the formula of its column
+ * changes, when a table or column it locates was replaced or moved, or when one of the columns used by the formula
+ * changes its table, formula or aggregation. Other in-place edits of a model should be followed by a call to
+ * {@link #invalidate(LogicalModel)}.
+ * <p>
+ * Formulas referring to parameters are never indexed, as their validation depends on the parameter values.
+ * <p>
+ * The cached entries don't refer to the model, its tables or its columns, so a model is collected together with its
+ * entries. {@link #forModel(LogicalModel)} binds them to the model for the lookups. Each model instance has its own
+ * entries, and a clone of a model builds new ones. The parsed formulas only depend on the formula text: they are kept
+ * in a bounded cache shared by all the models and their clones, see {@link #getParsedFormula(String)}.
+ * 
+ */
+public class LogicalModelMetadataIndex {
+
+  private static final String PARAM_REFERENCE = "[param:"; //$NON-NLS-1$
+
+  private static final Map<LogicalModel, ConcurrentMap<String, ColumnEntry>> INDEXES =
+      new WeakHashMap<LogicalModel, ConcurrentMap<String, ColumnEntry>>();
+
+  private static final int MAX_PARSED_FORMULAS = 1000;
+
+  private static final Map<String, Formula> PARSED_FORMULAS =
+      Collections.synchronizedMap( new LinkedHashMap<String, Formula>( 16, 0.75f, true ) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, Formula> eldest ) {
+          return size() > MAX_PARSED_FORMULAS;
+        }
+      } );
+
+  private final LogicalModel model;
+
+  private final ConcurrentMap<String, ColumnEntry> columns;
+
+  private LogicalModelMetadataIndex( LogicalModel model, ConcurrentMap<String, ColumnEntry> columns ) {
+    this.model = model;
+    this.columns = columns;
+  }
+
+  /**
+   * Returns the index of a logical model. The lookups check the cached entries against the model, so this doesn't
+   * walk the model.
+   * 
+   * @param model
+   *          the logical model
+   * @return the index of the model
+   */
+  public static LogicalModelMetadataIndex forModel( LogicalModel model ) {
+    synchronized ( INDEXES ) {
+      ConcurrentMap<String, ColumnEntry> columns = INDEXES.get( model );
+      if ( columns == null ) {
+        columns = new ConcurrentHashMap<String, ColumnEntry>();
+        INDEXES.put( model, columns );
+      }
+      return new LogicalModelMetadataIndex( model, columns );
+    }
+  }
+
+  /**
+   * Drops the index of a logical model, it is rebuilt on the next lookup.
+   * 
+   * @param model
+   *          the logical model
+   */
+  public static void invalidate( LogicalModel model ) {
+    synchronized ( INDEXES ) {
+      INDEXES.remove( model );
+    }
+  }
+
+  /**
+   * Returns a column formula parsed and initialized with the {@link SqlOpenFormulaContext}. Once initialized, the
+   * formula object model is only read by {@link SqlOpenFormula}, so the queries generated concurrently share it.
+   * 
+   * @param formulaString
+   *          the formula
+   * @return the parsed formula
+   * @throws ParseException
+   *           if the formula can't be parsed
+   * @throws EvaluationException
+   *           if the formula can't be initialized
+   */
+  static Formula getParsedFormula( String formulaString ) throws ParseException, EvaluationException {
+    Formula formula = PARSED_FORMULAS.get( formulaString );
+    if ( formula == null ) {
+      formula = new Formula( formulaString );
+      SqlOpenFormulaContext.getInstance().initialize( formula );
+      PARSED_FORMULAS.put( formulaString, formula );
+    }
+    return formula;
+  }
+
+  /**
+   * Returns the tables and columns referenced by a logical column.
+   * 
+   * @param column
+   *          the logical column
+   * @param databaseMeta
+   *          the database the formula is validated against
+   * @param parameters
+   *          the query parameters, only used for formulas that cannot be indexed
+   * @param genAsPreparedStatement
+   *          whether the query is generated as prepared statement
+   * @param locale
+   *          the locale
+   * @return the column metadata
+   */
+  public ColumnMetadata getColumnMetadata( LogicalColumn column, DatabaseMeta databaseMeta,
+      Map<String, Object> parameters, boolean genAsPreparedStatement, String locale ) {
+    LogicalTable table = column.getLogicalTable();
+    if ( column.getProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE ) != TargetColumnType.OPEN_FORMULA ) {
+      return new ColumnMetadata( null, Collections.singletonList( table ), false );
+    }
+    String formula = (String) column.getProperty( SqlPhysicalColumn.TARGET_COLUMN );
+    if ( formula == null || formula.contains( PARAM_REFERENCE ) ) {
+      return parse( column, formula, databaseMeta, parameters, genAsPreparedStatement, locale, null );
+    }
+
+    String key =
+        table.getId() + "." + column.getId() + "@" + databaseMeta.getDatabaseTypeDesc(); //$NON-NLS-1$ //$NON-NLS-2$
+    ColumnEntry entry = columns.get( key );
+    ColumnMetadata metadata = entry != null ? entry.resolve( model, column, formula ) : null;
+    if ( metadata == null ) {
+      ColumnEntry[] parsed = new ColumnEntry[1];
+      metadata = parse( column, formula, databaseMeta, parameters, genAsPreparedStatement, locale, parsed );
+      if ( parsed[0] != null ) {
+        columns.put( key, parsed[0] );
+      } else {
+        columns.remove( key );
+      }
+    }
+    return metadata;
+  }
+
+  private ColumnMetadata parse( LogicalColumn column, String formula, DatabaseMeta databaseMeta,
+      Map<String, Object> parameters, boolean genAsPreparedStatement, String locale, ColumnEntry[] entry ) {
+    Selection selection = new Selection( null, column, null );
+    SqlAndTables sqlAndTables =
+        SqlGenerator.getBusinessColumnSQL( model, selection, null, parameters, genAsPreparedStatement, databaseMeta,
+            locale );
+    List<LogicalColumn> usedColumns = new ArrayList<LogicalColumn>();
+    boolean aggregated = false;
+    for ( Selection used : sqlAndTables.getUsedColumns() ) {
+      if ( used != selection ) {
+        usedColumns.add( used.getLogicalColumn() );
+        aggregated |= used.hasAggregate();
+      }
+    }
+    List<LogicalTable> referencedTables = sqlAndTables.getUsedTables();
+    if ( entry != null ) {
+      entry[0] = ColumnEntry.create( model, column, formula, referencedTables, aggregated, usedColumns );
+    }
+    return new ColumnMetadata( formula, referencedTables, aggregated );
+  }
+
+  private static int tablePosition( LogicalModel model, LogicalTable table ) {
+    List<LogicalTable> tables = model.getLogicalTables();
+    for ( int i = 0; i < tables.size(); i++ ) {
+      if ( tables.get( i ) == table ) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int columnPosition( LogicalTable table, LogicalColumn column ) {
+    List<LogicalColumn> tableColumns = table.getLogicalColumns();
+    for ( int i = 0; i < tableColumns.size(); i++ ) {
+      if ( tableColumns.get( i ) == column ) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static LogicalTable tableAt( LogicalModel model, int position ) {
+    List<LogicalTable> tables = model.getLogicalTables();
+    return position < tables.size() ? tables.get( position ) : null;
+  }
+
+  private static LogicalColumn columnAt( LogicalModel model, int tablePosition, int columnPosition ) {
+    LogicalTable table = tableAt( model, tablePosition );
+    if ( table == null ) {
+      return null;
+    }
+    List<LogicalColumn> tableColumns = table.getLogicalColumns();
+    LogicalColumn column = columnPosition < tableColumns.size() ? tableColumns.get( columnPosition ) : null;
+    return column != null && column.getLogicalTable() == table ? column : null;
+  }
+
+  /**
+   * The tables referenced by a logical column and whether its formula uses aggregated columns.
+   */
+  public static class ColumnMetadata {
+
+    private final String formula;
+
+    private final List<LogicalTable> referencedTables;
+
+    private final boolean aggregated;
+
+    ColumnMetadata( String formula, List<LogicalTable> referencedTables, boolean aggregated ) {
+      this.formula = formula;
+      this.referencedTables = Collections.unmodifiableList( new ArrayList<LogicalTable>( referencedTables ) );
+      this.aggregated = aggregated;
+    }
+
+    /**
+     * @return the formula of the column, null if the column is not formula based
+     */
+    public String getFormula() {
+      return formula;
+    }
+
+    /**
+     * @return the logical tables the column reads from
+     */
+    public List<LogicalTable> getReferencedTables() {
+      return referencedTables;
+    }
+
+    /**
+     * @return true if the formula of the column uses an aggregated column
+     */
+    public boolean hasAggregatedColumns() {
+      return aggregated;
+    }
+  }
+
+  /**
+   * The cached metadata of a formula column, with the column and the referenced tables located by their position in
+   * the model.
+   */
+  private static final class ColumnEntry {
+
+    private final String formula;
+
+    private final int tablePosition;
+
+    private final int columnPosition;
+
+    private final int[] referencedTables;
+
+    private final boolean aggregated;
+
+    private final UsedColumn[] usedColumns;
+
+    private ColumnEntry( String formula, int tablePosition, int columnPosition, int[] referencedTables,
+        boolean aggregated, UsedColumn[] usedColumns ) {
+      this.formula = formula;
+      this.tablePosition = tablePosition;
+      this.columnPosition = columnPosition;
+      this.referencedTables = referencedTables;
+      this.aggregated = aggregated;
+      this.usedColumns = usedColumns;
+    }
+
+    /**
+     * @return the entry, or null if a table or column isn't part of the model
+     */
+    static ColumnEntry create( LogicalModel model, LogicalColumn column, String formula,
+        List<LogicalTable> referencedTables, boolean aggregated, List<LogicalColumn> usedColumns ) {
+      int tablePosition = tablePosition( model, column.getLogicalTable() );
+      int columnPosition = tablePosition < 0 ? -1 : columnPosition( column.getLogicalTable(), column );
+      if ( columnPosition < 0 ) {
+        return null;
+      }
+      int[] tables = new int[referencedTables.size()];
+      for ( int i = 0; i < tables.length; i++ ) {
+        tables[i] = tablePosition( model, referencedTables.get( i ) );
+        if ( tables[i] < 0 ) {
+          return null;
+        }
+      }
+      UsedColumn[] used = new UsedColumn[usedColumns.size()];
+      for ( int i = 0; i < used.length; i++ ) {
+        LogicalColumn usedColumn = usedColumns.get( i );
+        int usedTable = tablePosition( model, usedColumn.getLogicalTable() );
+        int usedPosition = usedTable < 0 ? -1 : columnPosition( usedColumn.getLogicalTable(), usedColumn );
+        if ( usedPosition < 0 ) {
+          return null;
+        }
+        used[i] = new UsedColumn( usedColumn, usedTable, usedPosition );
+      }
+      return new ColumnEntry( formula, tablePosition, columnPosition, tables, aggregated, used );
+    }
+
+    /**
+     * @return the metadata of the column, or null if the entry is out of date
+     */
+    ColumnMetadata resolve( LogicalModel model, LogicalColumn column, String formula ) {
+      if ( !formula.equals( this.formula ) || columnAt( model, tablePosition, columnPosition ) != column ) {
+        return null;
+      }
+      for ( UsedColumn used : usedColumns ) {
+        if ( !used.isCurrent( model ) ) {
+          return null;
+        }
+      }
+      List<LogicalTable> tables = new ArrayList<LogicalTable>( referencedTables.length );
+      for ( int position : referencedTables ) {
+        LogicalTable table = tableAt( model, position );
+        if ( table == null ) {
+          return null;
+        }
+        tables.add( table );
+      }
+      return new ColumnMetadata( formula, tables, aggregated );
+    }
+  }
+
+  /**
+   * The state of a column used by a formula, as it was when the formula was parsed: its table gives the referenced
+   * tables, its aggregation whether the formula is aggregated.
+   */
+  private static final class UsedColumn {
+
+    private final int tablePosition;
+
+    private final int columnPosition;
+
+    private final AggregationType aggregationType;
+
+    private final List<AggregationType> aggregationList;
+
+    private final Object targetColumnType;
+
+    private final Object targetColumn;
+
+    UsedColumn( LogicalColumn column, int tablePosition, int columnPosition ) {
+      this.tablePosition = tablePosition;
+      this.columnPosition = columnPosition;
+      this.aggregationType = column.getAggregationType();
+      this.aggregationList =
+          column.getAggregationList() == null ? null : new ArrayList<AggregationType>( column.getAggregationList() );
+      this.targetColumnType = column.getProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE );
+      this.targetColumn = column.getProperty( SqlPhysicalColumn.TARGET_COLUMN );
+    }
+
+    boolean isCurrent( LogicalModel model ) {
+      LogicalColumn column = columnAt( model, tablePosition, columnPosition );
+      return column != null && column.getAggregationType() == aggregationType
+          && equal( column.getAggregationList(), aggregationList )
+          && column.getProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE ) == targetColumnType
+          && equal( column.getProperty( SqlPhysicalColumn.TARGET_COLUMN ), targetColumn );
+    }
+
+    private static boolean equal( Object a, Object b ) {
+      return a == null ? b == null : a.equals( b );
+    }
+  }
+}
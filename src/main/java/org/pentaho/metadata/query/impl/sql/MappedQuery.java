@@ -16,6 +16,15 @@
  */
 package org.pentaho.metadata.query.impl.sql;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +34,7 @@ import java.util.regex.Pattern;
 import org.pentaho.commons.connection.IPentahoMetaData;
 import org.pentaho.metadata.query.model.Selection;
 import org.pentaho.metadata.query.model.util.QueryModelMetaData;
+import org.pentaho.pms.mql.dialect.MultiValuedParameterStrategy;
 
 /**
  * A mapped query holds a query string that has the "as" identifiers mapped to truncated values in order to avoid the
@@ -44,11 +54,56 @@ public class MappedQuery implements SqlQuery {
   protected List<? extends Selection> selections;
   protected List<String> paramNameList;
 
+  /** parameters bound as a single array, with the strategy creating the array */
+  protected Map<String, MultiValuedParameterStrategy> arrayParameters;
+
+  /** temporary tables holding parameter values, loaded before the query is executed */
+  protected List<ParameterTable> parameterTables;
+
+  /** number of placeholders of each entry of the param list, including the padding of multi-valued parameters */
+  protected List<Integer> paramBindCounts;
+
+  protected boolean paddedWithNulls;
+
+  /** values of the param list generated with the query, such as keyset values, bound instead of parameter values */
+  protected Map<String, Object> generatedValues;
+
   public MappedQuery( String sql, Map columnsMap, List<? extends Selection> selections, List<String> paramNameList ) {
+    this( sql, columnsMap, selections, paramNameList, null, null );
+  }
+
+  public MappedQuery( String sql, Map columnsMap, List<? extends Selection> selections, List<String> paramNameList,
+      Map<String, MultiValuedParameterStrategy> arrayParameters, List<ParameterTable> parameterTables ) {
     query = sql;
     this.selections = selections;
     this.columnsMap = columnsMap;
     this.paramNameList = paramNameList;
+    this.arrayParameters = arrayParameters;
+    this.parameterTables = parameterTables;
+  }
+
+  /**
+   * Copies a mapped query, so that queries generating the same SQL do not share the mutable state of one instance.
+   * 
+   * @param mappedQuery
+   *          the query to copy
+   */
+  @SuppressWarnings( "unchecked" )
+  MappedQuery( MappedQuery mappedQuery ) {
+    query = mappedQuery.query;
+    selections = copy( mappedQuery.selections );
+    columnsMap = mappedQuery.columnsMap == null ? null : new HashMap( mappedQuery.columnsMap );
+    paramNameList = copy( mappedQuery.paramNameList );
+    arrayParameters = mappedQuery.arrayParameters == null ? null
+        : new HashMap<String, MultiValuedParameterStrategy>( mappedQuery.arrayParameters );
+    parameterTables = copy( mappedQuery.parameterTables );
+    paramBindCounts = copy( mappedQuery.paramBindCounts );
+    paddedWithNulls = mappedQuery.paddedWithNulls;
+    generatedValues = mappedQuery.generatedValues;
+  }
+
+  private static <T> List<T> copy( List<T> list ) {
+    return list == null ? null : new ArrayList<T>( list );
   }
 
   /**
@@ -115,6 +170,149 @@ public class MappedQuery implements SqlQuery {
     return paramNameList;
   }
 
+  /**
+   * @param paramName
+   *          name of a parameter of the param list
+   * @return true if the parameter is bound as a single array rather than one value per placeholder
+   */
+  public boolean isArrayParameter( String paramName ) {
+    return arrayParameters != null && arrayParameters.containsKey( paramName );
+  }
+
+  /**
+   * @return the temporary tables that must be loaded before the query is executed
+   */
+  public List<ParameterTable> getParameterTables() {
+    if ( parameterTables == null ) {
+      return Collections.emptyList();
+    }
+    return parameterTables;
+  }
+
+  /**
+   * Loads the temporary tables holding the values of large multi-valued parameters. Must be called on the connection
+   * the query is executed on, before it is executed.
+   * 
+   * @param connection
+   *          connection the query is executed on
+   * @throws SQLException
+   *           if a table cannot be loaded
+   */
+  public void loadParameterTables( Connection connection ) throws SQLException {
+    for ( ParameterTable table : getParameterTables() ) {
+      table.load( connection );
+    }
+  }
+
+  void setParamBindCounts( List<Integer> paramBindCounts, boolean paddedWithNulls ) {
+    this.paramBindCounts = paramBindCounts;
+    this.paddedWithNulls = paddedWithNulls;
+  }
+
+  void setGeneratedValues( Map<String, Object> generatedValues ) {
+    this.generatedValues = generatedValues;
+  }
+
+  /**
+   * The number of placeholders of each entry of the param list. Multi-valued parameters may have more placeholders than
+   * values if the model pads them to bucket sizes, see {@link #getBindValues(Map)}.
+   * 
+   * @return the placeholder counts, in the order of the param list, or null if there are no parameters
+   */
+  public List<Integer> getParamBindCounts() {
+    return paramBindCounts;
+  }
+
+  /**
+   * @return true if padding placeholders are bound to NULL, false if they repeat the last value of the parameter
+   */
+  public boolean isPaddedWithNulls() {
+    return paddedWithNulls;
+  }
+
+  /**
+   * The values to bind to the placeholders of the prepared query, one per placeholder, including the padding of
+   * multi-valued parameters. The values of an array parameter are returned as a single array. Values generated with
+   * the query, such as the keyset of a page, are included.
+   * 
+   * @param parameters
+   *          parameter values by name
+   * @return the values in placeholder order
+   */
+  public List<Object> getBindValues( Map<String, Object> parameters ) {
+    List<Object> values = new ArrayList<Object>();
+    collectBindValues( parameters, values, null );
+    return values;
+  }
+
+  /**
+   * Binds the parameter values to the placeholders of the prepared query, see {@link #getBindValues(Map)}.
+   * 
+   * @param statement
+   *          statement prepared with {@link #getQuery()}
+   * @param parameters
+   *          parameter values by name
+   * @throws SQLException
+   *           if a value cannot be bound
+   */
+  public void bindParameters( PreparedStatement statement, Map<String, Object> parameters ) throws SQLException {
+    List<Object> values = new ArrayList<Object>();
+    List<String> names = new ArrayList<String>();
+    collectBindValues( parameters, values, names );
+    for ( int i = 0; i < values.size(); i++ ) {
+      Object value = values.get( i );
+      if ( isArrayParameter( names.get( i ) ) ) {
+        statement.setArray( i + 1, arrayParameters.get( names.get( i ) ).createArray( statement.getConnection(),
+            (Object[]) value ) );
+      } else if ( value == null ) {
+        statement.setNull( i + 1, Types.NULL );
+      } else {
+        statement.setObject( i + 1, toJdbcValue( value ) );
+      }
+    }
+  }
+
+  private void collectBindValues( Map<String, Object> parameters, List<Object> values, List<String> names ) {
+    if ( paramNameList == null ) {
+      return;
+    }
+    for ( int i = 0; i < paramNameList.size(); i++ ) {
+      String paramName = paramNameList.get( i );
+      Object value;
+      if ( generatedValues != null && generatedValues.containsKey( paramName ) ) {
+        value = generatedValues.get( paramName );
+      } else {
+        value = parameters != null ? parameters.get( paramName ) : null;
+      }
+      int count = 1;
+      if ( value instanceof Object[] && !isArrayParameter( paramName ) ) {
+        Object[] elements = (Object[]) value;
+        count = paramBindCounts != null ? paramBindCounts.get( i ) : elements.length;
+        for ( int j = 0; j < count; j++ ) {
+          if ( j < elements.length ) {
+            values.add( elements[j] );
+          } else {
+            values.add( paddedWithNulls || elements.length == 0 ? null : elements[elements.length - 1] );
+          }
+        }
+      } else {
+        values.add( value );
+      }
+      if ( names != null ) {
+        for ( int j = 0; j < count; j++ ) {
+          names.add( paramName );
+        }
+      }
+    }
+  }
+
+  private static Object toJdbcValue( Object value ) {
+    if ( value instanceof Date && !( value instanceof java.sql.Date ) && !( value instanceof Timestamp ) ) {
+      return new Timestamp( ( (Date) value ).getTime() );
+    }
+    return value;
+  }
+
   /**
    * returns a generated sql query string
    * 
@@ -135,4 +333,29 @@ public class MappedQuery implements SqlQuery {
     return new QueryModelMetaData( columnsMap, nativeMetadata.getColumnHeaders(), nativeMetadata.getRowHeaders(),
         selections );
   }
+
+  /**
+   * A temporary table standing in for the values of a multi-valued parameter.
+   */
+  public static class ParameterTable {
+    private final MultiValuedParameterStrategy strategy;
+
+    private final String tableName;
+
+    private final Object[] values;
+
+    public ParameterTable( MultiValuedParameterStrategy strategy, String tableName, Object[] values ) {
+      this.strategy = strategy;
+      this.tableName = tableName;
+      this.values = values;
+    }
+
+    public String getTableName() {
+      return tableName;
+    }
+
+    public void load( Connection connection ) throws SQLException {
+      strategy.loadTable( connection, tableName, values );
+    }
+  }
 }
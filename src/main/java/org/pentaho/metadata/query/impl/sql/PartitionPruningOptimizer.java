@@ -0,0 +1,240 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.metadata.model.IPhysicalColumn;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.SqlPhysicalTable;
+import org.pentaho.metadata.query.model.CombinationType;
+import org.pentaho.metadata.query.model.Constraint;
+import org.pentaho.metadata.query.model.Selection;
+import org.pentaho.pms.core.exception.PentahoMetadataException;
+import org.pentaho.pms.mql.dialect.DefaultSQLDialect;
+import org.pentaho.pms.mql.dialect.SQLQueryModel;
+import org.pentaho.reporting.libraries.formula.lvalues.ContextLookup;
+import org.pentaho.reporting.libraries.formula.lvalues.FormulaFunction;
+import org.pentaho.reporting.libraries.formula.lvalues.LValue;
+import org.pentaho.reporting.libraries.formula.lvalues.StaticValue;
+import org.pentaho.reporting.libraries.formula.lvalues.Term;
+
+/**
+ * Adds predicates on the partition column of date partitioned tables, so the database only scans the partitions the
+ * query needs. A table declares the column it is partitioned on with {@link SqlPhysicalTable#PARTITION_COLUMN}, and
+ * the date column the partitions are derived from with {@link SqlPhysicalTable#PARTITION_SOURCE_COLUMN}.<br>
+ * <br>
+ * Every range constraint on the source column, <code>[table.date] &gt;= DATEVALUE("2019-01-01")</code> or an AND()
+ * of such comparisons, adds the matching comparison on the partition column:
+ * <code>table.partition &gt;= CAST( DATE '2019-01-01' AS DATE )</code>. Strict bounds become inclusive, since the
+ * partition of a bound holds rows on both sides of it. The predicates are only derived when all the constraints of the
+ * query are combined with AND, so they restrict rows the query drops anyway.
+ * 
+ */
+public class PartitionPruningOptimizer {
+
+  private static final String PARAM = "param:"; //$NON-NLS-1$
+
+  private final DatabaseMeta databaseMeta;
+
+  private final DefaultSQLDialect dialect;
+
+  private final String locale;
+
+  public PartitionPruningOptimizer( DatabaseMeta databaseMeta, DefaultSQLDialect dialect, String locale ) {
+    this.databaseMeta = databaseMeta;
+    this.dialect = dialect;
+    this.locale = locale;
+  }
+
+  /**
+   * Adds the partition predicates to the WHERE clause of the query.
+   * 
+   * @param query
+   *          the query model, with the constraints in its WHERE clause
+   * @param conditions
+   *          the constraints of the query
+   * @param constraintFormulaMap
+   *          the parsed constraints, with the table aliases set
+   * @param tableAliases
+   *          the aliases of the tables of the query
+   * @return the number of added predicates
+   */
+  public int optimize( SQLQueryModel query, List<Constraint> conditions,
+      Map<Constraint, SqlOpenFormula> constraintFormulaMap, Map<LogicalTable, String> tableAliases )
+    throws PentahoMetadataException {
+    if ( conditions == null || !isPartitioned( tableAliases ) ) {
+      return 0;
+    }
+    List<SqlOpenFormula> formulas = new ArrayList<SqlOpenFormula>();
+    for ( Constraint condition : conditions ) {
+      SqlOpenFormula formula = constraintFormulaMap.get( condition );
+      if ( formula.hasAggregate() ) {
+        // in the HAVING clause
+        continue;
+      }
+      if ( condition.getCombinationType() != CombinationType.AND ) {
+        return 0;
+      }
+      formulas.add( formula );
+    }
+
+    // the predicates and their tables
+    Map<String, LogicalTable> predicates = new LinkedHashMap<String, LogicalTable>();
+    for ( SqlOpenFormula formula : formulas ) {
+      addPredicates( formula, formula.getRootValue(), tableAliases, predicates );
+    }
+    for ( Map.Entry<String, LogicalTable> predicate : predicates.entrySet() ) {
+      query.addWhereFormula( predicate.getKey(), CombinationType.AND.toString(), new String[] {
+        predicate.getValue().getId() } );
+    }
+    return predicates.size();
+  }
+
+  private static boolean isPartitioned( Map<LogicalTable, String> tableAliases ) {
+    for ( LogicalTable table : tableAliases.keySet() ) {
+      if ( table.getProperty( SqlPhysicalTable.PARTITION_COLUMN ) != null ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void addPredicates( SqlOpenFormula formula, LValue value, Map<LogicalTable, String> tableAliases,
+      Map<String, LogicalTable> predicates ) throws PentahoMetadataException {
+    if ( value instanceof FormulaFunction ) {
+      FormulaFunction function = (FormulaFunction) value;
+      if ( "AND".equalsIgnoreCase( function.getFunctionName() ) && function.getChildValues() != null ) { //$NON-NLS-1$
+        for ( LValue child : function.getChildValues() ) {
+          addPredicates( formula, child, tableAliases, predicates );
+        }
+      }
+      return;
+    }
+    if ( !( value instanceof Term ) || ( (Term) value ).getOperators().length != 1 ) {
+      return;
+    }
+    Term term = (Term) value;
+    String operator = term.getOperators()[0].toString();
+    LValue column = term.getHeadValue();
+    LValue bound = term.getOperands()[0];
+    if ( !( column instanceof ContextLookup ) || getColumn( formula, column ) == null ) {
+      // the bound first: DATEVALUE("2019-01-01") <= [table.date]
+      LValue swap = column;
+      column = bound;
+      bound = swap;
+      operator = reverse( operator );
+    }
+    LogicalColumn logicalColumn = getColumn( formula, column );
+    if ( logicalColumn == null || operator == null || !isConstant( bound ) ) {
+      return;
+    }
+    LogicalTable table = logicalColumn.getLogicalTable();
+    String partitionColumn = (String) table.getProperty( SqlPhysicalTable.PARTITION_COLUMN );
+    if ( partitionColumn == null || !tableAliases.containsKey( table ) || !isSourceColumn( table, logicalColumn ) ) {
+      return;
+    }
+
+    String partitionOperator;
+    if ( ">".equals( operator ) || ">=".equals( operator ) ) { //$NON-NLS-1$ //$NON-NLS-2$
+      partitionOperator = ">="; //$NON-NLS-1$
+    } else if ( "<".equals( operator ) || "<=".equals( operator ) ) { //$NON-NLS-1$ //$NON-NLS-2$
+      partitionOperator = "<="; //$NON-NLS-1$
+    } else if ( "=".equals( operator ) ) { //$NON-NLS-1$
+      partitionOperator = "="; //$NON-NLS-1$
+    } else {
+      return;
+    }
+
+    StringBuffer boundSql = new StringBuffer();
+    formula.generateSQL( term, bound, boundSql, locale );
+    String predicate =
+        databaseMeta.quoteField( tableAliases.get( table ) ) + "." + databaseMeta.quoteField( partitionColumn ) //$NON-NLS-1$
+            + " " + partitionOperator + " " + dialect.getPartitionValueSQL( boundSql.toString().trim() ); //$NON-NLS-1$ //$NON-NLS-2$
+    predicates.put( predicate, table );
+  }
+
+  private static LogicalColumn getColumn( SqlOpenFormula formula, LValue value ) {
+    if ( !( value instanceof ContextLookup ) ) {
+      return null;
+    }
+    Selection selection = (Selection) formula.getSelectionMap().get( ( (ContextLookup) value ).getName() );
+    return selection != null ? selection.getLogicalColumn() : null;
+  }
+
+  private static boolean isSourceColumn( LogicalTable table, LogicalColumn column ) {
+    Object source = table.getProperty( SqlPhysicalTable.PARTITION_SOURCE_COLUMN );
+    if ( source == null ) {
+      return false;
+    }
+    IPhysicalColumn physicalColumn = column.getPhysicalColumn();
+    return source.equals( column.getId() ) || ( physicalColumn != null && source.equals( physicalColumn.getId() ) );
+  }
+
+  /**
+   * A bound is constant if it refers to no column: literals, parameters and functions of those.
+   */
+  private static boolean isConstant( LValue value ) {
+    if ( value instanceof StaticValue ) {
+      return true;
+    } else if ( value instanceof ContextLookup ) {
+      return ( (ContextLookup) value ).getName().startsWith( PARAM );
+    } else if ( value instanceof FormulaFunction ) {
+      LValue[] children = ( (FormulaFunction) value ).getChildValues();
+      if ( children != null ) {
+        for ( LValue child : children ) {
+          if ( !isConstant( child ) ) {
+            return false;
+          }
+        }
+      }
+      return true;
+    } else if ( value instanceof Term ) {
+      Term term = (Term) value;
+      if ( !isConstant( term.getHeadValue() ) ) {
+        return false;
+      }
+      for ( LValue operand : term.getOperands() ) {
+        if ( !isConstant( operand ) ) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  private static String reverse( String operator ) {
+    if ( ">".equals( operator ) ) { //$NON-NLS-1$
+      return "<"; //$NON-NLS-1$
+    } else if ( ">=".equals( operator ) ) { //$NON-NLS-1$
+      return "<="; //$NON-NLS-1$
+    } else if ( "<".equals( operator ) ) { //$NON-NLS-1$
+      return ">"; //$NON-NLS-1$
+    } else if ( "<=".equals( operator ) ) { //$NON-NLS-1$
+      return ">="; //$NON-NLS-1$
+    } else if ( "=".equals( operator ) ) { //$NON-NLS-1$
+      return "="; //$NON-NLS-1$
+    }
+    return null;
+  }
+}
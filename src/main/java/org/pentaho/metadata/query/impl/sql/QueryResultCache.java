@@ -0,0 +1,403 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.commons.connection.IPentahoMetaData;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.commons.connection.memory.MemoryResultSet;
+import org.pentaho.metadata.messages.Messages;
+import org.pentaho.metadata.repository.IDomainChangeListener;
+
+/**
+ * A cache of query results shared by {@link CachingMetadataQueryExec} instances. Results are kept in memory until
+ * their time to live expires, until the total weight of the cached results, counted in cells (rows times columns),
+ * exceeds the maximum weight, or until the domain they were read from changes. The least recently used results are
+ * evicted first. Results whose domain is unknown are dropped whenever any domain changes.
+ * <p>
+ * Register the cache with the domain repository, e.g.
+ * {@link org.pentaho.metadata.repository.InMemoryMetadataDomainRepository#addDomainChangeListener}, so that the
+ * results of a domain are dropped when the domain is stored again. A result read before an invalidation of its
+ * domain is not cached: {@link #put(Key, String, IPentahoResultSet, long, long)} takes the generation of the domain
+ * from before the query was run and rejects the result if the domain was invalidated since. Invalidating a domain
+ * does not reject the results of other domains.
+ * 
+ */
+public class QueryResultCache implements IDomainChangeListener {
+
+  public static final long DEFAULT_MAX_WEIGHT = 1000000;
+
+  private final long maxWeight;
+
+  private final long defaultTimeToLive;
+
+  private long weight;
+
+  private long hits;
+
+  private long misses;
+
+  private long generation;
+
+  private long lastGlobalInvalidation;
+
+  private final Map<String, Long> lastInvalidations = new HashMap<String, Long>();
+
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>( 16, 0.75f, true );
+
+  /**
+   * Creates a cache holding at most {@link #DEFAULT_MAX_WEIGHT} cells, for models without a time to live property
+   * the results are not cached.
+   */
+  public QueryResultCache() {
+    this( DEFAULT_MAX_WEIGHT, 0 );
+  }
+
+  /**
+   * @param maxWeight
+   *          the maximum number of cells (rows times columns) held by the cache
+   * @param defaultTimeToLive
+   *          the time to live of the results in milliseconds, used for models without the
+   *          {@link org.pentaho.metadata.model.LogicalModel#PROPERTY_RESULT_CACHE_TTL} property. 0 disables caching
+   *          for these models
+   */
+  public QueryResultCache( long maxWeight, long defaultTimeToLive ) {
+    this.maxWeight = maxWeight;
+    this.defaultTimeToLive = defaultTimeToLive;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public long getDefaultTimeToLive() {
+    return defaultTimeToLive;
+  }
+
+  /**
+   * Returns a copy of the cached result for the key, or null if there is none or it expired.
+   * 
+   * @param key
+   *          the key of the result
+   * @return a result set positioned before the first row, or null
+   */
+  public synchronized IPentahoResultSet get( Key key ) {
+    Entry entry = entries.get( key );
+    if ( entry != null && entry.expires <= System.currentTimeMillis() ) {
+      remove( key );
+      entry = null;
+    }
+    if ( entry == null ) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.toResultSet();
+  }
+
+  /**
+   * The generation of a domain changes when the domain, or every domain, is invalidated. The generation of unknown
+   * domains changes with every invalidation. Read it before running a query and pass it to
+   * {@link #put(Key, String, IPentahoResultSet, long, long)}.
+   * 
+   * @param domainId
+   *          the domain the result is read from, null if it is unknown
+   * @return the current generation of the domain
+   */
+  public synchronized long getGeneration( String domainId ) {
+    if ( domainId == null ) {
+      return generation;
+    }
+    Long lastInvalidation = lastInvalidations.get( domainId );
+    return lastInvalidation != null ? Math.max( lastInvalidation, lastGlobalInvalidation ) : lastGlobalInvalidation;
+  }
+
+  /**
+   * Reads the result set into memory and caches it. The result set is closed, the returned copy is positioned before
+   * the first row.
+   * <p>
+   * A result heavier than the maximum weight is not cached: reading stops as soon as the weight is exceeded, a
+   * scrollable result set is rewound and returned as is, the rows of a forward only result set read so far are
+   * returned followed by the rest of the result set.
+   * 
+   * @param key
+   *          the key of the result
+   * @param domainId
+   *          the domain the result was read from, null if it is unknown
+   * @param resultSet
+   *          the result set to cache
+   * @param timeToLive
+   *          the time to live of the result in milliseconds
+   * @param generation
+   *          the generation of the domain read before the query was run
+   * @return a copy of the result set, or a result set reading the remaining rows
+   */
+  public IPentahoResultSet put( Key key, String domainId, IPentahoResultSet resultSet, long timeToLive,
+      long generation ) {
+    if ( timeToLive <= 0 ) {
+      return resultSet;
+    }
+    long columnCount = Math.max( 1, resultSet.getMetaData().getColumnCount() );
+    List<Object[]> rows = new ArrayList<Object[]>();
+    Object[] row = resultSet.next();
+    while ( row != null ) {
+      rows.add( row );
+      if ( rows.size() * columnCount > maxWeight ) {
+        // too heavy to be cached, stop copying
+        if ( resultSet.isScrollable() ) {
+          resultSet.beforeFirst();
+          return resultSet;
+        }
+        return new PrefetchedResultSet( rows, resultSet );
+      }
+      row = resultSet.next();
+    }
+    Entry entry = new Entry( domainId, resultSet.getMetaData(), rows, System.currentTimeMillis() + timeToLive );
+    resultSet.closeConnection();
+
+    synchronized ( this ) {
+      if ( generation == getGeneration( domainId ) ) {
+        remove( key );
+        entries.put( key, entry );
+        weight += entry.weight;
+        Iterator<Entry> iter = entries.values().iterator();
+        while ( weight > maxWeight && iter.hasNext() ) {
+          weight -= iter.next().weight;
+          iter.remove();
+        }
+      }
+    }
+    return entry.toResultSet();
+  }
+
+  /**
+   * Drops the cached results of a domain, and the results of unknown domains.
+   * 
+   * @param domainId
+   *          the domain id, or null to drop every result
+   */
+  public synchronized void invalidate( String domainId ) {
+    generation++;
+    if ( domainId == null ) {
+      lastGlobalInvalidation = generation;
+      lastInvalidations.clear();
+    } else {
+      lastInvalidations.put( domainId, generation );
+    }
+    Iterator<Entry> iter = entries.values().iterator();
+    while ( iter.hasNext() ) {
+      Entry entry = iter.next();
+      if ( domainId == null || entry.domainId == null || domainId.equals( entry.domainId ) ) {
+        weight -= entry.weight;
+        iter.remove();
+      }
+    }
+  }
+
+  public void domainChanged( String domainId ) {
+    invalidate( domainId );
+  }
+
+  public synchronized void clear() {
+    generation++;
+    lastGlobalInvalidation = generation;
+    lastInvalidations.clear();
+    entries.clear();
+    weight = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  private void remove( Key key ) {
+    Entry entry = entries.remove( key );
+    if ( entry != null ) {
+      weight -= entry.weight;
+    }
+  }
+
+  private static class Entry {
+    final String domainId;
+
+    final IPentahoMetaData metaData;
+
+    final List<Object[]> rows;
+
+    final long expires;
+
+    final long weight;
+
+    Entry( String domainId, IPentahoMetaData metaData, List<Object[]> rows, long expires ) {
+      this.domainId = domainId;
+      this.metaData = metaData;
+      this.rows = rows;
+      this.expires = expires;
+      this.weight = Math.max( 1, (long) rows.size() * Math.max( 1, metaData.getColumnCount() ) );
+    }
+
+    IPentahoResultSet toResultSet() {
+      MemoryResultSet resultSet = new MemoryResultSet( metaData );
+      for ( Object[] row : rows ) {
+        resultSet.addRow( row.clone() );
+      }
+      return resultSet;
+    }
+  }
+
+  /**
+   * The rows read from a forward only result set before it turned out to be too heavy for the cache, followed by the
+   * remaining rows of the result set.
+   */
+  private static class PrefetchedResultSet implements IPentahoResultSet {
+    private final List<Object[]> rows;
+
+    private final IPentahoResultSet resultSet;
+
+    private int index;
+
+    PrefetchedResultSet( List<Object[]> rows, IPentahoResultSet resultSet ) {
+      this.rows = rows;
+      this.resultSet = resultSet;
+    }
+
+    public Object[] next() {
+      if ( index < rows.size() ) {
+        Object[] row = rows.get( index );
+        rows.set( index++, null );
+        return row;
+      }
+      return resultSet.next();
+    }
+
+    public Object[] peek() {
+      return index < rows.size() ? rows.get( index ) : resultSet.peek();
+    }
+
+    public boolean isScrollable() {
+      return false;
+    }
+
+    public int getColumnCount() {
+      return resultSet.getColumnCount();
+    }
+
+    public int getRowCount() {
+      return -1;
+    }
+
+    public Object getValueAt( int row, int column ) {
+      throw forwardOnly();
+    }
+
+    public Object[] getDataRow( int row ) {
+      throw forwardOnly();
+    }
+
+    public Object[] getDataColumn( int column ) {
+      throw forwardOnly();
+    }
+
+    public void beforeFirst() {
+      throw forwardOnly();
+    }
+
+    private static UnsupportedOperationException forwardOnly() {
+      return new UnsupportedOperationException( Messages
+          .getErrorString( "StreamingSqlResultSet.ERROR_0002_FORWARD_ONLY" ) ); //$NON-NLS-1$
+    }
+
+    public IPentahoMetaData getMetaData() {
+      return resultSet.getMetaData();
+    }
+
+    public void setMetaData( IPentahoMetaData metaData ) {
+      resultSet.setMetaData( metaData );
+    }
+
+    public IPentahoResultSet memoryCopy() {
+      MemoryResultSet copy = new MemoryResultSet( getMetaData() );
+      for ( Object[] row = next(); row != null; row = next() ) {
+        copy.addRow( row );
+      }
+      return copy;
+    }
+
+    public void close() {
+      resultSet.close();
+    }
+
+    public void closeConnection() {
+      resultSet.closeConnection();
+    }
+
+    public void dispose() {
+      resultSet.dispose();
+    }
+  }
+
+  /**
+   * Identifies a cached result: the generated SQL, the values bound to its parameters, the row level security
+   * constraint, the datasource and the row limit of the query.
+   */
+  public static final class Key {
+    private final Object[] values;
+
+    private final int hashCode;
+
+    public Key( String sql, List<Object> parameterValues, String securityConstraint, String datasource,
+        Integer maxRows ) {
+      values = new Object[] { sql, parameterValues.toArray(), securityConstraint, datasource, maxRows };
+      hashCode = Arrays.deepHashCode( values );
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+      return obj instanceof Key && hashCode == ( (Key) obj ).hashCode
+          && Arrays.deepEquals( values, ( (Key) obj ).values );
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.deepToString( values );
+    }
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.pentaho.metadata.model.LogicalModel;
+
+/**
+ * In-memory {@link ISqlGenerationListener} that aggregates the statistics of the generated queries into histograms,
+ * both across all models and per logical model id. Values are counted in power-of-two buckets, so percentiles are
+ * reported as the upper bound of the bucket they fall into.
+ * 
+ */
+public class SqlGenerationHistogram implements ISqlGenerationListener {
+
+  private final ModelHistograms allModels = new ModelHistograms();
+
+  private final ConcurrentMap<String, ModelHistograms> modelHistograms =
+      new ConcurrentHashMap<String, ModelHistograms>();
+
+  public void sqlGenerated( LogicalModel model, SqlGenerationStats stats ) {
+    allModels.record( stats );
+    if ( model != null && model.getId() != null ) {
+      ModelHistograms histograms = modelHistograms.get( model.getId() );
+      if ( histograms == null ) {
+        histograms = new ModelHistograms();
+        ModelHistograms existing = modelHistograms.putIfAbsent( model.getId(), histograms );
+        if ( existing != null ) {
+          histograms = existing;
+        }
+      }
+      histograms.record( stats );
+    }
+  }
+
+  /**
+   * @return the ids of the logical models queries have been generated for
+   */
+  public Set<String> getModelIds() {
+    return new TreeSet<String>( modelHistograms.keySet() );
+  }
+
+  /**
+   * Returns the nanosecond timings of a phase.
+   * 
+   * @param modelId
+   *          the logical model id, or null for all models
+   * @param phase
+   *          the phase
+   * @return the histogram, empty if no query was generated for the model
+   */
+  public Histogram getPhaseHistogram( String modelId, SqlGenerationPhase phase ) {
+    return getModelHistograms( modelId ).phases[ phase.ordinal() ];
+  }
+
+  /**
+   * Returns the total nanosecond timings of the generated queries.
+   * 
+   * @param modelId
+   *          the logical model id, or null for all models
+   * @return the histogram, empty if no query was generated for the model
+   */
+  public Histogram getTotalHistogram( String modelId ) {
+    return getModelHistograms( modelId ).total;
+  }
+
+  /**
+   * @param modelId
+   *          the logical model id, or null for all models
+   * @return the histogram of path search node visits
+   */
+  public Histogram getPathNodeVisitHistogram( String modelId ) {
+    return getModelHistograms( modelId ).pathNodeVisits;
+  }
+
+  /**
+   * @param modelId
+   *          the logical model id, or null for all models
+   * @return the histogram of path search arc visits
+   */
+  public Histogram getPathArcVisitHistogram( String modelId ) {
+    return getModelHistograms( modelId ).pathArcVisits;
+  }
+
+  /**
+   * @param modelId
+   *          the logical model id, or null for all models
+   * @return the histogram of generated SQL lengths
+   */
+  public Histogram getSqlLengthHistogram( String modelId ) {
+    return getModelHistograms( modelId ).sqlLength;
+  }
+
+  /**
+   * Discards all recorded statistics.
+   */
+  public void reset() {
+    allModels.reset();
+    modelHistograms.clear();
+  }
+
+  private ModelHistograms getModelHistograms( String modelId ) {
+    if ( modelId == null ) {
+      return allModels;
+    }
+    ModelHistograms histograms = modelHistograms.get( modelId );
+    return histograms != null ? histograms : new ModelHistograms();
+  }
+
+  private static class ModelHistograms {
+    private final Histogram[] phases = new Histogram[ SqlGenerationPhase.values().length ];
+
+    private final Histogram total = new Histogram();
+
+    private final Histogram pathNodeVisits = new Histogram();
+
+    private final Histogram pathArcVisits = new Histogram();
+
+    private final Histogram sqlLength = new Histogram();
+
+    ModelHistograms() {
+      for ( int i = 0; i < phases.length; i++ ) {
+        phases[ i ] = new Histogram();
+      }
+    }
+
+    void record( SqlGenerationStats stats ) {
+      for ( SqlGenerationPhase phase : SqlGenerationPhase.values() ) {
+        phases[ phase.ordinal() ].record( stats.getPhaseNanos( phase ) );
+      }
+      total.record( stats.getTotalNanos() );
+      pathNodeVisits.record( stats.getPathNodeVisits() );
+      pathArcVisits.record( stats.getPathArcVisits() );
+      sqlLength.record( stats.getSqlLength() );
+    }
+
+    void reset() {
+      for ( Histogram histogram : phases ) {
+        histogram.reset();
+      }
+      total.reset();
+      pathNodeVisits.reset();
+      pathArcVisits.reset();
+      sqlLength.reset();
+    }
+  }
+
+  /**
+   * A lock-free histogram of non negative values, counted in power-of-two buckets.
+   */
+  public static class Histogram {
+    private static final int BUCKETS = 64;
+
+    // bucket 0 holds 0, bucket i holds values in [2^(i-1), 2^i)
+    private final AtomicLongArray buckets = new AtomicLongArray( BUCKETS );
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    public void record( long value ) {
+      if ( value < 0 ) {
+        value = 0;
+      }
+      buckets.incrementAndGet( BUCKETS - Long.numberOfLeadingZeros( value ) );
+      count.incrementAndGet();
+      sum.addAndGet( value );
+      long currentMax = max.get();
+      while ( value > currentMax && !max.compareAndSet( currentMax, value ) ) {
+        currentMax = max.get();
+      }
+    }
+
+    public long getCount() {
+      return count.get();
+    }
+
+    public long getSum() {
+      return sum.get();
+    }
+
+    public long getMax() {
+      return max.get();
+    }
+
+    public double getMean() {
+      long n = count.get();
+      return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Returns an upper bound of the specified percentile.
+     * 
+     * @param percentile
+     *          the percentile, between 0 and 100
+     * @return the upper bound of the bucket holding the percentile, never more than the maximum recorded value
+     */
+    public long getPercentile( double percentile ) {
+      long n = count.get();
+      if ( n == 0 ) {
+        return 0;
+      }
+      long rank = (long) Math.ceil( n * Math.min( Math.max( percentile, 0 ), 100 ) / 100 );
+      long seen = 0;
+      for ( int i = 0; i < BUCKETS; i++ ) {
+        seen += buckets.get( i );
+        if ( seen >= rank && seen > 0 ) {
+          long upperBound = i == 0 ? 0 : ( i == BUCKETS - 1 ? Long.MAX_VALUE : ( 1L << i ) - 1 );
+          return Math.min( upperBound, max.get() );
+        }
+      }
+      return max.get();
+    }
+
+    void reset() {
+      for ( int i = 0; i < BUCKETS; i++ ) {
+        buckets.set( i, 0 );
+      }
+      count.set( 0 );
+      sum.set( 0 );
+      max.set( 0 );
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+/**
+ * The phases of the SQL generation algorithm in <code>SqlGenerator.getSQL()</code> that are timed when a
+ * {@link ISqlGenerationListener} is registered.
+ * 
+ */
+public enum SqlGenerationPhase {
+  /** parsing and validating the constraint formulas */
+  FORMULA_PARSING,
+  /** looking for an aggregate table able to answer the query */
+  AGGREGATE_MATCHING,
+  /** determining the tables involved in the selections, constraints and orders */
+  TABLES_INVOLVED,
+  /** finding the join path between the involved tables */
+  PATH_SEARCH,
+  /** rendering the select list */
+  SELECT,
+  /** rendering the tables, joins, constraints and security constraint */
+  FROM_AND_WHERE,
+  /** rendering the group by list */
+  GROUP_BY,
+  /** rendering the order by list */
+  ORDER_BY,
+  /** optimizing the query model, e.g. pruning dimension joins */
+  OPTIMIZATION,
+  /** turning the query model into SQL using the database dialect */
+  DIALECT_RENDERING,
+  /** replacing the parameter placeholders */
+  PARAMETER_SUBSTITUTION
+}
@@ -0,0 +1,328 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.query.model.Constraint;
+import org.pentaho.metadata.query.model.Order;
+import org.pentaho.metadata.query.model.Selection;
+import org.pentaho.pms.mql.dialect.SQLDialectInterface;
+
+/**
+ * The input of {@link SqlGenerator#getSQL(SqlGenerationRequest)}: the parts of a query and how to render it. Requests
+ * are immutable and created with a {@link Builder}.
+ *
+ */
+public final class SqlGenerationRequest {
+
+  private final LogicalModel model;
+  private final List<Selection> selections;
+  private final List<Constraint> conditions;
+  private final List<Order> orderBy;
+  private final DatabaseMeta databaseMeta;
+  private final String locale;
+  private final Map<String, Object> parameters;
+  private final boolean genAsPreparedStatement;
+  private final boolean disableDistinct;
+  private final int limit;
+  private final int offset;
+  private final List<Object> keyset;
+  private final double samplePercentage;
+  private final int sampleRowLimit;
+  private final Constraint securityConstraint;
+  private final SQLDialectInterface dialect;
+
+  private SqlGenerationRequest( Builder builder ) {
+    this.model = builder.model;
+    this.selections = builder.selections;
+    this.conditions = builder.conditions;
+    this.orderBy = builder.orderBy;
+    this.databaseMeta = builder.databaseMeta;
+    this.locale = builder.locale;
+    this.parameters = builder.parameters;
+    this.genAsPreparedStatement = builder.genAsPreparedStatement;
+    this.disableDistinct = builder.disableDistinct;
+    this.limit = builder.limit;
+    this.offset = builder.offset;
+    this.keyset = builder.keyset;
+    this.samplePercentage = builder.samplePercentage;
+    this.sampleRowLimit = builder.sampleRowLimit;
+    this.securityConstraint = builder.securityConstraint;
+    this.dialect = builder.dialect;
+  }
+
+  /**
+   * @return a builder for a new request
+   */
+  public static Builder builder() {
+    return new Builder( null );
+  }
+
+  /**
+   * @return a builder initialized with this request
+   */
+  public Builder toBuilder() {
+    return new Builder( this );
+  }
+
+  /**
+   * @return the business model
+   */
+  public LogicalModel getModel() {
+    return model;
+  }
+
+  /**
+   * @return the selected business columns
+   */
+  public List<Selection> getSelections() {
+    return selections;
+  }
+
+  /**
+   * @return the conditions to apply
+   */
+  public List<Constraint> getConditions() {
+    return conditions;
+  }
+
+  /**
+   * @return the ordering
+   */
+  public List<Order> getOrderBy() {
+    return orderBy;
+  }
+
+  /**
+   * @return the meta info which determines the SQL generated
+   */
+  public DatabaseMeta getDatabaseMeta() {
+    return databaseMeta;
+  }
+
+  public String getLocale() {
+    return locale;
+  }
+
+  /**
+   * @return the parameters used during query generation, or null
+   */
+  public Map<String, Object> getParameters() {
+    return parameters;
+  }
+
+  /**
+   * @return true to generate the query as a prepared statement
+   */
+  public boolean isGenAsPreparedStatement() {
+    return genAsPreparedStatement;
+  }
+
+  /**
+   * @return true to disable the default DISTINCT of queries without groupings
+   */
+  public boolean isDisableDistinct() {
+    return disableDistinct;
+  }
+
+  /**
+   * @return the maximum number of rows returned, or -1
+   */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * @return the number of rows skipped before the first returned row
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return the order values of the last row of the previous page, or null
+   */
+  public List<Object> getKeyset() {
+    return keyset;
+  }
+
+  /**
+   * @return the percentage of the fact table to sample, 0 or less for no sampling
+   */
+  public double getSamplePercentage() {
+    return samplePercentage;
+  }
+
+  /**
+   * @return the number of fact rows read when the database cannot sample
+   */
+  public int getSampleRowLimit() {
+    return sampleRowLimit;
+  }
+
+  /**
+   * @return the global security constraint, or null
+   */
+  public Constraint getSecurityConstraint() {
+    return securityConstraint;
+  }
+
+  /**
+   * @return the dialect of the database meta, or null to look it up
+   */
+  public SQLDialectInterface getDialect() {
+    return dialect;
+  }
+
+  /**
+   * A mutable builder of {@link SqlGenerationRequest}.
+   */
+  public static final class Builder {
+
+    private LogicalModel model;
+    private List<Selection> selections = Collections.emptyList();
+    private List<Constraint> conditions = Collections.emptyList();
+    private List<Order> orderBy = Collections.emptyList();
+    private DatabaseMeta databaseMeta;
+    private String locale;
+    private Map<String, Object> parameters;
+    private boolean genAsPreparedStatement;
+    private boolean disableDistinct;
+    private int limit = -1;
+    private int offset;
+    private List<Object> keyset;
+    private double samplePercentage = -1;
+    private int sampleRowLimit;
+    private Constraint securityConstraint;
+    private SQLDialectInterface dialect;
+
+    private Builder( SqlGenerationRequest original ) {
+      if ( original != null ) {
+        model = original.model;
+        selections = original.selections;
+        conditions = original.conditions;
+        orderBy = original.orderBy;
+        databaseMeta = original.databaseMeta;
+        locale = original.locale;
+        parameters = original.parameters;
+        genAsPreparedStatement = original.genAsPreparedStatement;
+        disableDistinct = original.disableDistinct;
+        limit = original.limit;
+        offset = original.offset;
+        keyset = original.keyset;
+        samplePercentage = original.samplePercentage;
+        sampleRowLimit = original.sampleRowLimit;
+        securityConstraint = original.securityConstraint;
+        dialect = original.dialect;
+      }
+    }
+
+    public Builder setModel( LogicalModel model ) {
+      this.model = model;
+      return this;
+    }
+
+    public Builder setSelections( List<Selection> selections ) {
+      this.selections = selections;
+      return this;
+    }
+
+    public Builder setConditions( List<Constraint> conditions ) {
+      this.conditions = conditions;
+      return this;
+    }
+
+    public Builder setOrderBy( List<Order> orderBy ) {
+      this.orderBy = orderBy;
+      return this;
+    }
+
+    public Builder setDatabaseMeta( DatabaseMeta databaseMeta ) {
+      this.databaseMeta = databaseMeta;
+      return this;
+    }
+
+    public Builder setLocale( String locale ) {
+      this.locale = locale;
+      return this;
+    }
+
+    public Builder setParameters( Map<String, Object> parameters ) {
+      this.parameters = parameters;
+      return this;
+    }
+
+    public Builder setGenAsPreparedStatement( boolean genAsPreparedStatement ) {
+      this.genAsPreparedStatement = genAsPreparedStatement;
+      return this;
+    }
+
+    public Builder setDisableDistinct( boolean disableDistinct ) {
+      this.disableDistinct = disableDistinct;
+      return this;
+    }
+
+    public Builder setLimit( int limit ) {
+      this.limit = limit;
+      return this;
+    }
+
+    public Builder setOffset( int offset ) {
+      this.offset = offset;
+      return this;
+    }
+
+    public Builder setKeyset( List<Object> keyset ) {
+      this.keyset = keyset;
+      return this;
+    }
+
+    public Builder setSamplePercentage( double samplePercentage ) {
+      this.samplePercentage = samplePercentage;
+      return this;
+    }
+
+    public Builder setSampleRowLimit( int sampleRowLimit ) {
+      this.sampleRowLimit = sampleRowLimit;
+      return this;
+    }
+
+    public Builder setSecurityConstraint( Constraint securityConstraint ) {
+      this.securityConstraint = securityConstraint;
+      return this;
+    }
+
+    /**
+     * @param dialect
+     *          the dialect of the database meta, resolved once by batches for all their queries; null to look it up
+     * @return this builder
+     */
+    public Builder setDialect( SQLDialectInterface dialect ) {
+      this.dialect = dialect;
+      return this;
+    }
+
+    public SqlGenerationRequest build() {
+      return new SqlGenerationRequest( this );
+    }
+  }
+}
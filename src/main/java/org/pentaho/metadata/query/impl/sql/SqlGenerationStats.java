@@ -0,0 +1,93 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+/**
+ * The statistics recorded while generating the SQL of a single query: the time spent in each
+ * {@link SqlGenerationPhase}, the number of nodes and arcs visited by the path search and the length of the generated
+ * SQL.
+ * 
+ */
+public class SqlGenerationStats {
+
+  private final long[] phaseNanos = new long[ SqlGenerationPhase.values().length ];
+
+  private int pathNodeVisits;
+
+  private int pathArcVisits;
+
+  private int sqlLength;
+
+  /**
+   * Adds the time elapsed since <code>start</code> to the specified phase.
+   * 
+   * @param phase
+   *          the phase that just completed
+   * @param start
+   *          the <code>System.nanoTime()</code> value at the start of the phase
+   * @return the current <code>System.nanoTime()</code> value, to be used as the start of the next phase
+   */
+  public long lap( SqlGenerationPhase phase, long start ) {
+    long now = System.nanoTime();
+    phaseNanos[ phase.ordinal() ] += now - start;
+    return now;
+  }
+
+  public long getPhaseNanos( SqlGenerationPhase phase ) {
+    return phaseNanos[ phase.ordinal() ];
+  }
+
+  public long getTotalNanos() {
+    long total = 0;
+    for ( long nanos : phaseNanos ) {
+      total += nanos;
+    }
+    return total;
+  }
+
+  public int getPathNodeVisits() {
+    return pathNodeVisits;
+  }
+
+  public int getPathArcVisits() {
+    return pathArcVisits;
+  }
+
+  public void addPathVisits( int nodeVisits, int arcVisits ) {
+    pathNodeVisits += nodeVisits;
+    pathArcVisits += arcVisits;
+  }
+
+  public int getSqlLength() {
+    return sqlLength;
+  }
+
+  public void setSqlLength( int sqlLength ) {
+    this.sqlLength = sqlLength;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder( "SqlGenerationStats[" ); //$NON-NLS-1$
+    for ( SqlGenerationPhase phase : SqlGenerationPhase.values() ) {
+      sb.append( phase ).append( '=' ).append( getPhaseNanos( phase ) ).append( "ns, " ); //$NON-NLS-1$
+    }
+    sb.append( "pathNodeVisits=" ).append( pathNodeVisits ); //$NON-NLS-1$
+    sb.append( ", pathArcVisits=" ).append( pathArcVisits ); //$NON-NLS-1$
+    sb.append( ", sqlLength=" ).append( sqlLength ).append( ']' ); //$NON-NLS-1$
+    return sb.toString();
+  }
+}
@@ -16,15 +16,25 @@
  */
 package org.pentaho.metadata.query.impl.sql;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,17 +43,18 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.metadata.messages.Messages;
+import org.pentaho.metadata.model.IPhysicalTable;
 import org.pentaho.metadata.model.LogicalColumn;
 import org.pentaho.metadata.model.LogicalModel;
 import org.pentaho.metadata.model.LogicalRelationship;
 import org.pentaho.metadata.model.LogicalTable;
 import org.pentaho.metadata.model.SqlPhysicalColumn;
 import org.pentaho.metadata.model.SqlPhysicalTable;
+import org.pentaho.metadata.model.concept.types.AggregationType;
 import org.pentaho.metadata.model.concept.types.RelationshipType;
+import org.pentaho.metadata.model.concept.types.TableType;
 import org.pentaho.metadata.model.concept.types.TargetColumnType;
 import org.pentaho.metadata.model.concept.types.TargetTableType;
-import org.pentaho.metadata.query.impl.sql.graph.MqlGraph;
-import org.pentaho.metadata.query.impl.sql.graph.PathType;
 import org.pentaho.metadata.query.model.CombinationType;
 import org.pentaho.metadata.query.model.Constraint;
 import org.pentaho.metadata.query.model.Order;
@@ -53,14 +64,27 @@ import org.pentaho.metadata.query.model.Query;
 import org.pentaho.metadata.query.model.Selection;
 import org.pentaho.metadata.repository.IMetadataDomainRepository;
 import org.pentaho.pms.core.exception.PentahoMetadataException;
+import org.pentaho.pms.mql.dialect.DefaultMultiValuedParameterStrategy;
+import org.pentaho.pms.mql.dialect.DefaultSQLDialect;
 import org.pentaho.pms.mql.dialect.JoinType;
+import org.pentaho.pms.mql.dialect.MultiValuedParameterStrategy;
 import org.pentaho.pms.mql.dialect.SQLDialectFactory;
 import org.pentaho.pms.mql.dialect.SQLDialectInterface;
 import org.pentaho.pms.mql.dialect.SQLQueryModel;
 import org.pentaho.pms.mql.dialect.SQLQueryModel.OrderType;
+import org.pentaho.pms.mql.dialect.SQLQueryModel.SQLOrderBy;
+import org.pentaho.pms.mql.dialect.SQLQueryModel.SQLTable;
+import org.pentaho.pms.util.Const;
 
 /**
  * This class contains the SQL generation algorithm. The primary entrance method into this class is generateSql().
+ * <p>
+ * A generator is thread safe: its settings are held by immutable {@link SqlGeneratorOptions}, the state of a query
+ * is kept on the stack of the generating thread, except for the statistics of the query being generated, which are
+ * held in a thread local for the overridable generation methods, and the caches shared
+ * between queries, the join paths of {@link JoinPathEngine}, the column metadata of {@link LogicalModelMetadataIndex}
+ * and the formula context of {@link SqlOpenFormulaContext}, are synchronized. A single instance can generate the SQL
+ * of concurrent queries, as long as the deprecated {@link #preferClassicShortestPath} field is not modified meanwhile.
  * 
  * @author Will Gorman (wgorman@pentaho.org)
  * 
@@ -68,14 +92,84 @@ import org.pentaho.pms.mql.dialect.SQLQueryModel.OrderType;
 public class SqlGenerator {
 
   private static final Log logger = LogFactory.getLog( SqlGenerator.class );
+
+  /**
+   * Prefers the CLASSIC path method, in addition to {@link SqlGeneratorOptions#isPreferClassicShortestPath()}.
+   * 
+   * @deprecated mutable and not thread safe, create the generator with
+   *             {@link SqlGeneratorOptions#withPreferClassicShortestPath(boolean)} instead. To be removed in the next
+   *             release.
+   */
+  @Deprecated
   public boolean preferClassicShortestPath = false;
 
+  private final SqlGeneratorOptions options;
+
+  private volatile ISqlGenerationListener sqlGenerationListener;
+
+  /**
+   * Statistics of the query being generated on the current thread, only set while a listener is registered.
+   */
+  private final ThreadLocal<SqlGenerationStats> activeStats = new ThreadLocal<SqlGenerationStats>();
+
   /**
    * Boolean property that can be defined on the model which indicates whether to use the legacy implementation of
    * SQLJoin.compareTo().
    */
   private static final String LEGACY_JOIN_ORDER = "legacy_join_order";
 
+  /**
+   * Boolean property that can be defined on the model which indicates whether to order the inner joins of outer join
+   * queries by the relative size of the joined tables.
+   */
+  private static final String COST_BASED_JOIN_ORDER = "cost_based_join_order";
+
+  /**
+   * Boolean property that can be defined on the model which indicates whether to remove the 1:N dimension joins of
+   * which only the key is used, for the relationships declaring referential integrity, see DimensionPruningOptimizer.
+   */
+  private static final String PRUNE_DIMENSION_JOINS = "prune_dimension_joins";
+
+  /**
+   * Boolean property that can be defined on the model which indicates whether to compute the formula columns used more
+   * than once by a query only once per row, in a common table (WITH clause) if the dialect supports it or else in a
+   * derived table, and to refer to the computed column everywhere else. Only the formula columns without aggregates
+   * or parameters that refer to their own table are shared.
+   */
+  private static final String SHARE_FORMULA_COLUMNS = "share_formula_columns";
+
+  private static final String COMPUTED_COLUMN_PREFIX = "PMS_F"; //$NON-NLS-1$
+
+  private static final String COMMON_TABLE_PREFIX = "PMS_CTE"; //$NON-NLS-1$
+
+  private static final String PARAM_REFERENCE = "[param:"; //$NON-NLS-1$
+
+  /**
+   * Prefix of the names the keyset values are bound under, see {@link MappedQuery#getBindValues(Map)}.
+   */
+  private static final String KEYSET_PARAMETER_PREFIX = "PMS_KEYSET_"; //$NON-NLS-1$
+
+  /**
+   * String property that can be defined on the model to pad the placeholders of multi-valued parameters of prepared
+   * statements up to the next power of two, so that the number of distinct SQL texts stays small. The value
+   * "repeat_last" binds the last value to the padding placeholders, "null" binds NULLs (not suitable for NOT IN).
+   */
+  private static final String PARAMETER_BIND_BUCKETS = "parameter_bind_buckets";
+
+  private static final String PAD_WITH_NULLS = "null";
+
+  /**
+   * Relative size assumed for fact tables without a relative size, other tables without one count as 1.
+   */
+  private static final long DEFAULT_FACT_TABLE_SIZE = 1000;
+
+  /**
+   * Temporary parameter placeholders left in the generated SQL by SqlOpenFormula, including the slice, array and table
+   * placeholders of a {@link MultiValuedParameterStrategy}.
+   */
+  private static final Pattern PARAM_PATTERN =
+      Pattern.compile( "___PARAM(?:SLICE\\[(\\d+),(\\d+)\\]|(ARRAY)|(TABLE))?\\[(.*?)\\]___" ); //$NON-NLS-1$
+
   /**
    * This private class is used to sort the business tables in terms of the number of neighbours they have. We use this
    * information to find the table best suited to provide the missing link between selected tables while doing SQL
@@ -95,6 +189,99 @@ public class SqlGenerator {
     }
   }
 
+  /**
+   * Identifies the queries of a batch which generate the same SQL: same logical model instance, and the same
+   * selections, constraints, orders, options and parameter defaults.
+   */
+  private static class BatchKey {
+    private final LogicalModel model;
+
+    private final String shape;
+
+    BatchKey( Query query ) {
+      model = query.getLogicalModel();
+      StringBuilder sb = new StringBuilder();
+      sb.append( query.getDisableDistinct() ).append( '|' ).append( query.getLimit() ).append( '|' ).append(
+          query.getOffset() ).append( '|' ).append( query.getKeyset() ).append( '|' ).append( query.isPreview() );
+      if ( query.isPreview() ) {
+        sb.append( ':' ).append( query.getSamplePercentage() ).append( ':' ).append( query.getSampleRowLimit() );
+      }
+      for ( Selection selection : query.getSelections() ) {
+        appendSelection( sb.append( "|S" ), selection );
+      }
+      for ( Constraint constraint : query.getConstraints() ) {
+        sb.append( "|C" ).append( constraint.getCombinationType() ).append( ':' ).append( constraint.getFormula() );
+      }
+      for ( Order order : query.getOrders() ) {
+        appendSelection( sb.append( "|O" ).append( order.getType() ).append( ':' ), order.getSelection() );
+      }
+      for ( Parameter parameter : query.getParameters() ) {
+        Object value = parameter.getDefaultValue();
+        sb.append( "|P" ).append( parameter.getName() ).append( '=' ).append(
+            value instanceof Object[] ? Arrays.deepToString( (Object[]) value ) : String.valueOf( value ) );
+      }
+      shape = sb.toString();
+    }
+
+    private static void appendSelection( StringBuilder sb, Selection selection ) {
+      if ( selection.getCategory() != null ) {
+        sb.append( selection.getCategory().getId() );
+      }
+      sb.append( ':' ).append( selection.getLogicalColumn().getId() ).append( ':' ).append(
+          selection.getAggregationType() );
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode( model ) + shape.hashCode();
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+      if ( !( obj instanceof BatchKey ) ) {
+        return false;
+      }
+      BatchKey other = (BatchKey) obj;
+      return model == other.model && shape.equals( other.shape );
+    }
+  }
+
+  public SqlGenerator() {
+    this( SqlGeneratorOptions.DEFAULT );
+  }
+
+  /**
+   * Creates a generator with the specified settings.
+   * 
+   * @param options
+   *          the settings of the generator
+   */
+  public SqlGenerator( SqlGeneratorOptions options ) {
+    if ( options == null ) {
+      throw new IllegalArgumentException( Messages.getErrorString( "SqlGenerator.ERROR_0021_NULL_OPTIONS" ) ); //$NON-NLS-1$
+    }
+    this.options = options;
+  }
+
+  public SqlGeneratorOptions getOptions() {
+    return options;
+  }
+
+  /**
+   * Registers a listener receiving the per-phase timings, path search visit counts and SQL length of every query
+   * generated from now on. Nothing is measured while no listener is registered.
+   * 
+   * @param sqlGenerationListener
+   *          the listener, or null to stop measuring
+   */
+  public void setSqlGenerationListener( ISqlGenerationListener sqlGenerationListener ) {
+    this.sqlGenerationListener = sqlGenerationListener;
+  }
+
+  public ISqlGenerationListener getSqlGenerationListener() {
+    return sqlGenerationListener;
+  }
+
   /**
    * This method traverses the set of selections and renders those selections to the SQL string buffer. This method
    * determines the SQL column aliases. It also calls getBusinessColumnSQL() which renders each individual business
@@ -130,6 +317,23 @@ public class SqlGenerator {
       List<Selection> selections, boolean disableDistinct, int limit, boolean group, String locale,
       Map<LogicalTable, String> tableAliases, Map<String, String> columnsMap, Map<String, Object> parameters,
       boolean genAsPreparedStatement ) {
+    generateSelect( query, model, databaseMeta, selections, disableDistinct, limit, group, locale, tableAliases,
+        columnsMap, parameters, genAsPreparedStatement, null );
+  }
+
+  /**
+   * Renders the selections like the overload without computed columns, reading the given columns by name. Overriding
+   * methods must pass the computed columns on to {@link #getBusinessColumnSQL}, as the computed tables of the query
+   * replace the tables of these columns.
+   * 
+   * @param computedColumns
+   *          Columns read from a computed or key column of the query instead of their own expression, see
+   *          {@link #SHARE_FORMULA_COLUMNS}, or null.
+   */
+  protected void generateSelect( SQLQueryModel query, LogicalModel model, DatabaseMeta databaseMeta,
+      List<Selection> selections, boolean disableDistinct, int limit, boolean group, String locale,
+      Map<LogicalTable, String> tableAliases, Map<String, String> columnsMap, Map<String, Object> parameters,
+      boolean genAsPreparedStatement, Map<LogicalColumn, String> computedColumns ) {
     query.setDistinct( !disableDistinct && !group );
     query.setLimit( limit );
     for ( int i = 0; i < selections.size(); i++ ) {
@@ -147,7 +351,7 @@ public class SqlGenerator {
       }
       SqlAndTables sqlAndTables =
           getBusinessColumnSQL( model, selections.get( i ), tableAliases, parameters, genAsPreparedStatement,
-              databaseMeta, locale );
+              databaseMeta, locale, computedColumns );
       query.addSelection( sqlAndTables.getSql(), alias );
     }
   }
@@ -207,8 +411,7 @@ public class SqlGenerator {
       // beginning of the table name.
 
       String tableName = (String) businessTable.getProperty( SqlPhysicalTable.TARGET_TABLE );
-      TargetTableType type = (TargetTableType) businessTable.getProperty( SqlPhysicalTable.TARGET_TABLE_TYPE );
-      if ( type == TargetTableType.INLINE_SQL || tableName.contains( "," ) ) {
+      if ( isDerivedTable( businessTable ) ) {
         tableName = "(" + tableName + ")"; //$NON-NLS-1$ //$NON-NLS-2$
       } else {
         tableName = databaseMeta.getQuotedSchemaTableCombination( schemaName, tableName );
@@ -251,8 +454,11 @@ public class SqlGenerator {
         String rightTableAlias = databaseMeta.quoteField( tableAliases.get( relation.getToTable() ) );
 
         boolean legacyJoin = Boolean.TRUE.equals( model.getProperty( LEGACY_JOIN_ORDER ) );
+        long sizeHint = query.getCostBasedJoinOrder() ? getJoinSizeHint( relation ) : -1;
+        // simple relationships join their columns with =
+        Boolean equalityJoin = relation.isComplex() ? null : Boolean.TRUE;
         query.addJoin( leftTableName, leftTableAlias, rightTableName, rightTableAlias, joinType, joinFormula,
-            joinOrderKey, legacyJoin );
+            joinOrderKey, legacyJoin, sizeHint, equalityJoin );
         // query.addWhereFormula(joinFormula, "AND"); //$NON-NLS-1$
       }
     }
@@ -303,6 +509,19 @@ public class SqlGenerator {
   protected void generateGroupBy( SQLQueryModel query, LogicalModel model, List<Selection> selections,
       Map<LogicalTable, String> tableAliases, Map<String, Object> parameters, boolean genAsPreparedStatement,
       DatabaseMeta databaseMeta, String locale ) {
+    generateGroupBy( query, model, selections, tableAliases, parameters, genAsPreparedStatement, databaseMeta, locale,
+        null );
+  }
+
+  /**
+   * Adds the group by statements like the overload without computed columns, reading the given columns by name.
+   * 
+   * @param computedColumns
+   *          Columns read from a computed or key column of the query instead of their own expression, or null.
+   */
+  protected void generateGroupBy( SQLQueryModel query, LogicalModel model, List<Selection> selections,
+      Map<LogicalTable, String> tableAliases, Map<String, Object> parameters, boolean genAsPreparedStatement,
+      DatabaseMeta databaseMeta, String locale, Map<LogicalColumn, String> computedColumns ) {
     // Can be moved to selection loop.
     for ( Selection selection : selections ) {
       // Check if the column has any nested aggregation in there like a calculated column : SUM(a)/SUM(b) with no
@@ -311,7 +530,7 @@ public class SqlGenerator {
       if ( !hasFactsInIt( model, selection, parameters, genAsPreparedStatement, databaseMeta, locale ) ) {
         SqlAndTables sqlAndTables =
             getBusinessColumnSQL( model, selection, tableAliases, parameters, genAsPreparedStatement, databaseMeta,
-                locale );
+                locale, computedColumns );
         query.addGroupBy( sqlAndTables.getSql(), null );
       }
     }
@@ -342,6 +561,19 @@ public class SqlGenerator {
   protected void generateOrderBy( SQLQueryModel query, LogicalModel model, List<Order> orderBy,
       DatabaseMeta databaseMeta, String locale, Map<LogicalTable, String> tableAliases, Map<String, String> columnsMap,
       Map<String, Object> parameters, boolean genAsPreparedStatement ) {
+    generateOrderBy( query, model, orderBy, databaseMeta, locale, tableAliases, columnsMap, parameters,
+        genAsPreparedStatement, null );
+  }
+
+  /**
+   * Adds the order by statements like the overload without computed columns, reading the given columns by name.
+   * 
+   * @param computedColumns
+   *          Columns read from a computed or key column of the query instead of their own expression, or null.
+   */
+  protected void generateOrderBy( SQLQueryModel query, LogicalModel model, List<Order> orderBy,
+      DatabaseMeta databaseMeta, String locale, Map<LogicalTable, String> tableAliases, Map<String, String> columnsMap,
+      Map<String, Object> parameters, boolean genAsPreparedStatement, Map<LogicalColumn, String> computedColumns ) {
     if ( orderBy != null ) {
       for ( Order orderItem : orderBy ) {
         LogicalColumn businessColumn = orderItem.getSelection().getLogicalColumn();
@@ -365,13 +597,311 @@ public class SqlGenerator {
         }
         SqlAndTables sqlAndTables =
             getBusinessColumnSQL( model, orderItem.getSelection(), tableAliases, parameters, genAsPreparedStatement,
-                databaseMeta, locale );
+                databaseMeta, locale, computedColumns );
         query.addOrderBy( sqlAndTables.getSql(), databaseMeta.quoteField( alias ), orderItem.getType() != Type.ASC
             ? OrderType.DESCENDING : null );
       }
     }
   }
 
+  /**
+   * Adds the keyset constraint, which keeps the rows sorting after the given order values:
+   * <code>( o1 &gt; v1 ) OR ( o1 = v1 AND o2 &gt; v2 ) OR ...</code>, with &lt; for descending orders. It goes in the
+   * HAVING clause if one of the orders is aggregated.
+   * <p>
+   * Prepared statements bind the values, which the mapped query returns with its other bind values. Otherwise the
+   * values are rendered as literals, which is not possible for boolean values.
+   * <p>
+   * Rows are compared with the SQL operators, so a row with a NULL order value never sorts after the keyset: keyset
+   * pagination skips such rows, and should order on columns which are not nullable.
+   * 
+   * @param query
+   *          SQL query model, with its order bys.
+   * @param orderBy
+   *          List of order bys.
+   * @param keyset
+   *          The order values of the last row of the previous page.
+   * @param dialect
+   *          The dialect rendering the values.
+   * @param genAsPreparedStatement
+   *          Binds the values rather than rendering them as literals.
+   * @return the bound values by parameter name, or null if no value is bound
+   */
+  protected Map<String, Object> generateKeyset( SQLQueryModel query, List<Order> orderBy, List<Object> keyset,
+      SQLDialectInterface dialect, boolean genAsPreparedStatement ) throws PentahoMetadataException {
+    if ( keyset == null || keyset.isEmpty() ) {
+      return null;
+    }
+    List<SQLOrderBy> orderBys = query.getOrderBys();
+    if ( orderBy == null || keyset.size() != orderBys.size() ) {
+      throw new PentahoMetadataException( Messages.getErrorString( "SqlGenerator.ERROR_0018_KEYSET_SIZE_MISMATCH", //$NON-NLS-1$
+          String.valueOf( keyset.size() ), String.valueOf( orderBys.size() ) ) );
+    }
+    boolean aggregate = false;
+    Map<String, Object> boundValues = genAsPreparedStatement ? new HashMap<String, Object>() : null;
+    String[] values = new String[keyset.size()];
+    for ( int i = 0; i < values.length; i++ ) {
+      Object value = keyset.get( i );
+      if ( value == null ) {
+        throw new PentahoMetadataException( Messages.getErrorString( "SqlGenerator.ERROR_0019_NULL_KEYSET_VALUE", //$NON-NLS-1$
+            String.valueOf( i + 1 ) ) );
+      }
+      if ( genAsPreparedStatement ) {
+        values[i] = "___PARAM[" + KEYSET_PARAMETER_PREFIX + i + "]___"; //$NON-NLS-1$ //$NON-NLS-2$
+        boundValues.put( KEYSET_PARAMETER_PREFIX + i, value );
+      } else if ( value instanceof Boolean ) {
+        throw new PentahoMetadataException( Messages.getErrorString(
+            "SqlGenerator.ERROR_0022_BOOLEAN_KEYSET_VALUE", String.valueOf( i + 1 ) ) ); //$NON-NLS-1$
+      } else {
+        values[i] = getKeysetLiteral( value, dialect );
+      }
+      aggregate |= orderBy.get( i ).getSelection().hasAggregate();
+    }
+
+    StringBuilder sql = new StringBuilder( "(" ); //$NON-NLS-1$
+    for ( int i = 0; i < values.length; i++ ) {
+      if ( i > 0 ) {
+        sql.append( " OR" ); //$NON-NLS-1$
+      }
+      sql.append( " (" ); //$NON-NLS-1$
+      for ( int j = 0; j < i; j++ ) {
+        sql.append( ' ' ).append( orderBys.get( j ).getSelection().getFormula() ).append( " = " ).append( values[j] ) //$NON-NLS-1$
+            .append( " AND" ); //$NON-NLS-1$
+      }
+      sql.append( ' ' ).append( orderBys.get( i ).getSelection().getFormula() );
+      sql.append( orderBys.get( i ).getOrder() == OrderType.DESCENDING ? " < " : " > " ); //$NON-NLS-1$ //$NON-NLS-2$
+      sql.append( values[i] ).append( " )" ); //$NON-NLS-1$
+    }
+    sql.append( " )" ); //$NON-NLS-1$
+    query.setKeysetConstraint( sql.toString(), aggregate );
+    return boundValues;
+  }
+
+  private static String getKeysetLiteral( Object value, SQLDialectInterface dialect ) {
+    if ( value instanceof Date ) {
+      Calendar cal = Calendar.getInstance();
+      cal.setTime( (Date) value );
+      return dialect.getDateSQL( cal.get( Calendar.YEAR ), cal.get( Calendar.MONTH ) + 1,
+          cal.get( Calendar.DAY_OF_MONTH ), cal.get( Calendar.HOUR_OF_DAY ), cal.get( Calendar.MINUTE ),
+          cal.get( Calendar.SECOND ), cal.get( Calendar.MILLISECOND ) );
+    } else if ( value instanceof BigDecimal ) {
+      return ( (BigDecimal) value ).toPlainString();
+    } else if ( value instanceof Number ) {
+      return value.toString();
+    }
+    return dialect.quoteStringLiteral( value );
+  }
+
+  /**
+   * Tells if a table is rendered as a derived table: an inline SQL table, or a table name listing several tables.
+   */
+  private static boolean isDerivedTable( LogicalTable table ) {
+    String tableName = (String) table.getProperty( SqlPhysicalTable.TARGET_TABLE );
+    return table.getProperty( SqlPhysicalTable.TARGET_TABLE_TYPE ) == TargetTableType.INLINE_SQL
+        || tableName != null && tableName.contains( "," ); //$NON-NLS-1$
+  }
+
+  /**
+   * Replaces the fact table of the query, the largest of the used tables, with a sample of its rows rendered by the
+   * dialect. The sample is a derived table keeping the alias of the table, so the rest of the query is unchanged. The
+   * query is not sampled if none of its tables has a relative size or is a fact table, since the fact table is then
+   * unknown.
+   * 
+   * @param query
+   *          SQL query model, with its tables and joins.
+   * @param usedBusinessTables
+   *          The tables of the query.
+   * @param tableAliases
+   *          The aliases of the tables.
+   * @param databaseMeta
+   *          The database meta quoting the aliases.
+   * @param dialect
+   *          The dialect rendering the sample.
+   * @param samplePercentage
+   *          Percentage of the fact table to sample (0 or less = no sampling).
+   * @param sampleRowLimit
+   *          Number of fact rows read when the dialect cannot sample.
+   */
+  protected void generateSample( SQLQueryModel query, List<LogicalTable> usedBusinessTables,
+      Map<LogicalTable, String> tableAliases, DatabaseMeta databaseMeta, SQLDialectInterface dialect,
+      double samplePercentage, int sampleRowLimit ) {
+    if ( samplePercentage <= 0 || !( dialect instanceof DefaultSQLDialect ) ) {
+      return;
+    }
+    LogicalTable factTable = null;
+    long factSize = 0;
+    for ( LogicalTable table : usedBusinessTables ) {
+      if ( !hasTableSizeHint( table ) ) {
+        continue;
+      }
+      long size = getTableSizeHint( table );
+      if ( factTable == null || size > factSize ) {
+        factTable = table;
+        factSize = size;
+      }
+    }
+    if ( factTable == null ) {
+      return;
+    }
+    String alias = databaseMeta.quoteField( tableAliases.get( factTable ) );
+    for ( SQLTable table : query.getTables() ) {
+      if ( alias.equals( table.getAlias() ) ) {
+        query.replaceTableName( alias, ( (DefaultSQLDialect) dialect ).generateSampledTable( table.getTableName(),
+            isDerivedTable( factTable ), samplePercentage, sampleRowLimit ) );
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the formula columns to share: the formula columns referenced more than once by the selections, group bys,
+   * orders and constraints of the query that only refer to their own table, without aggregates or parameters.
+   * 
+   * @return the computed column name of each shared formula column, or null if there is none
+   */
+  private Map<LogicalColumn, String> getSharedFormulaColumns( LogicalModel model, List<Selection> selections,
+      List<Constraint> conditions, List<Order> orderBy, Constraint securityConstraint,
+      Map<Constraint, SqlOpenFormula> constraintFormulaMap, boolean group, Map<LogicalTable, String> tableAliases,
+      Map<String, Object> parameters, boolean genAsPreparedStatement, DatabaseMeta databaseMeta, String locale ) {
+    Map<LogicalColumn, Integer> references = new LinkedHashMap<LogicalColumn, Integer>();
+    for ( Selection selection : selections ) {
+      // grouped queries render the selections without aggregate a second time in the GROUP BY clause
+      addReferences( references, selection.getLogicalColumn(), group && !selection.hasAggregate() ? 2 : 1 );
+    }
+    if ( orderBy != null ) {
+      for ( Order order : orderBy ) {
+        addReferences( references, order.getSelection().getLogicalColumn(), 1 );
+      }
+    }
+    List<Constraint> constraints = new ArrayList<Constraint>( conditions );
+    if ( securityConstraint != null ) {
+      constraints.add( securityConstraint );
+    }
+    for ( Constraint constraint : constraints ) {
+      for ( Selection selection : constraintFormulaMap.get( constraint ).getSelections() ) {
+        addReferences( references, selection.getLogicalColumn(), 1 );
+      }
+    }
+
+    Map<LogicalColumn, String> computedColumns = null;
+    for ( Map.Entry<LogicalColumn, Integer> entry : references.entrySet() ) {
+      if ( entry.getValue() > 1
+          && isShareable( model, entry.getKey(), tableAliases, parameters, genAsPreparedStatement, databaseMeta,
+              locale ) ) {
+        if ( computedColumns == null ) {
+          computedColumns = new LinkedHashMap<LogicalColumn, String>();
+        }
+        computedColumns.put( entry.getKey(), COMPUTED_COLUMN_PREFIX + computedColumns.size() );
+      }
+    }
+    return computedColumns;
+  }
+
+  private static void addReferences( Map<LogicalColumn, Integer> references, LogicalColumn column, int count ) {
+    Integer previous = references.get( column );
+    references.put( column, previous != null ? previous + count : count );
+  }
+
+  private static boolean isShareable( LogicalModel model, LogicalColumn column,
+      Map<LogicalTable, String> tableAliases, Map<String, Object> parameters, boolean genAsPreparedStatement,
+      DatabaseMeta databaseMeta, String locale ) {
+    if ( column.getProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE ) != TargetColumnType.OPEN_FORMULA ) {
+      return false;
+    }
+    String formulaString = (String) column.getProperty( SqlPhysicalColumn.TARGET_COLUMN );
+    LogicalTable table = column.getLogicalTable();
+    if ( formulaString == null || formulaString.contains( PARAM_REFERENCE ) || !tableAliases.containsKey( table ) ) {
+      return false;
+    }
+    try {
+      SqlOpenFormula formula =
+          new SqlOpenFormula( model, table, databaseMeta, formulaString, tableAliases, parameters,
+              genAsPreparedStatement );
+      formula.parseAndValidate();
+      if ( formula.hasAggregate() ) {
+        return false;
+      }
+      for ( LogicalTable usedTable : formula.getLogicalTables() ) {
+        if ( !usedTable.equals( table ) ) {
+          return false;
+        }
+      }
+      return !hasAggregateDefinedAlready( formula.generateSQL( locale ), databaseMeta );
+    } catch ( PentahoMetadataException e ) {
+      // rendered inline, which reports the error
+      return false;
+    }
+  }
+
+  /**
+   * Replaces the tables of the shared formula columns by a common table, or a derived table if the dialect does not
+   * support common tables, which selects all the columns of the table plus the computed formula columns. The table
+   * keeps its alias, so the rest of the query is unchanged.
+   * 
+   * @param query
+   *          SQL query model, with its tables and joins.
+   * @param model
+   *          Business model.
+   * @param computedColumns
+   *          The computed column name of each shared formula column.
+   * @param tableAliases
+   *          Aliases of the tables to be used during query generation.
+   * @param dialect
+   *          The dialect rendering the computed tables.
+   * @param databaseMeta
+   *          Database metadata.
+   * @param parameters
+   *          Parameters to be used during query generation.
+   * @param genAsPreparedStatement
+   *          Tells the method generate query as prepared statement.
+   * @param locale
+   *          Locale string.
+   */
+  protected void generateComputedTables( SQLQueryModel query, LogicalModel model,
+      Map<LogicalColumn, String> computedColumns, Map<LogicalTable, String> tableAliases, SQLDialectInterface dialect,
+      DatabaseMeta databaseMeta, Map<String, Object> parameters, boolean genAsPreparedStatement, String locale ) {
+    Map<LogicalTable, SQLQueryModel> computedTables = new LinkedHashMap<LogicalTable, SQLQueryModel>();
+    for ( Map.Entry<LogicalColumn, String> entry : computedColumns.entrySet() ) {
+      LogicalTable table = entry.getKey().getLogicalTable();
+      SQLQueryModel computedTable = computedTables.get( table );
+      if ( computedTable == null ) {
+        computedTable = new SQLQueryModel();
+        computedTable.setDistinct( false );
+        computedTable.addSelection( databaseMeta.quoteField( tableAliases.get( table ) ) + ".*", null ); //$NON-NLS-1$
+        computedTables.put( table, computedTable );
+      }
+      SqlAndTables sqlAndTables =
+          getBusinessColumnSQL( model, new Selection( null, entry.getKey(), AggregationType.NONE ), tableAliases,
+              parameters, genAsPreparedStatement, databaseMeta, locale );
+      computedTable.addSelection( sqlAndTables.getSql(), databaseMeta.quoteField( entry.getValue() ) );
+    }
+
+    boolean commonTables =
+        dialect instanceof DefaultSQLDialect && ( (DefaultSQLDialect) dialect ).supportsCommonTableExpressions();
+    for ( Map.Entry<LogicalTable, SQLQueryModel> entry : computedTables.entrySet() ) {
+      String alias = databaseMeta.quoteField( tableAliases.get( entry.getKey() ) );
+      String tableName = null;
+      for ( SQLTable table : query.getTables() ) {
+        if ( alias.equals( table.getAlias() ) ) {
+          tableName = table.getTableName();
+        }
+      }
+      if ( tableName == null ) {
+        // pruned from the query
+        continue;
+      }
+      entry.getValue().addTable( tableName, alias );
+      String sql = dialect.generateSelectStatement( entry.getValue() );
+      if ( commonTables ) {
+        String name = COMMON_TABLE_PREFIX + query.getCommonTables().size();
+        query.addCommonTable( name, sql );
+        query.replaceTableName( alias, name );
+      } else {
+        query.replaceTableName( alias, "(" + Const.CR + sql + ")" ); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+    }
+  }
+
   private static String genString( String base, int val ) {
     if ( val < 10 ) {
       return base + "0" + val; //$NON-NLS-1$
@@ -452,14 +982,159 @@ public class SqlGenerator {
       DatabaseMeta databaseMeta, Map<String, Object> parameters, boolean genAsPreparedStatement )
     throws PentahoMetadataException {
 
-    Constraint securityConstraint = null;
+    Constraint securityConstraint = getSecurityConstraint( query.getLogicalModel(), repo );
+    return generateSql( query, locale, databaseMeta, SQLDialectFactory.getSQLDialect( databaseMeta ), parameters,
+        genAsPreparedStatement, securityConstraint );
+  }
+
+  /**
+   * Generates SQL for a batch of queries, for instance all the tiles of a dashboard. The row level security
+   * constraint is resolved once per logical model, and identical queries are only generated once.
+   *
+   * @param queries
+   *        The queries to generate SQL for.
+   * @param locale
+   *        The locale to be used during query generation.
+   * @param repo
+   *        Metadata repository.
+   * @param databaseMeta
+   *        Database metadata.
+   * @param parameters
+   *        Parameters to be used during query generation, shared by all the queries of the batch.
+   * @return Generated query models, in the order of the supplied queries.
+   * @throws PentahoMetadataException
+   */
+  public List<MappedQuery> generateSqlBatch( List<Query> queries, String locale, IMetadataDomainRepository repo,
+      DatabaseMeta databaseMeta, Map<String, Object> parameters ) throws PentahoMetadataException {
+    return generateSqlBatch( queries, locale, repo, databaseMeta, parameters, false, null );
+  }
 
+  /**
+   * Generates SQL for a batch of queries, for instance all the tiles of a dashboard. The row level security
+   * constraint is resolved once per logical model, and identical queries are only generated once. If an executor is
+   * supplied, the distinct queries are generated in parallel on it.
+   *
+   * @param queries
+   *        The queries to generate SQL for.
+   * @param locale
+   *        The locale to be used during query generation.
+   * @param repo
+   *        Metadata repository.
+   * @param databaseMeta
+   *        Database metadata.
+   * @param parameters
+   *        Parameters to be used during query generation, shared by all the queries of the batch.
+   * @param genAsPreparedStatement
+   *        Forces the method generate query as prepared statement.
+   * @param executor
+   *        Executor to generate the queries on, or null to generate them on the calling thread.
+   * @return Generated query models, in the order of the supplied queries.
+   * @throws PentahoMetadataException
+   */
+  public List<MappedQuery> generateSqlBatch( List<Query> queries, final String locale,
+      IMetadataDomainRepository repo, final DatabaseMeta databaseMeta, Map<String, Object> parameters,
+      final boolean genAsPreparedStatement, Executor executor ) throws PentahoMetadataException {
+
+    // find the distinct queries of the batch, and the security constraint of each model involved
+    Map<LogicalModel, Constraint> securityConstraints = new IdentityHashMap<LogicalModel, Constraint>();
+    Map<BatchKey, Integer> distinctIndexes = new HashMap<BatchKey, Integer>();
+    List<Query> distinctQueries = new ArrayList<Query>();
+    int[] resultIndexes = new int[ queries.size() ];
+    for ( int i = 0; i < queries.size(); i++ ) {
+      Query query = queries.get( i );
+      BatchKey key = new BatchKey( query );
+      Integer index = distinctIndexes.get( key );
+      if ( index == null ) {
+        index = distinctQueries.size();
+        distinctIndexes.put( key, index );
+        distinctQueries.add( query );
+        if ( !securityConstraints.containsKey( query.getLogicalModel() ) ) {
+          securityConstraints.put( query.getLogicalModel(), getSecurityConstraint( query.getLogicalModel(), repo ) );
+        }
+      }
+      resultIndexes[ i ] = index;
+    }
+
+    final SQLDialectInterface dialect = SQLDialectFactory.getSQLDialect( databaseMeta );
+    List<MappedQuery> distinctResults = new ArrayList<MappedQuery>( distinctQueries.size() );
+    if ( executor == null || distinctQueries.size() < 2 ) {
+      for ( Query query : distinctQueries ) {
+        distinctResults.add( generateSql( query, locale, databaseMeta, dialect, copyParameters( parameters ),
+            genAsPreparedStatement, securityConstraints.get( query.getLogicalModel() ) ) );
+      }
+    } else {
+      List<FutureTask<MappedQuery>> tasks = new ArrayList<FutureTask<MappedQuery>>( distinctQueries.size() );
+      for ( final Query query : distinctQueries ) {
+        final Map<String, Object> queryParameters = copyParameters( parameters );
+        final Constraint securityConstraint = securityConstraints.get( query.getLogicalModel() );
+        FutureTask<MappedQuery> task = new FutureTask<MappedQuery>( new Callable<MappedQuery>() {
+          public MappedQuery call() throws PentahoMetadataException {
+            return generateSql( query, locale, databaseMeta, dialect, queryParameters, genAsPreparedStatement,
+                securityConstraint );
+          }
+        } );
+        tasks.add( task );
+        executor.execute( task );
+      }
+      try {
+        for ( FutureTask<MappedQuery> task : tasks ) {
+          distinctResults.add( task.get() );
+        }
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw new PentahoMetadataException( e );
+      } catch ( ExecutionException e ) {
+        if ( e.getCause() instanceof PentahoMetadataException ) {
+          throw (PentahoMetadataException) e.getCause();
+        } else if ( e.getCause() instanceof RuntimeException ) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new PentahoMetadataException( e.getCause() );
+      } finally {
+        for ( FutureTask<MappedQuery> task : tasks ) {
+          task.cancel( false );
+        }
+      }
+    }
+
+    // duplicates get their own copy of the mapped query, callers may modify the query they receive
+    List<MappedQuery> results = new ArrayList<MappedQuery>( queries.size() );
+    boolean[] returned = new boolean[ distinctResults.size() ];
+    for ( int index : resultIndexes ) {
+      MappedQuery result = distinctResults.get( index );
+      results.add( returned[ index ] ? new MappedQuery( result ) : result );
+      returned[ index ] = true;
+    }
+    return results;
+  }
+
+  /**
+   * Builds the row level security constraint of the specified model.
+   *
+   * @param model
+   *        The business model.
+   * @param repo
+   *        Metadata repository, may be null.
+   * @return the security constraint, or null if the model is not secured.
+   */
+  private Constraint getSecurityConstraint( LogicalModel model, IMetadataDomainRepository repo ) {
     if ( repo != null ) {
-      String mqlSecurityConstraint = repo.generateRowLevelSecurityConstraint( query.getLogicalModel() );
+      String mqlSecurityConstraint = repo.generateRowLevelSecurityConstraint( model );
       if ( StringUtils.isNotBlank( mqlSecurityConstraint ) ) {
-        securityConstraint = new Constraint( CombinationType.AND, mqlSecurityConstraint );
+        return new Constraint( CombinationType.AND, mqlSecurityConstraint );
       }
     }
+    return null;
+  }
+
+  private static Map<String, Object> copyParameters( Map<String, Object> parameters ) {
+    // each query of a batch resolves its own default values into the parameter map
+    return parameters == null ? null : new HashMap<String, Object>( parameters );
+  }
+
+  private MappedQuery generateSql( Query query, String locale, DatabaseMeta databaseMeta, SQLDialectInterface dialect,
+      Map<String, Object> parameters, boolean genAsPreparedStatement, Constraint securityConstraint )
+    throws PentahoMetadataException {
 
     // resolve any missing parameters with default values
     if ( parameters == null && query.getParameters().size() > 0 ) {
@@ -471,9 +1146,22 @@ public class SqlGenerator {
       }
     }
 
-    return getSQL( query.getLogicalModel(), query.getSelections(), query.getConstraints(), query.getOrders(),
-        databaseMeta, locale, parameters, genAsPreparedStatement, query.getDisableDistinct(), query.getLimit(),
-        securityConstraint );
+    double samplePercentage = -1;
+    if ( query.isPreview() ) {
+      samplePercentage = query.getSamplePercentage();
+      if ( samplePercentage <= 0 || samplePercentage > 100 ) {
+        throw new PentahoMetadataException( Messages.getErrorString(
+            "SqlGenerator.ERROR_0020_INVALID_SAMPLE_PERCENTAGE", String.valueOf( samplePercentage ) ) ); //$NON-NLS-1$
+      }
+    }
+
+    return getSQL( SqlGenerationRequest.builder().setModel( query.getLogicalModel() ).setSelections(
+        query.getSelections() ).setConditions( query.getConstraints() ).setOrderBy( query.getOrders() )
+        .setDatabaseMeta( databaseMeta ).setLocale( locale ).setParameters( parameters ).setGenAsPreparedStatement(
+            genAsPreparedStatement ).setDisableDistinct( query.getDisableDistinct() ).setLimit( query.getLimit() )
+        .setOffset( query.getOffset() ).setKeyset( query.getKeyset() ).setSamplePercentage( samplePercentage )
+        .setSampleRowLimit( query.getSampleRowLimit() ).setSecurityConstraint( securityConstraint ).setDialect(
+            dialect ).build() );
   }
 
   /**
@@ -508,8 +1196,70 @@ public class SqlGenerator {
       List<Order> orderBy, DatabaseMeta databaseMeta, String locale, Map<String, Object> parameters,
       boolean genAsPreparedStatement, boolean disableDistinct, int limit, Constraint securityConstraint )
     throws PentahoMetadataException {
+    return getSQL( SqlGenerationRequest.builder().setModel( model ).setSelections( selections ).setConditions(
+        conditions ).setOrderBy( orderBy ).setDatabaseMeta( databaseMeta ).setLocale( locale ).setParameters(
+            parameters ).setGenAsPreparedStatement( genAsPreparedStatement ).setDisableDistinct( disableDistinct )
+        .setLimit( limit ).setSecurityConstraint( securityConstraint ).build() );
+  }
 
+  /**
+   * Returns the generated SQL of a query, or of a page or a sample of it, and additional metadata. Subclasses
+   * generating their own SQL override this method; the overload with positional parameters only covers unpaged
+   * queries.
+   * 
+   * @param request
+   *          the query and how to render it
+   * 
+   * @return Returns a SQL query based on a column selection, conditions and a locale.
+   */
+  protected MappedQuery getSQL( SqlGenerationRequest request ) throws PentahoMetadataException {
+    if ( request.getDialect() == null ) {
+      request = request.toBuilder().setDialect( SQLDialectFactory.getSQLDialect( request.getDatabaseMeta() ) ).build();
+    }
+
+    ISqlGenerationListener listener = sqlGenerationListener;
+    if ( listener == null ) {
+      return getSQL( request, null );
+    }
+
+    SqlGenerationStats stats = new SqlGenerationStats();
+    activeStats.set( stats );
+    try {
+      MappedQuery mappedQuery = getSQL( request, stats );
+      stats.setSqlLength( mappedQuery.getQuery() != null ? mappedQuery.getQuery().length() : 0 );
+      try {
+        listener.sqlGenerated( request.getModel(), stats );
+      } catch ( RuntimeException e ) {
+        logger.warn( "SQL generation listener failed", e ); //$NON-NLS-1$
+      }
+      return mappedQuery;
+    } finally {
+      activeStats.remove();
+    }
+  }
+
+  private MappedQuery getSQL( SqlGenerationRequest request, SqlGenerationStats stats )
+    throws PentahoMetadataException {
+    LogicalModel model = request.getModel();
+    List<Selection> selections = request.getSelections();
+    List<Constraint> conditions = request.getConditions();
+    List<Order> orderBy = request.getOrderBy();
+    DatabaseMeta databaseMeta = request.getDatabaseMeta();
+    String locale = request.getLocale();
+    Map<String, Object> parameters = request.getParameters();
+    boolean genAsPreparedStatement = request.isGenAsPreparedStatement();
+    boolean disableDistinct = request.isDisableDistinct();
+    int limit = request.getLimit();
+    int offset = request.getOffset();
+    List<Object> keyset = request.getKeyset();
+    double samplePercentage = request.getSamplePercentage();
+    int sampleRowLimit = request.getSampleRowLimit();
+    Constraint securityConstraint = request.getSecurityConstraint();
+    SQLDialectInterface dialect = request.getDialect();
+
+    long start = stats != null ? System.nanoTime() : 0;
     SQLQueryModel query = new SQLQueryModel();
+    query.setOffset( Math.max( offset, 0 ) );
 
     // Get settings for the query model
     Object val = null;
@@ -517,6 +1267,7 @@ public class SqlGenerator {
     if ( ( val != null ) && ( val instanceof Boolean ) ) {
       query.setDelayOuterJoinConditions( ( (Boolean) val ).booleanValue() );
     }
+    query.setCostBasedJoinOrder( Boolean.TRUE.equals( model.getProperty( COST_BASED_JOIN_ORDER ) ) );
 
     Map<String, String> columnsMap = new HashMap<String, String>();
 
@@ -535,20 +1286,43 @@ public class SqlGenerator {
       formula.parseAndValidate();
       constraintFormulaMap.put( securityConstraint, formula );
     }
+    start = lap( stats, SqlGenerationPhase.FORMULA_PARSING, start );
+
+    // Read from the smallest aggregate table able to answer the query, if any
+    //
+    AggregateTableMatcher aggregate =
+        AggregateTableMatcher.match( model, selections, orderBy, new ArrayList<SqlOpenFormula>( constraintFormulaMap
+            .values() ), disableDistinct );
+    start = lap( stats, SqlGenerationPhase.AGGREGATE_MATCHING, start );
+    if ( aggregate != null ) {
+      Map<LogicalTable, String> tableAliases =
+          generateAggregateQuery( query, model, aggregate, selections, conditions, orderBy, constraintFormulaMap,
+              databaseMeta, dialect, locale, parameters, genAsPreparedStatement, disableDistinct, limit,
+              securityConstraint, columnsMap );
+      Map<String, Object> keysetValues = generateKeyset( query, orderBy, keyset, dialect, genAsPreparedStatement );
+      generateSample( query, new ArrayList<LogicalTable>( tableAliases.keySet() ), tableAliases, databaseMeta, dialect,
+          samplePercentage, sampleRowLimit );
+      start = lap( stats, SqlGenerationPhase.SELECT, start );
+      return renderSQL( query, dialect, model, selections, tableAliases, columnsMap, databaseMeta, parameters,
+          keysetValues, stats, start );
+    }
 
     // These are the tables involved in the field selection
     //
     List<LogicalTable> tabs =
         getTablesInvolved( model, selections, conditions, orderBy, constraintFormulaMap, parameters,
             genAsPreparedStatement, databaseMeta, locale, securityConstraint );
+    start = lap( stats, SqlGenerationPhase.TABLES_INVOLVED, start );
 
     // Now get the shortest path between these tables.
     Path path = getShortestPathBetween( model, tabs );
+    start = lap( stats, SqlGenerationPhase.PATH_SEARCH, start );
     if ( path == null ) {
       throw new PentahoMetadataException( Messages.getErrorString( "SqlGenerator.ERROR_0002_FAILED_TO_FIND_PATH" ) ); //$NON-NLS-1$
     }
 
     List<LogicalTable> usedBusinessTables = path.getUsedTables();
+    Map<String, Object> keysetValues = null;
     if ( path.size() == 0 ) {
       // just a selection from 1 table: pick any column...
       // Otherwise, why bother, right?
@@ -557,33 +1331,74 @@ public class SqlGenerator {
       }
     }
 
+    // drop the dimension joins that only provide keys already present on the fact table
+    DimensionPruningOptimizer pruner = null;
+    if ( Boolean.TRUE.equals( model.getProperty( PRUNE_DIMENSION_JOINS ) ) && path.size() > 0 ) {
+      pruner = new DimensionPruningOptimizer( model, databaseMeta, parameters, genAsPreparedStatement );
+      if ( pruner.optimize( path, selections, orderBy, constraintFormulaMap.values() ) > 0 ) {
+        path = pruner.getPrunedPath( path );
+        usedBusinessTables.removeAll( pruner.getDimensions() );
+      } else {
+        pruner = null;
+      }
+      start = lap( stats, SqlGenerationPhase.OPTIMIZATION, start );
+    }
+
     Map<LogicalTable, String> tableAliases = null;
 
     if ( usedBusinessTables.size() > 0 ) {
 
       // generate tableAliases mapping
 
-      int maxAliasNameWidth = SQLDialectFactory.getSQLDialect( databaseMeta ).getMaxTableNameLength();
+      int maxAliasNameWidth = dialect.getMaxTableNameLength();
       tableAliases = new HashMap<LogicalTable, String>();
       for ( LogicalTable table : usedBusinessTables ) {
         String uniqueAlias = generateUniqueAlias( table.getId(), maxAliasNameWidth, tableAliases.values() );
         tableAliases.put( table, uniqueAlias );
       }
 
+      // the pruned dimensions read their key from the foreign key of their fact table
+      Map<LogicalColumn, String> foreignKeys = pruner != null ? pruner.addDimensionAliases( tableAliases ) : null;
+
       boolean group =
           hasFactsInIt( model, selections, conditions, constraintFormulaMap, parameters, genAsPreparedStatement,
               databaseMeta, locale );
 
+      // compute the formula columns used several times once, not in the sampled tables of a preview
+      Map<LogicalColumn, String> computedColumns = null;
+      if ( samplePercentage <= 0 && Boolean.TRUE.equals( model.getProperty( SHARE_FORMULA_COLUMNS ) ) ) {
+        computedColumns =
+            getSharedFormulaColumns( model, selections, conditions, orderBy, securityConstraint, constraintFormulaMap,
+                group, tableAliases, parameters, genAsPreparedStatement, databaseMeta, locale );
+      }
+      Map<LogicalColumn, String> renderedColumns = computedColumns;
+      if ( foreignKeys != null ) {
+        renderedColumns = foreignKeys;
+        if ( computedColumns != null ) {
+          renderedColumns.putAll( computedColumns );
+        }
+      }
+      if ( renderedColumns != null ) {
+        for ( SqlOpenFormula formula : constraintFormulaMap.values() ) {
+          formula.setComputedColumns( renderedColumns );
+        }
+      }
+
       generateSelect( query, model, databaseMeta, selections, disableDistinct, limit, group, locale, tableAliases,
-          columnsMap, parameters, genAsPreparedStatement );
+          columnsMap, parameters, genAsPreparedStatement, renderedColumns );
+      start = lap( stats, SqlGenerationPhase.SELECT, start );
       generateFromAndWhere( query, usedBusinessTables, model, path, conditions, tableAliases, constraintFormulaMap,
           parameters, genAsPreparedStatement, databaseMeta, locale );
+      start = lap( stats, SqlGenerationPhase.FROM_AND_WHERE, start );
       if ( group ) {
         generateGroupBy( query, model, selections, tableAliases, parameters, genAsPreparedStatement, databaseMeta,
-            locale );
+            locale, renderedColumns );
+        start = lap( stats, SqlGenerationPhase.GROUP_BY, start );
       }
       generateOrderBy( query, model, orderBy, databaseMeta, locale, tableAliases, columnsMap, parameters,
-          genAsPreparedStatement );
+          genAsPreparedStatement, renderedColumns );
+      keysetValues = generateKeyset( query, orderBy, keyset, dialect, genAsPreparedStatement );
+      start = lap( stats, SqlGenerationPhase.ORDER_BY, start );
 
       if ( securityConstraint != null ) {
         // apply current table aliases
@@ -593,35 +1408,111 @@ public class SqlGenerator {
         // generate sql
         String sqlFormula = securityFormula.generateSQL( locale );
         query.setSecurityConstraint( sqlFormula, securityFormula.hasAggregate() );
+        start = lap( stats, SqlGenerationPhase.FROM_AND_WHERE, start );
+      }
+
+      // restrict the scans of date partitioned tables to the partitions of the date constraints
+      if ( dialect instanceof DefaultSQLDialect ) {
+        new PartitionPruningOptimizer( databaseMeta, (DefaultSQLDialect) dialect, locale ).optimize( query,
+            conditions, constraintFormulaMap, tableAliases );
+        start = lap( stats, SqlGenerationPhase.OPTIMIZATION, start );
       }
+
+      if ( pruner != null ) {
+        pruner.addConstraints( query, tableAliases );
+      }
+
+      if ( computedColumns != null ) {
+        generateComputedTables( query, model, computedColumns, tableAliases, dialect, databaseMeta, parameters,
+            genAsPreparedStatement, locale );
+        start = lap( stats, SqlGenerationPhase.OPTIMIZATION, start );
+      }
+
+      generateSample( query, usedBusinessTables, tableAliases, databaseMeta, dialect, samplePercentage,
+          sampleRowLimit );
     }
 
+    return renderSQL( query, dialect, model, selections, tableAliases, columnsMap, databaseMeta, parameters,
+        keysetValues, stats, start );
+  }
+
+  /**
+   * Renders the query model with the dialect and replaces the parameter placeholders.
+   */
+  private MappedQuery renderSQL( SQLQueryModel query, SQLDialectInterface dialect, LogicalModel model,
+      List<Selection> selections, Map<LogicalTable, String> tableAliases, Map<String, String> columnsMap,
+      DatabaseMeta databaseMeta, Map<String, Object> parameters, Map<String, Object> keysetValues,
+      SqlGenerationStats stats, long start ) {
     // this is available to classes that override sql generation behavior
     preprocessQueryModel( query, selections, tableAliases, databaseMeta );
 
+    Object bindBuckets = model.getProperty( PARAMETER_BIND_BUCKETS );
+
     // Convert temporary param placements with Sql Prepared Statement ? values
-    SQLDialectInterface dialect = SQLDialectFactory.getSQLDialect( databaseMeta );
     List<String> paramNames = null;
+    List<Integer> bindCounts = null;
     String sql = dialect.generateSelectStatement( query );
-    Pattern p = Pattern.compile( "___PARAM\\[(.*?)\\]___" ); //$NON-NLS-1$
-    Matcher m = p.matcher( sql );
+    start = lap( stats, SqlGenerationPhase.DIALECT_RENDERING, start );
+    Matcher m = PARAM_PATTERN.matcher( sql );
     StringBuffer sb = new StringBuffer();
+    Map<String, MultiValuedParameterStrategy> arrayParams = null;
+    List<MappedQuery.ParameterTable> paramTables = null;
+    // read once for the whole statement
+    MultiValuedParameterStrategy strategy = getMultiValuedParameterStrategy( dialect );
     while ( m.find() ) {
-      String paramName = m.group( 1 );
-      String repl = "?";
-      if ( parameters.get( paramName ) instanceof Object[] ) {
-        Object[] paramz = (Object[]) parameters.get( paramName );
-        for ( int i = 1; i < paramz.length; i++ ) {
-          repl += ", ?";
+      String paramName = m.group( 5 );
+      Object value = parameters != null ? parameters.get( paramName ) : null;
+      String repl;
+      int count = 1;
+      if ( m.group( 1 ) != null ) {
+        // a slice of a chunked IN list, the values are bound where the first slice is
+        int from = Integer.parseInt( m.group( 1 ) );
+        int to = Integer.parseInt( m.group( 2 ) );
+        count = to - from;
+        if ( bindBuckets != null && to == ( (Object[]) value ).length ) {
+          count = getBindBucket( count, strategy );
+        }
+        repl = getPlaceholders( count );
+        if ( from > 0 ) {
+          // slices are rendered one after another, the last entry is the one of the first slice
+          bindCounts.set( bindCounts.size() - 1, bindCounts.get( bindCounts.size() - 1 ) + count );
+          m.appendReplacement( sb, repl );
+          continue;
+        }
+      } else if ( m.group( 3 ) != null ) {
+        if ( arrayParams == null ) {
+          arrayParams = new HashMap<String, MultiValuedParameterStrategy>();
+        }
+        arrayParams.put( paramName, strategy );
+        repl = "?";
+      } else if ( m.group( 4 ) != null ) {
+        Object[] values = (Object[]) value;
+        repl = strategy.getTableName( paramName, values );
+        if ( paramTables == null ) {
+          paramTables = new ArrayList<MappedQuery.ParameterTable>();
         }
+        paramTables.add( new MappedQuery.ParameterTable( strategy, repl, values ) );
+        m.appendReplacement( sb, repl );
+        continue;
+      } else {
+        if ( value instanceof Object[] ) {
+          count = Math.max( ( (Object[]) value ).length, 1 );
+          if ( bindBuckets != null ) {
+            count = getBindBucket( count, strategy );
+          }
+        }
+        repl = getPlaceholders( count );
       }
       m.appendReplacement( sb, repl ); //$NON-NLS-1$
       if ( paramNames == null ) {
         paramNames = new ArrayList<String>();
+        bindCounts = new ArrayList<Integer>();
       }
       paramNames.add( paramName );
+      bindCounts.add( count );
     }
     m.appendTail( sb );
+    lap( stats, SqlGenerationPhase.PARAMETER_SUBSTITUTION, start );
 
     String sqlStr = sb.toString();
     if ( logger.isTraceEnabled() ) {
@@ -630,7 +1521,110 @@ public class SqlGenerator {
     // this is available to classes that override sql generation behavior
     String sqlOutput = processGeneratedSql( sb.toString() );
 
-    return new MappedQuery( sqlOutput, columnsMap, selections, paramNames );
+    MappedQuery mappedQuery =
+        new MappedQuery( sqlOutput, columnsMap, selections, paramNames, arrayParams, paramTables );
+    mappedQuery.setParamBindCounts( bindCounts, bindBuckets != null
+        && PAD_WITH_NULLS.equalsIgnoreCase( bindBuckets.toString() ) );
+    mappedQuery.setGeneratedValues( keysetValues );
+    return mappedQuery;
+  }
+
+  private static String getPlaceholders( int count ) {
+    StringBuilder repl = new StringBuilder( "?" ); //$NON-NLS-1$
+    for ( int i = 1; i < count; i++ ) {
+      repl.append( ", ?" ); //$NON-NLS-1$
+    }
+    return repl.toString();
+  }
+
+  /**
+   * @return the next power of two, but no more than the IN list size the dialect splits lists at
+   */
+  private static int getBindBucket( int count, MultiValuedParameterStrategy strategy ) {
+    int bucket = Integer.highestOneBit( count );
+    if ( bucket < count ) {
+      bucket <<= 1;
+    }
+    if ( strategy instanceof DefaultMultiValuedParameterStrategy ) {
+      int chunkSize = ( (DefaultMultiValuedParameterStrategy) strategy ).getChunkSize();
+      if ( chunkSize > 0 && bucket > chunkSize ) {
+        bucket = Math.max( count, chunkSize );
+      }
+    }
+    return bucket;
+  }
+
+  private static MultiValuedParameterStrategy getMultiValuedParameterStrategy( SQLDialectInterface dialect ) {
+    if ( dialect instanceof DefaultSQLDialect ) {
+      return ( (DefaultSQLDialect) dialect ).getMultiValuedParameterStrategy();
+    }
+    return null;
+  }
+
+  /**
+   * Fills the query model for a query answered by an aggregate table. The selections, orders and constraints are
+   * mapped onto the aggregate table, which is the only table of the query.
+   * 
+   * @return the table aliases of the query
+   */
+  private Map<LogicalTable, String> generateAggregateQuery( SQLQueryModel query, LogicalModel model,
+      AggregateTableMatcher aggregate, List<Selection> selections, List<Constraint> conditions, List<Order> orderBy,
+      Map<Constraint, SqlOpenFormula> constraintFormulaMap, DatabaseMeta databaseMeta, SQLDialectInterface dialect,
+      String locale, Map<String, Object> parameters, boolean genAsPreparedStatement, boolean disableDistinct,
+      int limit, Constraint securityConstraint, Map<String, String> columnsMap ) throws PentahoMetadataException {
+    LogicalTable aggregateTable = aggregate.getLogicalTable();
+    Map<LogicalTable, String> tableAliases = new HashMap<LogicalTable, String>();
+    tableAliases.put( aggregateTable, generateUniqueAlias( aggregateTable.getId(), dialect.getMaxTableNameLength(),
+        tableAliases.values() ) );
+
+    boolean group = false;
+    List<Selection> aggregateSelections = new ArrayList<Selection>();
+    for ( Selection selection : selections ) {
+      group |= selection.hasAggregate();
+      aggregateSelections.add( aggregate.getAggregateSelection( selection ) );
+    }
+    List<Order> aggregateOrders = new ArrayList<Order>();
+    if ( orderBy != null ) {
+      for ( Order order : orderBy ) {
+        aggregateOrders.add( new Order( aggregate.getAggregateSelection( order.getSelection() ), order.getType() ) );
+      }
+    }
+
+    generateSelect( query, model, databaseMeta, aggregateSelections, disableDistinct, limit, group, locale,
+        tableAliases, columnsMap, parameters, genAsPreparedStatement );
+
+    String schemaName = null;
+    if ( aggregateTable.getProperty( SqlPhysicalTable.TARGET_SCHEMA ) != null ) {
+      schemaName = databaseMeta.quoteField( (String) aggregateTable.getProperty( SqlPhysicalTable.TARGET_SCHEMA ) );
+    }
+    query.addTable( databaseMeta.getQuotedSchemaTableCombination( schemaName, (String) aggregateTable
+        .getProperty( SqlPhysicalTable.TARGET_TABLE ) ), databaseMeta.quoteField( tableAliases.get( aggregateTable ) ) );
+
+    String[] usedTables = new String[] { aggregateTable.getId() };
+    for ( Constraint condition : conditions ) {
+      SqlOpenFormula formula = constraintFormulaMap.get( condition );
+      aggregate.mapConstraint( formula );
+      formula.setTableAliases( tableAliases );
+      query.addWhereFormula( formula.generateSQL( locale ), condition.getCombinationType().toString(), usedTables );
+    }
+    if ( securityConstraint != null ) {
+      SqlOpenFormula formula = constraintFormulaMap.get( securityConstraint );
+      aggregate.mapConstraint( formula );
+      formula.setTableAliases( tableAliases );
+      query.setSecurityConstraint( formula.generateSQL( locale ), false );
+    }
+
+    if ( group ) {
+      generateGroupBy( query, model, aggregateSelections, tableAliases, parameters, genAsPreparedStatement,
+          databaseMeta, locale );
+    }
+    generateOrderBy( query, model, aggregateOrders, databaseMeta, locale, tableAliases, columnsMap, parameters,
+        genAsPreparedStatement );
+    return tableAliases;
+  }
+
+  private static long lap( SqlGenerationStats stats, SqlGenerationPhase phase, long start ) {
+    return stats != null ? stats.lap( phase, start ) : 0;
   }
 
   /**
@@ -692,25 +1686,17 @@ public class SqlGenerator {
       Map<String, Object> parameters, boolean genAsPreparedStatement, DatabaseMeta databaseMeta, String locale,
       Constraint securityConstraint ) {
     Set<LogicalTable> treeSet = new TreeSet<LogicalTable>();
+    LogicalModelMetadataIndex index = LogicalModelMetadataIndex.forModel( model );
 
     // Figure out which tables are involved in the SELECT
     //
     for ( Selection selection : selections ) {
       // We need to figure out which tables are involved in the formula.
       // This could simply be the parent table, but it could also be another one too.
+      // The formula is parsed once per model, see LogicalModelMetadataIndex.
       //
-      // If we want to know all the tables involved in the query, we need to parse all the formula first
-      // TODO: We re-use the static method below, maybe there is a better way to clean this up a bit.
-      //
-
-      SqlAndTables sqlAndTables =
-          getBusinessColumnSQL( model, selection, null, parameters, genAsPreparedStatement, databaseMeta, locale );
-
-      // Add the involved tables to the list...
-      //
-      for ( LogicalTable businessTable : sqlAndTables.getUsedTables() ) {
-        treeSet.add( businessTable );
-      }
+      treeSet.addAll( index.getColumnMetadata( selection.getLogicalColumn(), databaseMeta, parameters,
+          genAsPreparedStatement, locale ).getReferencedTables() );
     }
 
     // Figure out which tables are involved in the WHERE
@@ -727,15 +1713,8 @@ public class SqlGenerator {
     // Figure out which tables are involved in the ORDER BY
     //
     for ( Order order : orderBy ) {
-      SqlAndTables sqlAndTables =
-          getBusinessColumnSQL( model, order.getSelection(), null, parameters, genAsPreparedStatement, databaseMeta,
-              locale );
-
-      // Add the involved tables to the list...
-      //
-      for ( LogicalTable businessTable : sqlAndTables.getUsedTables() ) {
-        treeSet.add( businessTable );
-      }
+      treeSet.addAll( index.getColumnMetadata( order.getSelection().getLogicalColumn(), databaseMeta, parameters,
+          genAsPreparedStatement, locale ).getReferencedTables() );
     }
 
     // find any tables listed in the security constraint
@@ -834,20 +1813,40 @@ public class SqlGenerator {
       return true;
     }
 
-    // Parse the formula in the business column to see which tables and columns are involved...
+    // Look up whether the formula in the business column uses any aggregated column...
     //
-    SqlAndTables sqlAndTables =
-        getBusinessColumnSQL( model, businessColumn, null, parameters, genAsPreparedStatement, databaseMeta, locale );
-    for ( Selection column : sqlAndTables.getUsedColumns() ) {
-      if ( column.hasAggregate() ) {
-        return true;
-      }
-    }
+    return LogicalModelMetadataIndex.forModel( model ).getColumnMetadata( businessColumn.getLogicalColumn(),
+        databaseMeta, parameters, genAsPreparedStatement, locale ).hasAggregatedColumns();
+  }
 
-    // Nothing found
-    //
-    return false;
+  /**
+   * Estimates the relative cost of a relationship, based on the relative size and table type of the joined tables and
+   * on the cardinality of the relationship, see {@link RelationshipType#getJoinSizeHint(RelationshipType, long, long)}.
+   * 
+   * @param relation
+   *          the relationship to estimate
+   * @return the relative cost of the join
+   */
+  protected long getJoinSizeHint( LogicalRelationship relation ) {
+    return RelationshipType.getJoinSizeHint( relation.getRelationshipType(), getTableSizeHint( relation
+        .getFromTable() ), getTableSizeHint( relation.getToTable() ) );
+  }
 
+  private static boolean hasTableSizeHint( LogicalTable table ) {
+    Object relSize = table.getProperty( SqlPhysicalTable.RELATIVE_SIZE );
+    return relSize instanceof Number && ( (Number) relSize ).longValue() > 0
+        || table.getProperty( IPhysicalTable.TABLETYPE_PROPERTY ) == TableType.FACT;
+  }
+
+  private static long getTableSizeHint( LogicalTable table ) {
+    Object relSize = table.getProperty( SqlPhysicalTable.RELATIVE_SIZE );
+    if ( relSize instanceof Number && ( (Number) relSize ).longValue() > 0 ) {
+      return ( (Number) relSize ).longValue();
+    }
+    if ( table.getProperty( IPhysicalTable.TABLETYPE_PROPERTY ) == TableType.FACT ) {
+      return DEFAULT_FACT_TABLE_SIZE;
+    }
+    return 1;
   }
 
   protected <T> List<List<T>> getSubsetsOfSize( int size, List<T> list ) {
@@ -878,6 +1877,9 @@ public class SqlGenerator {
    * new tables to the list until a path is discovered. If more than one path is available with a certain number of
    * tables, the algorithm uses the relative size values if specified to determine which path to traverse in the SQL
    * Join.
+   * <p>
+   * The search is done by the {@link JoinPathEngine} of the model, which prunes the candidate tables instead of
+   * trying every subset of them and caches the paths it found.
    * 
    * @param model
    *          The business model.
@@ -886,78 +1888,7 @@ public class SqlGenerator {
    * @return Returns the shortest path.
    */
   protected Path getShortestPathBetweenOrig( LogicalModel model, List<LogicalTable> tables ) {
-    // We have the business tables.
-    // Let's try to see if they are somehow connected first.
-    // If they are not, we add a table that's not being used so far and add it to the equation.
-    // We can continue like that until we connect all tables with joins.
-
-    // This is a list of all the paths that we could find between all the tables...
-    List<Path> paths = new ArrayList<Path>();
-
-    // Here are the tables we need to link it all together.
-    List<LogicalTable> origSelectedTables = new ArrayList<LogicalTable>( tables );
-    boolean allUsed = ( tables.size() == 0 );
-    // These are the tables that are not yet used
-    List<LogicalTable> notSelectedTables = getNonSelectedTables( model, origSelectedTables );
-
-    for ( int ns = 0; ns <= notSelectedTables.size() && !allUsed; ns++ ) {
-
-      // find unique combinations of notSelectedTables of size NS
-      List<List<LogicalTable>> uniqueCombos = getSubsetsOfSize( ns, notSelectedTables );
-      if ( ns == 0 ) {
-        uniqueCombos.add( new ArrayList<LogicalTable>() );
-      }
-
-      // add all the selected tables to this list
-      for ( int i = 0; i < uniqueCombos.size(); i++ ) {
-        List<LogicalTable> uc = uniqueCombos.get( i );
-        uc.addAll( origSelectedTables );
-      }
-
-      for ( int p = 0; p < uniqueCombos.size(); p++ ) {
-
-        List selectedTables = (List) uniqueCombos.get( p );
-        Path path = new Path();
-
-        // Generate all combinations of the selected tables...
-        for ( int i = 0; i < selectedTables.size(); i++ ) {
-          for ( int j = i + 1; j < selectedTables.size(); j++ ) {
-            LogicalTable one = (LogicalTable) selectedTables.get( i );
-            LogicalTable two = (LogicalTable) selectedTables.get( j );
-
-            // See if we have a relationship that goes from one to two...
-            LogicalRelationship relationship = findRelationshipUsing( model, one, two );
-            if ( relationship != null && !path.contains( relationship ) ) {
-              path.addRelationship( relationship );
-            }
-          }
-
-          // We need to have (n-1) relationships for n tables, otherwise we will not connect everything.
-          if ( path.size() == selectedTables.size() - 1 ) {
-            // This is a valid path, the first we find here is probably the shortest
-            paths.add( path );
-            // We can stop now.
-            allUsed = true;
-          }
-        }
-      }
-    }
-
-    // Now, off all the paths, look for the shortest number of relationships
-    // If we have the same number of relationships, get the one with the lowest total relative size.
-
-    int minSize = Integer.MAX_VALUE;
-    int minScore = Integer.MAX_VALUE;
-    Path minPath = null;
-    for ( int i = 0; i < paths.size(); i++ ) {
-      Path path = (Path) paths.get( i );
-      if ( path.size() < minSize || ( path.size() == minSize && path.score() < minScore ) ) {
-        minPath = path;
-        minScore = path.score();
-        minSize = path.size();
-      }
-    }
-    return minPath;
+    return JoinPathEngine.forModel( model ).getPath( JoinPathEngine.CLASSIC, tables );
   }
 
   /**
@@ -1011,33 +1942,19 @@ public class SqlGenerator {
     if ( ( pathBuildProperty != null ) && ( pathBuildProperty instanceof String ) ) {
       pathMethodString = (String) pathBuildProperty;
     } else {
-      if ( preferClassicShortestPath ) {
+      if ( options.isPreferClassicShortestPath() || preferClassicShortestPath ) {
         pathMethodString = "CLASSIC";
       } else {
         pathMethodString = "SHORTEST";
       }
     }
 
-    PathType pathBuildMethod = null;
-
-    if ( pathMethodString.equals( "CLASSIC" ) ) {
+    if ( pathMethodString.equals( JoinPathEngine.CLASSIC ) ) {
       return getShortestPathBetweenOrig( model, tables );
-    } else {
-      pathBuildMethod = PathType.valueOf( pathMethodString );
     }
 
-    MqlGraph graph = new MqlGraph( model );
-
-    // determine method to use for building the path from the model
-    // try {
-    // Use when fully integrated into editor and such
-    // pathBuildMethod = PathType.valueOf(model.getPathBuildMethod().getCode());
-    // }
-    // catch(Exception ignored){}
-
-    // do work to actually build the path
-    logger.debug( "Attempting to build path using technique: " + pathBuildMethod );
-    Path p = graph.getPath( pathBuildMethod, tables );
+    // do work to actually build the path, the engine caches the paths of the model
+    Path p = JoinPathEngine.forModel( model ).getPath( pathMethodString, tables, activeStats.get() );
 
     // not sure if this really is a good idea, but what do we do when
     // no valid path exists?
@@ -1159,15 +2076,6 @@ public class SqlGenerator {
   // return list;
   // }
 
-  private static LogicalRelationship findRelationshipUsing( LogicalModel model, LogicalTable one, LogicalTable two ) {
-    for ( LogicalRelationship rel : model.getLogicalRelationships() ) {
-      if ( rel.isUsingTable( one ) && rel.isUsingTable( two ) ) {
-        return rel;
-      }
-    }
-    return null;
-  }
-
   /**
    * Generates sql for the specified business column.
    * @param businessModel
@@ -1189,9 +2097,48 @@ public class SqlGenerator {
   public static SqlAndTables getBusinessColumnSQL( LogicalModel businessModel, Selection column,
       Map<LogicalTable, String> tableAliases, Map<String, Object> parameters, boolean genAsPreparedStatement,
       DatabaseMeta databaseMeta, String locale ) {
+    return getBusinessColumnSQL( businessModel, column, tableAliases, parameters, genAsPreparedStatement, databaseMeta,
+        locale, null );
+  }
+
+  /**
+   * Generates sql for the specified business column, reading the formula columns that are computed by a common or
+   * derived table from their computed column.
+   * @param businessModel
+   *          The business model to reference.
+   * @param column
+   *          The column to build SQL for.
+   * @param tableAliases
+   *          Aliases of the tables to be used during query generation.
+   * @param parameters
+   *          Parameters to be used during query generation.
+   * @param genAsPreparedStatement
+   *          Forces the method generate query as prepared statement.
+   * @param databaseMeta
+   *          The database to reference.
+   * @param locale
+   *          The locale to use.
+   * @param computedColumns
+   *          The computed column name of each shared formula column, or null.
+   * @return Returns sql for specified business column.
+   */
+  public static SqlAndTables getBusinessColumnSQL( LogicalModel businessModel, Selection column,
+      Map<LogicalTable, String> tableAliases, Map<String, Object> parameters, boolean genAsPreparedStatement,
+      DatabaseMeta databaseMeta, String locale, Map<LogicalColumn, String> computedColumns ) {
     String targetColumn = (String) column.getLogicalColumn().getProperty( SqlPhysicalColumn.TARGET_COLUMN );
     LogicalTable logicalTable = column.getLogicalColumn().getLogicalTable();
-    if ( column.getLogicalColumn().getProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE ) == TargetColumnType.OPEN_FORMULA ) {
+    String computedColumn = computedColumns != null ? computedColumns.get( column.getLogicalColumn() ) : null;
+    if ( computedColumn != null && tableAliases != null ) {
+      // the formula is computed once by the common or derived table replacing its table
+      String tableColumn =
+          databaseMeta.quoteField( tableAliases.get( logicalTable ) ) + "." //$NON-NLS-1$
+              + databaseMeta.quoteField( computedColumn );
+      if ( column.hasAggregate() ) {
+        tableColumn = getFunctionExpression( column, tableColumn, databaseMeta );
+      }
+      return new SqlAndTables( tableColumn, logicalTable, column );
+    } else if ( column.getLogicalColumn().getProperty( SqlPhysicalColumn.TARGET_COLUMN_TYPE )
+        == TargetColumnType.OPEN_FORMULA ) {
       // convert to sql using libformula subsystem
 
       try {
@@ -1199,6 +2146,8 @@ public class SqlGenerator {
         SqlOpenFormula formula =
             new SqlOpenFormula( businessModel, logicalTable, databaseMeta, targetColumn, tableAliases, parameters,
                 genAsPreparedStatement );
+        formula.setComputedColumns( computedColumns );
+        formula.setShareParsedFormula( true );
         formula.parseAndValidate();
 
         String formulaSql = formula.generateSQL( locale );
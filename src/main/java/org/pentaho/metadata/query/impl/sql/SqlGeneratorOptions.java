@@ -0,0 +1,77 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+/**
+ * The settings of a {@link SqlGenerator}. Options are immutable, the <code>with</code> methods return a modified copy,
+ * so a generator and its options can be shared between threads.
+ * 
+ */
+public final class SqlGeneratorOptions {
+
+  /**
+   * The options of a generator created without options.
+   */
+  public static final SqlGeneratorOptions DEFAULT = new SqlGeneratorOptions( false );
+
+  private final boolean preferClassicShortestPath;
+
+  private SqlGeneratorOptions( boolean preferClassicShortestPath ) {
+    this.preferClassicShortestPath = preferClassicShortestPath;
+  }
+
+  /**
+   * Whether the CLASSIC path build method is used for the models without a <code>path_build_method</code> property,
+   * instead of SHORTEST.
+   * 
+   * @return true if the CLASSIC method is preferred
+   */
+  public boolean isPreferClassicShortestPath() {
+    return preferClassicShortestPath;
+  }
+
+  /**
+   * Returns a copy of these options with the specified path build preference.
+   * 
+   * @param preferClassicShortestPath
+   *          true to use the CLASSIC path build method for the models without a <code>path_build_method</code>
+   *          property
+   * @return the modified options
+   */
+  public SqlGeneratorOptions withPreferClassicShortestPath( boolean preferClassicShortestPath ) {
+    return preferClassicShortestPath == this.preferClassicShortestPath
+        ? this : new SqlGeneratorOptions( preferClassicShortestPath );
+  }
+
+  @Override
+  public boolean equals( Object obj ) {
+    if ( !( obj instanceof SqlGeneratorOptions ) ) {
+      return false;
+    }
+    return preferClassicShortestPath == ( (SqlGeneratorOptions) obj ).preferClassicShortestPath;
+  }
+
+  @Override
+  public int hashCode() {
+    return preferClassicShortestPath ? 1 : 0;
+  }
+
+  @Override
+  public String toString() {
+    return "SqlGeneratorOptions[preferClassicShortestPath=" + preferClassicShortestPath + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.commons.connection.memory.MemoryMetaData;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.logging.LoggingObjectType;
+import org.pentaho.di.core.logging.SimpleLoggingObject;
+import org.pentaho.metadata.messages.LocaleHelper;
+import org.pentaho.metadata.messages.Messages;
+import org.pentaho.metadata.model.ICancellableMetadataQueryExec;
+import org.pentaho.metadata.model.IPhysicalModel;
+import org.pentaho.metadata.model.SqlDataSource;
+import org.pentaho.metadata.model.SqlPhysicalModel;
+import org.pentaho.metadata.query.BaseMetadataQueryExec;
+import org.pentaho.metadata.query.model.Parameter;
+import org.pentaho.metadata.query.model.Query;
+import org.pentaho.metadata.util.ThinModelConverter;
+
+/**
+ * Executes queries of {@link SqlPhysicalModel}s with JDBC and streams the rows of the result, see
+ * {@link StreamingSqlResultSet}. The SQL is generated as a prepared statement, so multi-valued parameter strategies
+ * and bind buckets of the dialect are honored.
+ * <p>
+ * Results are read with a forward only, read only cursor and the configured fetch size unless
+ * {@link #setForwardOnly(boolean)} is switched off. The maximum number of rows and the timeout are passed to the
+ * statement. Running queries can be cancelled from another thread with {@link #cancel()}.
+ * <p>
+ * Connections are taken from the {@link DataSource} if one is set, otherwise they are opened with the connection
+ * settings of the datasource of the physical model.
+ * 
+ */
+public class SqlMetadataQueryExec extends BaseMetadataQueryExec implements ICancellableMetadataQueryExec {
+
+  private static final Log logger = LogFactory.getLog( SqlMetadataQueryExec.class );
+
+  public static final int DEFAULT_FETCH_SIZE = 1000;
+
+  private int fetchSize = DEFAULT_FETCH_SIZE;
+
+  private String locale = LocaleHelper.getLocale().toString();
+
+  private DataSource dataSource;
+
+  private final Set<Statement> runningStatements =
+      Collections.newSetFromMap( new ConcurrentHashMap<Statement, Boolean>() );
+
+  private final Set<StreamingSqlResultSet> openResultSets =
+      Collections.newSetFromMap( new ConcurrentHashMap<StreamingSqlResultSet, Boolean>() );
+
+  public SqlMetadataQueryExec() {
+    setForwardOnly( true );
+  }
+
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  /**
+   * @param fetchSize
+   *          number of rows the driver fetches at once, 0 to use the driver default
+   */
+  public void setFetchSize( int fetchSize ) {
+    this.fetchSize = fetchSize;
+  }
+
+  public String getLocale() {
+    return locale;
+  }
+
+  public void setLocale( String locale ) {
+    this.locale = locale;
+  }
+
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  /**
+   * @param dataSource
+   *          the data source to take connections from instead of the datasource of the physical model
+   */
+  public void setDataSource( DataSource dataSource ) {
+    this.dataSource = dataSource;
+  }
+
+  public boolean isLive() {
+    return true;
+  }
+
+  /**
+   * Cancels every query of this executor that is still running or whose result is still open.
+   */
+  public void cancel() {
+    for ( Statement statement : runningStatements ) {
+      try {
+        statement.cancel();
+      } catch ( SQLException e ) {
+        logger.debug( "statement could not be cancelled", e ); //$NON-NLS-1$
+      }
+    }
+    for ( StreamingSqlResultSet resultSet : openResultSets ) {
+      resultSet.cancel();
+    }
+  }
+
+  void resultSetClosed( StreamingSqlResultSet resultSet ) {
+    openResultSets.remove( resultSet );
+  }
+
+  public IPentahoResultSet executeQuery( Query queryObject ) {
+    try {
+      return executeStreamingQuery( queryObject );
+    } catch ( Exception e ) {
+      logger.error( "error", e ); //$NON-NLS-1$
+      return null;
+    }
+  }
+
+  /**
+   * Executes SQL generated beforehand for the query, as a prepared statement with the parameter values of this
+   * executor, e.g. by a caller that keys a cache by the SQL.
+   * 
+   * @return the result, or null if the query failed
+   */
+  public IPentahoResultSet executeQuery( Query queryObject, MappedQuery mappedQuery ) {
+    try {
+      return executeStreamingQuery( queryObject, mappedQuery );
+    } catch ( Exception e ) {
+      logger.error( "error", e ); //$NON-NLS-1$
+      return null;
+    }
+  }
+
+  /**
+   * Executes the query and returns its streaming result, which must be closed by the caller unless it is read to the
+   * end.
+   */
+  public StreamingSqlResultSet executeStreamingQuery( Query queryObject ) throws Exception {
+    DatabaseMeta databaseMeta = getDatabaseMeta( queryObject );
+    MappedQuery mappedQuery =
+        new SqlGenerator().generateSql( queryObject, locale, getMetadataDomainRepository(), databaseMeta,
+            getParameterValues( queryObject ), true );
+    return executeStreamingQuery( queryObject, mappedQuery );
+  }
+
+  /**
+   * Executes SQL generated beforehand for the query as a prepared statement and returns its streaming result, which
+   * must be closed by the caller unless it is read to the end.
+   */
+  public StreamingSqlResultSet executeStreamingQuery( Query queryObject, MappedQuery mappedQuery ) throws Exception {
+    DatabaseMeta databaseMeta = getDatabaseMeta( queryObject );
+    Map<String, Object> values = getParameterValues( queryObject );
+    if ( getDoQueryLog() ) {
+      logger.info( "executing " + mappedQuery.getQuery() ); //$NON-NLS-1$
+    }
+
+    Connection connection = getConnection( databaseMeta );
+    boolean restoreReadOnly = false;
+    boolean restoreAutoCommit = false;
+    PreparedStatement statement = null;
+    try {
+      if ( isReadOnly() && mappedQuery.getParameterTables().isEmpty() && !connection.isReadOnly() ) {
+        connection.setReadOnly( true );
+        restoreReadOnly = true;
+      }
+      if ( isForwardOnly() && fetchSize > 0 && connection.getAutoCommit() ) {
+        // some drivers, PostgreSQL among them, only use cursors inside a transaction
+        connection.setAutoCommit( false );
+        restoreAutoCommit = true;
+      }
+      mappedQuery.loadParameterTables( connection );
+      statement =
+          connection.prepareStatement( mappedQuery.getQuery(), isForwardOnly() ? ResultSet.TYPE_FORWARD_ONLY
+              : ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY );
+      if ( isForwardOnly() && fetchSize > 0 ) {
+        statement.setFetchDirection( ResultSet.FETCH_FORWARD );
+        statement.setFetchSize( getDriverFetchSize( databaseMeta ) );
+      }
+      if ( getMaxRows() != null && getMaxRows() > 0 ) {
+        statement.setMaxRows( getMaxRows() );
+      }
+      if ( getTimeout() != null && getTimeout() > 0 ) {
+        statement.setQueryTimeout( getTimeout() );
+      }
+      mappedQuery.bindParameters( statement, values );
+      ResultSet resultSet;
+      runningStatements.add( statement );
+      try {
+        resultSet = statement.executeQuery();
+      } finally {
+        runningStatements.remove( statement );
+      }
+
+      ResultSetMetaData nativeMetaData = resultSet.getMetaData();
+      List<String> headers = new ArrayList<String>();
+      for ( int i = 1; i <= nativeMetaData.getColumnCount(); i++ ) {
+        headers.add( nativeMetaData.getColumnLabel( i ) );
+      }
+      StreamingSqlResultSet result =
+          new StreamingSqlResultSet( connection, restoreReadOnly, restoreAutoCommit, statement, resultSet, mappedQuery
+              .generateMetadata( new MemoryMetaData( new Object[][] { headers.toArray() }, null ) ) );
+      result.setOwner( this );
+      openResultSets.add( result );
+      return result;
+    } catch ( Exception e ) {
+      if ( statement != null ) {
+        statement.close();
+      }
+      StreamingSqlResultSet.releaseConnection( connection, restoreReadOnly, restoreAutoCommit );
+      throw e;
+    }
+  }
+
+  private DatabaseMeta getDatabaseMeta( Query queryObject ) {
+    IPhysicalModel physicalModel =
+        getPhysicalModel() != null ? getPhysicalModel() : queryObject.getLogicalModel().getPhysicalModel();
+    if ( !( physicalModel instanceof SqlPhysicalModel ) ) {
+      throw new IllegalArgumentException( Messages.getErrorString(
+          "SqlMetadataQueryExec.ERROR_0001_NOT_A_SQL_MODEL", physicalModel != null ? physicalModel.getId() : null ) ); //$NON-NLS-1$
+    }
+    SqlDataSource datasource = ( (SqlPhysicalModel) physicalModel ).getDatasource();
+    return ThinModelConverter.convertToLegacy( physicalModel.getId(), datasource );
+  }
+
+  private Map<String, Object> getParameterValues( Query queryObject ) {
+    Map<String, Object> values = new HashMap<String, Object>();
+    for ( Parameter param : queryObject.getParameters() ) {
+      Object value = parameters.get( param.getName() );
+      values.put( param.getName(), convertParameterValue( param, value != null ? value : param.getDefaultValue() ) );
+    }
+    return values;
+  }
+
+  /**
+   * MySQL only streams rows if the fetch size is Integer.MIN_VALUE.
+   */
+  private int getDriverFetchSize( DatabaseMeta databaseMeta ) {
+    if ( "MYSQL".equals( databaseMeta.getDatabaseInterface().getPluginId() ) ) { //$NON-NLS-1$
+      return Integer.MIN_VALUE;
+    }
+    return fetchSize;
+  }
+
+  /**
+   * Opens the connection a query runs on. Subclasses may override this to use the connections of their application.
+   */
+  protected Connection getConnection( DatabaseMeta databaseMeta ) throws SQLException {
+    if ( dataSource != null ) {
+      return dataSource.getConnection();
+    }
+    Database database =
+        new Database( new SimpleLoggingObject( "SqlMetadataQueryExec", LoggingObjectType.GENERAL, null ), //$NON-NLS-1$
+            databaseMeta );
+    try {
+      database.connect();
+    } catch ( KettleDatabaseException e ) {
+      throw new SQLException( e );
+    }
+    return database.getConnection();
+  }
+}
@@ -35,7 +35,7 @@ import org.pentaho.metadata.model.concept.types.LocalizedString;
 import org.pentaho.metadata.model.concept.types.TargetColumnType;
 import org.pentaho.metadata.query.model.Selection;
 import org.pentaho.pms.core.exception.PentahoMetadataException;
-import org.pentaho.pms.mql.dialect.FormulaTraversalInterface;
+import org.pentaho.pms.mql.dialect.ParameterizedFormulaTraversalInterface;
 import org.pentaho.pms.mql.dialect.SQLDialectFactory;
 import org.pentaho.pms.mql.dialect.SQLDialectInterface;
 import org.pentaho.pms.mql.dialect.SQLFunctionGeneratorInterface;
@@ -67,7 +67,7 @@ import org.pentaho.reporting.libraries.formula.typing.coretypes.TextType;
  * 
  * @see SqlGenerator
  */
-public class SqlOpenFormula implements FormulaTraversalInterface {
+public class SqlOpenFormula implements ParameterizedFormulaTraversalInterface {
 
   private static final String PARAM = "param:"; //$NON-NLS-1$
 
@@ -94,6 +94,9 @@ public class SqlOpenFormula implements FormulaTraversalInterface {
   /** table alias map **/
   private Map<LogicalTable, String> tableAliases;
 
+  /** formula columns read from a computed column of their table, see SqlGenerator **/
+  private Map<LogicalColumn, String> computedColumns;
+
   /** list of selections, accessible by other classes */
   private List<Selection> selections = new ArrayList<Selection>();
 
@@ -114,6 +117,8 @@ public class SqlOpenFormula implements FormulaTraversalInterface {
 
   private boolean genAsPreparedStatement;
 
+  private boolean shareParsedFormula;
+
   /**
    * constructor, used for constraints, security, and complex joins
    * 
@@ -214,6 +219,28 @@ public class SqlOpenFormula implements FormulaTraversalInterface {
     this.tableAliases = tableAliases;
   }
 
+  /**
+   * Sets the formula columns whose value is read from a computed column of their table instead of being rendered
+   * inline.
+   * 
+   * @param computedColumns
+   *          the computed column name of each formula column, or null
+   */
+  public void setComputedColumns( Map<LogicalColumn, String> computedColumns ) {
+    this.computedColumns = computedColumns;
+  }
+
+  /**
+   * Reads the parsed formula from the cache shared by the formulas with the same text. Used for the formulas of the
+   * logical columns, which are parsed for every query using them.
+   * 
+   * @param shareParsedFormula
+   *          true to use the shared parsed formula
+   */
+  public void setShareParsedFormula( boolean shareParsedFormula ) {
+    this.shareParsedFormula = shareParsedFormula;
+  }
+
   protected DatabaseMeta getDatabaseMeta() {
     return databaseMeta;
   }
@@ -270,8 +297,12 @@ public class SqlOpenFormula implements FormulaTraversalInterface {
       // throws an error if failed to parse and validate condition
       try {
         formulaString = verifyNullInsideINcondition( formulaString );
-        formulaObject = new Formula( formulaString );
-        formulaObject.initialize( formulaContext );
+        if ( shareParsedFormula ) {
+          formulaObject = LogicalModelMetadataIndex.getParsedFormula( formulaString );
+        } else {
+          formulaObject = new Formula( formulaString );
+          formulaContext.initialize( formulaObject );
+        }
         LValue val = formulaObject.getRootReference();
         validateAndResolveObjectModel( val );
         isValidated = true;
@@ -699,6 +730,17 @@ public class SqlOpenFormula implements FormulaTraversalInterface {
     }
   }
 
+  public boolean isGenAsPreparedStatement() {
+    return genAsPreparedStatement;
+  }
+
+  public String getParameterName( ContextLookup lookup ) {
+    if ( lookup.getName().startsWith( PARAM ) ) {
+      return lookup.getName().substring( 6 );
+    }
+    return null;
+  }
+
   protected void renderContextLookup( StringBuffer sb, String contextName, String locale )
     throws PentahoMetadataException {
     Selection column = (Selection) selectionMap.get( contextName );
@@ -774,7 +816,7 @@ public class SqlOpenFormula implements FormulaTraversalInterface {
       sb.append( " " ); //$NON-NLS-1$
       SqlAndTables sqlAndTables =
           SqlGenerator.getBusinessColumnSQL( model, column, tableAliases, parameters, genAsPreparedStatement,
-              databaseMeta, locale );
+              databaseMeta, locale, computedColumns );
       sb.append( sqlAndTables.getSql() );
       sb.append( " " ); //$NON-NLS-1$
 
@@ -807,6 +849,15 @@ public class SqlOpenFormula implements FormulaTraversalInterface {
     return sb.toString();
   }
 
+  /**
+   * retrieve the root of the parsed formula. run parseAndValidate() before running this method
+   * 
+   * @return root value of the formula
+   */
+  public LValue getRootValue() {
+    return formulaObject.getRootReference();
+  }
+
   /**
    * retrieve the list of business columns
    * 
@@ -18,11 +18,18 @@ package org.pentaho.metadata.query.impl.sql;
 
 import org.pentaho.metadata.messages.Messages;
 import org.pentaho.reporting.libraries.formula.DefaultFormulaContext;
+import org.pentaho.reporting.libraries.formula.EvaluationException;
+import org.pentaho.reporting.libraries.formula.Formula;
 import org.pentaho.reporting.libraries.formula.typing.Type;
 
 /**
  * This is a singleton class that manages SqlOpenFormula's context. the SqlOpenFormula uses this class to validate
  * operators and functions, and it also uses this class to convert Formula terms to SQL.
+ * <p>
+ * The singleton is shared by the queries generated concurrently. Its registries are only read once it is created, but
+ * libformula does not document DefaultFormulaContext as thread safe, and its function registry creates the function
+ * instances of a formula on demand. Formulas are therefore initialized one at a time, see
+ * {@link #initialize(Formula)}; an initialized formula no longer uses the context to be rendered to SQL.
  * 
  * @author Will Gorman (wgorman@pentaho.org)
  * 
@@ -30,7 +37,7 @@ import org.pentaho.reporting.libraries.formula.typing.Type;
 public class SqlOpenFormulaContext extends DefaultFormulaContext {
 
   /** singleton instance, one per classloader */
-  private static SqlOpenFormulaContext singleton = new SqlOpenFormulaContext();
+  private static final SqlOpenFormulaContext singleton = new SqlOpenFormulaContext();
 
   /**
    * static, thread safe singleton retrieval
@@ -41,6 +48,20 @@ public class SqlOpenFormulaContext extends DefaultFormulaContext {
     return singleton;
   }
 
+  /**
+   * Initializes a parsed formula with this context, one formula at a time.
+   * 
+   * @param formula
+   *          the parsed formula
+   * @throws EvaluationException
+   *           if a function of the formula is unknown
+   */
+  public void initialize( Formula formula ) throws EvaluationException {
+    synchronized ( this ) {
+      formula.initialize( this );
+    }
+  }
+
   /**
    * SqlOpenFormulaContext and SqlOpenFormula do not use libFormula in the traditional manner of executing a formula.
    * Instead they generate the necessary SQL to be executed from an RDBMS.
@@ -0,0 +1,330 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.commons.connection.IPentahoMetaData;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.commons.connection.memory.MemoryResultSet;
+import org.pentaho.metadata.messages.Messages;
+
+/**
+ * A result set reading the rows of a JDBC result set as they are requested, so that large results are never held in
+ * memory. The result set owns the statement and the connection. Both are closed when the last row has been read, when
+ * the result set is closed or when it is cancelled, after the connection settings changed for the query, like auto
+ * commit, have been restored.
+ * <p>
+ * Forward only results can only be read with {@link #next()} and {@link #peek()}. The random access methods require
+ * a scrollable result.
+ * 
+ */
+public class StreamingSqlResultSet implements IPentahoResultSet {
+
+  private static final Log logger = LogFactory.getLog( StreamingSqlResultSet.class );
+
+  private final Connection connection;
+
+  private final boolean restoreReadOnly;
+
+  private final boolean restoreAutoCommit;
+
+  private final Statement statement;
+
+  private final ResultSet resultSet;
+
+  private final int columnCount;
+
+  private final boolean scrollable;
+
+  private IPentahoMetaData metaData;
+
+  private Object[] peekedRow;
+
+  private long rowsRead;
+
+  private volatile boolean cancelled;
+
+  private boolean closed;
+
+  private SqlMetadataQueryExec owner;
+
+  /**
+   * @param connection
+   *          the connection of the statement
+   * @param restoreReadOnly
+   *          true if the connection was made read only for the query and must be made writable before it is closed
+   * @param restoreAutoCommit
+   *          true if auto commit was switched off for streaming and must be switched on before the connection is
+   *          closed
+   * @param statement
+   *          the executed statement
+   * @param resultSet
+   *          the result of the statement
+   * @param metaData
+   *          the column headers of the result
+   */
+  public StreamingSqlResultSet( Connection connection, boolean restoreReadOnly, boolean restoreAutoCommit,
+      Statement statement, ResultSet resultSet, IPentahoMetaData metaData ) throws SQLException {
+    this.connection = connection;
+    this.restoreReadOnly = restoreReadOnly;
+    this.restoreAutoCommit = restoreAutoCommit;
+    this.statement = statement;
+    this.resultSet = resultSet;
+    this.metaData = metaData;
+    ResultSetMetaData nativeMetaData = resultSet.getMetaData();
+    this.columnCount = nativeMetaData.getColumnCount();
+    this.scrollable = resultSet.getType() != ResultSet.TYPE_FORWARD_ONLY;
+  }
+
+  void setOwner( SqlMetadataQueryExec owner ) {
+    this.owner = owner;
+  }
+
+  /**
+   * @return the number of rows read so far
+   */
+  public synchronized long getRowsRead() {
+    return rowsRead;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Cancels the running statement with {@link Statement#cancel()} and releases the connection. May be called from any
+   * thread; a row being read is abandoned first, and the reading thread sees the end of the result with its next call
+   * to {@link #next()}.
+   */
+  public void cancel() {
+    cancelled = true;
+    try {
+      statement.cancel();
+    } catch ( SQLException e ) {
+      logger.debug( "statement could not be cancelled", e ); //$NON-NLS-1$
+    }
+    close();
+  }
+
+  public synchronized Object[] next() {
+    if ( peekedRow != null ) {
+      Object[] row = peekedRow;
+      peekedRow = null;
+      return row;
+    }
+    return readRow();
+  }
+
+  public synchronized Object[] peek() {
+    if ( peekedRow == null ) {
+      peekedRow = readRow();
+    }
+    return peekedRow;
+  }
+
+  private Object[] readRow() {
+    if ( closed || cancelled ) {
+      close();
+      return null;
+    }
+    try {
+      if ( !resultSet.next() ) {
+        close();
+        return null;
+      }
+      Object[] row = new Object[columnCount];
+      for ( int i = 0; i < columnCount; i++ ) {
+        row[i] = resultSet.getObject( i + 1 );
+      }
+      rowsRead++;
+      return row;
+    } catch ( SQLException e ) {
+      close();
+      if ( cancelled ) {
+        return null;
+      }
+      throw new IllegalStateException( Messages.getErrorString( "StreamingSqlResultSet.ERROR_0001_READ_FAILED" ), e ); //$NON-NLS-1$
+    }
+  }
+
+  public boolean isScrollable() {
+    return scrollable;
+  }
+
+  public int getColumnCount() {
+    return columnCount;
+  }
+
+  /**
+   * @return the number of rows of a scrollable result, -1 for forward only results
+   */
+  public synchronized int getRowCount() {
+    if ( !scrollable || closed ) {
+      return -1;
+    }
+    try {
+      int current = resultSet.getRow();
+      resultSet.last();
+      int count = resultSet.getRow();
+      if ( current == 0 ) {
+        resultSet.beforeFirst();
+      } else {
+        resultSet.absolute( current );
+      }
+      return count;
+    } catch ( SQLException e ) {
+      logger.error( "error", e ); //$NON-NLS-1$
+      return -1;
+    }
+  }
+
+  public synchronized Object getValueAt( int row, int column ) {
+    Object[] dataRow = getDataRow( row );
+    return dataRow != null ? dataRow[column] : null;
+  }
+
+  public synchronized Object[] getDataRow( int row ) {
+    checkScrollable();
+    try {
+      if ( !resultSet.absolute( row + 1 ) ) {
+        return null;
+      }
+      Object[] dataRow = new Object[columnCount];
+      for ( int i = 0; i < columnCount; i++ ) {
+        dataRow[i] = resultSet.getObject( i + 1 );
+      }
+      return dataRow;
+    } catch ( SQLException e ) {
+      throw new IllegalStateException( Messages.getErrorString( "StreamingSqlResultSet.ERROR_0001_READ_FAILED" ), e ); //$NON-NLS-1$
+    }
+  }
+
+  public synchronized Object[] getDataColumn( int column ) {
+    checkScrollable();
+    int rowCount = getRowCount();
+    Object[] values = new Object[Math.max( rowCount, 0 )];
+    for ( int i = 0; i < values.length; i++ ) {
+      values[i] = getValueAt( i, column );
+    }
+    return values;
+  }
+
+  public synchronized void beforeFirst() {
+    checkScrollable();
+    peekedRow = null;
+    try {
+      resultSet.beforeFirst();
+    } catch ( SQLException e ) {
+      throw new IllegalStateException( Messages.getErrorString( "StreamingSqlResultSet.ERROR_0001_READ_FAILED" ), e ); //$NON-NLS-1$
+    }
+  }
+
+  private void checkScrollable() {
+    if ( !scrollable ) {
+      throw new UnsupportedOperationException( Messages
+          .getErrorString( "StreamingSqlResultSet.ERROR_0002_FORWARD_ONLY" ) ); //$NON-NLS-1$
+    }
+    if ( closed ) {
+      throw new IllegalStateException( Messages.getErrorString( "StreamingSqlResultSet.ERROR_0003_CLOSED" ) ); //$NON-NLS-1$
+    }
+  }
+
+  public IPentahoMetaData getMetaData() {
+    return metaData;
+  }
+
+  public void setMetaData( IPentahoMetaData metaData ) {
+    this.metaData = metaData;
+  }
+
+  /**
+   * Reads the remaining rows into memory and closes the result set.
+   */
+  public synchronized IPentahoResultSet memoryCopy() {
+    MemoryResultSet copy = new MemoryResultSet( metaData );
+    for ( Object[] row = next(); row != null; row = next() ) {
+      copy.addRow( row );
+    }
+    return copy;
+  }
+
+  /**
+   * Closes the result set and the statement, ends the streaming transaction and releases the connection.
+   */
+  public synchronized void close() {
+    if ( closed ) {
+      return;
+    }
+    closed = true;
+    peekedRow = null;
+    try {
+      resultSet.close();
+    } catch ( SQLException e ) {
+      logger.debug( "error closing the result set", e ); //$NON-NLS-1$
+    }
+    try {
+      statement.close();
+    } catch ( SQLException e ) {
+      logger.debug( "error closing the statement", e ); //$NON-NLS-1$
+    }
+    try {
+      releaseConnection( connection, restoreReadOnly, restoreAutoCommit );
+    } catch ( SQLException e ) {
+      logger.debug( "error closing the connection", e ); //$NON-NLS-1$
+    }
+    if ( owner != null ) {
+      owner.resultSetClosed( this );
+    }
+  }
+
+  /**
+   * Same as {@link #close()}.
+   */
+  public void closeConnection() {
+    close();
+  }
+
+  /**
+   * Restores the connection settings changed for a query and closes the connection, which may return it to a pool.
+   */
+  static void releaseConnection( Connection connection, boolean restoreReadOnly, boolean restoreAutoCommit )
+    throws SQLException {
+    try {
+      if ( restoreAutoCommit ) {
+        // streaming ran in a transaction, end it before the connection goes back to a pool
+        connection.rollback();
+        connection.setAutoCommit( true );
+      }
+      if ( restoreReadOnly ) {
+        connection.setReadOnly( false );
+      }
+    } finally {
+      connection.close();
+    }
+  }
+
+  public void dispose() {
+    closeConnection();
+  }
+}
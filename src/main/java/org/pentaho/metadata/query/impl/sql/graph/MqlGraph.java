@@ -58,6 +58,10 @@ public class MqlGraph implements GraphElementChangeListener {
 
   private boolean needsReset = false;
 
+  private int nodeVisitCount;
+
+  private int arcVisitCount;
+
   /**
    * Creates a new graph for a business model
    * 
@@ -83,6 +87,9 @@ public class MqlGraph implements GraphElementChangeListener {
    * @return Path with smallest number of relationships to ensure all required tables are included
    */
   public Path getPath( PathType searchTechnique, List<LogicalTable> requiredTables ) {
+    nodeVisitCount = 0;
+    arcVisitCount = 0;
+
     // if reset works and validity check passes, build path
     if ( reset( requiredTables ) && isValid( searchTechnique ) ) {
       logger.debug( "Path determined sucessfully" );
@@ -114,6 +121,24 @@ public class MqlGraph implements GraphElementChangeListener {
     return null;
   }
 
+  /**
+   * Returns the number of nodes taken off the propagation queues during the last call to <code>getPath</code>
+   * 
+   * @return node visit count
+   */
+  public int getNodeVisitCount() {
+    return nodeVisitCount;
+  }
+
+  /**
+   * Returns the number of arcs examined during propagation in the last call to <code>getPath</code>
+   * 
+   * @return arc visit count
+   */
+  public int getArcVisitCount() {
+    return arcVisitCount;
+  }
+
   /**
    * Resets this graph before locating a path
    */
@@ -576,6 +601,7 @@ public class MqlGraph implements GraphElementChangeListener {
       // faster than the extended arc propagation checks
       if ( basicNodeQueue.size() > 0 ) {
         Node source = (Node) basicNodeQueue.remove();
+        nodeVisitCount++;
 
         // check if source node is bound to a requirement setting
         // before processing arcs
@@ -584,6 +610,7 @@ public class MqlGraph implements GraphElementChangeListener {
           // get list of arcs originating at node
           List<Arc> sourceArcs = source.getArcs();
           for ( Arc arc : sourceArcs ) {
+            arcVisitCount++;
             Node target = ( arc.getLeft() == source ) ? arc.getRight() : arc.getLeft();
 
             // if source is not required, arc is not required and
@@ -598,10 +625,12 @@ public class MqlGraph implements GraphElementChangeListener {
         // process extended enforcement of arc constraints on altered nodes
         // since we need to make sure that any node that is connected already
         Node source = (Node) extendedNodeQueue.remove();
+        nodeVisitCount++;
 
         // enforce arc constraints on nodes
         List<Arc> sourceArcs = source.getArcs();
         for ( Arc arc : sourceArcs ) {
+          arcVisitCount++;
           arc.propagate( source );
         }
       }
@@ -39,11 +39,16 @@ public class Query implements Serializable {
 
   private boolean disableDistinct;
   private int limit = -1;
+  private int offset = 0;
+  private boolean preview;
+  private double samplePercentage = 1;
+  private int sampleRowLimit = 10000;
 
   private List<Parameter> parameters = new ArrayList<Parameter>();
   private List<Selection> selections = new ArrayList<Selection>();
   private List<Constraint> constraints = new ArrayList<Constraint>();
   private List<Order> orders = new ArrayList<Order>();
+  private List<Object> keyset = new ArrayList<Object>();
 
   public Query( Domain domain, LogicalModel logicalModel ) {
     this.domain = domain;
@@ -84,6 +89,80 @@ public class Query implements Serializable {
     this.limit = limit;
   }
 
+  /**
+   * Returns the number of rows to skip before the first returned row. Zero means no offset.
+   * 
+   * @return offset
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * Sets the number of rows to skip before the first returned row. Zero means no offset. The database still reads the
+   * skipped rows, use the keyset to page through big results.
+   * 
+   * @param offset
+   */
+  public void setOffset( int offset ) {
+    this.offset = offset;
+  }
+
+  /**
+   * Returns true if the query previews the data: the fact table is replaced with a sample of its rows.
+   * 
+   * @return preview
+   */
+  public boolean isPreview() {
+    return preview;
+  }
+
+  /**
+   * Sets whether the query previews the data. A preview reads a sample of the fact table, through the sampling clause
+   * of the database, instead of scanning it.
+   * 
+   * @param preview
+   */
+  public void setPreview( boolean preview ) {
+    this.preview = preview;
+  }
+
+  /**
+   * Returns the percentage of the fact table read by a preview, between 0 and 100.
+   * 
+   * @return sample percentage
+   */
+  public double getSamplePercentage() {
+    return samplePercentage;
+  }
+
+  /**
+   * Sets the percentage of the fact table read by a preview, between 0 and 100. Defaults to 1.
+   * 
+   * @param samplePercentage
+   */
+  public void setSamplePercentage( double samplePercentage ) {
+    this.samplePercentage = samplePercentage;
+  }
+
+  /**
+   * Returns the number of fact rows read by a preview on databases without a sampling clause.
+   * 
+   * @return sample row limit
+   */
+  public int getSampleRowLimit() {
+    return sampleRowLimit;
+  }
+
+  /**
+   * Sets the number of fact rows read by a preview on databases without a sampling clause. Defaults to 10000.
+   * 
+   * @param sampleRowLimit
+   */
+  public void setSampleRowLimit( int sampleRowLimit ) {
+    this.sampleRowLimit = sampleRowLimit;
+  }
+
   public List<Parameter> getParameters() {
     return parameters;
   }
@@ -99,4 +178,18 @@ public class Query implements Serializable {
   public List<Order> getOrders() {
     return orders;
   }
+
+  /**
+   * Returns the values of the orders in the last row of the previous page, one per order. When set, the query only
+   * returns the rows that sort after that row, which lets the database seek to the page instead of skipping rows. The
+   * orders should identify a row uniquely and the values may not be null. Rows with a NULL order value never sort
+   * after the keyset and are skipped, so the orders should be on columns which are not nullable. Prepared statements
+   * bind the values, other queries render them as literals, which boolean values cannot be. An empty list means no
+   * keyset.
+   * 
+   * @return keyset values
+   */
+  public List<Object> getKeyset() {
+    return keyset;
+  }
 }
@@ -18,7 +18,10 @@ package org.pentaho.metadata.query.model.util;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Date;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -196,6 +199,37 @@ public class QueryXmlHelper {
   protected void addOptionsToDocument( Document doc, Element optionsElement, Query query ) {
     addTextElement( doc, optionsElement, "disable_distinct", Boolean.toString( query.getDisableDistinct() ) ); //$NON-NLS-1$
     addTextElement( doc, optionsElement, "limit", String.valueOf( query.getLimit() ) ); //$NON-NLS-1$
+    if ( query.getOffset() > 0 ) {
+      addTextElement( doc, optionsElement, "offset", String.valueOf( query.getOffset() ) ); //$NON-NLS-1$
+    }
+    if ( query.isPreview() ) {
+      addTextElement( doc, optionsElement, "preview", Boolean.TRUE.toString() ); //$NON-NLS-1$
+      addTextElement( doc, optionsElement, "sample_percentage", String.valueOf( query.getSamplePercentage() ) ); //$NON-NLS-1$
+      addTextElement( doc, optionsElement, "sample_row_limit", String.valueOf( query.getSampleRowLimit() ) ); //$NON-NLS-1$
+    }
+    if ( !query.getKeyset().isEmpty() ) {
+      Element keysetElement = doc.createElement( "keyset" ); //$NON-NLS-1$
+      for ( Object value : query.getKeyset() ) {
+        Element valueElement = doc.createElement( "value" ); //$NON-NLS-1$
+        String text;
+        if ( value instanceof Date ) {
+          valueElement.setAttribute( "type", DataType.DATE.toString() ); //$NON-NLS-1$
+          text = new Timestamp( ( (Date) value ).getTime() ).toString();
+        } else if ( value instanceof Number ) {
+          valueElement.setAttribute( "type", DataType.NUMERIC.toString() ); //$NON-NLS-1$
+          text = value instanceof BigDecimal ? ( (BigDecimal) value ).toPlainString() : value.toString();
+        } else if ( value instanceof Boolean ) {
+          valueElement.setAttribute( "type", DataType.BOOLEAN.toString() ); //$NON-NLS-1$
+          text = value.toString();
+        } else {
+          valueElement.setAttribute( "type", DataType.STRING.toString() ); //$NON-NLS-1$
+          text = value == null ? "" : value.toString(); //$NON-NLS-1$
+        }
+        valueElement.appendChild( doc.createTextNode( text ) );
+        keysetElement.appendChild( valueElement );
+      }
+      optionsElement.appendChild( keysetElement );
+    }
   }
 
   protected void addParametersToDocument( Document doc, Element parametersElement, Query query ) {
@@ -422,6 +456,9 @@ public class QueryXmlHelper {
     // Keep default behavior...
     query.setDisableDistinct( false );
     query.setLimit( -1 );
+    query.setOffset( 0 );
+    query.setPreview( false );
+    query.getKeyset().clear();
     if ( optionElement != null ) {
       String disableStr = getElementText( optionElement, "disable_distinct" ); //$NON-NLS-1$
       if ( disableStr != null ) {
@@ -435,10 +472,62 @@ public class QueryXmlHelper {
           throw new PentahoMetadataException( Messages.getErrorString( "QueryXmlHelper.ERROR_0017_CANNOT_PARSE_LIMIT" ) ); //$NON-NLS-1$
         }
       }
+      String offsetStr = getElementText( optionElement, "offset" ); //$NON-NLS-1$
+      if ( offsetStr != null ) {
+        try {
+          query.setOffset( Integer.parseInt( offsetStr ) );
+        } catch ( NumberFormatException e ) {
+          throw new PentahoMetadataException( Messages.getErrorString( "QueryXmlHelper.ERROR_0018_CANNOT_PARSE_OFFSET" ) ); //$NON-NLS-1$
+        }
+      }
+      String previewStr = getElementText( optionElement, "preview" ); //$NON-NLS-1$
+      if ( previewStr != null ) {
+        query.setPreview( previewStr.equalsIgnoreCase( "true" ) ); //$NON-NLS-1$
+      }
+      String percentageStr = getElementText( optionElement, "sample_percentage" ); //$NON-NLS-1$
+      String rowLimitStr = getElementText( optionElement, "sample_row_limit" ); //$NON-NLS-1$
+      try {
+        if ( percentageStr != null ) {
+          query.setSamplePercentage( Double.parseDouble( percentageStr ) );
+        }
+        if ( rowLimitStr != null ) {
+          query.setSampleRowLimit( Integer.parseInt( rowLimitStr ) );
+        }
+      } catch ( NumberFormatException e ) {
+        throw new PentahoMetadataException( Messages.getErrorString( "QueryXmlHelper.ERROR_0020_CANNOT_PARSE_SAMPLE" ) ); //$NON-NLS-1$
+      }
+      NodeList keysetNodes = optionElement.getElementsByTagName( "keyset" ); //$NON-NLS-1$
+      if ( keysetNodes.getLength() > 0 ) {
+        NodeList valueNodes = ( (Element) keysetNodes.item( 0 ) ).getElementsByTagName( "value" ); //$NON-NLS-1$
+        for ( int i = 0; i < valueNodes.getLength(); i++ ) {
+          query.getKeyset().add( parseKeysetValue( (Element) valueNodes.item( i ) ) );
+        }
+      }
     }
 
   }
 
+  protected Object parseKeysetValue( Element valueElement ) throws PentahoMetadataException {
+    String text = valueElement.getFirstChild() == null ? "" : valueElement.getFirstChild().getNodeValue(); //$NON-NLS-1$
+    String type = valueElement.getAttribute( "type" ); //$NON-NLS-1$
+    try {
+      DataType dataType = StringUtils.isEmpty( type ) ? DataType.STRING : DataType.valueOf( type.toUpperCase() );
+      switch ( dataType ) {
+        case DATE:
+          return Timestamp.valueOf( text );
+        case NUMERIC:
+          return new BigDecimal( text );
+        case BOOLEAN:
+          return Boolean.valueOf( text );
+        default:
+          return text;
+      }
+    } catch ( IllegalArgumentException e ) {
+      throw new PentahoMetadataException( Messages.getErrorString(
+          "QueryXmlHelper.ERROR_0019_CANNOT_PARSE_KEYSET_VALUE", text ) ); //$NON-NLS-1$
+    }
+  }
+
   protected void addSelectionFromXmlNode( Query query, Element selectionElement ) {
 
     NodeList viewnodes = selectionElement.getElementsByTagName( "view" ); //$NON-NLS-1$
@@ -25,9 +25,11 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -53,6 +55,8 @@ public class FileBasedMetadataDomainRepository implements IMetadataDomainReposit
 
   protected Map<String, Domain> domains = Collections.synchronizedMap( new HashMap<String, Domain>() );
 
+  private final List<IDomainChangeListener> domainChangeListeners = new CopyOnWriteArrayList<IDomainChangeListener>();
+
   private String domainFolder = null;
 
   public void setDomainFolder( String folder ) {
@@ -106,6 +110,7 @@ public class FileBasedMetadataDomainRepository implements IMetadataDomainReposit
       // adds the domain to the domains list
       domains.put( domain.getId(), domain );
     }
+    fireDomainChanged( domain.getId() );
   }
 
   private String getDomainFilename( String id ) {
@@ -163,6 +168,7 @@ public class FileBasedMetadataDomainRepository implements IMetadataDomainReposit
 
   public void flushDomains() {
     domains.clear();
+    fireDomainChanged( null );
   }
 
   public void reloadDomains() {
@@ -200,6 +206,7 @@ public class FileBasedMetadataDomainRepository implements IMetadataDomainReposit
       domains.clear();
       domains.putAll( localDomains );
     }
+    fireDomainChanged( null );
   }
 
   public void removeDomain( String domainId ) {
@@ -209,6 +216,7 @@ public class FileBasedMetadataDomainRepository implements IMetadataDomainReposit
       domains.remove( domainId );
       domainFile.delete();
     }
+    fireDomainChanged( domainId );
   }
 
   public void removeModel( String domainId, String modelId ) throws DomainIdNullException, DomainStorageException {
@@ -258,4 +266,28 @@ public class FileBasedMetadataDomainRepository implements IMetadataDomainReposit
     // Subclasses can override this for ACL and Session/Credential checking
     return true;
   }
+
+  /**
+   * Registers a listener notified when a domain is stored again, removed or reloaded.
+   * 
+   * @param listener
+   *          the listener to add
+   */
+  public void addDomainChangeListener( IDomainChangeListener listener ) {
+    domainChangeListeners.add( listener );
+  }
+
+  /**
+   * @param listener
+   *          the listener to remove
+   */
+  public void removeDomainChangeListener( IDomainChangeListener listener ) {
+    domainChangeListeners.remove( listener );
+  }
+
+  protected void fireDomainChanged( String domainId ) {
+    for ( IDomainChangeListener listener : domainChangeListeners ) {
+      listener.domainChanged( domainId );
+    }
+  }
 }
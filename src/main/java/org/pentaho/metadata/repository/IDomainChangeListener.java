@@ -0,0 +1,33 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.repository;
+
+/**
+ * Receives a notification when a domain of a metadata domain repository is stored again, removed or reloaded, so that
+ * state derived from the domain, like cached query results, can be dropped.
+ */
+public interface IDomainChangeListener {
+
+  /**
+   * Called after a domain changed.
+   * 
+   * @param domainId
+   *          the id of the changed domain, or null when every domain of the repository may have changed
+   */
+  public void domainChanged( String domainId );
+
+}
@@ -18,8 +18,10 @@ package org.pentaho.metadata.repository;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -27,6 +29,7 @@ import org.pentaho.metadata.messages.Messages;
 import org.pentaho.metadata.model.Domain;
 import org.pentaho.metadata.model.LogicalModel;
 import org.pentaho.metadata.model.concept.IConcept;
+import org.pentaho.metadata.model.snapshot.DomainSnapshot;
 import org.pentaho.metadata.util.SecurityHelper;
 
 /**
@@ -40,6 +43,13 @@ public class InMemoryMetadataDomainRepository implements IMetadataDomainReposito
 
   Map<String, Domain> domains = new HashMap<String, Domain>();
 
+  /**
+   * The snapshots of the stored domains, taken on first use. A domain changed in place must be stored again.
+   */
+  private final Map<String, DomainSnapshot> snapshots = new HashMap<String, DomainSnapshot>();
+
+  private final List<IDomainChangeListener> domainChangeListeners = new CopyOnWriteArrayList<IDomainChangeListener>();
+
   public synchronized void storeDomain( Domain domain, boolean overwrite ) throws DomainIdNullException,
     DomainAlreadyExistsException, DomainStorageException {
     // stores a domain to system/metadata/DOMAIN_ID.domain.xml
@@ -61,6 +71,8 @@ public class InMemoryMetadataDomainRepository implements IMetadataDomainReposito
       domains = new HashMap<String, Domain>();
     }
     domains.put( domain.getId(), domain );
+    snapshots.remove( domain.getId() );
+    fireDomainChanged( domain.getId() );
   }
 
   public Domain getDomain( String id ) {
@@ -78,6 +90,34 @@ public class InMemoryMetadataDomainRepository implements IMetadataDomainReposito
     }
   }
 
+  /**
+   * Returns an immutable snapshot of the part of a domain the current user may read. Unlike {@link #getDomain(String)}
+   * no copy of the domain is made: the snapshot of the stored domain is taken once, and the secure snapshot only
+   * allocates the models and tables whose children are denied. Read only callers should prefer this method.
+   * 
+   * @param id
+   *          the domain id
+   * @return the secure snapshot, or null if the domain does not exist
+   */
+  public DomainSnapshot getDomainSnapshot( String id ) {
+    Domain domain;
+    DomainSnapshot snapshot;
+    synchronized ( this ) {
+      domain = domains == null ? null : domains.get( id );
+      if ( domain == null ) {
+        logger.error( "domain not found : " + id );
+        return null;
+      }
+      snapshot = snapshots.get( id );
+      if ( snapshot == null ) {
+        snapshot = DomainSnapshot.of( domain );
+        snapshots.put( id, snapshot );
+      }
+    }
+    SecurityHelper helper = new SecurityHelper();
+    return helper.createSecureSnapshot( this, domain, snapshot );
+  }
+
   public Set<String> getDomainIds() {
     if ( domains == null ) {
       reloadDomains();
@@ -87,15 +127,21 @@ public class InMemoryMetadataDomainRepository implements IMetadataDomainReposito
 
   public synchronized void flushDomains() {
     domains = null;
+    snapshots.clear();
+    fireDomainChanged( null );
   }
 
   public synchronized void reloadDomains() {
     // can't reload inmemory domains, they are gone
     domains = new HashMap<String, Domain>();
+    snapshots.clear();
+    fireDomainChanged( null );
   }
 
   public synchronized void removeDomain( String domainId ) {
     domains.remove( domainId );
+    snapshots.remove( domainId );
+    fireDomainChanged( domainId );
   }
 
   public String generateRowLevelSecurityConstraint( LogicalModel model ) {
@@ -142,4 +188,28 @@ public class InMemoryMetadataDomainRepository implements IMetadataDomainReposito
       }
     }
   }
+
+  /**
+   * Registers a listener notified when a domain is stored again, removed or reloaded.
+   * 
+   * @param listener
+   *          the listener to add
+   */
+  public void addDomainChangeListener( IDomainChangeListener listener ) {
+    domainChangeListeners.add( listener );
+  }
+
+  /**
+   * @param listener
+   *          the listener to remove
+   */
+  public void removeDomainChangeListener( IDomainChangeListener listener ) {
+    domainChangeListeners.remove( listener );
+  }
+
+  protected void fireDomainChanged( String domainId ) {
+    for ( IDomainChangeListener listener : domainChangeListeners ) {
+      listener.domainChanged( domainId );
+    }
+  }
 }
@@ -16,13 +16,24 @@
  */
 package org.pentaho.metadata.util;
 
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import org.pentaho.metadata.model.Category;
 import org.pentaho.metadata.model.Domain;
 import org.pentaho.metadata.model.LogicalColumn;
 import org.pentaho.metadata.model.LogicalModel;
 import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.concept.IConcept;
+import org.pentaho.metadata.model.snapshot.CategorySnapshot;
+import org.pentaho.metadata.model.snapshot.DomainSnapshot;
+import org.pentaho.metadata.model.snapshot.ISnapshotFilter;
+import org.pentaho.metadata.model.snapshot.LogicalColumnSnapshot;
+import org.pentaho.metadata.model.snapshot.LogicalModelSnapshot;
+import org.pentaho.metadata.model.snapshot.LogicalTableSnapshot;
 import org.pentaho.metadata.repository.IMetadataDomainRepository;
 
 public class SecurityHelper {
@@ -71,4 +82,111 @@ public class SecurityHelper {
     }
     return clone;
   }
+
+  /**
+   * Returns the part of a domain snapshot the current user may read. The checks are made against the concepts of the
+   * domain the snapshot was taken from, and the parts of the snapshot without denied children are shared with the
+   * returned snapshot.
+   * 
+   * @param repo
+   *          the repository checking the access
+   * @param domain
+   *          the domain the snapshot was taken from
+   * @param snapshot
+   *          the snapshot of the domain
+   * @return the secure snapshot, the snapshot itself if everything is readable
+   */
+  public DomainSnapshot createSecureSnapshot( IMetadataDomainRepository repo, Domain domain,
+      DomainSnapshot snapshot ) {
+    return snapshot.filter( new AccessFilter( repo, domain ) );
+  }
+
+  /**
+   * Checks the concepts of a domain matching the parts of a snapshot. The concepts are looked up by id in maps built
+   * once per model and table, instead of searching the lists of the domain for every column.
+   */
+  private static class AccessFilter implements ISnapshotFilter {
+
+    private final IMetadataDomainRepository repo;
+
+    private final Map<String, LogicalModel> models;
+
+    private final Map<LogicalModel, Map<String, LogicalTable>> tables =
+        new IdentityHashMap<LogicalModel, Map<String, LogicalTable>>();
+
+    private final Map<LogicalModel, Map<String, Category>> categories =
+        new IdentityHashMap<LogicalModel, Map<String, Category>>();
+
+    private final Map<LogicalTable, Map<String, LogicalColumn>> columns =
+        new IdentityHashMap<LogicalTable, Map<String, LogicalColumn>>();
+
+    AccessFilter( IMetadataDomainRepository repo, Domain domain ) {
+      this.repo = repo;
+      this.models = byId( domain.getLogicalModels() );
+    }
+
+    public boolean acceptLogicalModel( LogicalModelSnapshot model ) {
+      return canRead( models.get( model.getId() ) );
+    }
+
+    public boolean acceptLogicalTable( LogicalModelSnapshot model, LogicalTableSnapshot table ) {
+      return canRead( findTable( model, table ) );
+    }
+
+    public boolean acceptLogicalColumn( LogicalModelSnapshot model, LogicalTableSnapshot table,
+        LogicalColumnSnapshot column ) {
+      LogicalTable logicalTable = findTable( model, table );
+      if ( logicalTable == null ) {
+        return false;
+      }
+      Map<String, LogicalColumn> tableColumns = columns.get( logicalTable );
+      if ( tableColumns == null ) {
+        tableColumns = byId( logicalTable.getLogicalColumns() );
+        columns.put( logicalTable, tableColumns );
+      }
+      return canRead( tableColumns.get( column.getId() ) );
+    }
+
+    public boolean acceptCategory( LogicalModelSnapshot model, CategorySnapshot category ) {
+      LogicalModel logicalModel = models.get( model.getId() );
+      if ( logicalModel == null ) {
+        return false;
+      }
+      Map<String, Category> modelCategories = categories.get( logicalModel );
+      if ( modelCategories == null ) {
+        modelCategories = byId( logicalModel.getCategories() );
+        categories.put( logicalModel, modelCategories );
+      }
+      return canRead( modelCategories.get( category.getId() ) );
+    }
+
+    private LogicalTable findTable( LogicalModelSnapshot model, LogicalTableSnapshot table ) {
+      LogicalModel logicalModel = models.get( model.getId() );
+      if ( logicalModel == null ) {
+        return null;
+      }
+      Map<String, LogicalTable> modelTables = tables.get( logicalModel );
+      if ( modelTables == null ) {
+        modelTables = byId( logicalModel.getLogicalTables() );
+        tables.put( logicalModel, modelTables );
+      }
+      return modelTables.get( table.getId() );
+    }
+
+    private boolean canRead( IConcept concept ) {
+      // a concept missing from the domain is denied
+      return concept != null && repo.hasAccess( IMetadataDomainRepository.ACCESS_TYPE_READ, concept );
+    }
+
+    private static <T extends IConcept> Map<String, T> byId( List<T> concepts ) {
+      Map<String, T> map = new HashMap<String, T>();
+      for ( T concept : concepts ) {
+        // the first concept with an id wins, like the find methods of the domain
+        if ( concept.getId() != null && !map.containsKey( concept.getId() ) ) {
+          map.put( concept.getId(), concept );
+        }
+      }
+      return map;
+    }
+  }
 }
@@ -57,6 +57,8 @@ import org.pentaho.metadata.model.concept.types.RelationshipType;
 import org.pentaho.metadata.model.concept.types.TableType;
 import org.pentaho.metadata.model.concept.types.TargetColumnType;
 import org.pentaho.metadata.model.concept.types.TargetTableType;
+import org.pentaho.metadata.model.aggregate.AggregateTable;
+import org.pentaho.metadata.model.aggregate.util.AggregateTableUtil;
 import org.pentaho.metadata.model.olap.OlapAnnotation;
 import org.pentaho.metadata.model.olap.OlapCalculatedMember;
 import org.pentaho.metadata.model.olap.OlapCube;
@@ -467,6 +469,10 @@ public class XmiParser {
             modelElement.appendChild( createTaggedValue( doc,
                 "RELATIONSHIP_JOIN_ORDER_KEY", rel.getJoinOrderKey(), idGen.getNextId() ) ); //$NON-NLS-1$
           }
+          if ( rel.isReferentialIntegrity() ) {
+            modelElement.appendChild( createTaggedValue( doc, "RELATIONSHIP_REFERENTIAL_INTEGRITY", "Y",
+                idGen.getNextId() ) ); //$NON-NLS-1$ //$NON-NLS-2$
+          }
           ownedElement.appendChild( keyRel );
         }
 
@@ -958,15 +964,20 @@ public class XmiParser {
         AggregationType at = (AggregationType) val;
         body = AggregationSettings.types[at.ordinal()].getCode();
         type = "Aggregation"; //$NON-NLS-1$
+      } else if ( val instanceof List && LogicalModel.PROPERTY_AGGREGATE_TABLES.equals( key ) ) {
+        body = AggregateTableUtil.toXml( (List<AggregateTable>) val );
+        type = "String"; //$NON-NLS-1$
       } else if ( val instanceof List ) {
         List objs = (List) val;
-        if ( objs.size() == 0 && "aggregation_list".equals( key ) ) {
-          // assume this is an agg list
-          ConceptPropertyAggregationList list =
-              new ConceptPropertyAggregationList( key, new ArrayList<AggregationSettings>() );
-          type = "AggregationList"; //$NON-NLS-1$
-          body = list.toXML();
-
+        if ( objs.size() == 0 ) {
+          if ( "aggregation_list".equals( key ) ) {
+            // assume this is an agg list
+            ConceptPropertyAggregationList list =
+                new ConceptPropertyAggregationList( key, new ArrayList<AggregationSettings>() );
+            type = "AggregationList"; //$NON-NLS-1$
+            body = list.toXML();
+          }
+          // other empty lists have nothing to store
         } else {
           if ( objs.get( 0 ) instanceof AggregationType ) {
             List<AggregationType> aggTypes = (List<AggregationType>) objs;
@@ -1469,6 +1480,9 @@ public class XmiParser {
           if ( joinOrderKey != null ) {
             relation.setJoinOrderKey( joinOrderKey );
           }
+          if ( "Y".equals( nvp.get( "RELATIONSHIP_REFERENTIAL_INTEGRITY" ) ) ) { //$NON-NLS-1$ //$NON-NLS-2$
+            relation.setReferentialIntegrity( true );
+          }
 
           logicalModel.addLogicalRelationship( relation );
         }
@@ -1558,6 +1572,9 @@ public class XmiParser {
               // De-serialize roles and set directly into the LogicalModel
               List<OlapRole> roles = OlapUtil.fromXmlRoles( body );
               concept.setProperty( name, roles );
+            } else if ( name.equals( LogicalModel.PROPERTY_AGGREGATE_TABLES ) && concept instanceof LogicalModel ) {
+              // the logical columns of the aggregate tables are looked up in the model
+              concept.setProperty( name, AggregateTableUtil.fromXml( body, (LogicalModel) concept ) );
             } else if ( name.equals( LogicalModel.PROPERTY_OLAP_CALCULATED_MEMBERS ) ) {
               // De-serialize calculated members by cube
               Map<String, List<OlapCalculatedMember>> cubeMembers = OlapUtil.fromXmlCalculatedMembers( body );
@@ -19,10 +19,14 @@ package org.pentaho.pms.core;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -331,12 +335,41 @@ public class CWM {
   /** The tag to save the business column ID for a cube measure */
   public static final String TAG_MEASURE_BUSINESS_COLUMN = "MEASURE_BUSINESS_COLUMN"; //$NON-NLS-1$
 
+  /** Set to true to keep every domain in its own repository on disk, see {@link #PROPERTY_DOMAIN_DIRECTORY} */
+  public static final String PROPERTY_REPOSITORY_PER_DOMAIN = "org.pentaho.pms.cwm.repository.perDomain"; //$NON-NLS-1$
+
+  /** The directory holding the btree files of the per-domain repositories, "mdr-domains" by default */
+  public static final String PROPERTY_DOMAIN_DIRECTORY = "org.pentaho.pms.cwm.repository.directory"; //$NON-NLS-1$
+
+  private static final String REPOSITORY_PROPERTIES = "jdbc/repository.properties"; //$NON-NLS-1$
+
+  private static final String DEFAULT_DOMAIN_DIRECTORY = "mdr-domains"; //$NON-NLS-1$
+
+  private static final String STORAGE_FACTORY_CLASS_NAME = "org.netbeans.mdr.storagemodel.StorageFactoryClassName"; //$NON-NLS-1$
+
+  private static final String BTREE_FILENAME = "org.netbeans.mdr.persistence.btreeimpl.filename"; //$NON-NLS-1$
+
+  /** The extensions of the files the btree storage writes for a repository */
+  private static final String[] BTREE_EXTENSIONS = { ".btd", ".btx", ".btb" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
   private static Map<String, CWM> domains = Collections.synchronizedMap( new HashMap<String, CWM>() );
 
+  /** The open per-domain repositories, guarded by the CWM class lock */
+  private static Map<String, MDRepository> domainRepositories = new HashMap<String, MDRepository>();
+
   private String domainName;
 
   private static MDRepository repository;
 
+  /** True once jdbc/repository.properties is in the system properties, guarded by the CWM class lock */
+  private static boolean repositoryPropertiesLoaded;
+
+  /** The PentahoCWM.xml document, shared by the repositories */
+  private static byte[] metamodelXmi;
+
+  /** The repository holding this domain: the shared one, or the domain's own one */
+  private MDRepository domainRepository;
+
   private PentahoPackage pentahoPackage; // Top level package
   private MetaPackage metaPackage; // meta package
 
@@ -362,23 +395,36 @@ public class CWM {
   private CWM( String domainName, boolean autoCreate ) {
     this.domainName = domainName;
     try {
-      repository = getRepositoryInstance();
+      loadRepositoryProperties();
 
-      // If the storeage factory class is BTree, we have to reverse the order on many object collections...
-      // The JDBC stuff doesn't seem to suffer from that problem.
+      // A domain in its own repository can be read while other domains are being used: it has its own lock.
+      // The shared repository isn't opened at all in that case.
       //
-      String storageFactoryClassName = System.getProperty( "org.netbeans.mdr.storagemodel.StorageFactoryClassName", "" ); //$NON-NLS-1$ //$NON-NLS-2$
-      if ( BtreeFactory.class.getName().equals( storageFactoryClassName ) ) {
+      if ( isRepositoryPerDomain() ) {
+        domainRepository = getDomainRepository( domainName, autoCreate );
+        if ( domainRepository == null ) {
+          throw new CWMException( Messages.getErrorString( "CWM.ERROR_0004_DOMAIN_NOT_FOUND", domainName ) ); //$NON-NLS-1$
+        }
         reversingOrder = true;
+      } else {
+        domainRepository = getRepositoryInstance();
+
+        // If the storeage factory class is BTree, we have to reverse the order on many object collections...
+        // The JDBC stuff doesn't seem to suffer from that problem.
+        //
+        String storageFactoryClassName = System.getProperty( STORAGE_FACTORY_CLASS_NAME, "" ); //$NON-NLS-1$
+        if ( BtreeFactory.class.getName().equals( storageFactoryClassName ) ) {
+          reversingOrder = true;
+        }
       }
 
       /*
        * Load the M3 CWM model
        */
-      RefPackage cwmPackageM3 = repository.getExtent( CWM );
+      RefPackage cwmPackageM3 = domainRepository.getExtent( CWM );
       if ( cwmPackageM3 == null && autoCreate ) {
-        cwmPackageM3 = repository.createExtent( CWM );
-        BufferedInputStream inputStream = new BufferedInputStream( getClass().getResourceAsStream( "PentahoCWM.xml" ) ); //$NON-NLS-1$
+        cwmPackageM3 = domainRepository.createExtent( CWM );
+        InputStream inputStream = new ByteArrayInputStream( getMetamodelXmi() );
         XMIReaderFactory.getDefault().createXMIReader().read( inputStream, null, cwmPackageM3 );
         log.logBasic( Messages.getString( "CWM.INFO_TITLE" ), Messages.getString( "CWM.INFO_LOADED_CWM_MODEL" ), null ); //$NON-NLS-1$ //$NON-NLS-2$
       }
@@ -386,7 +432,7 @@ public class CWM {
       /*
        * Create an extent for the domain if that extent doesn't exist yet.
        */
-      RefPackage refPackage = repository.getExtent( domainName );
+      RefPackage refPackage = domainRepository.getExtent( domainName );
 
       try {
         pentahoPackage = (PentahoPackage) refPackage;
@@ -396,7 +442,7 @@ public class CWM {
 
       if ( pentahoPackage == null ) {
         if ( autoCreate ) {
-          pentahoPackage = (PentahoPackage) repository.createExtent( domainName, getModelPackage( PENTAHO ) );
+          pentahoPackage = (PentahoPackage) domainRepository.createExtent( domainName, getModelPackage( PENTAHO ) );
           log.logDebug( Messages.getString( "CWM.INFO_INSTANCED_TOP_PACKAGE" ) ); //$NON-NLS-1$ //$NON-NLS-2$
         } else {
           throw new CWMException( Messages.getErrorString( "CWM.ERROR_0004_DOMAIN_NOT_FOUND", domainName ) ); //$NON-NLS-1$
@@ -441,10 +487,125 @@ public class CWM {
     return repository;
   }
 
+  /**
+   * Loads jdbc/repository.properties into the system properties, like opening the shared repository does, without
+   * opening it. The file may switch the domains to their own repositories.
+   */
+  private static synchronized void loadRepositoryProperties() throws CWMException {
+    if ( repository != null || repositoryPropertiesLoaded ) {
+      return;
+    }
+    File file = new File( REPOSITORY_PROPERTIES );
+    if ( file.exists() ) {
+      try {
+        Properties properties = new Properties();
+        InputStream inputStream = new FileInputStream( file );
+        try {
+          properties.load( inputStream );
+        } finally {
+          inputStream.close();
+        }
+        System.getProperties().putAll( properties );
+      } catch ( IOException e ) {
+        throw new CWMException( Messages.getErrorString( "CWM.ERROR_0002_CANT_ACCESS_REPOSITORY" ), e ); //$NON-NLS-1$
+      }
+    }
+    repositoryPropertiesLoaded = true;
+  }
+
+  /**
+   * The PentahoCWM.xml metamodel is read once and imported from memory in every repository that doesn't have it yet.
+   * 
+   * @return the XMI document of the metamodel
+   */
+  private static synchronized byte[] getMetamodelXmi() throws IOException {
+    if ( metamodelXmi == null ) {
+      InputStream inputStream = CWM.class.getResourceAsStream( "PentahoCWM.xml" ); //$NON-NLS-1$
+      try {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for ( int read = inputStream.read( buffer ); read >= 0; read = inputStream.read( buffer ) ) {
+          outputStream.write( buffer, 0, read );
+        }
+        metamodelXmi = outputStream.toByteArray();
+      } finally {
+        inputStream.close();
+      }
+    }
+    return metamodelXmi;
+  }
+
+  /**
+   * @return true if the domains are kept in their own repository on disk instead of in the shared one
+   */
+  public static final boolean isRepositoryPerDomain() {
+    return "true".equalsIgnoreCase( System.getProperty( PROPERTY_REPOSITORY_PER_DOMAIN ) ); //$NON-NLS-1$
+  }
+
+  /**
+   * Opens the btree repository of a domain. The storage reads its objects from disk when they are used, so that an
+   * open domain doesn't keep all of its objects in memory.
+   * 
+   * @param domainName
+   *          the domain to open the repository of
+   * @param autoCreate
+   *          true to create the repository if it doesn't exist yet
+   * @return the repository, or null if it doesn't exist and autoCreate is false
+   */
+  private static final synchronized MDRepository getDomainRepository( String domainName, boolean autoCreate )
+    throws CWMException {
+    MDRepository domainRepository = domainRepositories.get( domainName );
+    if ( domainRepository != null ) {
+      return domainRepository;
+    }
+    File file = getDomainFile( domainName );
+    if ( !autoCreate && !new File( file.getPath() + BTREE_EXTENSIONS[0] ).exists() ) {
+      return null;
+    }
+    file.getParentFile().mkdirs();
+
+    // The repository parameters take precedence over the system properties, which are left alone.
+    //
+    Map<String, String> parameters = new HashMap<String, String>();
+    parameters.put( STORAGE_FACTORY_CLASS_NAME, BtreeFactory.class.getName() );
+    parameters.put( BTREE_FILENAME, file.getPath() );
+    try {
+      domainRepository = new NBMDRepositoryImpl( parameters );
+      domainRepository.getExtentNames();
+    } catch ( Exception e ) {
+      throw new CWMException( Messages.getErrorString( "CWM.ERROR_0002_CANT_ACCESS_REPOSITORY" ), e ); //$NON-NLS-1$
+    }
+    domainRepositories.put( domainName, domainRepository );
+    return domainRepository;
+  }
+
+  /**
+   * @return the btree file name of a domain's repository, without the extension
+   */
+  private static File getDomainFile( String domainName ) {
+    try {
+      String directory = System.getProperty( PROPERTY_DOMAIN_DIRECTORY, DEFAULT_DOMAIN_DIRECTORY );
+      return new File( directory, URLEncoder.encode( domainName, "UTF-8" ) ); //$NON-NLS-1$
+    } catch ( UnsupportedEncodingException e ) {
+      throw new RuntimeException( e );
+    }
+  }
+
+  /**
+   * Shuts the per-domain repositories down. Their domains are re-opened the next time around.
+   */
+  private static synchronized void closeDomainRepositories() {
+    for ( Map.Entry<String, MDRepository> entry : domainRepositories.entrySet() ) {
+      domains.remove( entry.getKey() );
+      entry.getValue().shutdown();
+    }
+    domainRepositories.clear();
+  }
+
   private static final MDRepository getRepository() throws CWMException {
     try {
       Properties properties = new Properties();
-      properties.load( new FileInputStream( "jdbc/repository.properties" ) ); //$NON-NLS-1$
+      properties.load( new FileInputStream( REPOSITORY_PROPERTIES ) );
       return getRepository( properties, null );
 
     } catch ( Exception e ) {
@@ -530,6 +691,12 @@ public class CWM {
    * @return true if the domain with the given name exists in the MDR repository
    */
   public static final boolean exists( String domainName ) throws CWMException {
+    loadRepositoryProperties();
+    if ( isRepositoryPerDomain() ) {
+      MDRepository domainRepository = getDomainRepository( domainName, false );
+      return domainRepository != null && domainRepository.getExtent( domainName ) != null;
+    }
+
     // Do we have the domain yet?
     // Simply look up the extent name, if it exists...
     return getRepositoryInstance().getExtent( domainName ) != null;
@@ -539,8 +706,25 @@ public class CWM {
    * @return a list of top level domains
    */
   public static final String[] getDomainNames() throws CWMException {
-    String[] ext = getRepositoryInstance().getExtentNames();
+    loadRepositoryProperties();
     ArrayList<String> domainNames = new ArrayList<String>();
+    if ( isRepositoryPerDomain() ) {
+      File[] files = getDomainFile( "" ).getParentFile().listFiles(); //$NON-NLS-1$
+      for ( int i = 0; files != null && i < files.length; i++ ) {
+        String name = files[i].getName();
+        if ( name.endsWith( BTREE_EXTENSIONS[0] ) ) {
+          try {
+            domainNames.add( URLDecoder.decode( name.substring( 0, name.length() - BTREE_EXTENSIONS[0].length() ),
+                "UTF-8" ) ); //$NON-NLS-1$
+          } catch ( UnsupportedEncodingException e ) {
+            throw new RuntimeException( e );
+          }
+        }
+      }
+      return Const.sortStrings( (String[]) domainNames.toArray( new String[domainNames.size()] ) );
+    }
+
+    String[] ext = getRepositoryInstance().getExtentNames();
 
     for ( int i = 0; i < ext.length; i++ ) {
       if ( !ext[i].equals( "MOF" ) && !ext[i].equals( CWM ) ) {
@@ -556,15 +740,30 @@ public class CWM {
    * Remove the domain by removing the extent.
    */
   public synchronized void removeDomain() throws CWMException {
-    repository.beginTrans( true );
-    repository.endTrans( false ); // just to make sure, this forces a commit on the database
+    domainRepository.beginTrans( true );
+    domainRepository.endTrans( false ); // just to make sure, this forces a commit on the database
 
-    RefPackage refPackage = repository.getExtent( domainName );
+    RefPackage refPackage = domainRepository.getExtent( domainName );
     if ( refPackage != null ) {
       // Delete the root package...
       refPackage.refDelete();
       removeFromList();
     }
+
+    // A domain in its own repository takes its files with it
+    if ( domainRepository != repository ) {
+      synchronized ( CWM.class ) {
+        if ( domainRepositories.get( domainName ) == domainRepository ) {
+          domainRepositories.remove( domainName );
+          domains.remove( domainName );
+          domainRepository.shutdown();
+          File file = getDomainFile( domainName );
+          for ( int i = 0; i < BTREE_EXTENSIONS.length; i++ ) {
+            new File( file.getPath() + BTREE_EXTENSIONS[i] ).delete();
+          }
+        }
+      }
+    }
   }
 
   /*
@@ -572,15 +771,27 @@ public class CWM {
    */
 
   public void beginTransaction() {
-    repository.beginTrans( true );
+    domainRepository.beginTrans( true );
   }
 
   public void endTransaction() {
-    repository.endTrans();
+    domainRepository.endTrans();
   }
 
   public void rollback() {
-    repository.endTrans( true );
+    domainRepository.endTrans( true );
+  }
+
+  /**
+   * Starts a read-only transaction: all the reads until {@link #endReadTransaction()} share one repository lock
+   * instead of taking one per navigation.
+   */
+  public void beginReadTransaction() {
+    domainRepository.beginTrans( false );
+  }
+
+  public void endReadTransaction() {
+    domainRepository.endTrans();
   }
 
   /**
@@ -594,21 +805,36 @@ public class CWM {
   }
 
   public static final synchronized void quitAndSync() throws CWMException {
-    // Shut down the repository...
-    getRepositoryInstance().shutdown();
+    // Shut down the repositories...
+    closeDomainRepositories();
+    if ( repository != null ) {
+      repository.shutdown();
+    }
     repository = null;
+    repositoryPropertiesLoaded = false;
   }
 
   public static final synchronized void clearCache() throws CWMException {
-    // Shut down the repository...
-    getRepositoryInstance().shutdown();
-    repository = getRepository();
+    // Shut down the repositories...
+    closeDomainRepositories();
+    if ( repository != null ) {
+      repository.shutdown();
+    }
+    repository = null;
+    repositoryPropertiesLoaded = false;
+    loadRepositoryProperties();
+    if ( !isRepositoryPerDomain() ) {
+      repository = getRepository();
+    }
   }
 
   public static final synchronized void clearCache( Properties properties, InputStream xmiInputStream )
     throws CWMException {
-    // Shut down the repository...
-    getRepositoryInstance().shutdown();
+    // Shut down the repositories...
+    closeDomainRepositories();
+    if ( repository != null ) {
+      repository.shutdown();
+    }
     repository = getRepository( properties, xmiInputStream );
   }
 
@@ -844,6 +1070,23 @@ public class CWM {
     return null;
   }
 
+  /**
+   * @return all the OLAP schemas by name, the first one winning like in {@link #findOlapSchema(String)}
+   */
+  public Map<String, org.pentaho.pms.cwm.pentaho.meta.olap.CwmSchema> getOlapSchemasByName() {
+    Map<String, org.pentaho.pms.cwm.pentaho.meta.olap.CwmSchema> schemas =
+        new HashMap<String, org.pentaho.pms.cwm.pentaho.meta.olap.CwmSchema>();
+    Collection collection = olapPackage.getCwmSchema().refAllOfClass();
+    for ( Iterator iter = collection.iterator(); iter.hasNext(); ) {
+      org.pentaho.pms.cwm.pentaho.meta.olap.CwmSchema cwmOlapSchema =
+          (org.pentaho.pms.cwm.pentaho.meta.olap.CwmSchema) iter.next();
+      if ( !schemas.containsKey( cwmOlapSchema.getName() ) ) {
+        schemas.put( cwmOlapSchema.getName(), cwmOlapSchema );
+      }
+    }
+    return schemas;
+  }
+
   public CwmLevelBasedHierarchy createLevelBasedHierarchy( String name ) {
     CwmLevelBasedHierarchy lbh = olapPackage.getCwmLevelBasedHierarchy().createCwmLevelBasedHierarchy();
     lbh.setName( name );
@@ -1092,6 +1335,29 @@ public class CWM {
     return (CwmDimension[]) dimensions.toArray( new CwmDimension[dimensions.size()] );
   }
 
+  /**
+   * Get all the dimensions grouped by their schema, reading the dimensions only once.
+   * 
+   * @return the dimensions of every schema, in the order {@link #getDimensions(CwmSchema)} returns them
+   */
+  public Map<CwmSchema, List<CwmDimension>> getDimensionsBySchema() {
+    Map<CwmSchema, List<CwmDimension>> dimensions = new HashMap<CwmSchema, List<CwmDimension>>();
+    Collection allDimensions = multiDimensionalPackage.getCwmDimension().refAllOfClass();
+    for ( Iterator iter = allDimensions.iterator(); iter.hasNext(); ) {
+      CwmDimension cwmDimension = (CwmDimension) iter.next();
+      CwmSchema schema = cwmDimension.getSchema();
+      if ( schema != null ) {
+        List<CwmDimension> list = dimensions.get( schema );
+        if ( list == null ) {
+          list = new ArrayList<CwmDimension>();
+          dimensions.put( schema, list );
+        }
+        list.add( cwmDimension );
+      }
+    }
+    return dimensions;
+  }
+
   /**
    * @param cwmSchema
    *          The used schema/namespace
@@ -1115,6 +1381,34 @@ public class CWM {
     return (CwmExtent[]) extents.toArray( new CwmExtent[extents.size()] );
   }
 
+  /**
+   * Get all the root extents grouped by the name of their schema/namespace, reading the extents only once.
+   * 
+   * @return the root extents of every schema name, in the order {@link #getRootExtents(CwmSchema)} returns them
+   */
+  public Map<String, List<CwmExtent>> getRootExtentsBySchemaName() {
+    Map<String, List<CwmExtent>> extents = new HashMap<String, List<CwmExtent>>();
+    Collection allExtents = instancePackage.getCwmExtent().refAllOfClass();
+    for ( Iterator iter = allExtents.iterator(); iter.hasNext(); ) {
+      CwmExtent cwmExtent = (CwmExtent) iter.next();
+
+      CwmNamespace namespace = cwmExtent.getNamespace();
+      if ( namespace != null && namespace.getName() != null ) {
+        // Only elements with a root tag set to Y
+        String isRoot = findFirstTaggedValue( cwmExtent.getTaggedValue(), TAG_BUSINESS_CATEGORY_ROOT );
+        if ( "Y".equalsIgnoreCase( isRoot ) ) { //$NON-NLS-1$
+          List<CwmExtent> list = extents.get( namespace.getName() );
+          if ( list == null ) {
+            list = new ArrayList<CwmExtent>();
+            extents.put( namespace.getName(), list );
+          }
+          list.add( cwmExtent );
+        }
+      }
+    }
+    return extents;
+  }
+
   public CwmClass[] getClasses() {
     @SuppressWarnings( "unchecked" )
     Collection<CwmClass> classes = corePackage.getCwmClass().refAllOfClass();
@@ -1155,7 +1449,7 @@ public class CWM {
    */
 
   private MofPackage getModelPackage( String packageName ) {
-    ModelPackage mofPackage = (ModelPackage) repository.getExtent( CWM );
+    ModelPackage mofPackage = (ModelPackage) domainRepository.getExtent( CWM );
 
     for ( Iterator it = mofPackage.getMofPackage().refAllOfClass().iterator(); it.hasNext(); ) {
       MofPackage result = (MofPackage) it.next();
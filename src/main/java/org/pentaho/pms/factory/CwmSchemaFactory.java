@@ -113,8 +113,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class is responsible for converting between the Schema metadata and the CWM
@@ -256,7 +259,7 @@ public class CwmSchemaFactory implements CwmSchemaFactoryInterface {
 
     SecurityService securityService = getSecurityService( cwm );
 
-    // Load the security reference information from the server each time we run...
+    // The security reference information is read from the server through the shared SecurityContentCache
     SecurityReference securityReference;
     try {
       securityReference = new SecurityReference( securityService );
@@ -270,6 +273,37 @@ public class CwmSchemaFactory implements CwmSchemaFactoryInterface {
     // Set a sane default on the model name
     schemaMeta.setDomainName( cwm.getDomainName() );
 
+    // Read everything in one read transaction: the repository is locked once instead of once per navigation.
+    //
+    cwm.beginReadTransaction();
+    try {
+      loadSchemaMeta( cwm, schemaMeta );
+    } finally {
+      cwm.endReadTransaction();
+    }
+
+    // Clear the changed flag all over the place...
+    //
+    schemaMeta.clearChanged();
+
+    // Select the active business model if there is only one
+    if ( schemaMeta.nrBusinessModels() == 1 ) {
+      schemaMeta.setActiveModel( schemaMeta.getModel( 0 ) );
+    }
+
+    if ( cwm.isReversingOrder() ) {
+      Collections.reverse( schemaMeta.getTables().getList() );
+      Collections.reverse( schemaMeta.getBusinessModels().getList() );
+      Collections.reverse( schemaMeta.getConcepts().getList() );
+    }
+
+    return schemaMeta;
+  }
+
+  /**
+   * Reads every CWM collection once and resolves the references between the loaded objects in memory.
+   */
+  private void loadSchemaMeta( CWM cwm, SchemaMeta schemaMeta ) {
     // Read all the database connections...
     //
     CwmCatalog[] catalogs = cwm.getCatalogs();
@@ -292,31 +326,35 @@ public class CwmSchemaFactory implements CwmSchemaFactoryInterface {
     //
     CwmClass[] cwmClasses = cwm.getClasses();
 
-    // We actually load the concepts twice: once to load the data and once to set the parents.
-    // The problem is that I'm not sure that the order in which they are loaded/saved is guaranteed.
-    // It's a Quick&Dirty solution yes, but it should work.
-    for ( int repeat = 0; repeat < 2; repeat++ ) {
-      for ( int i = 0; i < cwmClasses.length; i++ ) {
-        CwmClass cwmClass = cwmClasses[ i ];
-
-        ConceptInterface concept = getModelConcept( cwm, cwmClass, schemaMeta );
-
-        // See if we already have this one.
-        ConceptInterface verify = schemaMeta.findConcept( concept.getName() );
-        if ( verify == null ) {
-          // add this one...
-          try {
-            schemaMeta.addConcept( concept );
-          } catch ( ObjectAlreadyExistsException e ) {
-            // Ignore the duplicates for now.
-            // TODO: figure out how to handle this error, the duplicate shouldn't be in the CWM in the first place!
-            // logger.error( Messages.getString("CwmSchemaFactory.ERROR_DUPLICATE_IN_CWM" ), e );
-          }
-        } else {
-          // the concept is already in there, we are loading for the second time.
-          // If we have a parent now, it should be referenced OK.
-          verify.setParentInterface( concept.getParentInterface() );
-        }
+    // The order in which the concepts are loaded/saved is not guaranteed, so a parent can come after its child.
+    // Load all the concepts by name first and set the parents once they are all known, before adding them to the
+    // schema: the hash code of a concept includes its parent.
+    Map<String, ConceptInterface> concepts = new LinkedHashMap<String, ConceptInterface>();
+    Map<String, String> parentNames = new HashMap<String, String>();
+    for ( int i = 0; i < cwmClasses.length; i++ ) {
+      CwmClass cwmClass = cwmClasses[ i ];
+
+      // See if we already have this one: the duplicates only get to set the parent.
+      if ( !concepts.containsKey( cwmClass.getName() ) ) {
+        ConceptInterface concept = new Concept( cwmClass.getName() );
+        getConceptPropertyValues( cwm, cwmClass, concept );
+        concepts.put( concept.getName(), concept );
+      }
+      parentNames.put( cwmClass.getName(), cwm.getFirstTaggedValue( cwmClass, CWM.TAG_CONCEPT_PARENT_NAME ) );
+    }
+    for ( ConceptInterface concept : concepts.values() ) {
+      String parentName = parentNames.get( concept.getName() );
+      if ( parentName != null ) {
+        concept.setParentInterface( concepts.get( parentName ) );
+      }
+    }
+    for ( ConceptInterface concept : concepts.values() ) {
+      try {
+        schemaMeta.addConcept( concept );
+      } catch ( ObjectAlreadyExistsException e ) {
+        // Ignore the duplicates for now.
+        // TODO: figure out how to handle this error, the duplicate shouldn't be in the CWM in the first place!
+        // logger.error( Messages.getString("CwmSchemaFactory.ERROR_DUPLICATE_IN_CWM" ), e );
       }
     }
 
@@ -336,13 +374,25 @@ public class CwmSchemaFactory implements CwmSchemaFactoryInterface {
       }
     }
 
-    // load all the business models
+    // load all the business models, grouping the dimensions, categories and OLAP schemas by model up front
     //
+    Map<CwmSchema, List<CwmDimension>> dimensions = cwm.getDimensionsBySchema();
+    Map<String, List<CwmExtent>> rootExtents = cwm.getRootExtentsBySchemaName();
+    Map<String, org.pentaho.pms.cwm.pentaho.meta.olap.CwmSchema> olapSchemas = cwm.getOlapSchemasByName();
+
     CwmSchema[] cwmSchemas = cwm.getSchemas();
     for ( int i = 0; i < cwmSchemas.length; i++ ) {
       CwmSchema cwmSchema = cwmSchemas[ i ];
 
-      BusinessModel businessModel = getBusinessModel( cwm, cwmSchema, schemaMeta );
+      List<CwmDimension> schemaDimensions = dimensions.get( cwmSchema );
+      List<CwmExtent> schemaExtents = rootExtents.get( cwmSchema.getName() );
+      BusinessModel businessModel =
+        getBusinessModel( cwm, cwmSchema, schemaMeta,
+          schemaDimensions == null ? new CwmDimension[ 0 ]
+            : schemaDimensions.toArray( new CwmDimension[ schemaDimensions.size() ] ),
+          schemaExtents == null ? new CwmExtent[ 0 ]
+            : schemaExtents.toArray( new CwmExtent[ schemaExtents.size() ] ),
+          olapSchemas.get( cwmSchema.getName() ) );
       if ( hasAccess( CwmSchemaFactoryInterface.ACCESS_TYPE_READ, businessModel ) ) {
         try {
           schemaMeta.addModel( businessModel );
@@ -365,23 +415,6 @@ public class CwmSchemaFactory implements CwmSchemaFactoryInterface {
       locales.addLocale( locale );
     }
     locales.sortLocales();
-
-    // Clear the changed flag all over the place...
-    //
-    schemaMeta.clearChanged();
-
-    // Select the active business model if there is only one
-    if ( schemaMeta.nrBusinessModels() == 1 ) {
-      schemaMeta.setActiveModel( schemaMeta.getModel( 0 ) );
-    }
-
-    if ( cwm.isReversingOrder() ) {
-      Collections.reverse( schemaMeta.getTables().getList() );
-      Collections.reverse( schemaMeta.getBusinessModels().getList() );
-      Collections.reverse( schemaMeta.getConcepts().getList() );
-    }
-
-    return schemaMeta;
   }
 
   /*
@@ -759,6 +792,13 @@ public class CwmSchemaFactory implements CwmSchemaFactoryInterface {
    * @return a newly created Business Model
    */
   public BusinessModel getBusinessModel( CWM cwm, CwmSchema cwmSchema, SchemaMeta schemaMeta ) {
+    return getBusinessModel( cwm, cwmSchema, schemaMeta, cwm.getDimensions( cwmSchema ),
+      cwm.getRootExtents( cwmSchema ), cwm.findOlapSchema( cwmSchema.getName() ) );
+  }
+
+  private BusinessModel getBusinessModel( CWM cwm, CwmSchema cwmSchema, SchemaMeta schemaMeta,
+                                          CwmDimension[] CwmDimensions, CwmExtent[] cwmExtents,
+                                          org.pentaho.pms.cwm.pentaho.meta.olap.CwmSchema cwmOlapSchema ) {
     // The name?
     BusinessModel businessModel = new BusinessModel( cwmSchema.getName() );
     businessModel.addIDChangedListener( ConceptUtilityBase.createIDChangedListener( schemaMeta.getBusinessModels() ) );
@@ -768,7 +808,6 @@ public class CwmSchemaFactory implements CwmSchemaFactoryInterface {
 
     // Load the business tables into this business model..
     //
-    CwmDimension[] CwmDimensions = cwm.getDimensions( cwmSchema );
     for ( int i = 0; i < CwmDimensions.length; i++ ) {
       CwmDimension cwmDimension = CwmDimensions[ i ];
       BusinessTable businessTable = getBusinessTable( cwm, cwmDimension, schemaMeta, businessModel );
@@ -819,7 +858,6 @@ public class CwmSchemaFactory implements CwmSchemaFactoryInterface {
     }
 
     // Load the categories...
-    CwmExtent[] cwmExtents = cwm.getRootExtents( cwmSchema );
     for ( int i = 0; i < cwmExtents.length; i++ ) {
       CwmExtent cwmExtent = cwmExtents[ i ];
       BusinessCategory businessCategory = getBusinessCategory( cwm, cwmExtent, businessModel, schemaMeta );
@@ -834,13 +872,7 @@ public class CwmSchemaFactory implements CwmSchemaFactoryInterface {
       }
     }
 
-    // Load the OLAP information too
-    org.pentaho.pms.cwm.pentaho.meta.olap.CwmSchema cwmOlapSchema = cwm.findOlapSchema( cwmSchema.getName() ); // same
-    // name
-    // as
-    // business
-    // model
-
+    // Load the OLAP information too, from the OLAP schema with the same name as the business model
     if ( cwmOlapSchema != null ) {
       // get the Olap Dimensions from this schema...
       Collection cwmOlapDimensions = cwmOlapSchema.getDimension();
@@ -1753,6 +1785,10 @@ public class CwmSchemaFactory implements CwmSchemaFactoryInterface {
       }
     }
 
+    getConceptPropertyValues( cwm, modelElement, concept );
+  }
+
+  private void getConceptPropertyValues( CWM cwm, CwmModelElement modelElement, ConceptInterface concept ) {
     // Localized descriptions...
     CwmDescription[] descriptions = cwm.getDescription( modelElement );
     for ( int i = 0; i < descriptions.length; i++ ) {
@@ -0,0 +1,155 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.mql;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalRelationship;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.SqlPhysicalTable;
+import org.pentaho.metadata.query.impl.sql.JoinPathEngine;
+import org.pentaho.pms.schema.BusinessModel;
+import org.pentaho.pms.schema.BusinessTable;
+import org.pentaho.pms.schema.RelationshipMeta;
+
+/**
+ * Lets the legacy {@link SQLGenerator} find its join paths with the {@link JoinPathEngine} of the thin model. The
+ * business tables and relationships of a business model are mirrored by a logical model holding only what the path
+ * search needs: the table ids, their relative sizes and the relationships between them. The paths found are mapped
+ * back to the relationships of the business model.
+ * <p>
+ * The mirror of a business model is rebuilt when its tables, relationships or relative sizes change.
+ */
+public class BusinessModelPathAdapter {
+
+  // the adapters refer to their model, so they are held softly to let the models be collected
+  private static final Map<BusinessModel, SoftReference<BusinessModelPathAdapter>> ADAPTERS =
+      new WeakHashMap<BusinessModel, SoftReference<BusinessModelPathAdapter>>();
+
+  private final long signature;
+
+  private final LogicalModel logicalModel = new LogicalModel();
+
+  private final Map<String, LogicalTable> logicalTables = new HashMap<String, LogicalTable>();
+
+  private final Map<LogicalRelationship, RelationshipMeta> relationships =
+      new IdentityHashMap<LogicalRelationship, RelationshipMeta>();
+
+  private BusinessModelPathAdapter( BusinessModel model, long signature ) {
+    this.signature = signature;
+    logicalModel.setId( model.getId() );
+    for ( int i = 0; i < model.nrBusinessTables(); i++ ) {
+      getLogicalTable( model.getBusinessTable( i ) );
+    }
+    for ( RelationshipMeta relationship : model.getRelationships() ) {
+      LogicalRelationship logicalRelationship = new LogicalRelationship();
+      logicalRelationship.setLogicalModel( logicalModel );
+      logicalRelationship.setFromTable( getLogicalTable( relationship.getTableFrom() ) );
+      logicalRelationship.setToTable( getLogicalTable( relationship.getTableTo() ) );
+      logicalModel.getLogicalRelationships().add( logicalRelationship );
+      relationships.put( logicalRelationship, relationship );
+    }
+  }
+
+  /**
+   * Returns the adapter of a business model, building a new one if the model has none yet or if its tables or
+   * relationships changed since the adapter was built.
+   * 
+   * @param model
+   *          the business model
+   * @return the adapter of the model
+   */
+  public static BusinessModelPathAdapter forModel( BusinessModel model ) {
+    long signature = computeSignature( model );
+    synchronized ( ADAPTERS ) {
+      SoftReference<BusinessModelPathAdapter> ref = ADAPTERS.get( model );
+      BusinessModelPathAdapter adapter = ref != null ? ref.get() : null;
+      if ( adapter == null || adapter.signature != signature ) {
+        adapter = new BusinessModelPathAdapter( model, signature );
+        ADAPTERS.put( model, new SoftReference<BusinessModelPathAdapter>( adapter ) );
+      }
+      return adapter;
+    }
+  }
+
+  /**
+   * Returns the join path between the required tables.
+   * 
+   * @param pathMethod
+   *          {@link JoinPathEngine#CLASSIC} or the name of a path type
+   * @param tables
+   *          the tables the path must contain
+   * @return a new path, or null if the tables cannot be joined
+   */
+  public Path getPath( String pathMethod, List<BusinessTable> tables ) {
+    List<LogicalTable> requiredTables = new ArrayList<LogicalTable>( tables.size() );
+    for ( BusinessTable table : tables ) {
+      LogicalTable logicalTable = logicalTables.get( table.getId() );
+      if ( logicalTable == null ) {
+        // not part of the model, it cannot be joined
+        logicalTable = new LogicalTable();
+        logicalTable.setId( table.getId() );
+      }
+      requiredTables.add( logicalTable );
+    }
+    org.pentaho.metadata.query.impl.sql.Path logicalPath =
+        JoinPathEngine.forModel( logicalModel ).getPath( pathMethod, requiredTables );
+    if ( logicalPath == null ) {
+      return null;
+    }
+    Path path = new Path();
+    for ( int i = 0; i < logicalPath.size(); i++ ) {
+      path.addRelationship( relationships.get( logicalPath.getRelationship( i ) ) );
+    }
+    return path;
+  }
+
+  private LogicalTable getLogicalTable( BusinessTable table ) {
+    LogicalTable logicalTable = logicalTables.get( table.getId() );
+    if ( logicalTable == null ) {
+      logicalTable = new LogicalTable();
+      logicalTable.setId( table.getId() );
+      logicalTable.setLogicalModel( logicalModel );
+      logicalTable.setProperty( SqlPhysicalTable.RELATIVE_SIZE, table.getRelativeSize() );
+      logicalModel.getLogicalTables().add( logicalTable );
+      logicalTables.put( table.getId(), logicalTable );
+    }
+    return logicalTable;
+  }
+
+  private static long computeSignature( BusinessModel model ) {
+    long signature = System.identityHashCode( model.getBusinessTables() );
+    for ( int i = 0; i < model.nrBusinessTables(); i++ ) {
+      BusinessTable table = model.getBusinessTable( i );
+      signature = signature * 31 + System.identityHashCode( table );
+      signature = signature * 31 + table.getRelativeSize();
+    }
+    for ( RelationshipMeta relationship : model.getRelationships() ) {
+      signature = signature * 31 + System.identityHashCode( relationship );
+      signature = signature * 31 + System.identityHashCode( relationship.getTableFrom() );
+      signature = signature * 31 + System.identityHashCode( relationship.getTableTo() );
+    }
+    return signature;
+  }
+}
@@ -29,6 +29,8 @@ import java.util.TreeSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.metadata.model.concept.types.RelationshipType;
+import org.pentaho.metadata.query.impl.sql.JoinPathEngine;
 import org.pentaho.pms.core.exception.PentahoMetadataException;
 import org.pentaho.pms.messages.Messages;
 import org.pentaho.pms.mql.dialect.JoinType;
@@ -36,8 +38,6 @@ import org.pentaho.pms.mql.dialect.SQLDialectFactory;
 import org.pentaho.pms.mql.dialect.SQLDialectInterface;
 import org.pentaho.pms.mql.dialect.SQLQueryModel;
 import org.pentaho.pms.mql.dialect.SQLQueryModel.OrderType;
-import org.pentaho.pms.mql.graph.MqlGraph;
-import org.pentaho.pms.mql.graph.PathType;
 import org.pentaho.pms.schema.BusinessColumn;
 import org.pentaho.pms.schema.BusinessModel;
 import org.pentaho.pms.schema.BusinessTable;
@@ -58,6 +58,11 @@ public class SQLGenerator {
   private static final Log logger = LogFactory.getLog( SQLGenerator.class );
   public boolean preferClassicShortestPath = false;
 
+  /**
+   * Relative size assumed for fact tables without a relative size, other tables without one count as 1.
+   */
+  private static final long DEFAULT_FACT_TABLE_SIZE = 1000;
+
   /**
    * This private class is used to sort the business tables in terms of the number of neighbours they have. We use this
    * information to find the table best suited to provide the missing link between selected tables while doing SQL
@@ -201,8 +206,13 @@ public class SQLGenerator {
             .getTableTo().getTargetTable() );
         String rightTableAlias = databaseMeta.quoteField( relation.getTableTo().getId() );
 
-        query.addJoin( leftTableName, leftTableAlias, rightTableName, rightTableAlias, joinType, joinFormula,
-          joinOrderKey );
+        if ( query.getCostBasedJoinOrder() ) {
+          query.addJoin( leftTableName, leftTableAlias, rightTableName, rightTableAlias, joinType, joinFormula,
+            joinOrderKey, false, getJoinSizeHint( relation ) );
+        } else {
+          query.addJoin( leftTableName, leftTableAlias, rightTableName, rightTableAlias, joinType, joinFormula,
+            joinOrderKey );
+        }
         // query.addWhereFormula(joinFormula, "AND"); //$NON-NLS-1$
       }
     }
@@ -354,6 +364,11 @@ public class SQLGenerator {
       Boolean value = (Boolean) delayOuterJoin.getValue();
       query.setDelayOuterJoinConditions( value.booleanValue() );
     }
+    ConceptPropertyInterface costBasedJoinOrder = concept.getProperty( "cost_based_join_order" );
+    if ( ( costBasedJoinOrder != null ) && ( costBasedJoinOrder.getType().equals( ConceptPropertyType.BOOLEAN ) ) ) {
+      Boolean value = (Boolean) costBasedJoinOrder.getValue();
+      query.setCostBasedJoinOrder( value.booleanValue() );
+    }
 
     // StringBuffer sql = new StringBuffer();
     Map<String, String> columnsMap = new HashMap<String, String>();
@@ -573,83 +588,16 @@ public class SQLGenerator {
    * new tables to the list until a path is discovered. If more than one path is available with a certain number of
    * tables, the algorithm uses the relative size values if specified to determine which path to traverse in the SQL
    * Join.
+   * <p>
+   * The search is done by the {@link JoinPathEngine} shared with the thin model, through a
+   * {@link BusinessModelPathAdapter}.
    *
    * @param model  the business model
    * @param tables include tables
    * @return shortest path
    */
   public Path getShortestPathBetweenOrig( BusinessModel model, List<BusinessTable> tables ) {
-    // We have the business tables.
-    // Let's try to see if they are somehow connected first.
-    // If they are not, we add a table that's not being used so far and add it to the equation.
-    // We can continue like that until we connect all tables with joins.
-
-    // This is a list of all the paths that we could find between all the tables...
-    List<Path> paths = new ArrayList<Path>();
-
-    // Here are the tables we need to link it all together.
-    List<BusinessTable> origSelectedTables = new ArrayList<BusinessTable>( tables );
-    boolean allUsed = ( tables.size() == 0 );
-    // These are the tables that are not yet used
-    List<BusinessTable> notSelectedTables = getNonSelectedTables( model, origSelectedTables );
-
-    for ( int ns = 0; ns <= notSelectedTables.size() && !allUsed; ns++ ) {
-
-      // find unique combinations of notSelectedTables of size NS
-      List<List<BusinessTable>> uniqueCombos = getSubsetsOfSize( ns, notSelectedTables );
-      if ( ns == 0 ) {
-        uniqueCombos.add( new ArrayList<BusinessTable>() );
-      }
-
-      // add all the selected tables to this list
-      for ( int i = 0; i < uniqueCombos.size(); i++ ) {
-        List<BusinessTable> uc = uniqueCombos.get( i );
-        uc.addAll( origSelectedTables );
-      }
-
-      for ( int p = 0; p < uniqueCombos.size(); p++ ) {
-
-        List selectedTables = (List) uniqueCombos.get( p );
-        Path path = new Path();
-
-        // Generate all combinations of the selected tables...
-        for ( int i = 0; i < selectedTables.size(); i++ ) {
-          for ( int j = i + 1; j < selectedTables.size(); j++ ) {
-            BusinessTable one = (BusinessTable) selectedTables.get( i );
-            BusinessTable two = (BusinessTable) selectedTables.get( j );
-
-            // See if we have a relationship that goes from one to two...
-            RelationshipMeta relationship = model.findRelationshipUsing( one, two );
-            if ( relationship != null && !path.contains( relationship ) ) {
-              path.addRelationship( relationship );
-            }
-          }
-
-          // We need to have (n-1) relationships for n tables, otherwise we will not connect everything.
-          if ( path.size() == selectedTables.size() - 1 ) {
-            // This is a valid path, the first we find here is probably the shortest
-            paths.add( path );
-            // We can stop now.
-            allUsed = true;
-          }
-        }
-      }
-    }
-
-    // Now, off all the paths, look for the shortest number of relationships
-    // If we have the same number of relationships, get the one with the lowest total relative size.
-
-    int minSize = Integer.MAX_VALUE;
-    int minScore = Integer.MAX_VALUE;
-    Path minPath = null;
-    for ( int i = 0; i < paths.size(); i++ ) {
-      Path path = (Path) paths.get( i );
-      if ( path.size() < minSize || ( path.size() == minSize && path.score() < minScore ) ) {
-        minPath = path;
-        minScore = path.score();
-        minSize = path.size();
-      }
-    }
+    Path minPath = BusinessModelPathAdapter.forModel( model ).getPath( JoinPathEngine.CLASSIC, tables );
 
     if ( logger.isDebugEnabled() ) {
       logger.debug( "Exiting getShortestPathBetween() " + tables + "  with result " + minPath );
@@ -714,26 +662,15 @@ public class SQLGenerator {
       }
     }
 
-    PathType pathBuildMethod = null;
-
-    if ( pathMethodString.equals( "CLASSIC" ) ) {
+    if ( pathMethodString.equals( JoinPathEngine.CLASSIC ) ) {
       return getShortestPathBetweenOrig( model, tables );
-    } else {
-      pathBuildMethod = PathType.valueOf( pathMethodString );
     }
 
-    MqlGraph graph = new MqlGraph( model );
-
-    // determine method to use for building the path from the model
-    // Potentially consider next bit for SUGAR
-    // Use when fully integrated into editor and such
-    // pathBuildMethod = PathType.valueOf(model.getPathBuildMethod().getCode());
-
-    // do work to actually build the path
+    // do work to actually build the path, using the path engine shared with the thin model
     if ( logger.isDebugEnabled() ) {
-      logger.debug( "Attempting to build path using technique: " + pathBuildMethod );
+      logger.debug( "Attempting to build path using technique: " + pathMethodString );
     }
-    Path p = graph.getPath( pathBuildMethod, tables );
+    Path p = BusinessModelPathAdapter.forModel( model ).getPath( pathMethodString, tables );
 
     if ( p == null ) {
       logger.debug( "Unable to calculate shortest path for query, no path found" );
@@ -979,4 +916,24 @@ public class SQLGenerator {
 
     return join;
   }
+
+  /**
+   * Estimates the relative cost of a relationship, the same way as the thin model generator does.
+   *
+   * @param relation the relationship to estimate
+   * @return the relative cost of the join
+   */
+  protected long getJoinSizeHint( RelationshipMeta relation ) {
+    // the relationship type constants are the ordinals of the thin model enum
+    return RelationshipType.getJoinSizeHint( RelationshipType.values()[relation.getType()],
+        getTableSizeHint( relation.getTableFrom() ), getTableSizeHint( relation.getTableTo() ) );
+  }
+
+  private static long getTableSizeHint( BusinessTable table ) {
+    int size = table.getRelativeSize();
+    if ( size > 0 ) {
+      return size;
+    }
+    return table.isFactTable() ? DEFAULT_FACT_TABLE_SIZE : 1;
+  }
 }
@@ -25,7 +25,6 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleDatabaseException;
@@ -41,21 +40,13 @@ import org.pentaho.pms.util.Const;
  */
 public abstract class BaseHiveDialect extends DefaultSQLDialect {
 
-  /**
-   * Hive only supports the equals operator in join conditions. This pattern is used to detect the existence of invalid
-   * operators in a join condition.
-   */
-  protected final Pattern INVALID_JOIN_OPERATORS = Pattern.compile( "[!]|[>]|[<]|is null|is not null" ); //$NON-NLS-1$
+  protected Integer driverMajorVersion;
+  protected Integer driverMinorVersion;
 
   /**
-   * Pattern that matches any table qualifier before a column name in a SQL formula.<br>
-   * <p>
-   * e.g. "a.id" should match "a.", "count(a.id)" should match "a."
+   * Set once the driver version is known, so {@link #isDriverVersion(int, int)} only locks on the first call.
    */
-  protected final Pattern TABLE_QUALIFIER_PATTERN = Pattern.compile( "([^\\(\\s.])+(\\s)*[.]" ); //$NON-NLS-1$
-
-  protected Integer driverMajorVersion;
-  protected Integer driverMinorVersion;
+  private volatile boolean driverInfoLoaded;
 
   private static final String HIVE_DIALECT_TYPE = "HIVE";
 
@@ -114,14 +105,15 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
   }
 
   @Override
-  protected List<SQLWhereFormula> generateOuterJoin( SQLQueryModel query, StringBuilder sql ) {
+  protected Set<SQLWhereFormula> generateOuterJoin( SQLQueryModel query, StringBuilder sql ) {
     throw new RuntimeException(
       Messages.getErrorString( "HiveDialect.ERROR_0001_OUTER_JOIN_NOT_SUPPORTED" ) ); //$NON-NLS-1$
   }
 
   @Override
   protected void generateHaving( SQLQueryModel query, StringBuilder sql ) {
-    if ( !query.getHavings().isEmpty() ) {
+    if ( !query.getHavings().isEmpty() || ( query.getKeysetConstraint() != null
+        && query.getKeysetConstraint().isContainingAggregate() ) ) {
       throw new RuntimeException(
         Messages.getErrorString( "HiveDialect.ERROR_0004_HAVING_NOT_SUPPORTED" ) ); //$NON-NLS-1$
     }
@@ -132,6 +124,8 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
     sql.append( "SELECT " );
     generateSelectPredicate( query, sql );
     sql.append( Const.CR );
+    // Only Hive version 0.6 and beyond support column aliases
+    boolean aliases = isDriverVersion( 0, 6 );
     boolean first = true;
     for ( SQLSelection selection : query.getSelections() ) {
       if ( first ) {
@@ -142,12 +136,9 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
       }
       sql.append( selection.getFormula() );
 
-      if ( isDriverVersion( 0, 6 ) ) {
-        // Only Hive version 0.6 and beyond support column aliases
-        if ( selection.getAlias() != null ) {
-          sql.append( " AS " ); //$NON-NLS-1$
-          sql.append( selection.getAlias() );
-        }
+      if ( aliases && selection.getAlias() != null ) {
+        sql.append( " AS " ); //$NON-NLS-1$
+        sql.append( selection.getAlias() );
       }
       sql.append( Const.CR );
     }
@@ -206,7 +197,7 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
     StringBuilder sql = new StringBuilder();
     // Copy of joins so we can manipulate the list
     List<SQLJoin> joins = new ArrayList<SQLJoin>( query.getJoins() );
-    // Tables already used in join conditions (this is required to ensure tables are not duplicated)
+    // Tables already used in join conditions, by alias (this is required to ensure tables are not duplicated)
     Set<String> usedTables = new HashSet<String>();
     // SQLJoins with WHERE conditions that must be included in the WHERE clause of the query
     List<SQLJoin> joinsForWhereClause = new LinkedList<SQLJoin>();
@@ -214,17 +205,17 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
     Collections.sort( joins, InnerJoinComparator.getInstance() );
     SQLJoin join = joins.get( 0 );
     // Use the LHS of the first join as the anchor table to start the query
-    String firstTable = getTableAndAlias( join.getLeftTablename(), join.getLeftTableAlias() );
-    sql.append( "          " ).append( firstTable ); //$NON-NLS-1$
+    sql.append( "          " ); //$NON-NLS-1$
+    appendTableAndAlias( sql, join.getLeftTablename(), join.getLeftTableAlias() );
     sql.append( Const.CR );
     // The first table has now been used in the query
-    usedTables.add( firstTable );
+    usedTables.add( getTableKey( join.getLeftTablename(), join.getLeftTableAlias() ) );
     // Connect SQLJoin nodes until we can't connect any more
     connectNode( sql, usedTables, joins, joinsForWhereClause );
     // If there are joins left after we're done connecting nodes they are unreachable
     if ( !joins.isEmpty() ) {
       throw new RuntimeException(
-        String.format( Messages.getErrorString( "HiveDialect.ERROR_0002_JOIN_PATH_NOT_FOUND", //$NON-NLS-1$
+        String.format( Messages.getErrorString( getMessagePrefix() + ".ERROR_0002_JOIN_PATH_NOT_FOUND", //$NON-NLS-1$
           getTableAndAlias( join.getLeftTablename(), join.getLeftTableAlias() ), getTableAndAlias( join
             .getRightTablename(), join.getRightTableAlias() ) ) ) );
     }
@@ -234,69 +225,92 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
   }
 
   /**
-   * Attempt to connect another {@link SQLJoin} to the query.
+   * Connect the {@link SQLJoin}s to the query, one at a time: each pass joins the first unused join sharing a table with
+   * the tables already used, then starts over from the top of the remaining joins.
    *
    * @param sql                 In-progress query string being built
-   * @param usedTables          Tables already used in this query
+   * @param usedTables          Tables already used in this query, by alias
    * @param unusedJoins         Remaining, unused {@link SQLJoin}s.
    * @param joinsForWhereClause {@link SQLJoin}s with WHERE conditions that have not been used in any ON conditions
    */
   protected void connectNode( StringBuilder sql, Set<String> usedTables, List<SQLJoin> unusedJoins,
                               List<SQLJoin> joinsForWhereClause ) {
-    Iterator<SQLJoin> iter = unusedJoins.iterator();
-    while ( iter.hasNext() ) {
-      SQLJoin join = iter.next();
-      String lhs = getTableAndAlias( join.getLeftTablename(), join.getLeftTableAlias() );
-      String rhs = getTableAndAlias( join.getRightTablename(), join.getRightTableAlias() );
-      boolean lhsUsed = usedTables.contains( lhs );
-      boolean rhsUsed = usedTables.contains( rhs );
-      // Determine if we should reject this join condition, skip it, flip it, or keep it as is
-      if ( lhsUsed && rhsUsed ) {
-        // Multiple joins against the same tables. This is assumed to be not possible.
-        throw new RuntimeException( Messages.getErrorString(
-          "HiveDialect.ERROR_0003_ADDITIONAL_JOIN_CONDITIONS_FOUND", lhs, rhs ) ); //$NON-NLS-1$
-      } else if ( !lhsUsed && !rhsUsed ) {
-        // If neither of the tables have been used yet skip this join for now.
-        continue;
-      } else if ( !lhsUsed && rhsUsed ) {
-        // Swap the lhs and rhs so we join unused tables to the chain of used tables
-        String t = lhs;
-        lhs = rhs;
-        rhs = t;
-      }
-      // Keep original order, used on left, unused on right.
-
-      // We've found a join to be included, remove it from the list of unused joins
-      iter.remove();
-      // Join the RHS table
-      usedTables.add( rhs );
-      sql.append( "          JOIN " ); //$NON-NLS-1$
-      sql.append( rhs );
-      // Check for a valid join formula
-      if ( !isValidJoinFormula( join.getSqlWhereFormula().getFormula() ) ) {
-        // SQLJoins with invalid Hive ON clause join formulas will be added in the WHERE clause
-        joinsForWhereClause.add( join );
-      } else {
-        // Use the Hive-valid join condition in the ON clause of this join
-        sql.append( " ON ( " ).append( join.getSqlWhereFormula().getFormula() )
-          .append( " )" ); //$NON-NLS-1$ //$NON-NLS-2$
+    boolean connected = true;
+    while ( connected ) {
+      connected = false;
+      Iterator<SQLJoin> iter = unusedJoins.iterator();
+      while ( iter.hasNext() ) {
+        SQLJoin join = iter.next();
+        boolean lhsUsed = usedTables.contains( getTableKey( join.getLeftTablename(), join.getLeftTableAlias() ) );
+        boolean rhsUsed = usedTables.contains( getTableKey( join.getRightTablename(), join.getRightTableAlias() ) );
+        // Determine if we should reject this join condition, skip it, flip it, or keep it as is
+        if ( lhsUsed && rhsUsed ) {
+          // Multiple joins against the same tables. This is assumed to be not possible.
+          throw new RuntimeException( Messages.getErrorString(
+            getMessagePrefix() + ".ERROR_0003_ADDITIONAL_JOIN_CONDITIONS_FOUND", //$NON-NLS-1$
+            getTableAndAlias( join.getLeftTablename(), join.getLeftTableAlias() ),
+            getTableAndAlias( join.getRightTablename(), join.getRightTableAlias() ) ) );
+        } else if ( !lhsUsed && !rhsUsed ) {
+          // If neither of the tables have been used yet skip this join for now.
+          continue;
+        }
+        // Join the unused table to the chain of used tables
+        String tableName = lhsUsed ? join.getRightTablename() : join.getLeftTablename();
+        String tableAlias = lhsUsed ? join.getRightTableAlias() : join.getLeftTableAlias();
+
+        // We've found a join to be included, remove it from the list of unused joins
+        iter.remove();
+        usedTables.add( getTableKey( tableName, tableAlias ) );
+        sql.append( "          JOIN " ); //$NON-NLS-1$
+        appendTableAndAlias( sql, tableName, tableAlias );
+        // Check for a valid join formula
+        if ( !isValidJoinFormula( join ) ) {
+          // SQLJoins with invalid Hive ON clause join formulas will be added in the WHERE clause
+          joinsForWhereClause.add( join );
+        } else {
+          // Use the Hive-valid join condition in the ON clause of this join
+          sql.append( " ON ( " ).append( join.getSqlWhereFormula().getFormula() )
+            .append( " )" ); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        sql.append( Const.CR );
+        // We successfully found a new SQLJoin node to attach to the query, start over from the top
+        connected = true;
+        break;
       }
-      sql.append( Const.CR );
-      // We successfully found a new SQLJoin node to attach to the query, attempt to connect another
-      connectNode( sql, usedTables, unusedJoins, joinsForWhereClause );
-      // And stop looking here, call to connectNode(..) above will start from the top
-      break;
     }
   }
 
   /**
-   * Checks if a formula is a valid Hive join condition.
+   * Checks if the formula of a join is a valid Hive join condition. The joins of simple relationships are known to be
+   * equalities when they are generated, the formulas of the others are scanned.
+   *
+   * @param join SQL join
+   * @return True if the formula can be used in the ON condition of a join in Hive.
+   */
+  protected boolean isValidJoinFormula( SQLJoin join ) {
+    Boolean equalityJoin = join.getEqualityJoin();
+    if ( equalityJoin != null ) {
+      return equalityJoin.booleanValue();
+    }
+    return isValidJoinFormula( join.getSqlWhereFormula().getFormula() );
+  }
+
+  /**
+   * Checks if a formula is a valid Hive join condition. Hive only supports the equals operator in join conditions.
    *
    * @param formula SQL where (join) formula
    * @return True if the formula can be used in the ON condition of a join in Hive.
    */
   protected boolean isValidJoinFormula( String formula ) {
-    return !INVALID_JOIN_OPERATORS.matcher( formula ).find();
+    return formula.indexOf( '!' ) < 0 && formula.indexOf( '>' ) < 0 && formula.indexOf( '<' ) < 0
+      && !formula.contains( "is null" ) && !formula.contains( "is not null" ); //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  /**
+   * The prefix of the message keys of the dialect errors.
+   */
+  protected String getMessagePrefix() {
+    return "HiveDialect"; //$NON-NLS-1$
   }
 
   /**
@@ -329,7 +343,26 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
    * @see #getTableAndAlias(String, String)
    */
   protected void appendTableAndAlias( StringBuilder sql, SQLTable table ) {
-    sql.append( getTableAndAlias( table.getTableName(), table.getAlias() ) );
+    appendTableAndAlias( sql, table.getTableName(), table.getAlias() );
+  }
+
+  /**
+   * Append a table's name and alias to the end of {@code sql}.
+   *
+   * @see #getTableAndAlias(String, String)
+   */
+  protected void appendTableAndAlias( StringBuilder sql, String table, String alias ) {
+    sql.append( table );
+    if ( !Const.isEmpty( alias ) ) {
+      sql.append( ' ' ).append( alias );
+    }
+  }
+
+  /**
+   * Identifies a table of the query: by its alias, or by its name if it has no alias.
+   */
+  protected String getTableKey( String table, String alias ) {
+    return Const.isEmpty( alias ) ? table : alias;
   }
 
   /**
@@ -378,6 +411,7 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
 
     if ( query.getOrderBys().size() > 0 ) {
       sql.append( "ORDER BY " ).append( Const.CR ); //$NON-NLS-1$
+      boolean aliases = isDriverVersion( 0, 7 );
       boolean first = true;
       for ( SQLOrderBy orderby : query.getOrderBys() ) {
         if ( first ) {
@@ -388,7 +422,7 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
         }
         // Hive does not support column aliases or table qualifiers used in ORDER BY.
         // See https://issues.apache.org/jira/browse/HIVE-1449.
-        if ( isDriverVersion( 0, 7 ) ) {
+        if ( aliases ) {
           if ( orderby.getSelection().getAlias() != null ) {
             sql.append( orderby.getSelection().getAlias() );
           } else {
@@ -417,13 +451,45 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
   }
 
   /**
-   * Remote table aliases from the provided SQL formula
+   * Remove table aliases from the provided SQL formula: any word, followed by optional whitespace and a dot, is dropped
+   * along with the dot. e.g. "a.id" becomes "id" and "count(a.id)" becomes "count(id)"
    *
    * @param formula
-   * @return
+   * @return formula without table qualifiers
    */
   protected String stripTableAliasesFromFormula( String formula ) {
-    return TABLE_QUALIFIER_PATTERN.matcher( formula ).replaceAll( new String() );
+    StringBuilder sb = new StringBuilder( formula.length() );
+    int i = 0;
+    while ( i < formula.length() ) {
+      char c = formula.charAt( i );
+      if ( c == '(' || c == '.' || isWhitespace( c ) ) {
+        sb.append( c );
+        i++;
+        continue;
+      }
+      // a word, up to the next parenthesis, whitespace or dot
+      int end = i;
+      while ( end < formula.length() && formula.charAt( end ) != '(' && formula.charAt( end ) != '.'
+        && !isWhitespace( formula.charAt( end ) ) ) {
+        end++;
+      }
+      int dot = end;
+      while ( dot < formula.length() && isWhitespace( formula.charAt( dot ) ) ) {
+        dot++;
+      }
+      if ( dot < formula.length() && formula.charAt( dot ) == '.' ) {
+        // a table qualifier
+        i = dot + 1;
+      } else {
+        sb.append( formula, i, end );
+        i = end;
+      }
+    }
+    return sb.toString();
+  }
+
+  private static boolean isWhitespace( char c ) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
   }
 
   /**
@@ -433,11 +499,11 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
    */
   @Override
   protected boolean containsWhereCondition( SQLQueryModel query, StringBuilder sql,
-                                            List<SQLWhereFormula> usedSQLWhereFormula ) {
+                                            Set<SQLWhereFormula> usedSQLWhereFormula ) {
     for ( SQLJoin join : query.getJoins() ) {
       // If we have a join with an invalid join formula the WHERE clause should have
       // already been started
-      if ( !isValidJoinFormula( join.getSqlWhereFormula().getFormula() ) ) {
+      if ( !isValidJoinFormula( join ) ) {
         return true;
       }
     }
@@ -469,12 +535,32 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
 
   @Override
   protected void generateLimit( SQLQueryModel query, StringBuilder sql ) {
-    if ( query.getLimit() >= 0 ) {
+    if ( query.getOffset() > 0 ) {
+      // Hive 2 skips rows with the MySQL style LIMIT offset, rows
+      sql.append( Const.CR ).append( "LIMIT " ).append( query.getOffset() ).append( ", " ) //$NON-NLS-1$ //$NON-NLS-2$
+          .append( query.getLimit() >= 0 ? query.getLimit() : Integer.MAX_VALUE ).append( Const.CR );
+    } else if ( query.getLimit() >= 0 ) {
       sql.append( Const.CR ).append( "LIMIT " ).append( query.getLimit() ).append( Const.CR ); //$NON-NLS-1$
     }
   }
 
+  /**
+   * Only Hive 2.0 and beyond skip rows with LIMIT, older versions page with ROW_NUMBER().
+   */
+  @Override
+  protected boolean supportsOffset() {
+    return isDriverVersion( 2, 0 );
+  }
+
   protected synchronized void initDriverInfo() {
+    if ( driverInfoLoaded ) {
+      return;
+    }
+    if ( driverMajorVersion != null ) {
+      // set by a subclass
+      driverInfoLoaded = true;
+      return;
+    }
     Integer majorVersion = 0;
     Integer minorVersion = 0;
 
@@ -492,6 +578,7 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
 
     driverMajorVersion = majorVersion;
     driverMinorVersion = minorVersion;
+    driverInfoLoaded = true;
   }
 
   protected String getDriverClassName() {
@@ -511,13 +598,14 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
    */
   protected boolean isDriverVersion( int majorVersion, int minorVersion ) {
     // lazy load driver info, no need to have this unless dialect is put to use
-    if ( driverMajorVersion == null ) {
+    if ( !driverInfoLoaded ) {
       initDriverInfo();
     }
-    if ( majorVersion < driverMajorVersion ) {
+    int driverMajor = driverMajorVersion;
+    if ( majorVersion < driverMajor ) {
       // Driver major version is newer than the requested version
       return true;
-    } else if ( majorVersion == driverMajorVersion ) {
+    } else if ( majorVersion == driverMajor ) {
       // Driver major version is the same as requested, check the minor version
       if ( minorVersion <= driverMinorVersion ) {
         // Driver minor version is the same, or newer than requested
@@ -527,4 +615,17 @@ public abstract class BaseHiveDialect extends DefaultSQLDialect {
 
     return false;
   }
+
+  @Override
+  protected String getTableSampleClause( double percentage ) {
+    return "TABLESAMPLE( " + formatSamplePercentage( percentage ) + " PERCENT )"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  /**
+   * Date partitions are usually string columns, to_date renders the date as yyyy-MM-dd.
+   */
+  @Override
+  public String getPartitionValueSQL( String valueSql ) {
+    return "to_date( " + valueSql + " )"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
 }
@@ -107,4 +107,13 @@ public class DB2Dialect extends DefaultSQLDialect {
     generateDistinct( query, sql );
   }
 
+  @Override
+  public boolean supportsCommonTableExpressions() {
+    return true;
+  }
+
+  @Override
+  protected String getTableSampleClause( double percentage ) {
+    return "TABLESAMPLE SYSTEM ( " + formatSamplePercentage( percentage ) + " )"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
 }
@@ -0,0 +1,553 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.mql.dialect;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Default {@link MultiValuedParameterStrategy}. Lists with up to {@link #getInlineLimit()} values are left to the
+ * dialect. Larger lists of a prepared statement are joined against a temporary table above
+ * {@link #getTempTableThreshold()} values, or bound as a single array if array binding is enabled and the dialect
+ * provides an array template. Anything else is split into <code>IN</code> groups of {@link #getChunkSize()} values.
+ * <p>
+ * The strategy of a dialect can be configured with system properties prefixed by
+ * <code>org.pentaho.pms.mql.dialect.&lt;DATABASE TYPE&gt;.inList.</code>:
+ * <ul>
+ * <li><code>strategy</code> - class name of a custom strategy</li>
+ * <li><code>inlineLimit</code>, <code>chunkSize</code>, <code>arrayBinding</code>, <code>tempTableThreshold</code> -
+ * settings of this strategy</li>
+ * </ul>
+ * Array binding and temporary tables require the executor to bind parameters with
+ * <code>MappedQuery.bindParameters</code> and are therefore disabled by default.
+ * <p>
+ * The settings are immutable, the <code>with</code> methods return a modified copy, so a strategy can be shared by the
+ * queries of all threads.
+ */
+@SuppressWarnings( "deprecation" )
+public class DefaultMultiValuedParameterStrategy implements MultiValuedParameterStrategy {
+
+  public static final String PROPERTY_PREFIX = "org.pentaho.pms.mql.dialect."; //$NON-NLS-1$
+
+  public static final String VALUE_COLUMN = "PMS_VALUE"; //$NON-NLS-1$
+
+  private static final String TABLE_PREFIX = "PMS_IN_"; //$NON-NLS-1$
+
+  /** hex digits of the digest of the parameter name in the table names */
+  private static final int NAME_DIGEST_LENGTH = 10;
+
+  /**
+   * SQL states of a table that already exists: ODBC, MySQL and H2, PostgreSQL, DB2, HSQLDB and Derby. Oracle reports
+   * ORA-00955 with the generic state 42000.
+   */
+  private static final List<String> TABLE_EXISTS_STATES = Arrays.asList( "42S01", "42P07", //$NON-NLS-1$ //$NON-NLS-2$
+      "42710", "42504", "X0Y32" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+  private static final int ORACLE_NAME_IN_USE = 955;
+
+  /**
+   * SQL states of a table that does not exist: ODBC, MySQL and H2, PostgreSQL, DB2, HSQLDB and Derby. Oracle reports
+   * ORA-00942 with the generic state 42000.
+   */
+  private static final List<String> TABLE_MISSING_STATES = Arrays.asList( "42S02", "42P01", //$NON-NLS-1$ //$NON-NLS-2$
+      "42704", "42501", "42X05" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+  private static final int ORACLE_TABLE_MISSING = 942;
+
+  private static final String ORACLE_CONNECTION_CLASS = "oracle.jdbc.OracleConnection"; //$NON-NLS-1$
+
+  private static final Log logger = LogFactory.getLog( DefaultMultiValuedParameterStrategy.class );
+
+  private final DefaultSQLDialect dialect;
+
+  private final int inlineLimit;
+
+  private final int chunkSize;
+
+  private final boolean arrayBinding;
+
+  private final int tempTableThreshold;
+
+  /**
+   * tables created per connection by a template without <code>IF NOT EXISTS</code>. These are global temporary tables,
+   * whose creation is not undone by a rollback; a table dropped behind our back is created again when it is missing.
+   */
+  private final Map<Connection, Set<String>> createdTables =
+      Collections.synchronizedMap( new WeakHashMap<Connection, Set<String>>() );
+
+  public DefaultMultiValuedParameterStrategy( DefaultSQLDialect dialect ) {
+    this( dialect, 1000, 1000, false, 0 );
+  }
+
+  /**
+   * @param dialect
+   *          dialect rendering the predicates
+   * @param inlineLimit
+   *          lists with up to this many values are rendered inline by the dialect
+   * @param chunkSize
+   *          maximum number of values per <code>IN</code> group, 0 disables chunking
+   * @param arrayBinding
+   *          true to bind large lists of prepared statements as a single array where the dialect supports it
+   * @param tempTableThreshold
+   *          lists of prepared statements with more values are joined against a temporary table, 0 disables
+   *          temporary tables
+   */
+  public DefaultMultiValuedParameterStrategy( DefaultSQLDialect dialect, int inlineLimit, int chunkSize,
+      boolean arrayBinding, int tempTableThreshold ) {
+    this.dialect = dialect;
+    this.inlineLimit = inlineLimit;
+    this.chunkSize = chunkSize;
+    this.arrayBinding = arrayBinding;
+    this.tempTableThreshold = tempTableThreshold;
+  }
+
+  /**
+   * creates the strategy configured for the dialect with system properties.
+   * 
+   * @param dialect
+   *          dialect to configure
+   * @return the configured strategy, or null if no property is set for the dialect's database type
+   */
+  public static MultiValuedParameterStrategy fromSystemProperties( DefaultSQLDialect dialect ) {
+    String prefix = PROPERTY_PREFIX + dialect.getDatabaseType() + ".inList."; //$NON-NLS-1$
+    String className = System.getProperty( prefix + "strategy" ); //$NON-NLS-1$
+    if ( className != null ) {
+      try {
+        Class<?> clazz = Class.forName( className );
+        try {
+          Constructor<?> constructor = clazz.getConstructor( DefaultSQLDialect.class );
+          return (MultiValuedParameterStrategy) constructor.newInstance( dialect );
+        } catch ( NoSuchMethodException e ) {
+          return (MultiValuedParameterStrategy) clazz.newInstance();
+        }
+      } catch ( Exception e ) {
+        logger.error( "Unable to create multi-valued parameter strategy " + className, e ); //$NON-NLS-1$
+        return null;
+      }
+    }
+    String inlineLimit = System.getProperty( prefix + "inlineLimit" ); //$NON-NLS-1$
+    String chunkSize = System.getProperty( prefix + "chunkSize" ); //$NON-NLS-1$
+    String arrayBinding = System.getProperty( prefix + "arrayBinding" ); //$NON-NLS-1$
+    String tempTableThreshold = System.getProperty( prefix + "tempTableThreshold" ); //$NON-NLS-1$
+    if ( inlineLimit == null && chunkSize == null && arrayBinding == null && tempTableThreshold == null ) {
+      return null;
+    }
+    DefaultMultiValuedParameterStrategy strategy =
+        new DefaultMultiValuedParameterStrategy( dialect ).withArrayBinding( Boolean.parseBoolean( arrayBinding ) );
+    try {
+      if ( inlineLimit != null ) {
+        strategy = strategy.withInlineLimit( Integer.parseInt( inlineLimit.trim() ) );
+      }
+      if ( chunkSize != null ) {
+        strategy = strategy.withChunkSize( Integer.parseInt( chunkSize.trim() ) );
+      }
+      if ( tempTableThreshold != null ) {
+        strategy = strategy.withTempTableThreshold( Integer.parseInt( tempTableThreshold.trim() ) );
+      }
+    } catch ( NumberFormatException e ) {
+      logger.error( "Invalid multi-valued parameter setting for " + dialect.getDatabaseType(), e ); //$NON-NLS-1$
+    }
+    return strategy;
+  }
+
+  public boolean generateInList( SQLDialectInterface sqlDialect, StringBuffer sb, String columnSql,
+      String paramName, Object[] values, boolean preparedStatement ) {
+    if ( values.length <= inlineLimit ) {
+      return false;
+    }
+    if ( preparedStatement ) {
+      if ( tempTableThreshold > 0 && values.length > tempTableThreshold
+          && dialect.getTemporaryTableTemplate() != null ) {
+        sb.append( columnSql );
+        sb.append( " IN ( SELECT " ).append( VALUE_COLUMN ).append( " FROM ___PARAMTABLE[" ); //$NON-NLS-1$ //$NON-NLS-2$
+        sb.append( paramName ).append( "]___ ) " ); //$NON-NLS-1$
+        return true;
+      }
+      String arrayTemplate = dialect.getArrayInListTemplate();
+      if ( arrayBinding && arrayTemplate != null ) {
+        sb.append( " " ); //$NON-NLS-1$
+        sb.append( arrayTemplate.replace( "{0}", columnSql.trim() ).replace( //$NON-NLS-1$
+            "{1}", "___PARAMARRAY[" + paramName + "]___" ) ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        sb.append( " " ); //$NON-NLS-1$
+        return true;
+      }
+      if ( columnSql.indexOf( "___PARAM" ) >= 0 ) { //$NON-NLS-1$
+        // the slices of a parameter must be bound one after another
+        return false;
+      }
+    }
+    if ( chunkSize <= 0 || values.length <= chunkSize ) {
+      return false;
+    }
+    sb.append( " ( " ); //$NON-NLS-1$
+    for ( int from = 0; from < values.length; from += chunkSize ) {
+      int to = Math.min( from + chunkSize, values.length );
+      if ( from > 0 ) {
+        sb.append( " OR " ); //$NON-NLS-1$
+      }
+      sb.append( columnSql );
+      sb.append( " IN ( " ); //$NON-NLS-1$
+      if ( preparedStatement ) {
+        sb.append( "___PARAMSLICE[" ).append( from ).append( "," ).append( to ).append( "][" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        sb.append( paramName ).append( "]___" ); //$NON-NLS-1$
+      } else {
+        for ( int i = from; i < to; i++ ) {
+          if ( i != from ) {
+            sb.append( " , " ); //$NON-NLS-1$
+          }
+          if ( values[i] == null ) {
+            // never matches, like a NULL value of a prepared statement
+            sb.append( "NULL" ); //$NON-NLS-1$
+          } else if ( values instanceof Double[] ) {
+            sb.append( values[i].toString() );
+          } else {
+            sb.append( sqlDialect.quoteStringLiteral( values[i].toString() ) );
+          }
+        }
+      }
+      sb.append( " ) " ); //$NON-NLS-1$
+    }
+    sb.append( " ) " ); //$NON-NLS-1$
+    return true;
+  }
+
+  public Array createArray( Connection connection, Object[] values ) throws SQLException {
+    int type = getValueType( values );
+    Object[] elements = toJdbcValues( values, type );
+    if ( isOracle( connection ) ) {
+      // Oracle has no createArrayOf, bind one of the predefined collection types instead
+      try {
+        Class<?> oracleConnectionClass = Class.forName( ORACLE_CONNECTION_CLASS );
+        Object oracleConnection = connection.unwrap( oracleConnectionClass );
+        Method createOracleArray =
+            oracleConnectionClass.getMethod( "createOracleArray", String.class, Object.class ); //$NON-NLS-1$
+        return (Array) createOracleArray.invoke( oracleConnection, getOracleCollectionType( type ), elements );
+      } catch ( SQLException e ) {
+        throw e;
+      } catch ( Exception e ) {
+        throw new SQLException( e );
+      }
+    }
+    return connection.createArrayOf( getArrayElementType( type ), elements );
+  }
+
+  public String getTableName( String paramName, Object[] values ) {
+    // the readable part of the name may be shortened and loses case and special characters, the digest of the
+    // parameter name keeps the tables of different parameters apart; values of different types are kept apart as they
+    // need different column types
+    String suffix = "_" + getNameDigest( paramName ) + "_" + getValueType( values ); //$NON-NLS-1$ //$NON-NLS-2$
+    StringBuilder name = new StringBuilder( TABLE_PREFIX );
+    for ( int i = 0; i < paramName.length(); i++ ) {
+      char c = Character.toUpperCase( paramName.charAt( i ) );
+      name.append( ( c >= 'A' && c <= 'Z' ) || ( c >= '0' && c <= '9' ) ? c : '_' );
+    }
+    int maxLength = dialect.getMaxTableNameLength() - suffix.length();
+    if ( name.length() > maxLength ) {
+      name.setLength( Math.max( maxLength, TABLE_PREFIX.length() ) );
+    }
+    return name.append( suffix ).toString();
+  }
+
+  private static String getNameDigest( String paramName ) {
+    try {
+      MessageDigest sha1 = MessageDigest.getInstance( "SHA-1" ); //$NON-NLS-1$
+      byte[] digest = sha1.digest( paramName.getBytes( StandardCharsets.UTF_8 ) );
+      StringBuilder hex = new StringBuilder();
+      for ( int i = 0; hex.length() < NAME_DIGEST_LENGTH; i++ ) {
+        hex.append( Character.forDigit( ( digest[i] >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( digest[i] & 0xF,
+            16 ) );
+      }
+      return hex.toString().toUpperCase();
+    } catch ( NoSuchAlgorithmException e ) {
+      // every Java platform supports SHA-1
+      throw new IllegalStateException( e );
+    }
+  }
+
+  public void loadTable( Connection connection, String tableName, Object[] values ) throws SQLException {
+    int type = getValueType( values );
+    String template = dialect.getTemporaryTableTemplate();
+    Statement statement = connection.createStatement();
+    try {
+      if ( template.toUpperCase().contains( "IF NOT EXISTS" ) ) { //$NON-NLS-1$
+        // session temporary tables may be dropped by a rollback of the transaction creating them, so the statement
+        // runs every time rather than being remembered for the connection; it does nothing if the table exists
+        createTable( statement, template, tableName, type );
+        statement.executeUpdate( "DELETE FROM " + tableName ); //$NON-NLS-1$
+      } else {
+        Set<String> tables = createdTables.get( connection );
+        if ( tables == null ) {
+          tables = Collections.synchronizedSet( new HashSet<String>() );
+          createdTables.put( connection, tables );
+        }
+        if ( !tables.contains( tableName ) ) {
+          createTable( statement, template, tableName, type );
+          tables.add( tableName );
+        }
+        try {
+          statement.executeUpdate( "DELETE FROM " + tableName ); //$NON-NLS-1$
+        } catch ( SQLException e ) {
+          if ( !isTableMissingError( e ) ) {
+            throw e;
+          }
+          logger.debug( tableName + " is missing, creating it again", e ); //$NON-NLS-1$
+          createTable( statement, template, tableName, type );
+        }
+      }
+    } finally {
+      statement.close();
+    }
+    Object[] rows = toJdbcValues( values, type );
+    PreparedStatement insert =
+        connection.prepareStatement( "INSERT INTO " + tableName + " ( " + VALUE_COLUMN + " ) VALUES ( ? )" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    try {
+      for ( int i = 0; i < rows.length; i++ ) {
+        insert.setObject( 1, rows[i] );
+        insert.addBatch();
+        if ( ( i + 1 ) % chunkSizeOrDefault() == 0 ) {
+          insert.executeBatch();
+        }
+      }
+      insert.executeBatch();
+    } finally {
+      insert.close();
+    }
+  }
+
+  private void createTable( Statement statement, String template, String tableName, int type ) throws SQLException {
+    String columnType =
+        dialect.databaseMeta.getFieldDefinition( getValueMeta( type ), null, null, false, false, false );
+    try {
+      statement.execute( template.replace( "{0}", tableName ).replace( //$NON-NLS-1$
+          "{1}", columnType.trim() ) ); //$NON-NLS-1$
+    } catch ( SQLException e ) {
+      if ( !isTableExistsError( e ) ) {
+        throw e;
+      }
+      // a global temporary table created by another session
+      logger.debug( tableName + " already exists", e ); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * Tells if the creation of a temporary table failed because the table already exists. Any other failure, such as a
+   * missing privilege or an unsupported syntax, is reported to the caller.
+   * 
+   * @param e
+   *          the failure
+   * @return true if the table exists
+   */
+  protected boolean isTableExistsError( SQLException e ) {
+    return TABLE_EXISTS_STATES.contains( e.getSQLState() ) || e.getErrorCode() == ORACLE_NAME_IN_USE
+        && "42000".equals( e.getSQLState() ); //$NON-NLS-1$
+  }
+
+  /**
+   * Tells if a statement failed because the table it uses does not exist.
+   * 
+   * @param e
+   *          the failure
+   * @return true if the table is missing
+   */
+  protected boolean isTableMissingError( SQLException e ) {
+    return TABLE_MISSING_STATES.contains( e.getSQLState() ) || e.getErrorCode() == ORACLE_TABLE_MISSING
+        && "42000".equals( e.getSQLState() ); //$NON-NLS-1$
+  }
+
+  private int chunkSizeOrDefault() {
+    return chunkSize > 0 ? chunkSize : 1000;
+  }
+
+  /**
+   * @return one of the ValueMetaInterface types integer, number, date or string
+   */
+  protected int getValueType( Object[] values ) {
+    int type = -1;
+    for ( Object value : values ) {
+      int valueType;
+      if ( value == null ) {
+        // bound as a NULL of any type
+        continue;
+      } else if ( value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+          || value instanceof BigInteger ) {
+        valueType = ValueMetaInterface.TYPE_INTEGER;
+      } else if ( value instanceof Number ) {
+        valueType = ValueMetaInterface.TYPE_NUMBER;
+      } else if ( value instanceof Date ) {
+        valueType = ValueMetaInterface.TYPE_DATE;
+      } else {
+        return ValueMetaInterface.TYPE_STRING;
+      }
+      if ( type == -1 || type == valueType ) {
+        type = valueType;
+      } else if ( type == ValueMetaInterface.TYPE_INTEGER && valueType == ValueMetaInterface.TYPE_NUMBER
+          || type == ValueMetaInterface.TYPE_NUMBER && valueType == ValueMetaInterface.TYPE_INTEGER ) {
+        type = ValueMetaInterface.TYPE_NUMBER;
+      } else {
+        return ValueMetaInterface.TYPE_STRING;
+      }
+    }
+    return type == -1 ? ValueMetaInterface.TYPE_STRING : type;
+  }
+
+  protected ValueMetaInterface getValueMeta( int type ) {
+    switch ( type ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        return new ValueMeta( VALUE_COLUMN, type, 19, 0 );
+      case ValueMetaInterface.TYPE_NUMBER:
+        return new ValueMeta( VALUE_COLUMN, type, -1, -1 );
+      case ValueMetaInterface.TYPE_DATE:
+        return new ValueMeta( VALUE_COLUMN, type, -1, -1 );
+      default:
+        return new ValueMeta( VALUE_COLUMN, ValueMetaInterface.TYPE_STRING, 4000, 0 );
+    }
+  }
+
+  protected String getArrayElementType( int type ) {
+    switch ( type ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        return "BIGINT"; //$NON-NLS-1$
+      case ValueMetaInterface.TYPE_NUMBER:
+        return "DOUBLE"; //$NON-NLS-1$
+      case ValueMetaInterface.TYPE_DATE:
+        return "TIMESTAMP"; //$NON-NLS-1$
+      default:
+        return "VARCHAR"; //$NON-NLS-1$
+    }
+  }
+
+  protected String getOracleCollectionType( int type ) {
+    switch ( type ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+      case ValueMetaInterface.TYPE_NUMBER:
+        return "SYS.ODCINUMBERLIST"; //$NON-NLS-1$
+      case ValueMetaInterface.TYPE_DATE:
+        return "SYS.ODCIDATELIST"; //$NON-NLS-1$
+      default:
+        return "SYS.ODCIVARCHAR2LIST"; //$NON-NLS-1$
+    }
+  }
+
+  private Object[] toJdbcValues( Object[] values, int type ) {
+    Object[] result = new Object[values.length];
+    for ( int i = 0; i < values.length; i++ ) {
+      Object value = values[i];
+      if ( value == null ) {
+        result[i] = null;
+      } else if ( type == ValueMetaInterface.TYPE_STRING ) {
+        result[i] = value.toString();
+      } else if ( type == ValueMetaInterface.TYPE_DATE && !( value instanceof Timestamp ) ) {
+        result[i] = new Timestamp( ( (Date) value ).getTime() );
+      } else if ( type == ValueMetaInterface.TYPE_INTEGER && value instanceof BigInteger ) {
+        result[i] = Long.valueOf( ( (BigInteger) value ).longValue() );
+      } else if ( type == ValueMetaInterface.TYPE_NUMBER ) {
+        result[i] = Double.valueOf( ( (Number) value ).doubleValue() );
+      } else if ( type == ValueMetaInterface.TYPE_INTEGER ) {
+        result[i] = Long.valueOf( ( (Number) value ).longValue() );
+      } else {
+        result[i] = value;
+      }
+    }
+    return result;
+  }
+
+  private boolean isOracle( Connection connection ) {
+    try {
+      return connection.isWrapperFor( Class.forName( ORACLE_CONNECTION_CLASS ) );
+    } catch ( ClassNotFoundException e ) {
+      return false;
+    } catch ( SQLException e ) {
+      return false;
+    }
+  }
+
+  public int getInlineLimit() {
+    return inlineLimit;
+  }
+
+  /**
+   * @param inlineLimit
+   *          lists with up to this many values are rendered inline by the dialect
+   * @return a copy of this strategy with the specified limit
+   */
+  public DefaultMultiValuedParameterStrategy withInlineLimit( int inlineLimit ) {
+    return new DefaultMultiValuedParameterStrategy( dialect, inlineLimit, chunkSize, arrayBinding, tempTableThreshold );
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * @param chunkSize
+   *          maximum number of values per <code>IN</code> group, 0 disables chunking
+   * @return a copy of this strategy with the specified chunk size
+   */
+  public DefaultMultiValuedParameterStrategy withChunkSize( int chunkSize ) {
+    return new DefaultMultiValuedParameterStrategy( dialect, inlineLimit, chunkSize, arrayBinding, tempTableThreshold );
+  }
+
+  public boolean isArrayBinding() {
+    return arrayBinding;
+  }
+
+  /**
+   * @param arrayBinding
+   *          true to bind large lists of prepared statements as a single array where the dialect supports it
+   * @return a copy of this strategy with the specified array binding
+   */
+  public DefaultMultiValuedParameterStrategy withArrayBinding( boolean arrayBinding ) {
+    return new DefaultMultiValuedParameterStrategy( dialect, inlineLimit, chunkSize, arrayBinding, tempTableThreshold );
+  }
+
+  public int getTempTableThreshold() {
+    return tempTableThreshold;
+  }
+
+  /**
+   * @param tempTableThreshold
+   *          lists of prepared statements with more values are joined against a temporary table, 0 disables
+   *          temporary tables
+   * @return a copy of this strategy with the specified threshold
+   */
+  public DefaultMultiValuedParameterStrategy withTempTableThreshold( int tempTableThreshold ) {
+    return new DefaultMultiValuedParameterStrategy( dialect, inlineLimit, chunkSize, arrayBinding, tempTableThreshold );
+  }
+}
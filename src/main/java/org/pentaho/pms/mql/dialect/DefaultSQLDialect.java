@@ -21,8 +21,13 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,6 +36,7 @@ import org.pentaho.pms.core.exception.PentahoMetadataException;
 import org.pentaho.pms.messages.Messages;
 import org.pentaho.pms.messages.util.LocaleHelper;
 import org.pentaho.pms.mql.DateMath;
+import org.pentaho.pms.mql.dialect.SQLQueryModel.SQLCommonTable;
 import org.pentaho.pms.mql.dialect.SQLQueryModel.SQLOrderBy;
 import org.pentaho.pms.mql.dialect.SQLQueryModel.SQLSelection;
 import org.pentaho.pms.mql.dialect.SQLQueryModel.SQLTable;
@@ -50,6 +56,19 @@ import org.pentaho.reporting.libraries.formula.lvalues.StaticValue;
 @SuppressWarnings( "deprecation" )
 public class DefaultSQLDialect implements SQLDialectInterface {
   private static final String TOP_KEYWORD = "TOP"; //$NON-NLS-1$
+
+  /**
+   * the column holding the row number of a page rendered with ROW_NUMBER()
+   */
+  public static final String ROW_NUMBER_COLUMN = "PMS_ROW_NUM"; //$NON-NLS-1$
+
+  private static final String PAGE_ALIAS = "PMS_PAGE"; //$NON-NLS-1$
+
+  private static final String ROWS_ALIAS = "PMS_ROWS"; //$NON-NLS-1$
+
+  private static final String SAMPLE_TABLE_ALIAS = "PMS_SAMPLE"; //$NON-NLS-1$
+
+  private static final String PAGE_COLUMN_ALIAS = "PMS_C"; //$NON-NLS-1$
   protected Map<String, SQLFunctionGeneratorInterface> supportedFunctions =
       new HashMap<String, SQLFunctionGeneratorInterface>();
   protected Map<String, SQLOperatorGeneratorInterface> supportedInfixOperators =
@@ -57,6 +76,8 @@ public class DefaultSQLDialect implements SQLDialectInterface {
   String databaseType;
   DatabaseMeta databaseMeta;
   private String concatOperator; // will default to "||", can be overridden by -Ddefault.sql.dialect.concat.operator="+"
+  // dialects are shared by all queries, the immutable strategy is replaced as a whole
+  private volatile MultiValuedParameterStrategy multiValuedParameterStrategy;
 
   public DefaultSQLDialect() {
     this( "GENERIC" ); //$NON-NLS-1$
@@ -66,6 +87,7 @@ public class DefaultSQLDialect implements SQLDialectInterface {
     concatOperator = System.getProperty( "default.sql.dialect.concat.operator", "||" ); //$NON-NLS-1$    
     this.databaseType = databaseType;
     this.databaseMeta = new DatabaseMeta( "", databaseType, "Native", "", "", "", "", "" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+    this.multiValuedParameterStrategy = DefaultMultiValuedParameterStrategy.fromSystemProperties( this );
 
     // logical functions
     supportedFunctions.put(
@@ -186,6 +208,9 @@ public class DefaultSQLDialect implements SQLDialectInterface {
            */
           public void generateFunctionSQL( FormulaTraversalInterface formula, StringBuffer sb, String locale,
               FormulaFunction f ) throws PentahoMetadataException {
+            if ( generateMultiValuedInList( formula, sb, locale, f ) ) {
+              return;
+            }
             formula.generateSQL( f, f.getChildValues()[0], sb, locale );
             sb.append( " IN ( " ); //$NON-NLS-1$
             formula.generateSQL( f, f.getChildValues()[1], sb, locale );
@@ -226,6 +251,9 @@ public class DefaultSQLDialect implements SQLDialectInterface {
                 }
               }
             }
+            if ( multiVal && generateMultiValuedInList( formula, sb, locale, f ) ) {
+              return;
+            }
             if ( multiVal ) {
               formula.generateSQL( f, f.getChildValues()[0], sb, locale );
               sb.append( " IN ( " ); //$NON-NLS-1$
@@ -767,10 +795,10 @@ public class DefaultSQLDialect implements SQLDialectInterface {
    * @param usedSQLWhereFormula
    *          the where formula that are already used by the outer join algorithm. (no need to list these again)
    */
-  protected void generateWhere( SQLQueryModel query, StringBuilder sql, List<SQLWhereFormula> usedSQLWhereFormula ) {
+  protected void generateWhere( SQLQueryModel query, StringBuilder sql, Set<SQLWhereFormula> usedSQLWhereFormula ) {
 
-    boolean addSecurityConstraint =
-        query.getSecurityConstraint() != null && !query.getSecurityConstraint().isContainingAggregate();
+    List<SQLWhereFormula> globalConstraints = query.getGlobalConstraints( false );
+    boolean addSecurityConstraint = !globalConstraints.isEmpty();
 
     List<SQLWhereFormula> remainingFormulas = new ArrayList<SQLWhereFormula>();
     if ( query.getWhereFormulas().size() > 0 || addSecurityConstraint ) {
@@ -791,13 +819,13 @@ public class DefaultSQLDialect implements SQLDialectInterface {
         }
       }
 
-      if ( addSecurityConstraint ) {
+      for ( int i = 0; i < globalConstraints.size(); i++ ) {
 
         sql.append( "        (" ).append( Const.CR ); //$NON-NLS-1$
         sql.append( "          " ); //$NON-NLS-1$
-        sql.append( query.getSecurityConstraint().getFormula() ).append( Const.CR );
+        sql.append( globalConstraints.get( i ).getFormula() ).append( Const.CR );
 
-        if ( whereFormulasRemaining ) {
+        if ( whereFormulasRemaining || i < globalConstraints.size() - 1 ) {
           sql.append( "        ) AND " ).append( Const.CR ); //$NON-NLS-1$
         } else {
           sql.append( "        )" ).append( Const.CR ); //$NON-NLS-1$
@@ -843,7 +871,7 @@ public class DefaultSQLDialect implements SQLDialectInterface {
    * @return True if the query has already been appended with a WHERE keyword.
    */
   protected boolean containsWhereCondition( SQLQueryModel query, StringBuilder sql,
-      List<SQLWhereFormula> usedSQLWhereFormula ) {
+      Set<SQLWhereFormula> usedSQLWhereFormula ) {
     return query.getJoins().size() != 0 && !query.containsOuterJoins();
   }
 
@@ -920,18 +948,20 @@ public class DefaultSQLDialect implements SQLDialectInterface {
    */
   protected void generateHaving( SQLQueryModel query, StringBuilder sql ) {
 
-    boolean addSecurityConstraint =
-        query.getSecurityConstraint() != null && query.getSecurityConstraint().isContainingAggregate();
+    List<SQLWhereFormula> globalConstraints = query.getGlobalConstraints( true );
+    boolean addSecurityConstraint = !globalConstraints.isEmpty();
 
     if ( query.getHavings().size() > 0 || addSecurityConstraint ) {
 
       sql.append( "HAVING " ).append( Const.CR ); //$NON-NLS-1$
 
-      if ( addSecurityConstraint ) {
-        sql.append( "        (" ).append( Const.CR ); //$NON-NLS-1$
+      for ( int i = 0; i < globalConstraints.size(); i++ ) {
+        if ( i == 0 ) {
+          sql.append( "        (" ).append( Const.CR ); //$NON-NLS-1$
+        }
         sql.append( "          " ); //$NON-NLS-1$
-        sql.append( query.getSecurityConstraint().getFormula() ).append( Const.CR );
-        if ( query.getHavings().size() > 0 ) {
+        sql.append( globalConstraints.get( i ).getFormula() ).append( Const.CR );
+        if ( query.getHavings().size() > 0 || i < globalConstraints.size() - 1 ) {
           sql.append( "        ) AND (" ).append( Const.CR ); //$NON-NLS-1$
         }
       }
@@ -1041,11 +1071,318 @@ public class DefaultSQLDialect implements SQLDialectInterface {
    *          string buffer
    */
   protected void generateLimit( SQLQueryModel query, StringBuilder sql ) {
-    if ( query.getLimit() >= 0 ) {
+    if ( query.getOffset() > 0 ) {
+      sql.append( " LIMIT " ); //$NON-NLS-1$
+      sql.append( query.getLimit() >= 0 ? String.valueOf( query.getLimit() ) : getUnboundedLimit() );
+      sql.append( " OFFSET " ); //$NON-NLS-1$
+      sql.append( query.getOffset() );
+    } else if ( query.getLimit() >= 0 ) {
       sql.append( databaseMeta.getLimitClause( query.getLimit() ) );
     }
   }
 
+  /**
+   * Convenience method. Appends the ANSI &quot; OFFSET m ROWS FETCH NEXT n ROWS ONLY &quot; clause.
+   * 
+   * @param query
+   *          query model
+   * @param sql
+   *          string buffer
+   */
+  protected void generateOffsetFetch( SQLQueryModel query, StringBuilder sql ) {
+    if ( query.getOffset() > 0 ) {
+      sql.append( " OFFSET " ); //$NON-NLS-1$
+      sql.append( query.getOffset() );
+      sql.append( " ROWS" ); //$NON-NLS-1$
+    }
+    if ( query.getLimit() >= 0 ) {
+      sql.append( query.getOffset() > 0 ? " FETCH NEXT " : " FETCH FIRST " ); //$NON-NLS-1$ //$NON-NLS-2$
+      sql.append( query.getLimit() );
+      sql.append( " ROWS ONLY " ); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * The LIMIT value rendered by {@link #generateLimit(SQLQueryModel, StringBuilder)} when the query has an offset but
+   * no limit.
+   * 
+   * @return unbounded limit
+   */
+  protected String getUnboundedLimit() {
+    return "ALL"; //$NON-NLS-1$
+  }
+
+  /**
+   * Whether the dialect renders the offset of the query itself. Queries with an offset are otherwise numbered with
+   * ROW_NUMBER() and filtered on the row number, see {@link #generateRowNumberPage(SQLQueryModel)}.
+   * 
+   * @return true if the offset is rendered by the dialect
+   */
+  protected boolean supportsOffset() {
+    return false;
+  }
+
+  /**
+   * Renders a page of the query by numbering its rows with ROW_NUMBER() in the query order and keeping the rows after
+   * the offset. When every ORDER BY item is a selected column, the query is wrapped as is and numbered on its column
+   * aliases, which keeps DISTINCT working. A DISTINCT query is also wrapped otherwise, after aliasing its columns and
+   * selecting the ORDER BY items it does not select; other queries get the row number added to their selections. The
+   * outer query lists the selected columns by alias, unaliased columns are aliased first, so the row number is not
+   * returned to the caller.
+   * 
+   * @param query
+   *          query model
+   * @return paged select statement
+   */
+  protected String generateRowNumberPage( SQLQueryModel query ) {
+    SQLQueryModel unpaged = query.getUnpagedQuery();
+    List<SQLOrderBy> orderBys = new ArrayList<SQLOrderBy>( query.getOrderBys() );
+    if ( orderBys.isEmpty() ) {
+      // the page is not deterministic anyway, but ROW_NUMBER() needs an order
+      for ( SQLSelection selection : query.getSelections() ) {
+        orderBys.add( new SQLOrderBy( selection, null ) );
+      }
+    }
+    Set<String> aliases = new HashSet<String>();
+    boolean selectionsAliased = true;
+    for ( SQLSelection selection : query.getSelections() ) {
+      selectionsAliased &= selection.getAlias() != null;
+      aliases.add( selection.getAlias() );
+    }
+    boolean aliased = true;
+    for ( SQLOrderBy orderBy : orderBys ) {
+      aliased &= orderBy.getSelection().getAlias() != null && aliases.contains( orderBy.getSelection().getAlias() );
+    }
+    List<String> orderAliases = new ArrayList<String>();
+    List<SQLSelection> selections = query.getSelections();
+    if ( aliased ) {
+      for ( SQLOrderBy orderBy : orderBys ) {
+        orderAliases.add( orderBy.getSelection().getAlias() );
+      }
+    } else if ( unpaged.getDistinct() ) {
+      // a row number added to the selections would make every row distinct
+      selections = aliasPageColumns( unpaged, orderBys, orderAliases );
+      aliased = true;
+      selectionsAliased = true;
+    }
+    if ( !selectionsAliased ) {
+      // the page lists the columns by alias
+      selections = aliasPageColumns( unpaged );
+    }
+
+    StringBuilder rowNumber = new StringBuilder( "ROW_NUMBER() OVER ( ORDER BY " ); //$NON-NLS-1$
+    for ( int i = 0; i < orderBys.size(); i++ ) {
+      SQLOrderBy orderBy = orderBys.get( i );
+      if ( i > 0 ) {
+        rowNumber.append( ", " ); //$NON-NLS-1$
+      }
+      if ( aliased ) {
+        rowNumber.append( PAGE_ALIAS ).append( '.' ).append( orderAliases.get( i ) );
+      } else {
+        rowNumber.append( orderBy.getSelection().getFormula() );
+      }
+      if ( orderBy.getOrder() == SQLQueryModel.OrderType.DESCENDING ) {
+        rowNumber.append( " DESC" ); //$NON-NLS-1$
+      }
+    }
+    rowNumber.append( " )" ); //$NON-NLS-1$
+
+    String rows;
+    if ( aliased ) {
+      rows = "SELECT " + PAGE_ALIAS + ".*, " + rowNumber + " AS " + ROW_NUMBER_COLUMN + Const.CR //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+          + "FROM (" + Const.CR + generateSelectStatement( unpaged ) + ") " + PAGE_ALIAS + Const.CR; //$NON-NLS-1$ //$NON-NLS-2$
+    } else {
+      unpaged.addSelection( rowNumber.toString(), ROW_NUMBER_COLUMN );
+      rows = generateSelectStatement( unpaged );
+    }
+
+    StringBuilder sql = new StringBuilder( "SELECT " ); //$NON-NLS-1$
+    boolean first = true;
+    for ( SQLSelection selection : selections ) {
+      if ( !first ) {
+        sql.append( ", " ); //$NON-NLS-1$
+      }
+      first = false;
+      sql.append( ROWS_ALIAS ).append( '.' ).append( selection.getAlias() );
+    }
+    sql.append( Const.CR ).append( "FROM (" ).append( Const.CR ).append( rows ).append( ") " ).append( ROWS_ALIAS ); //$NON-NLS-1$ //$NON-NLS-2$
+    sql.append( Const.CR ).append( "WHERE " ).append( ROW_NUMBER_COLUMN ).append( " > " ).append( query.getOffset() ); //$NON-NLS-1$ //$NON-NLS-2$
+    if ( query.getLimit() >= 0 ) {
+      sql.append( " AND " ).append( ROW_NUMBER_COLUMN ).append( " <= " ); //$NON-NLS-1$ //$NON-NLS-2$
+      sql.append( (long) query.getOffset() + query.getLimit() );
+    }
+    sql.append( Const.CR ).append( "ORDER BY " ).append( ROW_NUMBER_COLUMN ).append( Const.CR ); //$NON-NLS-1$
+    return sql.toString();
+  }
+
+  /**
+   * Aliases the unaliased columns of the unpaged copy of a query, so that the page can list them.
+   * 
+   * @param unpaged
+   *          unpaged copy of the query, modified
+   * @return the selections of the query, aliased
+   */
+  private static List<SQLSelection> aliasPageColumns( SQLQueryModel unpaged ) {
+    List<SQLSelection> selections = new ArrayList<SQLSelection>();
+    for ( SQLSelection selection : unpaged.getSelections() ) {
+      String alias = selection.getAlias() != null ? selection.getAlias() : PAGE_COLUMN_ALIAS + selections.size();
+      selections.add( new SQLSelection( selection.getFormula(), alias ) );
+    }
+    unpaged.setSelections( selections );
+    return selections;
+  }
+
+  /**
+   * Aliases the columns of the unpaged copy of a query, so that it can be numbered as a derived table. ORDER BY items
+   * which are not selected are added to the selections.
+   * 
+   * @param unpaged
+   *          unpaged copy of the query, modified
+   * @param orderBys
+   *          ORDER BY items of the query
+   * @param orderAliases
+   *          receives the alias of each ORDER BY item
+   * @return the selections of the query, aliased
+   */
+  private static List<SQLSelection> aliasPageColumns( SQLQueryModel unpaged, List<SQLOrderBy> orderBys,
+      List<String> orderAliases ) {
+    List<SQLSelection> selections = new ArrayList<SQLSelection>();
+    Map<String, String> formulaAliases = new HashMap<String, String>();
+    Set<String> aliases = new HashSet<String>();
+    for ( SQLSelection selection : unpaged.getSelections() ) {
+      String alias = selection.getAlias() != null ? selection.getAlias() : PAGE_COLUMN_ALIAS + selections.size();
+      selections.add( new SQLSelection( selection.getFormula(), alias ) );
+      formulaAliases.put( selection.getFormula(), alias );
+      aliases.add( alias );
+    }
+    List<SQLSelection> pageSelections = new ArrayList<SQLSelection>( selections );
+    for ( SQLOrderBy orderBy : orderBys ) {
+      String alias = orderBy.getSelection().getAlias();
+      if ( alias == null || !aliases.contains( alias ) ) {
+        alias = formulaAliases.get( orderBy.getSelection().getFormula() );
+      }
+      if ( alias == null ) {
+        alias = PAGE_COLUMN_ALIAS + pageSelections.size();
+        pageSelections.add( new SQLSelection( orderBy.getSelection().getFormula(), alias ) );
+        formulaAliases.put( orderBy.getSelection().getFormula(), alias );
+      }
+      orderAliases.add( alias );
+    }
+    unpaged.setSelections( pageSelections );
+    return selections;
+  }
+
+  /**
+   * Whether the dialect supports a WITH clause in front of a select statement. Queries sharing computed columns read
+   * them from common tables when it does, and from derived tables otherwise.
+   * 
+   * @return true if common table expressions are supported
+   */
+  public boolean supportsCommonTableExpressions() {
+    return false;
+  }
+
+  /**
+   * Renders the WITH clause of the common tables of the query.
+   * 
+   * @param query
+   *          query model with common tables
+   * @return WITH clause, followed by a new line
+   */
+  protected String generateWith( SQLQueryModel query ) {
+    StringBuilder sql = new StringBuilder( "WITH " ); //$NON-NLS-1$
+    boolean first = true;
+    for ( SQLCommonTable commonTable : query.getCommonTables() ) {
+      if ( !first ) {
+        sql.append( ", " ); //$NON-NLS-1$
+      }
+      first = false;
+      sql.append( commonTable.getName() ).append( " AS (" ).append( Const.CR ); //$NON-NLS-1$
+      sql.append( commonTable.getQuery() ).append( ")" ); //$NON-NLS-1$
+    }
+    sql.append( Const.CR );
+    return sql.toString();
+  }
+
+  /**
+   * Renders a sample of a table, to be used in place of the table in the FROM clause of a preview query. The table is
+   * sampled inside a derived table, so the sampling clause never has to share a position with the table alias. When
+   * the dialect has no sampling clause, the derived table reads the first rows of the table instead.
+   * 
+   * @param tableName
+   *          table name, in dialect specific form
+   * @param percentage
+   *          percentage of the table to sample, between 0 and 100
+   * @param rowLimit
+   *          number of rows read when the dialect cannot sample
+   * @return derived table
+   */
+  public String generateSampledTable( String tableName, double percentage, int rowLimit ) {
+    return generateSampledTable( tableName, false, percentage, rowLimit );
+  }
+
+  /**
+   * Renders a sample of a table or of a derived table, see {@link #generateSampledTable(String, double, int)}. A
+   * derived table, such as an inline SQL table, cannot take a sampling clause: its first rows are read instead.
+   * 
+   * @param tableName
+   *          table name, in dialect specific form, or derived table
+   * @param derivedTable
+   *          true if tableName is a parenthesized subquery
+   * @param percentage
+   *          percentage of the table to sample, between 0 and 100
+   * @param rowLimit
+   *          number of rows read when the table cannot be sampled
+   * @return derived table
+   */
+  public String generateSampledTable( String tableName, boolean derivedTable, double percentage, int rowLimit ) {
+    String sampleClause = derivedTable ? null : getTableSampleClause( percentage );
+    if ( sampleClause != null ) {
+      return "( SELECT * FROM " + tableName + " " + sampleClause + " )"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+    SQLQueryModel sample = new SQLQueryModel();
+    sample.setDistinct( false );
+    sample.addSelection( "*", null ); //$NON-NLS-1$
+    // most databases require an alias on a derived table
+    sample.addTable( tableName, derivedTable ? SAMPLE_TABLE_ALIAS : null );
+    sample.setLimit( rowLimit );
+    return "(" + Const.CR + generateSelectStatement( sample ) + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  /**
+   * The clause sampling a table, placed after the table name, for instance TABLESAMPLE SYSTEM ( 1 ).
+   * 
+   * @param percentage
+   *          percentage of the table to sample, between 0 and 100
+   * @return sampling clause, or null if the dialect cannot sample tables
+   */
+  protected String getTableSampleClause( double percentage ) {
+    return null;
+  }
+
+  /**
+   * Renders the partition value of a date or timestamp, to be compared with the partition column of a date partitioned
+   * table.
+   * 
+   * @param valueSql
+   *          date or timestamp expression
+   * @return partition value expression
+   */
+  public String getPartitionValueSQL( String valueSql ) {
+    return "CAST( " + valueSql + " AS DATE )"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  /**
+   * Renders a sample percentage without exponent or trailing zeros.
+   * 
+   * @param percentage
+   *          percentage
+   * @return percentage literal
+   */
+  protected String formatSamplePercentage( double percentage ) {
+    return BigDecimal.valueOf( percentage ).stripTrailingZeros().toPlainString();
+  }
+
   /**
    * Generates the outer joins portion of the query.<br>
    * <br>
@@ -1057,11 +1394,11 @@ public class DefaultSQLDialect implements SQLDialectInterface {
    *          string buffer
    * @return
    */
-  protected List<SQLWhereFormula> generateOuterJoin( SQLQueryModel query, StringBuilder sql ) {
+  protected Set<SQLWhereFormula> generateOuterJoin( SQLQueryModel query, StringBuilder sql ) {
 
     // Keep track of the SQL where formula we used in the joins
     //
-    List<SQLWhereFormula> usedSQLWhereFormula = new ArrayList<SQLWhereFormula>();
+    Set<SQLWhereFormula> usedSQLWhereFormula = newWhereFormulaSet();
 
     // If there are no joins, we just stop right here: return empty list.
     //
@@ -1085,140 +1422,214 @@ public class DefaultSQLDialect implements SQLDialectInterface {
     List<SQLJoin> sortedJoins = new ArrayList<SQLJoin>( query.getJoins() );
     Collections.sort( sortedJoins );
 
-    // OK, so we need to create a recursive call to add the nested Join statements...
+    // Optionally re-order the inner joins by their size hints.
+    // This is enabled by the boolean business model property "cost_based_join_order".
     //
-    String joinClause = getJoinClause( query, sortedJoins, 0, new ArrayList<String>(), usedSQLWhereFormula );
+    if ( query.getCostBasedJoinOrder() ) {
+      sortedJoins = orderJoinsByCost( sortedJoins );
+    }
 
-    sql.append( Const.CR ).append( "FROM " ).append( joinClause ).append( Const.CR ); //$NON-NLS-1$
+    // The joins are nested from back to front in the sorted joins list...
+    //
+    sql.append( Const.CR ).append( "FROM " ); //$NON-NLS-1$
+    appendJoinClause( query, sortedJoins, sql, usedSQLWhereFormula );
+    sql.append( Const.CR );
 
     return usedSQLWhereFormula;
   }
 
   /**
-   * Create join clause from back to front in the sorted joins list...
+   * Re-orders the inner joins of the sorted joins list by their size hints. The outer joins keep their place at the
+   * end of the list, i.e. they remain the innermost joins. Starting from the tables of the outer joins, the inner join
+   * with the smallest size hint connected to the tables joined so far is nested next, so that the most selective inner
+   * joins are evaluated first and every join shares a table with the joins nested in it.<br>
+   * <br>
+   * Joins with a join order key are left alone: if any join has a key, the list is returned as is.
    * 
-   * @param usedSQLWhereFormula
-   * @return the nested join clause
+   * @param sortedJoins
+   *          the joins sorted by {@link SQLJoin#compareTo(SQLJoin)}
+   * @return the joins in cost based order
    */
-  private String getJoinClause( SQLQueryModel query, List<SQLJoin> sortedJoins, int index, List<String> usedTables,
-      List<SQLWhereFormula> usedSQLWhereFormula ) {
-    StringBuilder clause = new StringBuilder();
-    String indent = Const.rightPad( " ", ( index + 1 ) + 3 ); //$NON-NLS-1$
-    SQLJoin join = sortedJoins.get( index );
-    String leftTableNameAndAlias = join.getLeftTablename();
-    String leftTableNameOrAlias = join.getLeftTablename();
-    if ( !Const.isEmpty( join.getLeftTableAlias() ) ) {
-      leftTableNameAndAlias += " " + join.getLeftTableAlias(); //$NON-NLS-1$
-      leftTableNameOrAlias = join.getLeftTableAlias();
+  protected List<SQLJoin> orderJoinsByCost( List<SQLJoin> sortedJoins ) {
+    List<SQLJoin> innerJoins = new ArrayList<SQLJoin>();
+    List<SQLJoin> outerJoins = new ArrayList<SQLJoin>();
+    for ( SQLJoin join : sortedJoins ) {
+      if ( !Const.isEmpty( join.getJoinOrderKey() ) ) {
+        return sortedJoins;
+      }
+      if ( join.getJoinType() == JoinType.INNER_JOIN ) {
+        innerJoins.add( join );
+      } else {
+        outerJoins.add( join );
+      }
     }
 
-    String rightTableNameAndAlias = join.getRightTablename();
-    String rightTableNameOrAlias = join.getRightTablename();
-    if ( !Const.isEmpty( join.getRightTableAlias() ) ) {
-      rightTableNameAndAlias += " " + join.getRightTableAlias(); //$NON-NLS-1$
-      rightTableNameOrAlias = join.getRightTableAlias();
+    Set<String> joinedTables = new HashSet<String>();
+    for ( SQLJoin join : outerJoins ) {
+      joinedTables.add( getTableNameOrAlias( join.getLeftTablename(), join.getLeftTableAlias() ) );
+      joinedTables.add( getTableNameOrAlias( join.getRightTablename(), join.getRightTableAlias() ) );
     }
 
-    JoinType joinType = join.getJoinType();
-
-    // We want to calculate this clause depth-first. That means we first add
-    // the tables in the nested queries and then see which (left or right) fits with it.
-    // If needed, we have to flip left-outer and right-outer join syntax.
+    // Nest the inner joins from the inside out
     //
-    String rightClause;
-
-    if ( index < sortedJoins.size() - 1 ) {
-      rightClause = getJoinClause( query, sortedJoins, index + 1, usedTables, usedSQLWhereFormula );
-    } else {
-      rightClause = rightTableNameAndAlias; // rightTableName; // TODO: OLD BUG?
+    LinkedList<SQLJoin> orderedJoins = new LinkedList<SQLJoin>( outerJoins );
+    while ( !innerJoins.isEmpty() ) {
+      SQLJoin cheapest = null;
+      boolean cheapestConnected = false;
+      for ( SQLJoin join : innerJoins ) {
+        String left = getTableNameOrAlias( join.getLeftTablename(), join.getLeftTableAlias() );
+        String right = getTableNameOrAlias( join.getRightTablename(), join.getRightTableAlias() );
+        boolean connected = joinedTables.contains( left ) || joinedTables.contains( right );
+        if ( cheapest == null || ( connected && !cheapestConnected )
+            || ( connected == cheapestConnected && getJoinCost( join ) < getJoinCost( cheapest ) ) ) {
+          cheapest = join;
+          cheapestConnected = connected;
+        }
+      }
+      innerJoins.remove( cheapest );
+      orderedJoins.addFirst( cheapest );
+      joinedTables.add( getTableNameOrAlias( cheapest.getLeftTablename(), cheapest.getLeftTableAlias() ) );
+      joinedTables.add( getTableNameOrAlias( cheapest.getRightTablename(), cheapest.getRightTableAlias() ) );
     }
+    return orderedJoins;
+  }
 
-    // Now see if the left table name is already used in the nested right clause.
-    // If so, we need to flip left and right, including the left/right outer join.
-    //
-    if ( usedTables.contains( leftTableNameOrAlias ) ) {
+  /**
+   * @return a set of where formulas, which are compared by identity like the formulas of the query model
+   */
+  protected static Set<SQLWhereFormula> newWhereFormulaSet() {
+    return Collections.newSetFromMap( new IdentityHashMap<SQLWhereFormula, Boolean>() );
+  }
 
-      leftTableNameAndAlias = join.getRightTablename();
-      leftTableNameOrAlias = join.getRightTablename();
-      if ( !Const.isEmpty( join.getRightTableAlias() ) ) {
-        leftTableNameAndAlias += " " + join.getRightTableAlias(); //$NON-NLS-1$
-        leftTableNameOrAlias = join.getRightTableAlias();
+  private static long getJoinCost( SQLJoin join ) {
+    return join.getSizeHint() < 0 ? Long.MAX_VALUE : join.getSizeHint();
+  }
+
+  private static String getTableNameOrAlias( String tableName, String tableAlias ) {
+    return Const.isEmpty( tableAlias ) ? tableName : tableAlias;
+  }
+
+  /**
+   * Creates the nested join clause of the sorted joins list. Join <code>i</code> wraps the clause of join
+   * <code>i + 1</code>, the last join holds the innermost two tables.<br>
+   * <br>
+   * The tables and conditions are resolved depth-first, from the last join to the first one, as the flipping of the
+   * left and right side of a join depends on the tables used by the nested joins. The clause is then written in one
+   * pass: the opening part of every join from front to back, followed by the ON parts from back to front.
+   * 
+   * @param query
+   *          query model
+   * @param sortedJoins
+   *          the joins in join order
+   * @param clause
+   *          string buffer
+   * @param usedSQLWhereFormula
+   *          receives the where formulas placed in the ON parts
+   */
+  private void appendJoinClause( SQLQueryModel query, List<SQLJoin> sortedJoins, StringBuilder clause,
+      Set<SQLWhereFormula> usedSQLWhereFormula ) {
+    int size = sortedJoins.size();
+    String[] leftTableNames = new String[size];
+    JoinType[] joinTypes = new JoinType[size];
+    String lastRightTableName = null;
+    int[] onStart = new int[size + 1];
+    StringBuilder onClauses = new StringBuilder();
+
+    Set<String> usedTables = new HashSet<String>();
+
+    // Where formulas that may still be placed in an ON part, in query order
+    //
+    List<SQLWhereFormula> pendingSQLWhereFormula = new LinkedList<SQLWhereFormula>();
+    if ( !query.getDelayOuterJoinConditions() ) {
+      for ( SQLWhereFormula sqlWhereFormula : query.getWhereFormulas() ) {
+        if ( !sqlWhereFormula.isContainingAggregate() ) {
+          pendingSQLWhereFormula.add( sqlWhereFormula );
+        }
       }
+    }
 
-      rightTableNameAndAlias = join.getLeftTablename();
-      rightTableNameOrAlias = join.getLeftTablename();
+    for ( int index = size - 1; index >= 0; index-- ) {
+      SQLJoin join = sortedJoins.get( index );
+      String leftTableNameAndAlias = join.getLeftTablename();
+      String leftTableNameOrAlias = join.getLeftTablename();
       if ( !Const.isEmpty( join.getLeftTableAlias() ) ) {
-        rightTableNameAndAlias += " " + join.getLeftTableAlias(); //$NON-NLS-1$
-        rightTableNameOrAlias = join.getLeftTableAlias();
+        leftTableNameAndAlias += " " + join.getLeftTableAlias(); //$NON-NLS-1$
+        leftTableNameOrAlias = join.getLeftTableAlias();
       }
 
-      if ( join.getJoinType().equals( JoinType.LEFT_OUTER_JOIN ) ) {
-        joinType = JoinType.RIGHT_OUTER_JOIN;
-      } else if ( join.getJoinType().equals( JoinType.RIGHT_OUTER_JOIN ) ) {
-        joinType = JoinType.LEFT_OUTER_JOIN;
+      String rightTableNameAndAlias = join.getRightTablename();
+      String rightTableNameOrAlias = join.getRightTablename();
+      if ( !Const.isEmpty( join.getRightTableAlias() ) ) {
+        rightTableNameAndAlias += " " + join.getRightTableAlias(); //$NON-NLS-1$
+        rightTableNameOrAlias = join.getRightTableAlias();
       }
-    }
 
-    // The left hand side of the join clause...
-    //
-    clause.append( leftTableNameAndAlias );
-    usedTables.add( leftTableNameOrAlias );
+      JoinType joinType = join.getJoinType();
 
-    // Now add the JOIN syntax
-    //
-    switch ( joinType ) {
-      case INNER_JOIN:
-        clause.append( " JOIN " ); //$NON-NLS-1$
-        break;
-      case LEFT_OUTER_JOIN:
-        clause.append( " LEFT OUTER JOIN " ); //$NON-NLS-1$
-        break;
-      case RIGHT_OUTER_JOIN:
-        clause.append( " RIGHT OUTER JOIN " ); //$NON-NLS-1$
-        break;
-      case FULL_OUTER_JOIN:
-        clause.append( " FULL OUTER JOIN " ); //$NON-NLS-1$
-        break;
-    }
+      // Now see if the left table name is already used in the nested right clause.
+      // If so, we need to flip left and right, including the left/right outer join.
+      //
+      if ( usedTables.contains( leftTableNameOrAlias ) ) {
 
-    // Now, we generate the clause in one go...
-    //
-    if ( index < sortedJoins.size() - 1 ) {
-      clause.append( Const.CR ).append( indent ).append( " ( " ).append( Const.CR ).append( indent ).append( "  " ); //$NON-NLS-1$ //$NON-NLS-2$
-      clause.append( rightClause );
-      clause.append( indent ).append( " ) " ); //$NON-NLS-1$
-    } else {
-      clause.append( rightTableNameAndAlias );
-      usedTables.add( rightTableNameOrAlias );
-      // if (!Const.isEmpty(rightTableAlias)) clause.append(" ").append(rightTableAlias);
-    }
+        leftTableNameAndAlias = join.getRightTablename();
+        leftTableNameOrAlias = join.getRightTablename();
+        if ( !Const.isEmpty( join.getRightTableAlias() ) ) {
+          leftTableNameAndAlias += " " + join.getRightTableAlias(); //$NON-NLS-1$
+          leftTableNameOrAlias = join.getRightTableAlias();
+        }
 
-    // finally add the ON () part
-    //
+        rightTableNameAndAlias = join.getLeftTablename();
+        rightTableNameOrAlias = join.getLeftTablename();
+        if ( !Const.isEmpty( join.getLeftTableAlias() ) ) {
+          rightTableNameAndAlias += " " + join.getLeftTableAlias(); //$NON-NLS-1$
+          rightTableNameOrAlias = join.getLeftTableAlias();
+        }
 
-    SQLWhereFormula joinFormula = join.getSqlWhereFormula();
-    clause.append( Const.CR ).append( indent ).append( " ON ( " ); //$NON-NLS-1$
-    clause.append( joinFormula.getFormula() );
+        if ( join.getJoinType().equals( JoinType.LEFT_OUTER_JOIN ) ) {
+          joinType = JoinType.RIGHT_OUTER_JOIN;
+        } else if ( join.getJoinType().equals( JoinType.RIGHT_OUTER_JOIN ) ) {
+          joinType = JoinType.LEFT_OUTER_JOIN;
+        }
+      }
 
-    // Now see if there are any SQL where conditions that apply to either two tables...
-    // NOTE: Don't even bother with this in the case of full outer joins. In that case we want
-    // to delay the condition as long as possible (until outside this JOIN).
-    //
-    // You can also force it to delay the join conditions by setting a property on the business model:
-    // 1- Edit the business model
-    // 2- Add new boolean property called "delay_outer_join_conditions" (no quotes)
-    // 3- Set the value to "true" (checked)
-    //
-    // This will be picked up by the SQLGenerator and set in the query model.
-    //
-    if ( ( !joinType.equals( JoinType.FULL_OUTER_JOIN ) ) && ( !query.getDelayOuterJoinConditions() ) ) {
-      for ( SQLWhereFormula sqlWhereFormula : query.getWhereFormulas() ) {
-        if ( !usedSQLWhereFormula.contains( sqlWhereFormula ) && !sqlWhereFormula.isContainingAggregate() ) {
+      // The left hand side of the join clause...
+      //
+      leftTableNames[index] = leftTableNameAndAlias;
+      joinTypes[index] = joinType;
+      usedTables.add( leftTableNameOrAlias );
+      if ( index == size - 1 ) {
+        lastRightTableName = rightTableNameAndAlias;
+        usedTables.add( rightTableNameOrAlias );
+      }
+
+      // finally add the ON () part
+      //
+      onStart[index + 1] = onClauses.length();
+      String indent = Const.rightPad( " ", ( index + 1 ) + 3 ); //$NON-NLS-1$
+      onClauses.append( Const.CR ).append( indent ).append( " ON ( " ); //$NON-NLS-1$
+      onClauses.append( join.getSqlWhereFormula().getFormula() );
+
+      // Now see if there are any SQL where conditions that apply to either two tables...
+      // NOTE: Don't even bother with this in the case of full outer joins. In that case we want
+      // to delay the condition as long as possible (until outside this JOIN).
+      //
+      // You can also force it to delay the join conditions by setting a property on the business model:
+      // 1- Edit the business model
+      // 2- Add new boolean property called "delay_outer_join_conditions" (no quotes)
+      // 3- Set the value to "true" (checked)
+      //
+      // This will be picked up by the SQLGenerator and set in the query model.
+      //
+      if ( !joinType.equals( JoinType.FULL_OUTER_JOIN ) ) {
+        Iterator<SQLWhereFormula> pending = pendingSQLWhereFormula.iterator();
+        while ( pending.hasNext() ) {
+          SQLWhereFormula sqlWhereFormula = pending.next();
           boolean allInvolvedAvailableHere = true;
           for ( String involvedTable : sqlWhereFormula.involvedTables ) {
             if ( !involvedTable.equalsIgnoreCase( leftTableNameOrAlias )
                 && !involvedTable.equalsIgnoreCase( rightTableNameOrAlias ) ) {
               allInvolvedAvailableHere = false;
+              break;
             }
           }
 
@@ -1238,16 +1649,56 @@ public class DefaultSQLDialect implements SQLDialectInterface {
 
           // If all the involved tables are (usually 1) is part of this join, we specify the condition here...
           if ( allInvolvedAvailableHere ) {
-            clause.append( " AND ( " ).append( sqlWhereFormula.getFormula() ).append( " ) " ); //$NON-NLS-1$ //$NON-NLS-2$
+            onClauses.append( " AND ( " ).append( sqlWhereFormula.getFormula() ).append( " ) " ); //$NON-NLS-1$ //$NON-NLS-2$
             // Remember that we did use it...
             usedSQLWhereFormula.add( sqlWhereFormula );
+            pending.remove();
           }
         }
       }
+      onClauses.append( " )" ).append( Const.CR ); //$NON-NLS-1$
+    }
+    onStart[0] = onClauses.length();
+
+    // Now, we generate the clause in one go: the joins from front to back...
+    //
+    for ( int index = 0; index < size; index++ ) {
+      clause.append( leftTableNames[index] );
+
+      // Now add the JOIN syntax
+      //
+      switch ( joinTypes[index] ) {
+        case INNER_JOIN:
+          clause.append( " JOIN " ); //$NON-NLS-1$
+          break;
+        case LEFT_OUTER_JOIN:
+          clause.append( " LEFT OUTER JOIN " ); //$NON-NLS-1$
+          break;
+        case RIGHT_OUTER_JOIN:
+          clause.append( " RIGHT OUTER JOIN " ); //$NON-NLS-1$
+          break;
+        case FULL_OUTER_JOIN:
+          clause.append( " FULL OUTER JOIN " ); //$NON-NLS-1$
+          break;
+      }
+
+      if ( index < size - 1 ) {
+        String indent = Const.rightPad( " ", ( index + 1 ) + 3 ); //$NON-NLS-1$
+        clause.append( Const.CR ).append( indent ).append( " ( " ).append( Const.CR ).append( indent ).append( "  " ); //$NON-NLS-1$ //$NON-NLS-2$
+      } else {
+        clause.append( lastRightTableName );
+      }
     }
-    clause.append( " )" ).append( Const.CR ); //$NON-NLS-1$
 
-    return clause.toString();
+    // ... and the ON parts from back to front, closing the nested joins on the way out.
+    //
+    for ( int index = size - 1; index >= 0; index-- ) {
+      if ( index < size - 1 ) {
+        String indent = Const.rightPad( " ", ( index + 1 ) + 3 ); //$NON-NLS-1$
+        clause.append( indent ).append( " ) " ); //$NON-NLS-1$
+      }
+      clause.append( onClauses, onStart[index + 1], onStart[index] );
+    }
   }
 
   public String getStringWildCard() {
@@ -1265,10 +1716,16 @@ public class DefaultSQLDialect implements SQLDialectInterface {
    * @return
    */
   public String generateSelectStatement( SQLQueryModel query ) {
+    if ( !query.getCommonTables().isEmpty() ) {
+      return generateWith( query ) + generateSelectStatement( query.getQueryWithoutCommonTables() );
+    }
+    if ( query.getOffset() > 0 && !supportsOffset() ) {
+      return generateRowNumberPage( query );
+    }
     StringBuilder sql = new StringBuilder();
     generateSelect( query, sql );
 
-    List<SQLWhereFormula> usedSQLWhereFormula = new ArrayList<SQLWhereFormula>();
+    Set<SQLWhereFormula> usedSQLWhereFormula = newWhereFormulaSet();
 
     if ( query.containsOuterJoins() ) {
       usedSQLWhereFormula = generateOuterJoin( query, sql );
@@ -1287,6 +1744,87 @@ public class DefaultSQLDialect implements SQLDialectInterface {
     return sql.toString();
   }
 
+  /**
+   * renders <code>column IN ( param )</code> with the multi-valued parameter strategy if the function compares a column
+   * with a single parameter holding several values.
+   * 
+   * @return true if the strategy rendered the predicate
+   */
+  protected boolean generateMultiValuedInList( FormulaTraversalInterface formula, StringBuffer sb, String locale,
+      FormulaFunction f ) throws PentahoMetadataException {
+    MultiValuedParameterStrategy strategy = getMultiValuedParameterStrategy();
+    if ( strategy == null || !( formula instanceof ParameterizedFormulaTraversalInterface )
+        || f.getChildValues().length != 2 || !( f.getChildValues()[1] instanceof ContextLookup ) ) {
+      return false;
+    }
+    ParameterizedFormulaTraversalInterface parameterized = (ParameterizedFormulaTraversalInterface) formula;
+    ContextLookup lookup = (ContextLookup) f.getChildValues()[1];
+    String paramName = parameterized.getParameterName( lookup );
+    if ( paramName == null ) {
+      return false;
+    }
+    Object value = formula.getParameterValue( lookup );
+    if ( !( value instanceof Object[] ) ) {
+      return false;
+    }
+    StringBuffer column = new StringBuffer();
+    formula.generateSQL( f, f.getChildValues()[0], column, locale );
+    return strategy.generateInList( this, sb, column.toString(), paramName, (Object[]) value, parameterized
+        .isGenAsPreparedStatement() );
+  }
+
+  /**
+   * @return the strategy rendering parameters with many values, or null to list all values inline
+   */
+  public MultiValuedParameterStrategy getMultiValuedParameterStrategy() {
+    return multiValuedParameterStrategy;
+  }
+
+  /**
+   * sets the strategy rendering parameters with many values. The dialect is shared by the queries of all threads, so
+   * the strategy is meant to be configured once when the dialect is registered, and must not change its settings
+   * afterwards.
+   * 
+   * @param multiValuedParameterStrategy
+   *          the strategy, or null to list all values inline
+   */
+  public void setMultiValuedParameterStrategy( MultiValuedParameterStrategy multiValuedParameterStrategy ) {
+    this.multiValuedParameterStrategy = multiValuedParameterStrategy;
+  }
+
+  /**
+   * template of a predicate comparing a column (<code>{0}</code>) with an array bound to a placeholder
+   * (<code>{1}</code>).
+   * 
+   * @return the template, or null if the dialect cannot bind arrays
+   */
+  public String getArrayInListTemplate() {
+    return null;
+  }
+
+  /**
+   * template of the statement creating a session temporary table <code>{0}</code> with a single column of type
+   * <code>{1}</code>. The syntax of temporary tables differs between databases, so only the dialects knowing theirs
+   * provide a template.
+   * 
+   * @return the template, or null if the dialect has no temporary tables
+   */
+  public String getTemporaryTableTemplate() {
+    return null;
+  }
+
+  /**
+   * template of a global temporary table, a permanent table of the schema whose rows are private to the session. The
+   * table is created by the first session using it, the others fail to create it again, see
+   * {@link DefaultMultiValuedParameterStrategy#isTableExistsError(java.sql.SQLException)}.
+   * 
+   * @return the template
+   */
+  protected String getGlobalTemporaryTableTemplate() {
+    return "CREATE GLOBAL TEMPORARY TABLE {0} ( " + DefaultMultiValuedParameterStrategy.VALUE_COLUMN //$NON-NLS-1$
+        + " {1} ) ON COMMIT PRESERVE ROWS"; //$NON-NLS-1$
+  }
+
   /**
    * default the max table name length to a very large number.
    * 
@@ -80,4 +80,24 @@ public class GoogleBigQueryDialect extends DefaultSQLDialect {
   protected void generateSelectPredicate( SQLQueryModel query, StringBuilder sql ) {
     generateDistinct( query, sql );
   }
+
+  @Override
+  protected boolean supportsOffset() {
+    return true;
+  }
+
+  @Override
+  protected String getUnboundedLimit() {
+    return String.valueOf( Long.MAX_VALUE );
+  }
+
+  @Override
+  public boolean supportsCommonTableExpressions() {
+    return true;
+  }
+
+  @Override
+  protected String getTableSampleClause( double percentage ) {
+    return "TABLESAMPLE SYSTEM ( " + formatSamplePercentage( percentage ) + " PERCENT )"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
 }
@@ -26,7 +26,34 @@ public class H2Dialect extends DefaultSQLDialect {
 
   @Override
   protected void generateSelectPredicate( SQLQueryModel query, StringBuilder sql ) {
-    generateTopBeforeDistinct( query, sql, TOP_KEYWORD );
+    if ( query.getOffset() > 0 ) {
+      // pages are rendered with OFFSET ... FETCH
+      generateDistinct( query, sql );
+    } else {
+      generateTopBeforeDistinct( query, sql, TOP_KEYWORD );
+    }
   }
 
+  @Override
+  protected void generatePostOrderBy( SQLQueryModel query, StringBuilder sql ) {
+    if ( query.getOffset() > 0 ) {
+      generateOffsetFetch( query, sql );
+    }
+  }
+
+  @Override
+  protected boolean supportsOffset() {
+    return true;
+  }
+
+  @Override
+  public String getArrayInListTemplate() {
+    return "{0} = ANY( {1} )"; //$NON-NLS-1$
+  }
+
+  @Override
+  public String getTemporaryTableTemplate() {
+    return "CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS {0} ( " //$NON-NLS-1$
+        + DefaultMultiValuedParameterStrategy.VALUE_COLUMN + " {1} )"; //$NON-NLS-1$
+  }
 }
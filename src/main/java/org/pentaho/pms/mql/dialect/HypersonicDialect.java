@@ -26,7 +26,24 @@ public class HypersonicDialect extends DefaultSQLDialect {
 
   @Override
   protected void generateSelectPredicate( SQLQueryModel query, StringBuilder sql ) {
-    generateTopBeforeDistinct( query, sql, TOP_KEYWORD );
+    if ( query.getOffset() > 0 ) {
+      // pages are rendered with OFFSET ... FETCH
+      generateDistinct( query, sql );
+    } else {
+      generateTopBeforeDistinct( query, sql, TOP_KEYWORD );
+    }
+  }
+
+  @Override
+  protected void generatePostOrderBy( SQLQueryModel query, StringBuilder sql ) {
+    if ( query.getOffset() > 0 ) {
+      generateOffsetFetch( query, sql );
+    }
+  }
+
+  @Override
+  protected boolean supportsOffset() {
+    return true;
   }
 
   /**
@@ -42,4 +59,14 @@ public class HypersonicDialect extends DefaultSQLDialect {
   public String getDateSQL( int year, int month, int day ) {
     return getDateSQL( year, month, day, 0, 0, 0, 0 );
   }
+
+  @Override
+  public String getArrayInListTemplate() {
+    return "{0} IN ( UNNEST( {1} ) )"; //$NON-NLS-1$
+  }
+
+  @Override
+  public String getTemporaryTableTemplate() {
+    return getGlobalTemporaryTableTemplate();
+  }
 }
@@ -105,4 +105,21 @@ public class MSSQLDialect extends DefaultSQLDialect {
     generateTopAfterDistinct( query, sql, TOP_KEYWORD );
   }
 
+  /**
+   * SQL Server temporary tables need a # prefix, which the parameter table names do not have.
+   */
+  @Override
+  public String getTemporaryTableTemplate() {
+    return null;
+  }
+
+  @Override
+  public boolean supportsCommonTableExpressions() {
+    return true;
+  }
+
+  @Override
+  protected String getTableSampleClause( double percentage ) {
+    return "TABLESAMPLE SYSTEM ( " + formatSamplePercentage( percentage ) + " PERCENT )"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
 }
@@ -0,0 +1,95 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.mql.dialect;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Renders the comparison of a column with a parameter holding a large number of values. Inline <code>IN</code> lists
+ * with one literal or placeholder per value exceed driver limits and defeat statement caching once users paste
+ * thousands of values, so a dialect may instead split the list into chunks, bind it as a single array or join it
+ * against a session temporary table.
+ * <p>
+ * The strategy writes the following placeholders for prepared statements, which the SQL generator resolves:
+ * <ul>
+ * <li><code>___PARAMSLICE[from,to][name]___</code> - one <code>?</code> for each value from <code>from</code>
+ * (inclusive) to <code>to</code> (exclusive)</li>
+ * <li><code>___PARAMARRAY[name]___</code> - a single <code>?</code> bound with {@link #createArray}</li>
+ * <li><code>___PARAMTABLE[name]___</code> - the name of the table filled with {@link #loadTable}</li>
+ * </ul>
+ */
+public interface MultiValuedParameterStrategy {
+
+  /**
+   * renders <code>columnSql IN ( values )</code> or an equivalent predicate.
+   * 
+   * @param dialect
+   *          dialect the SQL is generated for
+   * @param sb
+   *          buffer to append the predicate to
+   * @param columnSql
+   *          rendered SQL of the compared column
+   * @param paramName
+   *          name of the parameter
+   * @param values
+   *          values of the parameter
+   * @param preparedStatement
+   *          true if the parameter is bound rather than rendered as literals
+   * @return true if the predicate was rendered, false if the dialect should list the values inline
+   */
+  public boolean generateInList( SQLDialectInterface dialect, StringBuffer sb, String columnSql, String paramName,
+      Object[] values, boolean preparedStatement );
+
+  /**
+   * creates the array bound to a <code>___PARAMARRAY[name]___</code> placeholder.
+   * 
+   * @param connection
+   *          connection the statement was prepared on
+   * @param values
+   *          values of the parameter
+   * @return the array to bind
+   * @throws SQLException
+   *           if the driver cannot create the array
+   */
+  public Array createArray( Connection connection, Object[] values ) throws SQLException;
+
+  /**
+   * @param paramName
+   *          name of the parameter
+   * @param values
+   *          values of the parameter
+   * @return name of the table replacing a <code>___PARAMTABLE[name]___</code> placeholder
+   */
+  public String getTableName( String paramName, Object[] values );
+
+  /**
+   * creates the table if needed and replaces its content with the values. Must be called on the connection the query
+   * is executed on.
+   * 
+   * @param connection
+   *          connection the query is executed on
+   * @param tableName
+   *          name returned by {@link #getTableName}
+   * @param values
+   *          values of the parameter
+   * @throws SQLException
+   *           if the table cannot be loaded
+   */
+  public void loadTable( Connection connection, String tableName, Object[] values ) throws SQLException;
+}
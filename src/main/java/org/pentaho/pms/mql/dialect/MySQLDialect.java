@@ -90,4 +90,23 @@ public class MySQLDialect extends DefaultSQLDialect {
   protected void generateSelectPredicate( SQLQueryModel query, StringBuilder sql ) {
     generateDistinct( query, sql );
   }
+
+  @Override
+  protected boolean supportsOffset() {
+    return true;
+  }
+
+  /**
+   * MySQL has no LIMIT ALL, the documented way to skip rows without a limit is the largest BIGINT UNSIGNED.
+   */
+  @Override
+  protected String getUnboundedLimit() {
+    return "18446744073709551615"; //$NON-NLS-1$
+  }
+
+  @Override
+  public String getTemporaryTableTemplate() {
+    return "CREATE TEMPORARY TABLE IF NOT EXISTS {0} ( " + DefaultMultiValuedParameterStrategy.VALUE_COLUMN //$NON-NLS-1$
+        + " {1} )"; //$NON-NLS-1$
+  }
 }
@@ -32,4 +32,9 @@ public class NetezzaDialect extends DefaultSQLDialect {
     generateDistinct( query, sql );
   }
 
+  @Override
+  protected boolean supportsOffset() {
+    return true;
+  }
+
 }
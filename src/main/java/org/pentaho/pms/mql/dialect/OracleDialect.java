@@ -30,6 +30,11 @@ public class OracleDialect extends DefaultSQLDialect {
   public OracleDialect() {
     super( "ORACLE" ); //$NON-NLS-1$
 
+    // oracle rejects IN lists with more than 1000 values (ORA-01795)
+    if ( getMultiValuedParameterStrategy() == null ) {
+      setMultiValuedParameterStrategy( new DefaultMultiValuedParameterStrategy( this ) );
+    }
+
     // oracle specific date functions
     supportedFunctions.put(
         "NOW", new DefaultSQLFunctionGenerator( SQLFunctionGeneratorInterface.PARAM_FUNCTION, "SYSDATE", 0 ) { //$NON-NLS-1$ //$NON-NLS-2$
@@ -111,7 +116,8 @@ public class OracleDialect extends DefaultSQLDialect {
 
   @Override
   public String generateSelectStatement( SQLQueryModel query ) {
-    if ( query.getLimit() >= 0 ) {
+    // the WITH clause goes in front of the ROWNUM wrapper
+    if ( query.getLimit() >= 0 && query.getOffset() <= 0 && query.getCommonTables().isEmpty() ) {
       String origSelect = super.generateSelectStatement( query );
       StringBuilder sql = new StringBuilder();
       sql.append( "SELECT * FROM (" ); //$NON-NLS-1$
@@ -129,4 +135,26 @@ public class OracleDialect extends DefaultSQLDialect {
     generateDistinct( query, sql );
   }
 
+  @Override
+  public String getArrayInListTemplate() {
+    return "{0} IN ( SELECT COLUMN_VALUE FROM TABLE( {1} ) )"; //$NON-NLS-1$
+  }
+
+  /**
+   * Oracle has global temporary tables only, which need the privilege to create tables in the schema.
+   */
+  @Override
+  public String getTemporaryTableTemplate() {
+    return getGlobalTemporaryTableTemplate();
+  }
+
+  @Override
+  public boolean supportsCommonTableExpressions() {
+    return true;
+  }
+
+  @Override
+  protected String getTableSampleClause( double percentage ) {
+    return "SAMPLE BLOCK ( " + formatSamplePercentage( percentage ) + " )"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
 }
@@ -0,0 +1,39 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.mql.dialect;
+
+import org.pentaho.reporting.libraries.formula.lvalues.ContextLookup;
+
+/**
+ * Implemented by formula traversals that know which context lookups are query parameters and whether the SQL is
+ * rendered for a prepared statement. Function generators use it to hand multi-valued parameters to the dialect's
+ * {@link MultiValuedParameterStrategy}.
+ */
+public interface ParameterizedFormulaTraversalInterface extends FormulaTraversalInterface {
+
+  /**
+   * @return true if parameters are rendered as prepared statement placeholders rather than literals
+   */
+  public boolean isGenAsPreparedStatement();
+
+  /**
+   * @param lookup
+   *          context lookup of the formula
+   * @return the name of the parameter referenced by the lookup, or null if the lookup is not a parameter
+   */
+  public String getParameterName( ContextLookup lookup );
+}
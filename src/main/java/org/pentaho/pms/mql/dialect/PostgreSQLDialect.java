@@ -95,4 +95,29 @@ public class PostgreSQLDialect extends DefaultSQLDialect {
     generateDistinct( query, sql );
   }
 
+  @Override
+  protected boolean supportsOffset() {
+    return true;
+  }
+
+  @Override
+  public String getArrayInListTemplate() {
+    return "{0} = ANY( {1} )"; //$NON-NLS-1$
+  }
+
+  @Override
+  public String getTemporaryTableTemplate() {
+    return "CREATE TEMPORARY TABLE IF NOT EXISTS {0} ( " + DefaultMultiValuedParameterStrategy.VALUE_COLUMN //$NON-NLS-1$
+        + " {1} )"; //$NON-NLS-1$
+  }
+
+  @Override
+  public boolean supportsCommonTableExpressions() {
+    return true;
+  }
+
+  @Override
+  protected String getTableSampleClause( double percentage ) {
+    return "TABLESAMPLE SYSTEM ( " + formatSamplePercentage( percentage ) + " )"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
 }
@@ -26,4 +26,20 @@ public class RedshiftDialect extends PostgreSQLDialect {
   public boolean supportsNLSLiteral() {
     return false;
   }
+
+  /**
+   * Redshift cannot bind arrays.
+   */
+  @Override
+  public String getArrayInListTemplate() {
+    return null;
+  }
+
+  /**
+   * Redshift has no TABLESAMPLE, previews read the first rows of the table.
+   */
+  @Override
+  protected String getTableSampleClause( double percentage ) {
+    return null;
+  }
 }
@@ -16,11 +16,11 @@
  */
 package org.pentaho.pms.mql.dialect;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.ServiceConfigurationError;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -36,9 +36,11 @@ import org.pentaho.pms.mql.MariaDBDialect;
  */
 public class SQLDialectFactory {
   /** singleton instance, one per classloader */
-  private static SQLDialectFactory singleton = new SQLDialectFactory();
+  private static final SQLDialectFactory singleton = new SQLDialectFactory();
 
-  private Map<String, SQLDialectInterface> supportedDialects = new HashMap<String, SQLDialectInterface>();
+  // looked up concurrently by the SQL generators
+  private final Map<String, SQLDialectInterface> supportedDialects =
+      new ConcurrentHashMap<String, SQLDialectInterface>();
 
   private final Log logger;
 
@@ -35,6 +35,8 @@ public class SQLJoin implements Comparable<SQLJoin> {
   private JoinType joinType;
   private String joinOrderKey;
   private boolean legacyJoinOrder = false;
+  private long sizeHint = -1;
+  private Boolean equalityJoin;
 
   private static final Log logger = LogFactory.getLog( SQLJoin.class );
 
@@ -229,4 +231,33 @@ public class SQLJoin implements Comparable<SQLJoin> {
   public void setRightTableAlias( String rightTableAlias ) {
     this.rightTableAlias = rightTableAlias;
   }
+
+  /**
+   * @return the estimated relative cost of this join, the cheapest joins are nested first, -1 if unknown
+   */
+  public long getSizeHint() {
+    return sizeHint;
+  }
+
+  /**
+   * @param sizeHint the estimated relative cost of this join, the cheapest joins are nested first, -1 if unknown
+   */
+  public void setSizeHint( long sizeHint ) {
+    this.sizeHint = sizeHint;
+  }
+
+  /**
+   * @return true if the join formula only compares columns for equality, false if it uses other operators, null if
+   *         unknown
+   */
+  public Boolean getEqualityJoin() {
+    return equalityJoin;
+  }
+
+  /**
+   * @param equalityJoin true if the join formula only compares columns for equality, as known when generating it
+   */
+  public void setEqualityJoin( Boolean equalityJoin ) {
+    this.equalityJoin = equalityJoin;
+  }
 }
@@ -30,6 +30,8 @@ public class SQLQueryModel {
 
   private boolean delayOuterJoinConditions = false;
 
+  private boolean costBasedJoinOrder = false;
+
   /**
    * defines the type of ordering available in a select statement
    */
@@ -101,6 +103,16 @@ public class SQLQueryModel {
       return tableName;
     }
 
+    /**
+     * sets the table name of the sql table, note that this should already be in dialect specific form.
+     * 
+     * @param tableName
+     *          table name
+     */
+    public void setTableName( String tableName ) {
+      this.tableName = tableName;
+    }
+
     /**
      * returns the alias of the sql table
      * 
@@ -225,8 +237,40 @@ public class SQLQueryModel {
     }
   }
 
+  /**
+   * inner class that defines a common table expression of the WITH clause of a SQL query
+   */
+  public static class SQLCommonTable {
+    private String name;
+    private String query;
+
+    public SQLCommonTable( String name, String query ) {
+      this.name = name;
+      this.query = query;
+    }
+
+    /**
+     * returns the name the query refers to the common table by
+     * 
+     * @return name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * returns the select statement of the common table, in dialect specific form
+     * 
+     * @return select statement
+     */
+    public String getQuery() {
+      return query;
+    }
+  }
+
   private boolean distinct = true;
   private int limit = -1;
+  private int offset = 0;
   private List<SQLSelection> selections = new ArrayList<SQLSelection>();
   private List<SQLSelection> ulSelections = Collections.unmodifiableList( selections );
 
@@ -248,8 +292,15 @@ public class SQLQueryModel {
   private List<SQLOrderBy> orderbys = new ArrayList<SQLOrderBy>();
   private List<SQLOrderBy> ulOrderbys = Collections.unmodifiableList( orderbys );
 
+  private List<SQLCommonTable> commonTables = new ArrayList<SQLCommonTable>();
+  private List<SQLCommonTable> ulCommonTables = Collections.unmodifiableList( commonTables );
+
   private SQLWhereFormula securityConstraint = null;
 
+  private SQLWhereFormula keysetConstraint = null;
+
+  private List<SQLWhereFormula> globalConstraints = new ArrayList<SQLWhereFormula>();
+
   /**
    * true if DISTINCT should appear at the beginning of the select statement
    * 
@@ -286,6 +337,24 @@ public class SQLQueryModel {
     this.limit = limit;
   }
 
+  /**
+   * Returns the number of rows to skip before the first returned row. Zero means no offset.
+   * 
+   * @return offset
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * Sets the number of rows to skip before the first returned row. Zero means no offset.
+   * 
+   * @param offset
+   */
+  public void setOffset( int offset ) {
+    this.offset = offset;
+  }
+
   /**
    * returns an uneditable list of selections
    * 
@@ -307,6 +376,17 @@ public class SQLQueryModel {
     selections.add( new SQLSelection( formula, alias ) );
   }
 
+  /**
+   * replaces the selections of the select statement, for dialects rewriting a copy of the query
+   * 
+   * @param selections
+   *          the new selections
+   */
+  void setSelections( List<SQLSelection> selections ) {
+    this.selections.clear();
+    this.selections.addAll( selections );
+  }
+
   /**
    * returns an uneditable list of tables
    * 
@@ -328,6 +408,27 @@ public class SQLQueryModel {
     tables.add( new SQLTable( tableName, alias ) );
   }
 
+  /**
+   * returns the common tables of the WITH clause
+   * 
+   * @return common tables
+   */
+  public List<SQLCommonTable> getCommonTables() {
+    return ulCommonTables;
+  }
+
+  /**
+   * adds a common table to the WITH clause, the tables of the select statement can refer to it by name
+   * 
+   * @param name
+   *          the name of the common table
+   * @param query
+   *          the select statement of the common table, in dialect specific form
+   */
+  public void addCommonTable( String name, String query ) {
+    commonTables.add( new SQLCommonTable( name, query ) );
+  }
+
   // ToDo: Allow table-level override of condition-delay
   // public void addTable(String tableName, String alias, boolean delayCondition) {
   // tables.add(new SQLTable(tableName, alias, delayCondition));
@@ -411,6 +512,58 @@ public class SQLQueryModel {
     return securityConstraint;
   }
 
+  /**
+   * sets the keyset constraint, which only keeps the rows sorting after the last row of the previous page. Like the
+   * security constraint, it is combined with AND with all the other conditions.
+   * 
+   * @param formula
+   *          the SQL formula
+   * @param having
+   *          true if the formula contains an aggregate
+   */
+  public void setKeysetConstraint( String formula, boolean having ) {
+    this.keysetConstraint = new SQLWhereFormula( formula, "AND", having ); //$NON-NLS-1$
+  }
+
+  public SQLWhereFormula getKeysetConstraint() {
+    return keysetConstraint;
+  }
+
+  /**
+   * adds a WHERE constraint that, like the security constraint, is combined with AND with all the other conditions.
+   * Note that the formula should already be in dialect specific form.
+   * 
+   * @param formula
+   *          the SQL formula
+   */
+  public void addGlobalConstraint( String formula ) {
+    globalConstraints.add( new SQLWhereFormula( formula, "AND", false ) ); //$NON-NLS-1$
+  }
+
+  /**
+   * returns the constraints combined with AND with all the WHERE or HAVING conditions: the security constraint, the
+   * keyset constraint and the added global constraints.
+   * 
+   * @param having
+   *          true for the HAVING constraints, false for the WHERE constraints
+   * @return constraints
+   */
+  public List<SQLWhereFormula> getGlobalConstraints( boolean having ) {
+    List<SQLWhereFormula> constraints = new ArrayList<SQLWhereFormula>();
+    if ( securityConstraint != null && securityConstraint.isContainingAggregate() == having ) {
+      constraints.add( securityConstraint );
+    }
+    if ( keysetConstraint != null && keysetConstraint.isContainingAggregate() == having ) {
+      constraints.add( keysetConstraint );
+    }
+    for ( SQLWhereFormula constraint : globalConstraints ) {
+      if ( constraint.isContainingAggregate() == having ) {
+        constraints.add( constraint );
+      }
+    }
+    return constraints;
+  }
+
   /**
    * adds a having formula to the select statement
    * 
@@ -518,6 +671,63 @@ public class SQLQueryModel {
     joins.add( join );
   }
 
+  /**
+   * Add a join between 2 tables, specifying the join formula, the join type and the estimated size of the join.
+   * 
+   * @param leftTablename
+   *          the name of the left table in the join
+   * @param rightTablename
+   *          the name of the right table in the join
+   * @param joinType
+   *          the join type (inner, left outer, right outer, full outer)
+   * @param formula
+   *          the join condition (formula)
+   * @param joinOrderKey
+   *          the join order key
+   * @param legacyJoinOrder
+   *          specifies whether to use the old, non-deterministic sort ordering for joins with no join order key
+   * @param sizeHint
+   *          the estimated relative cost of the join, -1 if unknown
+   */
+  public void addJoin( String leftTablename, String leftTableAlias, String rightTablename, String rightTableAlias,
+      JoinType joinType, String formula, String joinOrderKey, boolean legacyJoinOrder, long sizeHint ) {
+    SQLWhereFormula sqlWhereFormula = new SQLWhereFormula( formula, null, false );
+    SQLJoin join =
+        new SQLJoin( leftTablename, leftTableAlias, rightTablename, rightTableAlias, sqlWhereFormula, joinType,
+            joinOrderKey, legacyJoinOrder );
+    join.setSizeHint( sizeHint );
+    joins.add( join );
+  }
+
+  /**
+   * Add a join between 2 tables, specifying the join formula, the join type, the estimated size of the join and whether
+   * the join formula only compares columns for equality.
+   * 
+   * @param leftTablename
+   *          the name of the left table in the join
+   * @param rightTablename
+   *          the name of the right table in the join
+   * @param joinType
+   *          the join type (inner, left outer, right outer, full outer)
+   * @param formula
+   *          the join condition (formula)
+   * @param joinOrderKey
+   *          the join order key
+   * @param legacyJoinOrder
+   *          specifies whether to use the old, non-deterministic sort ordering for joins with no join order key
+   * @param sizeHint
+   *          the estimated relative cost of the join, -1 if unknown
+   * @param equalityJoin
+   *          true if the formula only compares columns for equality, null if unknown
+   */
+  public void addJoin( String leftTablename, String leftTableAlias, String rightTablename, String rightTableAlias,
+      JoinType joinType, String formula, String joinOrderKey, boolean legacyJoinOrder, long sizeHint,
+      Boolean equalityJoin ) {
+    addJoin( leftTablename, leftTableAlias, rightTablename, rightTableAlias, joinType, formula, joinOrderKey,
+        legacyJoinOrder, sizeHint );
+    joins.get( joins.size() - 1 ).setEqualityJoin( equalityJoin );
+  }
+
   /**
    * Verifies all joins to see if there is one that is an outer join (left outer, right outer or full outer join type)
    * 
@@ -549,4 +759,83 @@ public class SQLQueryModel {
     this.delayOuterJoinConditions = value;
   }
 
+  /**
+   * When set to true, the inner joins are ordered by their size hints so that the most selective joins are evaluated
+   * first. Join order keys take precedence over the size hints.
+   * 
+   * @return true if the joins are ordered by cost
+   */
+  public boolean getCostBasedJoinOrder() {
+    return this.costBasedJoinOrder;
+  }
+
+  /**
+   * When set to true, the inner joins are ordered by their size hints so that the most selective joins are evaluated
+   * first.
+   */
+  public void setCostBasedJoinOrder( boolean value ) {
+    this.costBasedJoinOrder = value;
+  }
+
+  /**
+   * replaces the table name of the table with the given alias, in the FROM list as well as in the joins.
+   * 
+   * @param alias
+   *          the alias of the table
+   * @param tableName
+   *          the new table name or table expression, in dialect specific form
+   */
+  public void replaceTableName( String alias, String tableName ) {
+    for ( SQLTable table : tables ) {
+      if ( alias.equals( table.getAlias() ) ) {
+        table.setTableName( tableName );
+      }
+    }
+    for ( SQLJoin join : joins ) {
+      if ( alias.equals( join.getLeftTableAlias() ) ) {
+        join.setLeftTablename( tableName );
+      }
+      if ( alias.equals( join.getRightTableAlias() ) ) {
+        join.setRightTablename( tableName );
+      }
+    }
+  }
+
+  /**
+   * Returns a copy of this query without ORDER BY, limit, offset and WITH clause. Dialects that cannot skip rows
+   * themselves wrap this copy to number the rows of a page.
+   * 
+   * @return unpaged copy of the query
+   */
+  public SQLQueryModel getUnpagedQuery() {
+    SQLQueryModel query = new SQLQueryModel();
+    query.delayOuterJoinConditions = delayOuterJoinConditions;
+    query.costBasedJoinOrder = costBasedJoinOrder;
+    query.distinct = distinct;
+    query.selections.addAll( selections );
+    query.tables.addAll( tables );
+    query.whereFormulas.addAll( whereFormulas );
+    query.joins.addAll( joins );
+    query.groupbys.addAll( groupbys );
+    query.havings.addAll( havings );
+    query.securityConstraint = securityConstraint;
+    query.keysetConstraint = keysetConstraint;
+    query.globalConstraints.addAll( globalConstraints );
+    return query;
+  }
+
+  /**
+   * Returns a copy of this query without its WITH clause. Dialects render the WITH clause in front of this copy, so
+   * that it stays the outermost part of the statement even when the copy is wrapped for paging.
+   * 
+   * @return copy of the query without common tables
+   */
+  public SQLQueryModel getQueryWithoutCommonTables() {
+    SQLQueryModel query = getUnpagedQuery();
+    query.orderbys.addAll( orderbys );
+    query.limit = limit;
+    query.offset = offset;
+    return query;
+  }
+
 }
@@ -37,6 +37,8 @@ import org.pentaho.pms.schema.RelationshipMeta;
  * Class that build a Node-Arc graph based on <code>BusinesTable</code> and <code>RelationshipMeta</code> objects
  * specified in a <code>BusinessModel</code>. It attempts to use Arc Consistency Optimization to find a
  * <code>Path</code> that utilizes the smallest number of relationships to include a list of required tables.
+ *
+ * @deprecated the legacy SQLGenerator finds its paths with org.pentaho.metadata.query.impl.sql.JoinPathEngine
  */
 public class MqlGraph implements GraphElementChangeListener {
   private static final Log logger = LogFactory.getLog( MqlGraph.class );
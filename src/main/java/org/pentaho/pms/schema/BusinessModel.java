@@ -33,6 +33,7 @@ import org.pentaho.di.core.gui.Point;
 import org.pentaho.pms.core.exception.PentahoMetadataException;
 import org.pentaho.pms.messages.Messages;
 import org.pentaho.pms.mql.PMSFormula;
+import org.pentaho.pms.schema.concept.ConceptIdIndex;
 import org.pentaho.pms.schema.concept.ConceptInterface;
 import org.pentaho.pms.schema.concept.ConceptUtilityBase;
 import org.pentaho.pms.schema.concept.ConceptUtilityInterface;
@@ -51,6 +52,8 @@ public class BusinessModel extends ConceptUtilityBase implements ChangedFlagInte
 
   private UniqueList<BusinessTable> businessTables;
 
+  private ConceptIdIndex<BusinessTable> businessTableIds;
+
   private List<RelationshipMeta> relationships;
 
   private List<NotePadMeta> notes;
@@ -68,6 +71,7 @@ public class BusinessModel extends ConceptUtilityBase implements ChangedFlagInte
   public BusinessModel() {
     super();
     this.businessTables = new UniqueArrayList<BusinessTable>();
+    this.businessTableIds = new ConceptIdIndex<BusinessTable>( businessTables );
     this.relationships = new ArrayList<RelationshipMeta>();
     this.notes = new ArrayList<NotePadMeta>();
     this.olapDimensions = new UniqueArrayList<OlapDimension>();
@@ -607,14 +611,7 @@ public class BusinessModel extends ConceptUtilityBase implements ChangedFlagInte
    * @return The business table of null if nothing could be found.
    */
   public BusinessTable findBusinessTable( String tableID ) {
-    for ( int i = 0; i < nrBusinessTables(); i++ ) {
-      BusinessTable businessTable = getBusinessTable( i );
-      String id = businessTable.getId();
-      if ( id != null && id.equalsIgnoreCase( tableID ) ) {
-        return businessTable;
-      }
-    }
-    return null;
+    return businessTableIds.find( tableID );
   }
 
   /**
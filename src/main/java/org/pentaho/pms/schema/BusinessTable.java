@@ -23,6 +23,7 @@ import org.pentaho.di.core.gui.GUIPositionInterface;
 import org.pentaho.di.core.gui.Point;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.pms.messages.Messages;
+import org.pentaho.pms.schema.concept.ConceptIdIndex;
 import org.pentaho.pms.schema.concept.ConceptInterface;
 import org.pentaho.pms.schema.concept.ConceptUtilityBase;
 import org.pentaho.pms.schema.concept.ConceptUtilityInterface;
@@ -55,10 +56,13 @@ public class BusinessTable extends ConceptUtilityBase implements Cloneable, GUIP
 
   private UniqueList<BusinessColumn> businessColumns;
 
+  private ConceptIdIndex<BusinessColumn> businessColumnIds;
+
   public BusinessTable() {
     super();
     this.physicalTable = null;
     this.businessColumns = new UniqueArrayList<BusinessColumn>();
+    this.businessColumnIds = new ConceptIdIndex<BusinessColumn>( businessColumns );
 
     this.location = new Point( 150, 150 );
     this.drawn = true;
@@ -386,13 +390,7 @@ public class BusinessTable extends ConceptUtilityBase implements Cloneable, GUIP
    * @return the business column or null if nothing could be found.
    */
   public BusinessColumn findBusinessColumn( String columnId ) {
-    for ( int i = 0; i < nrBusinessColumns(); i++ ) {
-      BusinessColumn businessColumn = getBusinessColumn( i );
-      if ( businessColumn.getId().equalsIgnoreCase( columnId ) ) {
-        return businessColumn;
-      }
-    }
-    return null;
+    return businessColumnIds.find( columnId );
   }
 
   /**
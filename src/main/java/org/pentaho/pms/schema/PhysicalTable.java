@@ -19,6 +19,7 @@ package org.pentaho.pms.schema;
 import org.pentaho.di.core.changed.ChangedFlagInterface;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.pms.messages.Messages;
+import org.pentaho.pms.schema.concept.ConceptIdIndex;
 import org.pentaho.pms.schema.concept.ConceptInterface;
 import org.pentaho.pms.schema.concept.ConceptUtilityBase;
 import org.pentaho.pms.schema.concept.ConceptUtilityInterface;
@@ -38,11 +39,14 @@ public class PhysicalTable extends ConceptUtilityBase implements Cloneable, Chan
   private DatabaseMeta databaseMeta;
   private UniqueList<PhysicalColumn> physicalColumns;
 
+  private ConceptIdIndex<PhysicalColumn> physicalColumnIds;
+
   public PhysicalTable( String id, String targetSchema, String targetTable, DatabaseMeta databaseMeta,
       UniqueList<PhysicalColumn> columns ) {
     super( id );
     this.databaseMeta = databaseMeta;
     this.physicalColumns = columns;
+    this.physicalColumnIds = new ConceptIdIndex<PhysicalColumn>( columns );
 
     if ( targetSchema != null ) {
       setTargetSchema( targetSchema );
@@ -99,6 +103,7 @@ public class PhysicalTable extends ConceptUtilityBase implements Cloneable, Chan
 
   public void setPhysicalColumns( UniqueList<PhysicalColumn> physicalColumns ) {
     this.physicalColumns = physicalColumns;
+    this.physicalColumnIds = new ConceptIdIndex<PhysicalColumn>( physicalColumns );
     setChanged();
   }
 
@@ -137,11 +142,7 @@ public class PhysicalTable extends ConceptUtilityBase implements Cloneable, Chan
    * @return the physical column or null if nothing could be found.
    */
   public PhysicalColumn findPhysicalColumn( String columnId ) {
-    int idx = findPhysicalColumnNr( columnId );
-    if ( idx >= 0 ) {
-      return getPhysicalColumn( idx );
-    }
-    return null;
+    return physicalColumnIds.find( columnId );
   }
 
   /**
@@ -25,7 +25,9 @@ import java.util.Set;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.pms.locale.Locales;
 import org.pentaho.pms.schema.concept.Concept;
+import org.pentaho.pms.schema.concept.ConceptIdIndex;
 import org.pentaho.pms.schema.concept.ConceptInterface;
+import org.pentaho.pms.schema.concept.ConceptNameIndex;
 import org.pentaho.pms.schema.concept.ConceptUtilityInterface;
 import org.pentaho.pms.schema.concept.DefaultPropertyID;
 import org.pentaho.pms.schema.concept.types.alignment.AlignmentSettings;
@@ -57,6 +59,12 @@ public class SchemaMeta {
 
   private UniqueList<ConceptInterface> concepts;
 
+  private ConceptIdIndex<PhysicalTable> tableIds;
+
+  private ConceptIdIndex<BusinessModel> businessModelIds;
+
+  private ConceptNameIndex conceptNames;
+
   private Locales locales;
 
   private SecurityReference securityReference;
@@ -76,6 +84,9 @@ public class SchemaMeta {
     tables = new UniqueArrayList<PhysicalTable>();
     businessModels = new UniqueArrayList<BusinessModel>();
     concepts = new UniqueArrayList<ConceptInterface>();
+    tableIds = new ConceptIdIndex<PhysicalTable>( tables );
+    businessModelIds = new ConceptIdIndex<BusinessModel>( businessModels );
+    conceptNames = new ConceptNameIndex( concepts );
     locales = new Locales();
     securityReference = new SecurityReference();
 
@@ -346,20 +357,12 @@ public class SchemaMeta {
    * @return the physical table or null if nothing was found.
    */
   public PhysicalTable findPhysicalTable( String id, PhysicalTable exclude ) {
-    int i;
-    int excl = -1;
-    if ( exclude != null ) {
-      excl = indexOfTable( exclude );
-    }
-
-    // This is slow!
-    for ( i = 0; i < nrTables(); i++ ) {
-      PhysicalTable ti = getTable( i );
-      if ( i != excl && ti.getId().equalsIgnoreCase( id ) ) {
-        return ti;
-      }
+    PhysicalTable ti = tableIds.find( id );
+    // the excluded table is the one with that id, the list can't hold another one
+    if ( ti != null && ti.equals( exclude ) ) {
+      return null;
     }
-    return null;
+    return ti;
   }
 
   /**
@@ -394,11 +397,9 @@ public class SchemaMeta {
   }
 
   public BusinessModel findModel( String id ) {
-    for ( int i = 0; i < nrBusinessModels(); i++ ) {
-      BusinessModel businessModel = getModel( i );
-      if ( businessModel.getId().equals( id ) ) {
-        return businessModel;
-      }
+    BusinessModel businessModel = businessModelIds.find( id );
+    if ( businessModel != null && businessModel.getId().equals( id ) ) {
+      return businessModel;
     }
     return null;
   }
@@ -581,13 +582,7 @@ public class SchemaMeta {
    * @return the concept or null if nothing could be found
    */
   public ConceptInterface findConcept( String conceptName ) {
-    for ( int i = 0; i < nrConcepts(); i++ ) {
-      ConceptInterface concept = getConcept( i );
-      if ( concept.getName().equals( conceptName ) ) {
-        return concept;
-      }
-    }
-    return null;
+    return conceptNames.find( conceptName );
   }
 
   public RequiredProperties getDefaultProperties() {
@@ -23,6 +23,7 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
@@ -34,11 +35,16 @@ import org.pentaho.pms.schema.concept.types.ConceptPropertyType;
 import org.pentaho.pms.schema.concept.types.localstring.ConceptPropertyLocalizedString;
 import org.pentaho.pms.schema.concept.types.localstring.LocalizedStringSettings;
 import org.pentaho.pms.schema.concept.types.security.ConceptPropertySecurity;
+import org.pentaho.pms.util.UniqueArrayList;
+import org.pentaho.pms.util.UniqueListElement;
 
 /**
  * @deprecated as of metadata 3.0. Please use org.pentaho.metadata.model.concept.Concept
  */
-public class Concept extends ChangedFlag implements ConceptInterface, Cloneable {
+public class Concept extends ChangedFlag implements ConceptInterface, Cloneable, UniqueListElement {
+  /** Counts the renames of all concepts, so that {@link ConceptNameIndex} knows when to rebuild */
+  private static final AtomicInteger NAME_CHANGES = new AtomicInteger();
+
   private String name;
 
   private Map<String, ConceptPropertyInterface> childPropertyInterfaces;
@@ -145,9 +151,24 @@ public class Concept extends ChangedFlag implements ConceptInterface, Cloneable
    * @param name the name to set
    */
   public void setName( String name ) {
+    if ( this.name != null && !this.name.equals( name ) ) {
+      NAME_CHANGES.incrementAndGet();
+      UniqueArrayList.keyChanged();
+    }
     this.name = name;
   }
 
+  /**
+   * @return the name, which equal concepts share
+   */
+  public Object getUniqueKey() {
+    return name;
+  }
+
+  static int getNameChanges() {
+    return NAME_CHANGES.get();
+  }
+
   public Map<String, ConceptPropertyInterface> getChildPropertyInterfaces() {
     return childPropertyInterfaces;
   }
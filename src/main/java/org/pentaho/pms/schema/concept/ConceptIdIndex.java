@@ -0,0 +1,112 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.schema.concept;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.pentaho.pms.util.UniqueArrayList;
+import org.pentaho.pms.util.UniqueList;
+
+/**
+ * Finds the objects of a unique list by their ID, ignoring case, without scanning the list. The index is rebuilt when
+ * the list changes or when an object changes its ID. Lists other than {@link UniqueArrayList} can't tell when they
+ * change, and are scanned.
+ * 
+ * @param <T>
+ *          the type of the objects in the list
+ */
+public class ConceptIdIndex<T extends ConceptUtilityBase> {
+
+  private final UniqueList<T> list;
+
+  private Map<String, T> ids;
+
+  private int modificationCount;
+
+  private int idChanges;
+
+  /** true if all objects had an ID when the index was built, so that an ID missing from the index isn't in the list */
+  private boolean complete;
+
+  public ConceptIdIndex( UniqueList<T> list ) {
+    this.list = list;
+  }
+
+  /**
+   * @param id
+   *          the ID to look for, ignoring case
+   * @return the first object in the list with that ID, or null if there is none
+   */
+  public T find( String id ) {
+    if ( id == null ) {
+      return null;
+    }
+    if ( !( list instanceof UniqueArrayList ) ) {
+      return scan( id );
+    }
+    UniqueArrayList<T> indexed = (UniqueArrayList<T>) list;
+    if ( ids == null || modificationCount != indexed.getModificationCount()
+        || idChanges != ConceptUtilityBase.getIdChanges() ) {
+      build( indexed );
+    }
+    T found = ids.get( key( id ) );
+    if ( found != null && id.equalsIgnoreCase( found.getId() ) ) {
+      return found;
+    }
+    return complete ? null : scan( id );
+  }
+
+  private void build( UniqueArrayList<T> indexed ) {
+    modificationCount = indexed.getModificationCount();
+    idChanges = ConceptUtilityBase.getIdChanges();
+    ids = new HashMap<String, T>( Math.max( 16, indexed.size() * 2 ) );
+    complete = true;
+    for ( int i = 0; i < indexed.size(); i++ ) {
+      T element = indexed.get( i );
+      if ( element.getId() == null ) {
+        complete = false;
+      } else {
+        String key = key( element.getId() );
+        if ( !ids.containsKey( key ) ) {
+          ids.put( key, element );
+        }
+      }
+    }
+  }
+
+  private T scan( String id ) {
+    for ( int i = 0; i < list.size(); i++ ) {
+      T element = list.get( i );
+      if ( id.equalsIgnoreCase( element.getId() ) ) {
+        return element;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Folds the case of the ID the way String.equalsIgnoreCase compares characters, independent of the default locale.
+   */
+  static String key( String id ) {
+    char[] chars = id.toCharArray();
+    for ( int i = 0; i < chars.length; i++ ) {
+      chars[i] = Character.toLowerCase( Character.toUpperCase( chars[i] ) );
+    }
+    return new String( chars );
+  }
+}
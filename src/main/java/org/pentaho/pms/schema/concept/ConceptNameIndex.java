@@ -0,0 +1,92 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.schema.concept;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.pentaho.pms.util.UniqueArrayList;
+import org.pentaho.pms.util.UniqueList;
+
+/**
+ * Finds the concepts of a unique list by their name without scanning the list. The index is rebuilt when the list
+ * changes or when a concept is renamed. Lists other than {@link UniqueArrayList}, and lists holding concepts that
+ * aren't a {@link Concept}, can't tell when they change and are scanned.
+ */
+public class ConceptNameIndex {
+
+  private final UniqueList<ConceptInterface> list;
+
+  private Map<String, ConceptInterface> names;
+
+  private int modificationCount;
+
+  private int nameChanges;
+
+  /** true if all concepts were named Concepts when the index was built, so that a missing name isn't in the list */
+  private boolean complete;
+
+  public ConceptNameIndex( UniqueList<ConceptInterface> list ) {
+    this.list = list;
+  }
+
+  /**
+   * @param name
+   *          the name to look for
+   * @return the first concept in the list with that name, or null if there is none
+   */
+  public ConceptInterface find( String name ) {
+    if ( !( list instanceof UniqueArrayList ) ) {
+      return scan( name );
+    }
+    UniqueArrayList<ConceptInterface> indexed = (UniqueArrayList<ConceptInterface>) list;
+    if ( names == null || modificationCount != indexed.getModificationCount()
+        || nameChanges != Concept.getNameChanges() ) {
+      build( indexed );
+    }
+    ConceptInterface found = names.get( name );
+    if ( found != null && found.getName().equals( name ) ) {
+      return found;
+    }
+    return complete ? null : scan( name );
+  }
+
+  private void build( UniqueArrayList<ConceptInterface> indexed ) {
+    modificationCount = indexed.getModificationCount();
+    nameChanges = Concept.getNameChanges();
+    names = new HashMap<String, ConceptInterface>( Math.max( 16, indexed.size() * 2 ) );
+    complete = true;
+    for ( int i = 0; i < indexed.size(); i++ ) {
+      ConceptInterface concept = indexed.get( i );
+      if ( !( concept instanceof Concept ) || concept.getName() == null ) {
+        complete = false;
+      } else if ( !names.containsKey( concept.getName() ) ) {
+        names.put( concept.getName(), concept );
+      }
+    }
+  }
+
+  private ConceptInterface scan( String name ) {
+    for ( int i = 0; i < list.size(); i++ ) {
+      ConceptInterface concept = list.get( i );
+      if ( concept.getName().equals( name ) ) {
+        return concept;
+      }
+    }
+    return null;
+  }
+}
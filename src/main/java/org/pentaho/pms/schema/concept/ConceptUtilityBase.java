@@ -45,16 +45,20 @@ import org.pentaho.pms.schema.security.RowLevelSecurity;
 import org.pentaho.pms.schema.security.Security;
 import org.pentaho.pms.util.Const;
 import org.pentaho.pms.util.ObjectAlreadyExistsException;
+import org.pentaho.pms.util.UniqueArrayList;
 import org.pentaho.pms.util.UniqueList;
+import org.pentaho.pms.util.UniqueListElement;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @deprecated as of metadata 3.0.
  */
-public class ConceptUtilityBase extends ChangedFlag implements AllowsIDChangeListenersInterface {
+public class ConceptUtilityBase extends ChangedFlag implements AllowsIDChangeListenersInterface,
+    UniqueListElement {
 
   // TODO: Create a default locale in the metadata instead of just saying
   // English is the default!
@@ -68,6 +72,8 @@ public class ConceptUtilityBase extends ChangedFlag implements AllowsIDChangeLis
 
   protected transient List<IDChangedListener> idChangedListeners;
 
+  private static final AtomicInteger ID_CHANGES = new AtomicInteger();
+
   public ConceptUtilityBase() {
     this( null );
   }
@@ -109,6 +115,13 @@ public class ConceptUtilityBase extends ChangedFlag implements AllowsIDChangeLis
     return id;
   }
 
+  /**
+   * @return the upper case ID, which equal objects share
+   */
+  public Object getUniqueKey() {
+    return null != id ? id.toUpperCase() : null;
+  }
+
   public boolean hasChanged() {
     if ( concept.hasChanged() ) {
       return true;
@@ -148,10 +161,22 @@ public class ConceptUtilityBase extends ChangedFlag implements AllowsIDChangeLis
           "ConceptUtilityBase.ERROR_0001_OBJECT_ID_EXISTS", id ), e ); //$NON-NLS-1$
       }
     }
+    if ( this.id != null && !this.id.equals( id ) ) {
+      ID_CHANGES.incrementAndGet();
+      UniqueArrayList.keyChanged();
+    }
     this.id = id;
     setChanged();
   }
 
+  /**
+   * @return a number that changes whenever an object that already had an ID gets another one, so that the
+   *         ConceptIdIndex instances know when to rebuild.
+   */
+  static int getIdChanges() {
+    return ID_CHANGES.get();
+  }
+
   /**
    * @return The concept
    */
@@ -22,9 +22,11 @@ import java.util.List;
 
 import org.pentaho.di.core.changed.ChangedFlag;
 import org.pentaho.pms.schema.BusinessTable;
+import org.pentaho.pms.util.UniqueArrayList;
+import org.pentaho.pms.util.UniqueListElement;
 
 @SuppressWarnings( "deprecation" )
-public class OlapCube extends ChangedFlag implements Cloneable {
+public class OlapCube extends ChangedFlag implements Cloneable, UniqueListElement {
   private String name;
   private BusinessTable businessTable;
 
@@ -63,6 +65,10 @@ public class OlapCube extends ChangedFlag implements Cloneable {
     return name.equals( ( (OlapCube) obj ).getName() );
   }
 
+  public int hashCode() {
+    return name == null ? 0 : name.hashCode();
+  }
+
   /**
    * @return the name
    */
@@ -75,9 +81,16 @@ public class OlapCube extends ChangedFlag implements Cloneable {
    *          the name to set
    */
   public void setName( String name ) {
+    if ( this.name != null && !this.name.equals( name ) ) {
+      UniqueArrayList.keyChanged();
+    }
     this.name = name;
   }
 
+  public Object getUniqueKey() {
+    return name;
+  }
+
   /**
    * @return the businessTable
    */
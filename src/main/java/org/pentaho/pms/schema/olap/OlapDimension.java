@@ -21,9 +21,11 @@ import java.util.List;
 
 import org.pentaho.di.core.changed.ChangedFlag;
 import org.pentaho.pms.schema.BusinessTable;
+import org.pentaho.pms.util.UniqueArrayList;
+import org.pentaho.pms.util.UniqueListElement;
 
 @SuppressWarnings( "deprecation" )
-public class OlapDimension extends ChangedFlag implements Cloneable {
+public class OlapDimension extends ChangedFlag implements Cloneable, UniqueListElement {
   private String name;
   private boolean timeDimension;
 
@@ -50,6 +52,10 @@ public class OlapDimension extends ChangedFlag implements Cloneable {
     return name.equals( ( (OlapDimension) obj ).getName() );
   }
 
+  public int hashCode() {
+    return name == null ? 0 : name.hashCode();
+  }
+
   /**
    * @return the hierarchies
    */
@@ -77,9 +83,16 @@ public class OlapDimension extends ChangedFlag implements Cloneable {
    *          the name to set
    */
   public void setName( String name ) {
+    if ( this.name != null && !this.name.equals( name ) ) {
+      UniqueArrayList.keyChanged();
+    }
     this.name = name;
   }
 
+  public Object getUniqueKey() {
+    return name;
+  }
+
   /**
    * @return the timeDimension
    */
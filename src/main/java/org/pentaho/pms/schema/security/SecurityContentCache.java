@@ -0,0 +1,256 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.schema.security;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.pms.core.exception.PentahoMetadataException;
+import org.pentaho.pms.messages.Messages;
+
+/**
+ * Shares the content returned by security services between the schemas loaded in this JVM. The content is kept for a
+ * time to live per service URL and credentials, once it has been parsed as XML. When the server can't be reached, the
+ * last known good content read with the same URL and credentials is used instead, and the server is asked again once
+ * the time to live has passed. Refused credentials, error statuses and content that is not XML never fall back.
+ * <p>
+ * The last known good content can also be written to local files, to survive a restart while the server is down. As
+ * the files hold the users, roles and ACLs of the server, this is off unless a directory is configured.
+ * <p>
+ * The shared instance is configured with the system properties {@link #TTL_PROPERTY}, {@link #TIMEOUT_PROPERTY} and
+ * {@link #DIRECTORY_PROPERTY}.
+ */
+public class SecurityContentCache {
+
+  /** time to live of the cached content in milliseconds, 0 asks the server every time */
+  public static final String TTL_PROPERTY = "org.pentaho.pms.security.cache.ttl"; //$NON-NLS-1$
+
+  /** connection and read timeout of the requests to the security service in milliseconds */
+  public static final String TIMEOUT_PROPERTY = "org.pentaho.pms.security.cache.timeout"; //$NON-NLS-1$
+
+  /** directory of the last known good content, nothing is kept on disk unless it is set */
+  public static final String DIRECTORY_PROPERTY = "org.pentaho.pms.security.cache.directory"; //$NON-NLS-1$
+
+  public static final long DEFAULT_TTL = 5 * 60 * 1000L;
+
+  public static final int DEFAULT_TIMEOUT = 10 * 1000;
+
+  private static final Charset UTF8 = Charset.forName( "UTF-8" ); //$NON-NLS-1$
+
+  private static final LogChannelInterface log = new LogChannel( "SecurityContentCache" ); //$NON-NLS-1$
+
+  private static SecurityContentCache instance;
+
+  private final long ttl;
+
+  private final File directory;
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+  private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+  private static class Entry {
+    final String content;
+
+    final long expires;
+
+    Entry( String content, long expires ) {
+      this.content = content;
+      this.expires = expires;
+    }
+  }
+
+  /**
+   * @param ttl
+   *          time to live of the content in milliseconds
+   * @param directory
+   *          where the last known good content is written, null to keep nothing on disk
+   */
+  public SecurityContentCache( long ttl, File directory ) {
+    this.ttl = ttl;
+    this.directory = directory;
+  }
+
+  public static synchronized SecurityContentCache getInstance() {
+    if ( instance == null ) {
+      String dir = System.getProperty( DIRECTORY_PROPERTY, "" ); //$NON-NLS-1$
+      instance = new SecurityContentCache( Long.getLong( TTL_PROPERTY, DEFAULT_TTL ),
+          dir.trim().length() == 0 ? null : new File( dir ) );
+    }
+    return instance;
+  }
+
+  /**
+   * Replaces the shared instance, null to configure a new one from the system properties.
+   */
+  public static synchronized void setInstance( SecurityContentCache cache ) {
+    instance = cache;
+  }
+
+  /**
+   * @return the connection and read timeout of the security service requests, in milliseconds
+   */
+  public static int getTimeout() {
+    return Integer.getInteger( TIMEOUT_PROPERTY, DEFAULT_TIMEOUT );
+  }
+
+  /**
+   * Gets the content of a security service URL, from the cache if it is recent enough.
+   * 
+   * @param service
+   *          the service, giving the credentials
+   * @param url
+   *          the URL to read
+   * @return the XML returned by the server, or the last known good XML if the server can't be reached
+   * @throws PentahoMetadataException
+   *           if the server refused the request, answered with an error or with content that is not XML, or couldn't
+   *           be reached and there is no last known good content
+   */
+  public String getContent( SecurityService service, String url ) throws PentahoMetadataException {
+    String key = digest( url, service.getUsername(), service.getPassword() );
+    Entry entry = entries.get( key );
+    if ( entry != null && System.currentTimeMillis() < entry.expires ) {
+      return entry.content;
+    }
+    Object lock = locks.get( key );
+    if ( lock == null ) {
+      locks.putIfAbsent( key, new Object() );
+      lock = locks.get( key );
+    }
+    // a single request per key, the other callers get its result
+    synchronized ( lock ) {
+      entry = entries.get( key );
+      if ( entry != null && System.currentTimeMillis() < entry.expires ) {
+        return entry.content;
+      }
+      File file = getFile( url, service.getUsername(), service.getPassword() );
+      String content;
+      try {
+        content = service.fetchContentFromServer( url );
+      } catch ( PentahoMetadataException e ) {
+        if ( !( e.getCause() instanceof IOException ) ) {
+          // an invalid URL, refused credentials or an error status don't get the last known good content
+          throw e;
+        }
+        content = entry != null ? entry.content : load( file );
+        if ( content == null ) {
+          throw e;
+        }
+        log.logBasic( Messages.getString( "SecurityContentCache.WARN_USING_LAST_KNOWN_GOOD", url ) ); //$NON-NLS-1$
+        entries.put( key, new Entry( content, System.currentTimeMillis() + ttl ) );
+        return content;
+      }
+      validate( content );
+      store( file, content );
+      entries.put( key, new Entry( content, System.currentTimeMillis() + ttl ) );
+      return content;
+    }
+  }
+
+  /**
+   * Forgets the cached content, so that the servers are asked again. The last known good files are kept.
+   */
+  public void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Makes sure the content is XML before it is cached or replaces the last known good content.
+   */
+  private static void validate( String content ) throws PentahoMetadataException {
+    try {
+      XMLHandler.loadXMLString( content );
+    } catch ( KettleXMLException e ) {
+      String msg = Messages.getString( "SecurityService.ERROR_0008_ERROR_PARSING_XML", e.getMessage() ); //$NON-NLS-1$
+      log.logError( msg );
+      throw new PentahoMetadataException( msg, e );
+    }
+  }
+
+  private File getFile( String url, String username, String password ) {
+    if ( directory == null ) {
+      return null;
+    }
+    // the file is only found with the credentials it was read with
+    return new File( directory, "security-" + digest( url, username, password ) + ".xml" ); //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  private void store( File file, String content ) {
+    if ( file == null ) {
+      return;
+    }
+    try {
+      directory.mkdirs();
+      File temp = File.createTempFile( "security-", ".tmp", directory ); //$NON-NLS-1$ //$NON-NLS-2$
+      Files.write( temp.toPath(), content.getBytes( UTF8 ) );
+      try {
+        Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE );
+      } catch ( AtomicMoveNotSupportedException e ) {
+        Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+      }
+    } catch ( IOException e ) {
+      log.logError( Messages.getString( "SecurityContentCache.ERROR_0001_CANT_STORE", file.getPath(), e //$NON-NLS-1$
+          .getMessage() ) );
+    }
+  }
+
+  private String load( File file ) {
+    if ( file == null || !file.isFile() ) {
+      return null;
+    }
+    try {
+      return new String( Files.readAllBytes( file.toPath() ), UTF8 );
+    } catch ( IOException e ) {
+      log.logError( Messages.getString( "SecurityContentCache.ERROR_0002_CANT_LOAD", file.getPath(), e //$NON-NLS-1$
+          .getMessage() ) );
+      return null;
+    }
+  }
+
+  private static String digest( String url, String username, String password ) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance( "SHA-256" ); //$NON-NLS-1$
+      digest.update( String.valueOf( url ).getBytes( UTF8 ) );
+      digest.update( (byte) 0 );
+      digest.update( String.valueOf( username ).getBytes( UTF8 ) );
+      if ( password != null ) {
+        digest.update( (byte) 0 );
+        digest.update( password.getBytes( UTF8 ) );
+      }
+      StringBuilder hex = new StringBuilder();
+      for ( byte b : digest.digest() ) {
+        hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+      }
+      return hex.toString();
+    } catch ( NoSuchAlgorithmException e ) {
+      throw new IllegalStateException( e );
+    }
+  }
+}
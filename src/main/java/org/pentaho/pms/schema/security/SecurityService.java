@@ -36,6 +36,7 @@ import org.pentaho.pms.util.Const;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -272,13 +273,64 @@ public class SecurityService extends ChangedFlag implements Cloneable {
   }
 
   /**
-   * Contact the server and get back the content as XML
+   * Contact the server and get back the content as XML. The content is shared through the {@link SecurityContentCache}
+   * with the other services using the same URL and credentials, and the last content read is used when the server
+   * can't be reached.
    * 
    * @return the requested security reference information
    * @throws Exception
    *           in case something goes awry
    */
   public Node getContentFromServer( String urlToUse ) throws PentahoMetadataException {
+    String result = SecurityContentCache.getInstance().getContent( this, urlToUse );
+
+    if ( result != null ) {
+
+      // Get the result back...
+      Document doc;
+      try {
+
+        doc = XMLHandler.loadXMLString( result );
+
+      } catch ( KettleXMLException e ) {
+
+        String msg = Messages.getString( "SecurityService.ERROR_0008_ERROR_PARSING_XML", e.getMessage() ); //$NON-NLS-1$
+        log.logError( msg );
+        log.logError( Const.getStackTracker( e ) );
+        throw new PentahoMetadataException( msg, e );
+
+      }
+
+      if ( serviceURL.endsWith( "ServiceAction" ) ) {
+        Node envelope = XMLHandler.getSubNode( doc, "SOAP-ENV:Envelope" ); //$NON-NLS-1$
+        if ( envelope != null ) {
+          Node body = XMLHandler.getSubNode( envelope, "SOAP-ENV:Body" ); //$NON-NLS-1$
+          if ( body != null ) {
+            Node response = XMLHandler.getSubNode( body, "ExecuteActivityResponse" ); //$NON-NLS-1$
+            if ( response != null ) {
+              Node content = XMLHandler.getSubNode( response, "content" ); //$NON-NLS-1$
+              return content;
+            }
+          }
+        }
+      } else {
+        return doc.getFirstChild();
+      }
+    }
+    return null;
+
+  }
+
+  /**
+   * Performs the HTTP request for {@link #getContentFromServer(String)}, giving up after
+   * {@link SecurityContentCache#getTimeout()} milliseconds without an answer.
+   * 
+   * @return the XML returned by the server
+   * @throws PentahoMetadataException
+   *           if the URL is invalid, access is refused or the server answers with an error status, or if an I/O error
+   *           occurs, with the IOException as cause
+   */
+  String fetchContentFromServer( String urlToUse ) throws PentahoMetadataException {
 
     String result = null;
     int status = -1;
@@ -298,6 +350,8 @@ public class SecurityService extends ChangedFlag implements Cloneable {
     }
 
     HttpClientManager.HttpClientBuilderFacade httpClientBuilder = HttpClientManager.getInstance().createBuilder();
+    httpClientBuilder.setConnectionTimeout( SecurityContentCache.getTimeout() );
+    httpClientBuilder.setSocketTimeout( SecurityContentCache.getTimeout() );
     log.logDebug( Messages.getString( "SecurityService.INFO_CONNECTING_TO_URL", urlToUse ) ); //$NON-NLS-1$
 
     // Assume we are using a proxy if proxyHostName is set?
@@ -338,11 +392,17 @@ public class SecurityService extends ChangedFlag implements Cloneable {
         log.logBasic( Messages.getString(
             "SecurityService.INFO_FINISHED_READING_RESPONSE", Integer.toString( result.length() ) ) ); //$NON-NLS-1$ 
 
-      } else if ( status == HttpStatus.SC_UNAUTHORIZED ) {
+      } else if ( status == HttpStatus.SC_UNAUTHORIZED || status == HttpStatus.SC_FORBIDDEN ) {
         String msg = Messages.getString( "SecurityService.ERROR_0009_UNAUTHORIZED_ACCESS_TO_URL", urlToUse ); //$NON-NLS-1$
         log.logError( msg );
         throw new PentahoMetadataException( msg );
 
+      } else {
+        // an error page is not the content, and doesn't get the last known good content either
+        String msg = Messages.getString( "SecurityService.ERROR_0010_HTTP_STATUS", //$NON-NLS-1$
+            Integer.toString( status ), urlToUse );
+        log.logError( msg );
+        throw new PentahoMetadataException( msg );
       }
 
     } catch ( IOException e ) {
@@ -350,43 +410,18 @@ public class SecurityService extends ChangedFlag implements Cloneable {
       log.logError( msg );
       log.logError( Const.getStackTracker( e ) );
       throw new PentahoMetadataException( msg, e );
-    }
-
-    if ( result != null ) {
-
-      // Get the result back...
-      Document doc;
-      try {
-
-        doc = XMLHandler.loadXMLString( result );
-
-      } catch ( KettleXMLException e ) {
-
-        String msg = Messages.getString( "SecurityService.ERROR_0008_ERROR_PARSING_XML", e.getMessage() ); //$NON-NLS-1$
-        log.logError( msg );
-        log.logError( Const.getStackTracker( e ) );
-        throw new PentahoMetadataException( msg, e );
-
-      }
-
-      if ( serviceURL.endsWith( "ServiceAction" ) ) {
-        Node envelope = XMLHandler.getSubNode( doc, "SOAP-ENV:Envelope" ); //$NON-NLS-1$
-        if ( envelope != null ) {
-          Node body = XMLHandler.getSubNode( envelope, "SOAP-ENV:Body" ); //$NON-NLS-1$
-          if ( body != null ) {
-            Node response = XMLHandler.getSubNode( body, "ExecuteActivityResponse" ); //$NON-NLS-1$
-            if ( response != null ) {
-              Node content = XMLHandler.getSubNode( response, "content" ); //$NON-NLS-1$
-              return content;
-            }
-          }
+    } finally {
+      getMethod.releaseConnection();
+      if ( client instanceof Closeable ) {
+        try {
+          ( (Closeable) client ).close();
+        } catch ( IOException e ) {
+          log.logDebug( e.getMessage() );
         }
-      } else {
-        return doc.getFirstChild();
       }
     }
-    return null;
 
+    return result;
   }
 
   /**
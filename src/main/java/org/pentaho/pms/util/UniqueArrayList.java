@@ -16,22 +16,41 @@
  */
 package org.pentaho.pms.util;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * We want to enforce uniqueness in the list. The objects stored added need to have the "equals" implemented
- * 
- * @author Matt
- * @since 2007-03-19
- * 
+ * A list that refuses elements equal to one it already holds. The elements are kept in an array list for their order,
+ * and in a hash index so that finding an element of the list does not scan it. A {@link UniqueListElement} is indexed
+ * by its unique key, which only changes together with a call to {@link #keyChanged()}, so the index stays exact while
+ * the elements are renamed; elements without a key yet are checked with equals. Other elements are indexed by their
+ * hash code, and must keep it while they are in the list or call {@link #reindex()} after changing it.
  */
 public class UniqueArrayList<E> implements UniqueList<E> {
+  /** Counts the changes of the unique keys of all elements, so that the indexes know when to rebuild */
+  private static final AtomicInteger KEY_CHANGES = new AtomicInteger();
+
   private List<E> list;
 
+  /** the elements of the list by their key, null until it is first needed */
+  private Map<Object, List<E>> index;
+
+  /** the key changes when the index was built */
+  private int keyChanges;
+
+  /** the list handed out by getList(), keeping the index in line with changes made through it */
+  private final IndexedList view = new IndexedList();
+
+  private int modificationCount;
+
   private static final long serialVersionUID = -4032535311575763475L;
 
   public UniqueArrayList() {
@@ -53,50 +72,79 @@ public class UniqueArrayList<E> implements UniqueList<E> {
   }
 
   public boolean add( E o ) throws ObjectAlreadyExistsException {
-    if ( list.contains( o ) ) {
+    if ( contains( o ) ) {
       throw new ObjectAlreadyExistsException();
     }
-    return list.add( o );
+    list.add( o );
+    indexed( o, 1 );
+    view.changed();
+    return true;
   }
 
   public void add( int index, E element ) throws ObjectAlreadyExistsException {
-    if ( list.contains( element ) ) {
+    if ( contains( element ) ) {
       throw new ObjectAlreadyExistsException();
     }
     list.add( index, element );
-
+    indexed( element, 1 );
+    view.changed();
   }
 
   public boolean addAll( Collection<E> c ) throws ObjectAlreadyExistsException {
     for ( Iterator<E> iter = c.iterator(); iter.hasNext(); ) {
       E element = iter.next();
-      if ( list.contains( element ) ) {
+      if ( contains( element ) ) {
         throw new ObjectAlreadyExistsException();
       }
     }
+    for ( E element : c ) {
+      indexed( element, 1 );
+    }
+    view.changed();
     return list.addAll( c );
   }
 
   public boolean addAll( int index, Collection<E> c ) throws ObjectAlreadyExistsException {
     for ( Iterator<E> iter = c.iterator(); iter.hasNext(); ) {
       E element = iter.next();
-      if ( list.contains( element ) ) {
+      if ( contains( element ) ) {
         throw new ObjectAlreadyExistsException();
       }
     }
+    for ( E element : c ) {
+      indexed( element, 1 );
+    }
+    view.changed();
     return list.addAll( index, c );
   }
 
   public void clear() {
     list.clear();
+    reindex();
+    view.changed();
   }
 
   public boolean contains( E o ) {
-    return list.contains( o );
+    Object key = keyOf( o );
+    Map<Object, List<E>> byKey = index();
+    if ( contains( byKey.get( key ), o ) ) {
+      return true;
+    }
+    // the elements indexed before they had a key may have one now
+    return key != null && contains( byKey.get( null ), o );
+  }
+
+  private static <E> boolean contains( List<E> elements, E o ) {
+    return elements != null && elements.contains( o );
   }
 
   public boolean containsAll( Collection<E> c ) {
-    return list.containsAll( c );
+    for ( E element : c ) {
+      if ( !contains( element ) ) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public E get( int index ) {
@@ -104,7 +152,7 @@ public class UniqueArrayList<E> implements UniqueList<E> {
   }
 
   public int indexOf( E o ) {
-    return list.indexOf( o );
+    return contains( o ) ? list.indexOf( o ) : -1;
   }
 
   public boolean isEmpty() {
@@ -112,39 +160,57 @@ public class UniqueArrayList<E> implements UniqueList<E> {
   }
 
   public Iterator<E> iterator() {
-    return list.iterator();
+    return view.iterator();
   }
 
   public int lastIndexOf( E o ) {
-    return list.lastIndexOf( o );
+    return contains( o ) ? list.lastIndexOf( o ) : -1;
   }
 
   public ListIterator<E> listIterator() {
-    return list.listIterator();
+    return view.listIterator();
   }
 
   public ListIterator<E> listIterator( int index ) {
-    return list.listIterator( index );
+    return view.listIterator( index );
   }
 
   public E remove( int index ) {
-    return list.remove( index );
+    E element = list.remove( index );
+    indexed( element, -1 );
+    view.changed();
+    return element;
   }
 
   public boolean remove( E o ) {
-    return list.remove( o );
+    if ( !contains( o ) ) {
+      return false;
+    }
+    list.remove( o );
+    indexed( o, -1 );
+    view.changed();
+    return true;
   }
 
   public boolean removeAll( Collection<E> c ) {
-    return list.removeAll( c );
+    boolean changed = list.removeAll( c );
+    reindex();
+    view.changed();
+    return changed;
   }
 
   public boolean retainAll( Collection<E> c ) {
-    return list.retainAll( c );
+    boolean changed = list.retainAll( c );
+    reindex();
+    view.changed();
+    return changed;
   }
 
   public Object set( int index, E element ) throws ObjectAlreadyExistsException {
-    return list.set( index, element );
+    E previous = list.set( index, element );
+    indexed( previous, -1 );
+    indexed( element, 1 );
+    return previous;
   }
 
   public int size() {
@@ -152,7 +218,7 @@ public class UniqueArrayList<E> implements UniqueList<E> {
   }
 
   public List<E> subList( int fromIndex, int toIndex ) {
-    return list.subList( fromIndex, toIndex );
+    return view.subList( fromIndex, toIndex );
   }
 
   public Object[] toArray() {
@@ -163,7 +229,122 @@ public class UniqueArrayList<E> implements UniqueList<E> {
     return list.toArray( a );
   }
 
+  /**
+   * @return the elements of this list; changes made to it are seen by this list.
+   */
   public List<E> getList() {
-    return list;
+    return view;
+  }
+
+  /**
+   * Rebuilds the hash index the next time it is needed, after elements changed their hash code while in the list.
+   */
+  public void reindex() {
+    index = null;
+    modificationCount++;
+  }
+
+  /**
+   * Tells all the lists that the unique key of a {@link UniqueListElement} changed from a value that was not null.
+   */
+  public static void keyChanged() {
+    KEY_CHANGES.incrementAndGet();
+  }
+
+  /**
+   * @return a number that changes with every change made to this list, for the indexes kept on top of it.
+   */
+  public int getModificationCount() {
+    return modificationCount;
+  }
+
+  private static Object keyOf( Object element ) {
+    return element instanceof UniqueListElement ? ( (UniqueListElement) element ).getUniqueKey() : element;
+  }
+
+  private Map<Object, List<E>> index() {
+    if ( index == null || keyChanges != KEY_CHANGES.get() ) {
+      keyChanges = KEY_CHANGES.get();
+      index = new HashMap<Object, List<E>>( Math.max( 16, list.size() * 2 ) );
+      for ( E element : list ) {
+        add( index, element );
+      }
+    }
+    return index;
+  }
+
+  private static <E> void add( Map<Object, List<E>> index, E element ) {
+    Object key = keyOf( element );
+    List<E> elements = index.get( key );
+    if ( elements == null ) {
+      elements = new ArrayList<E>( 1 );
+      index.put( key, elements );
+    }
+    elements.add( element );
+  }
+
+  private void indexed( E element, int delta ) {
+    modificationCount++;
+    if ( index == null || keyChanges != KEY_CHANGES.get() ) {
+      index = null;
+      return;
+    }
+    if ( delta > 0 ) {
+      add( index, element );
+      return;
+    }
+    Object key = keyOf( element );
+    if ( !remove( key, element ) && ( key == null || !remove( null, element ) ) ) {
+      // not indexed under its key: the element changed its hash code since it was indexed
+      index = null;
+    }
+  }
+
+  private boolean remove( Object key, E element ) {
+    List<E> elements = index.get( key );
+    if ( elements == null || !elements.remove( element ) ) {
+      return false;
+    }
+    if ( elements.isEmpty() ) {
+      index.remove( key );
+    }
+    return true;
+  }
+
+  private class IndexedList extends AbstractList<E> implements RandomAccess {
+    public E get( int i ) {
+      return list.get( i );
+    }
+
+    public int size() {
+      return list.size();
+    }
+
+    public E set( int i, E element ) {
+      E previous = list.set( i, element );
+      indexed( previous, -1 );
+      indexed( element, 1 );
+      return previous;
+    }
+
+    public void add( int i, E element ) {
+      list.add( i, element );
+      indexed( element, 1 );
+      changed();
+    }
+
+    public E remove( int i ) {
+      E element = list.remove( i );
+      indexed( element, -1 );
+      changed();
+      return element;
+    }
+
+    /**
+     * Lets the iterators of this list fail fast on changes made through the outer list as well.
+     */
+    void changed() {
+      modCount++;
+    }
   }
 }
@@ -0,0 +1,31 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.util;
+
+/**
+ * An element of a {@link UniqueArrayList} that tells the list which part of its state equal elements share. The list
+ * indexes the element by that key rather than by its hash code, which may follow state that changes while the element
+ * is in the list.
+ */
+public interface UniqueListElement {
+
+  /**
+   * @return a value that equal elements share, or null. Once it is not null, the key must only change together with a
+   *         call to {@link UniqueArrayList#keyChanged()}.
+   */
+  Object getUniqueKey();
+}
@@ -0,0 +1,48 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.concept.types;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link RelationshipType}.
+ */
+public class RelationshipTypeTest {
+
+  private static final long FACT = 1000;
+
+  @Test
+  public void testDimensionJoinsCostTheirDimension() {
+    // fact N:1 small dimension, large dimension 1:N fact
+    long small = RelationshipType.getJoinSizeHint( RelationshipType._N_1, FACT, 5 );
+    long large = RelationshipType.getJoinSizeHint( RelationshipType._1_N, 50, FACT );
+    assertEquals( 5, small );
+    assertEquals( 50, large );
+    assertEquals( 5, RelationshipType.getJoinSizeHint( RelationshipType._N_0, FACT, 5 ) );
+    assertEquals( 50, RelationshipType.getJoinSizeHint( RelationshipType._0_N, 50, FACT ) );
+  }
+
+  @Test
+  public void testOtherJoins() {
+    assertEquals( 5, RelationshipType.getJoinSizeHint( RelationshipType._1_1, FACT, 5 ) );
+    assertEquals( 5 * FACT, RelationshipType.getJoinSizeHint( RelationshipType._N_N, FACT, 5 ) );
+    assertEquals( FACT, RelationshipType.getJoinSizeHint( RelationshipType.UNDEFINED, 5, FACT ) );
+    assertEquals( FACT, RelationshipType.getJoinSizeHint( null, FACT, 5 ) );
+  }
+}
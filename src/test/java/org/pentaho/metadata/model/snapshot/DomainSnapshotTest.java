@@ -0,0 +1,355 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.model.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.pentaho.metadata.model.Category;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalRelationship;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.SqlPhysicalColumn;
+import org.pentaho.metadata.model.SqlPhysicalModel;
+import org.pentaho.metadata.model.SqlPhysicalTable;
+import org.pentaho.metadata.model.concept.Concept;
+import org.pentaho.metadata.model.concept.IConcept;
+import org.pentaho.metadata.model.concept.types.DataType;
+import org.pentaho.metadata.model.concept.types.LocalizedString;
+import org.pentaho.metadata.model.concept.types.RelationshipType;
+import org.pentaho.metadata.repository.InMemoryMetadataDomainRepository;
+
+public class DomainSnapshotTest {
+
+  private static Domain buildDomain() {
+    Domain domain = new Domain();
+    domain.setId( "DOMAIN" );
+    SqlPhysicalModel physicalModel = new SqlPhysicalModel();
+    physicalModel.setId( "PM" );
+    domain.addPhysicalModel( physicalModel );
+
+    for ( String modelId : new String[] { "M1", "M2" } ) {
+      LogicalModel model = new LogicalModel();
+      model.setId( modelId );
+      model.setPhysicalModel( physicalModel );
+      model.setDomain( domain );
+      Category category = new Category( model );
+      category.setId( modelId + "_CAT" );
+      for ( String tableId : new String[] { "T1", "T2" } ) {
+        SqlPhysicalTable physicalTable = new SqlPhysicalTable( physicalModel );
+        physicalTable.setId( modelId + "_P" + tableId );
+        LogicalTable table = new LogicalTable( model, physicalTable );
+        table.setId( modelId + "_" + tableId );
+        for ( String columnId : new String[] { "C1", "C2" } ) {
+          SqlPhysicalColumn physicalColumn = new SqlPhysicalColumn( physicalTable );
+          physicalColumn.setId( table.getId() + "_P" + columnId );
+          physicalColumn.setDataType( DataType.STRING );
+          LogicalColumn column = new LogicalColumn();
+          column.setId( table.getId() + "_" + columnId );
+          column.setName( new LocalizedString( "en_US", columnId ) );
+          column.setPhysicalColumn( physicalColumn );
+          column.setLogicalTable( table );
+          table.addLogicalColumn( column );
+          category.addLogicalColumn( column );
+        }
+        model.addLogicalTable( table );
+      }
+      LogicalTable t1 = model.getLogicalTables().get( 0 );
+      LogicalTable t2 = model.getLogicalTables().get( 1 );
+      LogicalRelationship relationship =
+          new LogicalRelationship( model, t1, t2, t1.getLogicalColumns().get( 0 ), t2.getLogicalColumns().get( 0 ) );
+      relationship.setRelationshipType( RelationshipType._N_1 );
+      model.addLogicalRelationship( relationship );
+      model.addCategory( category );
+      domain.addLogicalModel( model );
+    }
+    return domain;
+  }
+
+  @Test
+  public void testPersistentList() {
+    PersistentList<String> list = PersistentList.copyOf( Arrays.asList( "a", "b", "c" ) );
+    assertSame( list, PersistentList.copyOf( list ) );
+    assertSame( PersistentList.empty(), PersistentList.copyOf( null ) );
+    assertSame( list, list.with( 1, list.get( 1 ) ) );
+    assertEquals( Arrays.asList( "a", "x", "c" ), list.with( 1, "x" ) );
+    assertEquals( Arrays.asList( "a", "b", "c", "d" ), list.plus( "d" ) );
+    assertEquals( Arrays.asList( "a", "c" ), list.minus( 1 ) );
+    assertSame( PersistentList.empty(), PersistentList.copyOf( Arrays.asList( "a" ) ).minus( 0 ) );
+    assertEquals( Arrays.asList( "a", "b", "c" ), list );
+    try {
+      list.add( "d" );
+      fail();
+    } catch ( UnsupportedOperationException e ) {
+      // expected
+    }
+    try {
+      list.get( 3 );
+      fail();
+    } catch ( IndexOutOfBoundsException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSnapshot() {
+    Domain domain = buildDomain();
+    DomainSnapshot snapshot = DomainSnapshot.of( domain );
+    assertEquals( "DOMAIN", snapshot.getId() );
+    assertSame( domain.getPhysicalModels().get( 0 ), snapshot.getPhysicalModels().get( 0 ) );
+    assertEquals( 2, snapshot.getLogicalModels().size() );
+
+    LogicalModelSnapshot model = snapshot.findLogicalModel( "M1" );
+    assertEquals( 2, model.getLogicalTables().size() );
+    LogicalColumnSnapshot column = model.findLogicalColumn( "M1_T2_C1" );
+    assertEquals( "C1", column.getName( "en_US" ) );
+    assertEquals( DataType.STRING, column.getDataType() );
+    assertSame( domain.findLogicalModel( "M1" ).findLogicalColumn( "M1_T2_C1" ).getPhysicalColumn(), column
+        .getPhysicalColumn() );
+    assertEquals( Arrays.asList( "M1_T1_C1", "M1_T1_C2", "M1_T2_C1", "M1_T2_C2" ), model.findCategory( "M1_CAT" )
+        .getLogicalColumnIds() );
+    LogicalRelationshipSnapshot relationship = model.getLogicalRelationships().get( 0 );
+    assertEquals( "M1_T1", relationship.getFromTableId() );
+    assertEquals( "M1_T1_C1", relationship.getFromColumnId() );
+    assertEquals( "M1_T2", relationship.getToTableId() );
+    assertEquals( "M1_T2_C1", relationship.getToColumnId() );
+    assertEquals( RelationshipType._N_1, relationship.getRelationshipType() );
+
+    // the snapshot does not see later changes of the domain
+    domain.findLogicalModel( "M1" ).getLogicalTables().remove( 0 );
+    domain.findLogicalModel( "M1" ).findLogicalColumn( "M1_T2_C1" ).setName( new LocalizedString( "en_US", "X" ) );
+    domain.getLogicalModels().remove( 1 );
+    assertEquals( 2, snapshot.getLogicalModels().size() );
+    assertEquals( 2, model.getLogicalTables().size() );
+    assertEquals( "C1", column.getName( "en_US" ) );
+  }
+
+  @Test
+  public void testToDomain() {
+    DomainSnapshot snapshot = DomainSnapshot.of( buildDomain() );
+    Domain domain = snapshot.toDomain();
+    assertEquals( "DOMAIN", domain.getId() );
+    assertSame( snapshot.getPhysicalModels().get( 0 ), domain.getPhysicalModels().get( 0 ) );
+
+    LogicalModel model = domain.findLogicalModel( "M2" );
+    assertSame( domain, model.getDomain() );
+    LogicalTable table = model.findLogicalTable( "M2_T1" );
+    assertSame( model, table.getLogicalModel() );
+    LogicalColumn column = table.findLogicalColumn( "M2_T1_C2" );
+    assertSame( table, column.getLogicalTable() );
+    assertEquals( "C2", column.getName( "en_US" ) );
+    assertEquals( DataType.STRING, column.getDataType() );
+    // categories reference the columns of the tables
+    assertSame( column, model.findCategory( "M2_CAT" ).findLogicalColumn( "M2_T1_C2" ) );
+    // relationships join the tables of the domain
+    LogicalRelationship relationship = model.getLogicalRelationships().get( 0 );
+    assertSame( model, relationship.getLogicalModel() );
+    assertSame( table, relationship.getFromTable() );
+    assertSame( table.findLogicalColumn( "M2_T1_C1" ), relationship.getFromColumn() );
+    assertSame( model.findLogicalTable( "M2_T2" ), relationship.getToTable() );
+    assertSame( model.findLogicalColumn( "M2_T2_C1" ), relationship.getToColumn() );
+    assertEquals( RelationshipType._N_1, relationship.getRelationshipType() );
+
+    // the domain is independent of the snapshot
+    column.setName( new LocalizedString( "en_US", "X" ) );
+    model.getLogicalTables().clear();
+    assertEquals( "C2", snapshot.findLogicalModel( "M2" ).findLogicalColumn( "M2_T1_C2" ).getName( "en_US" ) );
+    assertEquals( 2, snapshot.findLogicalModel( "M2" ).getLogicalTables().size() );
+  }
+
+  @Test
+  public void testBuilderSharesUnchangedPath() {
+    DomainSnapshot snapshot = DomainSnapshot.of( buildDomain() );
+    assertSame( snapshot, snapshot.toBuilder().build() );
+
+    LogicalModelSnapshot model = snapshot.findLogicalModel( "M1" );
+    LogicalTableSnapshot table = model.findLogicalTable( "M1_T1" );
+    LogicalColumnSnapshot column = table.findLogicalColumn( "M1_T1_C1" );
+    LogicalColumnSnapshot renamed = column.toBuilder().setName( new LocalizedString( "en_US", "Renamed" ) ).build();
+    DomainSnapshot modified = snapshot.withLogicalModel( model.withLogicalTable( table.withLogicalColumn( renamed ) ) );
+
+    assertEquals( "Renamed", modified.findLogicalModel( "M1" ).findLogicalColumn( "M1_T1_C1" ).getName( "en_US" ) );
+    assertEquals( "C1", column.getName( "en_US" ) );
+    assertEquals( "C1", snapshot.findLogicalModel( "M1" ).findLogicalColumn( "M1_T1_C1" ).getName( "en_US" ) );
+    assertSame( snapshot.findLogicalModel( "M2" ), modified.findLogicalModel( "M2" ) );
+    assertSame( model.findLogicalTable( "M1_T2" ), modified.findLogicalModel( "M1" ).findLogicalTable( "M1_T2" ) );
+    assertSame( table.findLogicalColumn( "M1_T1_C2" ), modified.findLogicalModel( "M1" ).findLogicalColumn(
+        "M1_T1_C2" ) );
+    assertSame( model.getCategories(), modified.findLogicalModel( "M1" ).getCategories() );
+
+    // removing a model keeps the order of the others
+    DomainSnapshot removed = modified.withoutLogicalModel( "M1" );
+    assertEquals( 1, removed.getLogicalModels().size() );
+    assertSame( snapshot.findLogicalModel( "M2" ), removed.getLogicalModels().get( 0 ) );
+    assertSame( modified, modified.withoutLogicalModel( "UNKNOWN" ) );
+  }
+
+  @Test
+  public void testBuilder() {
+    LogicalTableSnapshot table =
+        LogicalTableSnapshot.builder().setId( "T" ).putLogicalColumn(
+            LogicalColumnSnapshot.builder().setId( "C" ).setDataType( DataType.NUMERIC ).build() ).build();
+    LogicalModelSnapshot model =
+        LogicalModelSnapshot.builder().setId( "M" ).putLogicalTable( table ).putCategory(
+            CategorySnapshot.builder().setId( "CAT" ).addLogicalColumn( "C" ).build() ).build();
+    DomainSnapshot.Builder builder = DomainSnapshot.builder().setId( "D" ).putLogicalModel( model );
+    DomainSnapshot domain = builder.build();
+
+    // the builder may be used again without changing the snapshot it built
+    builder.setProperty( "p", "v" );
+    assertNull( domain.getChildProperty( "p" ) );
+    assertEquals( "v", builder.build().getChildProperty( "p" ) );
+
+    Domain mutable = domain.toDomain();
+    LogicalColumn column = mutable.findLogicalModel( "M" ).findLogicalColumn( "C" );
+    assertEquals( DataType.NUMERIC, column.getDataType() );
+    assertSame( column, mutable.findLogicalModel( "M" ).findCategory( "CAT" ).getLogicalColumns().get( 0 ) );
+  }
+
+  @Test
+  public void testFilter() {
+    DomainSnapshot snapshot = DomainSnapshot.of( buildDomain() );
+    assertSame( snapshot, snapshot.filter( new DenyFilter( null ) ) );
+
+    DomainSnapshot filtered = snapshot.filter( new DenyFilter( "M1_T1_C2" ) );
+    assertNotSame( snapshot, filtered );
+    assertSame( snapshot.findLogicalModel( "M2" ), filtered.findLogicalModel( "M2" ) );
+    LogicalModelSnapshot model = filtered.findLogicalModel( "M1" );
+    assertSame( snapshot.findLogicalModel( "M1" ).findLogicalTable( "M1_T2" ), model.findLogicalTable( "M1_T2" ) );
+    assertEquals( 1, model.findLogicalTable( "M1_T1" ).getLogicalColumns().size() );
+    assertSame( snapshot.findLogicalModel( "M1" ).findLogicalColumn( "M1_T1_C1" ), model.findLogicalColumn(
+        "M1_T1_C1" ) );
+    assertEquals( Arrays.asList( "M1_T1_C1", "M1_T2_C1", "M1_T2_C2" ), model.findCategory( "M1_CAT" )
+        .getLogicalColumnIds() );
+
+    filtered = snapshot.filter( new DenyFilter( "M2_T2" ) );
+    assertEquals( 1, filtered.findLogicalModel( "M2" ).getLogicalTables().size() );
+    assertEquals( Arrays.asList( "M2_T1_C1", "M2_T1_C2" ), filtered.findLogicalModel( "M2" ).findCategory( "M2_CAT" )
+        .getLogicalColumnIds() );
+
+    filtered = snapshot.filter( new DenyFilter( "M1" ) );
+    assertEquals( 1, filtered.getLogicalModels().size() );
+    assertSame( snapshot.findLogicalModel( "M2" ), filtered.getLogicalModels().get( 0 ) );
+  }
+
+  @Test
+  public void testRelationshipsFollowTables() {
+    LogicalModelSnapshot model = DomainSnapshot.of( buildDomain() ).findLogicalModel( "M1" );
+    LogicalTableSnapshot table = model.findLogicalTable( "M1_T2" );
+
+    // a replaced table keeps the relationships it satisfies
+    LogicalTableSnapshot renamed = table.toBuilder().setName( new LocalizedString( "en_US", "Renamed" ) ).build();
+    LogicalModelSnapshot modified = model.withLogicalTable( renamed );
+    assertSame( model.getLogicalRelationships(), modified.getLogicalRelationships() );
+    LogicalModel mutable = DomainSnapshot.builder().setId( "D" ).putLogicalModel( modified ).build().toDomain()
+        .findLogicalModel( "M1" );
+    assertSame( mutable.findLogicalTable( "M1_T2" ), mutable.getLogicalRelationships().get( 0 ).getToTable() );
+    assertEquals( "Renamed", mutable.getLogicalRelationships().get( 0 ).getToTable().getName( "en_US" ) );
+
+    // and drops those joining a removed column
+    assertEquals( 0, model.withLogicalTable( table.withoutLogicalColumn( "M1_T2_C1" ) ).getLogicalRelationships()
+        .size() );
+    assertEquals( 1, model.withLogicalTable( table.withoutLogicalColumn( "M1_T2_C2" ) ).getLogicalRelationships()
+        .size() );
+
+    // removing or filtering out a table removes its relationships
+    assertEquals( 0, model.withoutLogicalTable( "M1_T1" ).getLogicalRelationships().size() );
+    DomainSnapshot filtered = DomainSnapshot.of( buildDomain() ).filter( new DenyFilter( "M2_T2" ) );
+    assertEquals( 0, filtered.findLogicalModel( "M2" ).getLogicalRelationships().size() );
+    assertEquals( 1, filtered.findLogicalModel( "M1" ).getLogicalRelationships().size() );
+    assertEquals( 0, filtered.toDomain().findLogicalModel( "M2" ).getLogicalRelationships().size() );
+  }
+
+  @Test
+  public void testParentConceptProperties() {
+    Concept parent = new Concept();
+    parent.setId( "PARENT" );
+    parent.setProperty( "p", "v" );
+    Domain domain = buildDomain();
+    domain.findLogicalModel( "M1" ).findLogicalColumn( "M1_T1_C1" ).setParentConcept( parent );
+    LogicalColumnSnapshot column = DomainSnapshot.of( domain ).findLogicalModel( "M1" ).findLogicalColumn(
+        "M1_T1_C1" );
+    assertEquals( "v", column.getProperty( "p" ) );
+
+    // the snapshot does not see later changes of the parent concept
+    parent.setProperty( "p", "changed" );
+    assertEquals( "v", column.getProperty( "p" ) );
+    assertEquals( "changed", column.toBuilder().setParentConcept( parent ).build().getProperty( "p" ) );
+  }
+
+  @Test
+  public void testSecureSnapshot() throws Exception {
+    InMemoryMetadataDomainRepository repo = new InMemoryMetadataDomainRepository() {
+      @Override
+      public boolean hasAccess( int accessType, IConcept aclHolder ) {
+        return !"M2_CAT".equals( aclHolder.getId() );
+      }
+    };
+    repo.storeDomain( buildDomain(), false );
+
+    DomainSnapshot secure = repo.getDomainSnapshot( "DOMAIN" );
+    assertNull( secure.findLogicalModel( "M2" ).findCategory( "M2_CAT" ) );
+    assertTrue( secure.findLogicalModel( "M1" ).findCategory( "M1_CAT" ) != null );
+    // the unfiltered parts are shared between the calls
+    assertSame( secure.findLogicalModel( "M1" ), repo.getDomainSnapshot( "DOMAIN" ).findLogicalModel( "M1" ) );
+    assertNull( repo.getDomainSnapshot( "UNKNOWN" ) );
+
+    // storing the domain again takes a new snapshot
+    Domain domain = buildDomain();
+    domain.getLogicalModels().remove( 0 );
+    repo.storeDomain( domain, true );
+    assertNull( repo.getDomainSnapshot( "DOMAIN" ).findLogicalModel( "M1" ) );
+  }
+
+  private static class DenyFilter implements ISnapshotFilter {
+    private final String deniedId;
+
+    DenyFilter( String deniedId ) {
+      this.deniedId = deniedId;
+    }
+
+    private boolean accept( ConceptSnapshot concept ) {
+      return !concept.getId().equals( deniedId );
+    }
+
+    public boolean acceptLogicalModel( LogicalModelSnapshot model ) {
+      return accept( model );
+    }
+
+    public boolean acceptLogicalTable( LogicalModelSnapshot model, LogicalTableSnapshot table ) {
+      return accept( table );
+    }
+
+    public boolean acceptLogicalColumn( LogicalModelSnapshot model, LogicalTableSnapshot table,
+        LogicalColumnSnapshot column ) {
+      return accept( column );
+    }
+
+    public boolean acceptCategory( LogicalModelSnapshot model, CategorySnapshot category ) {
+      return accept( category );
+    }
+  }
+}
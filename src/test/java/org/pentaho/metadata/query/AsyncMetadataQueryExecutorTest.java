@@ -0,0 +1,261 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.commons.connection.memory.MemoryMetaData;
+import org.pentaho.commons.connection.memory.MemoryResultSet;
+import org.pentaho.metadata.model.ICancellableMetadataQueryExec;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.SqlPhysicalModel;
+import org.pentaho.metadata.query.model.Query;
+
+public class AsyncMetadataQueryExecutorTest {
+
+  private static Query createQuery( String physicalModelId ) {
+    SqlPhysicalModel physicalModel = new SqlPhysicalModel();
+    physicalModel.setId( physicalModelId );
+    LogicalModel model = new LogicalModel();
+    model.setId( "model" );
+    model.setPhysicalModel( physicalModel );
+    return new Query( null, model );
+  }
+
+  @Test
+  public void testDefaultExecutor() throws Exception {
+    AsyncMetadataQueryExecutor async = new AsyncMetadataQueryExecutor();
+    BlockingQueryExec exec = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    exec.release.countDown();
+    CompletableFuture<IPentahoResultSet> future = async.executeQueryAsync( exec, createQuery( "pm" ) );
+    assertSame( exec.result, future.get( 10, TimeUnit.SECONDS ) );
+  }
+
+  @Test
+  public void testConcurrencyLimit() throws Exception {
+    AsyncMetadataQueryExecutor async = new AsyncMetadataQueryExecutor();
+    async.setConcurrencyLimit( "pm", 2 );
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    List<BlockingQueryExec> execs = new ArrayList<BlockingQueryExec>();
+    List<CompletableFuture<IPentahoResultSet>> futures = new ArrayList<CompletableFuture<IPentahoResultSet>>();
+    for ( int i = 0; i < 5; i++ ) {
+      BlockingQueryExec exec = new BlockingQueryExec( running, maxRunning );
+      execs.add( exec );
+      futures.add( async.executeQueryAsync( exec, createQuery( "pm" ) ) );
+    }
+    // queries of other physical models are not limited
+    BlockingQueryExec other = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    other.release.countDown();
+    async.executeQueryAsync( other, createQuery( "other" ) ).get( 10, TimeUnit.SECONDS );
+
+    assertTrue( execs.get( 0 ).started.await( 10, TimeUnit.SECONDS ) );
+    assertTrue( execs.get( 1 ).started.await( 10, TimeUnit.SECONDS ) );
+    assertEquals( 3, async.getQueuedCount( "pm" ) );
+    for ( BlockingQueryExec exec : execs ) {
+      exec.release.countDown();
+    }
+    for ( int i = 0; i < futures.size(); i++ ) {
+      assertSame( execs.get( i ).result, futures.get( i ).get( 10, TimeUnit.SECONDS ) );
+    }
+    assertEquals( 2, maxRunning.get() );
+    assertEquals( 0, async.getQueuedCount( "pm" ) );
+  }
+
+  @Test
+  public void testCancelRunningQuery() throws Exception {
+    AsyncMetadataQueryExecutor async = new AsyncMetadataQueryExecutor();
+    BlockingQueryExec exec = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    CompletableFuture<IPentahoResultSet> future = async.executeQueryAsync( exec, createQuery( "pm" ) );
+    assertTrue( exec.started.await( 10, TimeUnit.SECONDS ) );
+    assertTrue( future.cancel( true ) );
+    // the cancellation reached the query, which returns without waiting for the release
+    assertTrue( exec.finished.await( 10, TimeUnit.SECONDS ) );
+    assertTrue( exec.cancelled );
+    try {
+      future.get();
+      fail();
+    } catch ( CancellationException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCancelQueuedQuery() throws Exception {
+    AsyncMetadataQueryExecutor async = new AsyncMetadataQueryExecutor();
+    async.setDefaultConcurrencyLimit( 1 );
+    BlockingQueryExec first = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    BlockingQueryExec second = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    CompletableFuture<IPentahoResultSet> firstFuture = async.executeQueryAsync( first, createQuery( "pm" ) );
+    CompletableFuture<IPentahoResultSet> secondFuture = async.executeQueryAsync( second, createQuery( "pm" ) );
+    assertTrue( first.started.await( 10, TimeUnit.SECONDS ) );
+    assertTrue( secondFuture.cancel( true ) );
+    first.release.countDown();
+    firstFuture.get( 10, TimeUnit.SECONDS );
+
+    // the queued query never started and its slot was handed on
+    BlockingQueryExec third = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    third.release.countDown();
+    async.executeQueryAsync( third, createQuery( "pm" ) ).get( 10, TimeUnit.SECONDS );
+    assertEquals( 1, second.started.getCount() );
+    assertFalse( second.cancelled );
+  }
+
+  @Test
+  public void testLimitChangedWhileRunning() throws Exception {
+    AsyncMetadataQueryExecutor async = new AsyncMetadataQueryExecutor();
+    BlockingQueryExec unlimited = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    CompletableFuture<IPentahoResultSet> unlimitedFuture = async.executeQueryAsync( unlimited, createQuery( "pm" ) );
+    assertTrue( unlimited.started.await( 10, TimeUnit.SECONDS ) );
+
+    async.setConcurrencyLimit( "pm", 1 );
+    BlockingQueryExec limited = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    CompletableFuture<IPentahoResultSet> limitedFuture = async.executeQueryAsync( limited, createQuery( "pm" ) );
+    assertTrue( limited.started.await( 10, TimeUnit.SECONDS ) );
+    // the query submitted without a limit holds no permit to return
+    unlimited.release.countDown();
+    unlimitedFuture.get( 10, TimeUnit.SECONDS );
+
+    BlockingQueryExec queued = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    queued.release.countDown();
+    CompletableFuture<IPentahoResultSet> queuedFuture = async.executeQueryAsync( queued, createQuery( "pm" ) );
+    assertEquals( 1, async.getQueuedCount( "pm" ) );
+    limited.release.countDown();
+    limitedFuture.get( 10, TimeUnit.SECONDS );
+    queuedFuture.get( 10, TimeUnit.SECONDS );
+    assertEquals( 0, async.getQueuedCount( "pm" ) );
+  }
+
+  @Test
+  public void testRejectedQuery() throws Exception {
+    RejectingExecutor executor = new RejectingExecutor();
+    AsyncMetadataQueryExecutor async = new AsyncMetadataQueryExecutor( executor );
+    async.setDefaultConcurrencyLimit( 1 );
+    BlockingQueryExec first = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    BlockingQueryExec second = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    CompletableFuture<IPentahoResultSet> firstFuture = async.executeQueryAsync( first, createQuery( "pm" ) );
+    CompletableFuture<IPentahoResultSet> secondFuture = async.executeQueryAsync( second, createQuery( "pm" ) );
+    assertTrue( first.started.await( 10, TimeUnit.SECONDS ) );
+
+    // the queued query is rejected when the first one hands on its permit
+    executor.reject = true;
+    first.release.countDown();
+    firstFuture.get( 10, TimeUnit.SECONDS );
+    try {
+      secondFuture.get( 10, TimeUnit.SECONDS );
+      fail();
+    } catch ( ExecutionException e ) {
+      assertTrue( e.getCause() instanceof RejectedExecutionException );
+    }
+
+    // the rejected query returned its permit
+    executor.reject = false;
+    BlockingQueryExec third = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    third.release.countDown();
+    assertSame( third.result, async.executeQueryAsync( third, createQuery( "pm" ) ).get( 10, TimeUnit.SECONDS ) );
+    assertEquals( 0, async.getQueuedCount( "pm" ) );
+  }
+
+  @Test
+  public void testFailedQuery() throws Exception {
+    AsyncMetadataQueryExecutor async = new AsyncMetadataQueryExecutor();
+    BlockingQueryExec exec = new BlockingQueryExec( new AtomicInteger(), new AtomicInteger() );
+    exec.result = null;
+    exec.release.countDown();
+    try {
+      async.executeQueryAsync( exec, createQuery( "pm" ) ).get( 10, TimeUnit.SECONDS );
+      fail();
+    } catch ( ExecutionException e ) {
+      assertTrue( e.getCause() instanceof IllegalStateException );
+    }
+  }
+
+  private static class RejectingExecutor implements Executor {
+    volatile boolean reject;
+
+    public void execute( Runnable command ) {
+      if ( reject ) {
+        throw new RejectedExecutionException();
+      }
+      new Thread( command ).start();
+    }
+  }
+
+  private static class BlockingQueryExec extends BaseMetadataQueryExec implements ICancellableMetadataQueryExec {
+    final CountDownLatch started = new CountDownLatch( 1 );
+
+    final CountDownLatch release = new CountDownLatch( 1 );
+
+    final CountDownLatch finished = new CountDownLatch( 1 );
+
+    final AtomicInteger running;
+
+    final AtomicInteger maxRunning;
+
+    volatile boolean cancelled;
+
+    IPentahoResultSet result = new MemoryResultSet( new MemoryMetaData( new Object[][] { { "col" } }, null ) );
+
+    BlockingQueryExec( AtomicInteger running, AtomicInteger maxRunning ) {
+      this.running = running;
+      this.maxRunning = maxRunning;
+    }
+
+    public IPentahoResultSet executeQuery( Query queryObject ) {
+      int now = running.incrementAndGet();
+      synchronized ( maxRunning ) {
+        maxRunning.set( Math.max( maxRunning.get(), now ) );
+      }
+      started.countDown();
+      try {
+        release.await();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+      } finally {
+        running.decrementAndGet();
+        finished.countDown();
+      }
+      return cancelled ? null : result;
+    }
+
+    public void cancel() {
+      cancelled = true;
+      release.countDown();
+    }
+
+    public boolean isLive() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.metadata.query.impl.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.pentaho.metadata.model.LogicalModel;
+
+public class SqlGenerationHistogramTest {
+
+  @Test
+  public void testHistogram() {
+    SqlGenerationHistogram.Histogram histogram = new SqlGenerationHistogram.Histogram();
+    assertEquals( 0, histogram.getPercentile( 50 ) );
+    for ( int i = 1; i <= 100; i++ ) {
+      histogram.record( i );
+    }
+    assertEquals( 100, histogram.getCount() );
+    assertEquals( 5050, histogram.getSum() );
+    assertEquals( 100, histogram.getMax() );
+    assertEquals( 50.5, histogram.getMean(), 0.001 );
+    // 50th value falls in the [32, 64) bucket
+    assertEquals( 63, histogram.getPercentile( 50 ) );
+    assertEquals( 100, histogram.getPercentile( 100 ) );
+    assertEquals( 1, histogram.getPercentile( 0 ) );
+  }
+
+  @Test
+  public void testPerModelStats() {
+    LogicalModel model1 = new LogicalModel();
+    model1.setId( "model1" );
+    LogicalModel model2 = new LogicalModel();
+    model2.setId( "model2" );
+
+    SqlGenerationStats stats = new SqlGenerationStats();
+    long start = System.nanoTime() - 1000;
+    stats.lap( SqlGenerationPhase.PATH_SEARCH, start );
+    stats.addPathVisits( 12, 30 );
+    stats.setSqlLength( 120 );
+
+    SqlGenerationHistogram histogram = new SqlGenerationHistogram();
+    histogram.sqlGenerated( model1, stats );
+    histogram.sqlGenerated( model1, stats );
+    histogram.sqlGenerated( model2, new SqlGenerationStats() );
+
+    assertEquals( 2, histogram.getModelIds().size() );
+    assertEquals( 3, histogram.getTotalHistogram( null ).getCount() );
+    assertEquals( 2, histogram.getSqlLengthHistogram( "model1" ).getCount() );
+    assertEquals( 240, histogram.getSqlLengthHistogram( "model1" ).getSum() );
+    assertEquals( 12, histogram.getPathNodeVisitHistogram( "model1" ).getMax() );
+    assertEquals( 30, histogram.getPathArcVisitHistogram( "model1" ).getMax() );
+    assertTrue( histogram.getPhaseHistogram( "model1", SqlGenerationPhase.PATH_SEARCH ).getMax() >= 1000 );
+    assertEquals( 0, histogram.getPhaseHistogram( "model2", SqlGenerationPhase.PATH_SEARCH ).getMax() );
+    assertEquals( 0, histogram.getTotalHistogram( "unknown" ).getCount() );
+
+    histogram.reset();
+    assertEquals( 0, histogram.getTotalHistogram( null ).getCount() );
+    assertTrue( histogram.getModelIds().isEmpty() );
+  }
+}
@@ -23,6 +23,9 @@ import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static org.mockito.Mockito.mock;
 
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
@@ -227,6 +230,72 @@ public class QueryXmlHelperTest {
     }
   }
 
+  @Test
+  public void testPreview() throws Exception {
+    String xml = helper.toXML( query );
+    assertFalse( xml.contains( "<preview>" ) );
+    query = helper.fromXML( metadataDomainRepository, xml );
+    assertFalse( query.isPreview() );
+
+    // to xml and back, preview
+    query.setPreview( true );
+    query.setSamplePercentage( 2.5 );
+    query.setSampleRowLimit( 500 );
+    xml = helper.toXML( query );
+    query = helper.fromXML( metadataDomainRepository, xml );
+    assertTrue( query.isPreview() );
+    assertEquals( 2.5, query.getSamplePercentage(), 0 );
+    assertEquals( 500, query.getSampleRowLimit() );
+
+    // invalid row limit in xml
+    xml = xml.replaceAll( "<sample_row_limit>\\s*500\\s*</sample_row_limit>",
+        "<sample_row_limit>x</sample_row_limit>" );
+    try {
+      helper.fromXML( metadataDomainRepository, xml );
+      fail();
+    } catch ( PentahoMetadataException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testOffsetAndKeyset() throws Exception {
+    String xml;
+
+    // to xml, no paging
+    xml = helper.toXML( query );
+    assertFalse( xml.contains( "<offset>" ) );
+    assertFalse( xml.contains( "<keyset>" ) );
+    query = helper.fromXML( metadataDomainRepository, xml );
+    assertEquals( 0, query.getOffset() );
+    assertTrue( query.getKeyset().isEmpty() );
+
+    // to xml and back, paging
+    Timestamp date = Timestamp.valueOf( "2019-04-01 10:30:00.5" );
+    query.setOffset( 20 );
+    query.getKeyset().add( new BigDecimal( "12.50" ) );
+    query.getKeyset().add( date );
+    query.getKeyset().add( "a|b" );
+    query.getKeyset().add( Boolean.TRUE );
+    xml = helper.toXML( query );
+    query = helper.fromXML( metadataDomainRepository, xml );
+    assertEquals( 20, query.getOffset() );
+    assertEquals( 4, query.getKeyset().size() );
+    assertEquals( new BigDecimal( "12.50" ), query.getKeyset().get( 0 ) );
+    assertEquals( date, query.getKeyset().get( 1 ) );
+    assertEquals( "a|b", query.getKeyset().get( 2 ) );
+    assertEquals( Boolean.TRUE, query.getKeyset().get( 3 ) );
+
+    // invalid offset in xml
+    xml = xml.replaceAll( "<offset>\\s*20\\s*</offset>", "<offset>abc</offset>" );
+    try {
+      helper.fromXML( metadataDomainRepository, xml );
+      fail();
+    } catch ( PentahoMetadataException e ) {
+      // expected
+    }
+  }
+
   @Test
   public void testFromXML() throws Exception {
     Domain domain = TestHelper.getBasicDomain();
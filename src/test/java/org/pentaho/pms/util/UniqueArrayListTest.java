@@ -0,0 +1,190 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2019 Hitachi Vantara.  All rights reserved.
+ */
+package org.pentaho.pms.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+
+import org.junit.Test;
+import org.pentaho.pms.schema.BusinessModel;
+import org.pentaho.pms.schema.BusinessTable;
+import org.pentaho.pms.schema.concept.ConceptUtilityBase;
+
+@SuppressWarnings( "deprecation" )
+public class UniqueArrayListTest {
+
+  @Test
+  public void testRefusesDuplicates() throws Exception {
+    UniqueArrayList<String> list = new UniqueArrayList<String>();
+    for ( int i = 0; i < 100; i++ ) {
+      list.add( "e" + i );
+    }
+    try {
+      list.add( "e42" );
+      fail();
+    } catch ( ObjectAlreadyExistsException e ) {
+      // expected
+    }
+    assertEquals( 100, list.size() );
+    assertEquals( 42, list.indexOf( "e42" ) );
+    assertEquals( -1, list.indexOf( "e100" ) );
+
+    list.remove( "e42" );
+    assertFalse( list.contains( "e42" ) );
+    list.add( 0, "e42" );
+    assertEquals( 0, list.indexOf( "e42" ) );
+  }
+
+  @Test
+  public void testChangesThroughTheList() throws Exception {
+    UniqueArrayList<String> list = new UniqueArrayList<String>();
+    for ( int i = 0; i < 30; i++ ) {
+      list.add( "e" + i );
+    }
+    Collections.reverse( list.getList() );
+    assertEquals( "e29", list.get( 0 ) );
+    assertEquals( "e0", list.get( 29 ) );
+
+    for ( Iterator<String> iterator = list.iterator(); iterator.hasNext(); ) {
+      if ( iterator.next().equals( "e5" ) ) {
+        iterator.remove();
+      }
+    }
+    assertFalse( list.contains( "e5" ) );
+    list.add( "e5" );
+
+    list.getList().set( 0, "x" );
+    assertFalse( list.contains( "e29" ) );
+    assertTrue( list.contains( "x" ) );
+
+    try {
+      for ( String element : list.getList() ) {
+        list.add( element + "y" );
+      }
+      fail();
+    } catch ( ConcurrentModificationException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testFindByIdAfterRename() throws Exception {
+    BusinessModel model = new BusinessModel( "model" );
+    for ( int i = 0; i < 10; i++ ) {
+      BusinessTable table = new BusinessTable( "table" + i );
+      table.addIDChangedListener( ConceptUtilityBase.createIDChangedListener( model.getBusinessTables() ) );
+      model.addBusinessTable( table );
+    }
+    BusinessTable table = model.findBusinessTable( "TABLE3" );
+    assertSame( model.getBusinessTable( 3 ), table );
+
+    table.setId( "renamed" );
+    assertNull( model.findBusinessTable( "table3" ) );
+    assertSame( table, model.findBusinessTable( "Renamed" ) );
+    try {
+      model.addBusinessTable( new BusinessTable( "RENAMED" ) );
+      fail();
+    } catch ( ObjectAlreadyExistsException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testAddDoesNotScan() throws Exception {
+    UniqueArrayList<Element> list = new UniqueArrayList<Element>();
+    for ( int i = 0; i < 1000; i++ ) {
+      list.add( new Element( "e" + i ) );
+    }
+    assertEquals( 0, Element.comparisons );
+    assertTrue( list.contains( new Element( "e500" ) ) );
+    assertEquals( 1, Element.comparisons );
+
+    // the hash code changes with state that equal elements don't share, the key stays
+    list.get( 10 ).state = 42;
+    assertTrue( list.contains( new Element( "e10" ) ) );
+
+    // an element indexed without a key is found once it has one
+    Element unnamed = new Element( null );
+    list.add( unnamed );
+    unnamed.name = "late";
+    assertTrue( list.contains( new Element( "late" ) ) );
+    assertTrue( list.remove( new Element( "late" ) ) );
+    assertFalse( list.contains( unnamed ) );
+  }
+
+  @Test
+  public void testHashChangeWithoutListener() throws Exception {
+    UniqueArrayList<BusinessTable> list = new UniqueArrayList<BusinessTable>();
+    for ( int i = 0; i < 10; i++ ) {
+      list.add( new BusinessTable( "table" + i ) );
+    }
+    BusinessTable table = list.get( 3 );
+    list.contains( table );
+
+    // no ID listener rebuilds the index
+    table.setId( "renamed" );
+    assertTrue( list.contains( table ) );
+    assertEquals( 3, list.indexOf( table ) );
+    try {
+      list.add( new BusinessTable( "renamed" ) );
+      fail();
+    } catch ( ObjectAlreadyExistsException e ) {
+      // expected
+    }
+
+    BusinessTable other = list.get( 5 );
+    other.setId( "other" );
+    assertTrue( list.remove( other ) );
+    assertFalse( list.contains( other ) );
+    assertEquals( 9, list.size() );
+    list.add( new BusinessTable( "table5" ) );
+  }
+
+  private static class Element implements UniqueListElement {
+    static int comparisons;
+
+    String name;
+
+    int state;
+
+    Element( String name ) {
+      this.name = name;
+    }
+
+    public Object getUniqueKey() {
+      return name;
+    }
+
+    public boolean equals( Object obj ) {
+      comparisons++;
+      return obj instanceof Element && ( name == null ? ( (Element) obj ).name == null : name.equals(
+          ( (Element) obj ).name ) );
+    }
+
+    public int hashCode() {
+      return 31 * ( name == null ? 0 : name.hashCode() ) + state;
+    }
+  }
+}